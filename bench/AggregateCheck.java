@@ -0,0 +1,198 @@
+package bench;
+
+import src.entity.Status;
+import src.model.CellReference;
+import src.model.SheetEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Vérification, sans JMH, des agrégats de plages maintenus incrémentalement
+ * par l'index des plages du moteur : après chaque modification d'une feuille
+ * aléatoire, chaque formule {@code SUM}, {@code AVG}, {@code MIN} ou
+ * {@code MAX} doit avoir la valeur et le statut obtenus en relisant toute sa
+ * plage. Les plages couvrent plusieurs blocs de l'index, et les modifications
+ * effacent des cellules, y placent des formules incorrectes ou déplacent les
+ * plages elles-mêmes.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class AggregateCheck {
+
+    /** Nombre de lignes de données. */
+    private static final int ROWS = 300;
+    /** Nombre de colonnes de données. */
+    private static final int COLUMNS = 3;
+    /** Colonne des formules d'agrégation. */
+    private static final int FORMULA_COLUMN = 4;
+    /** Nombre de formules d'agrégation. */
+    private static final int FORMULAS = 40;
+    /** Nombre de modifications aléatoires. */
+    private static final int EDITS = 2000;
+    /** Les fonctions d'agrégation vérifiées. */
+    private static final String[] FUNCTIONS = { "SUM", "AVG", "MIN", "MAX" };
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+    /** Le moteur vérifié. */
+    private final SheetEngine engine = new SheetEngine(ROWS, FORMULA_COLUMN + 1);
+    /** Le générateur des modifications, à graine fixe. */
+    private final Random random = new Random(19);
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     */
+    private AggregateCheck() {
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     */
+    public static void main(String[] args) {
+        AggregateCheck check = new AggregateCheck();
+        check.randomEdits();
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Remplit la feuille, place les formules d'agrégation, puis compare leurs
+     * résultats à ceux d'une relecture complète après chaque modification.
+     */
+    private void randomEdits() {
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                set(row, column, Integer.toString(random.nextInt(1000)));
+            }
+        }
+        for (int row = 0; row < FORMULAS; row++) {
+            set(row, FORMULA_COLUMN, randomAggregate());
+        }
+        compare("remplissage");
+        for (int edit = 0; edit < EDITS && failures.isEmpty(); edit++) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                set(random.nextInt(FORMULAS), FORMULA_COLUMN, randomAggregate());
+            } else {
+                int row = random.nextInt(ROWS);
+                int column = random.nextInt(COLUMNS);
+                String formula;
+                if (kind == 1) {
+                    formula = "";
+                } else if (kind == 2) {
+                    formula = "+ 1";
+                } else if (kind == 3) {
+                    formula = "+ " + CellReference.format(random.nextInt(ROWS), random.nextInt(COLUMNS)) + " 1";
+                } else {
+                    formula = Integer.toString(random.nextInt(2000) - 1000);
+                }
+                set(row, column, formula);
+            }
+            compare("modification " + edit);
+        }
+    }
+
+    /**
+     * Tire une formule d'agrégation sur une plage aléatoire des colonnes de
+     * données.
+     *
+     * @return La formule.
+     */
+    private String randomAggregate() {
+        int top = random.nextInt(ROWS);
+        int bottom = Math.min(ROWS - 1, top + random.nextInt(ROWS / 2));
+        int left = random.nextInt(COLUMNS);
+        int right = left + random.nextInt(COLUMNS - left);
+        return FUNCTIONS[random.nextInt(FUNCTIONS.length)] + " " + CellReference.format(top, left) + ":"
+                + CellReference.format(bottom, right);
+    }
+
+    /**
+     * Compare chaque formule d'agrégation au résultat d'une relecture complète
+     * de sa plage.
+     *
+     * @param step L'étape vérifiée, pour les messages.
+     */
+    private void compare(String step) {
+        for (int row = 0; row < FORMULAS; row++) {
+            String formula = engine.getFormula(row, FORMULA_COLUMN);
+            String[] parts = formula.split("[ :]");
+            long first = CellReference.parse(parts[1]);
+            long last = CellReference.parse(parts[2]);
+            double expected = scan(parts[0], CellReference.row(first), CellReference.column(first),
+                    CellReference.row(last), CellReference.column(last));
+            Status status = engine.getStatus(row, FORMULA_COLUMN);
+            double actual = engine.getValue(row, FORMULA_COLUMN);
+            boolean same = Double.isNaN(expected) ? status == Status.UNCALCULABLE
+                    : status == Status.CALCULABLE && actual == expected;
+            if (!same) {
+                failures.add(step + ", " + formula + " : attendu " + (Double.isNaN(expected) ? "incalculable"
+                        : expected) + ", obtenu " + status + " " + actual);
+            }
+        }
+    }
+
+    /**
+     * Calcule un agrégat en relisant toutes les cellules de sa plage : les
+     * cellules vides sont ignorées, une cellule sans valeur calculable rend
+     * l'agrégat incalculable, comme une plage sans valeur pour une autre
+     * fonction que la somme.
+     *
+     * @param function La fonction d'agrégation.
+     * @param top      La première ligne.
+     * @param left     La première colonne.
+     * @param bottom   La dernière ligne.
+     * @param right    La dernière colonne.
+     * @return L'agrégat, ou NaN s'il est incalculable.
+     */
+    private double scan(String function, int top, int left, int bottom, int right) {
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                Status status = engine.getStatus(row, column);
+                if (status == Status.EMPTY) {
+                    continue;
+                }
+                if (status != Status.CALCULABLE) {
+                    return Double.NaN;
+                }
+                double value = engine.getValue(row, column);
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                count++;
+            }
+        }
+        if (function.equals("SUM")) {
+            return sum;
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return function.equals("AVG") ? sum / count : function.equals("MIN") ? min : max;
+    }
+
+    /**
+     * Remplace la formule d'une cellule puis recalcule la feuille.
+     *
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @param formula La nouvelle formule.
+     */
+    private void set(int row, int column, String formula) {
+        engine.setFormula(row, column, formula);
+        engine.recalculate(row, column);
+    }
+}
@@ -0,0 +1,222 @@
+package bench;
+
+import src.entity.Status;
+import src.model.RecalculationService;
+import src.model.SheetEngine;
+import src.model.SheetVersion;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Vérification, sans JMH, de l'atomicité des lots de modifications
+ * ({@link SheetEngine.Batch}) : un lot n'a aucun effet avant sa validation,
+ * remplace toutes ses formules avant de rechercher les cycles, ne recalcule
+ * chaque cellule qu'une fois, ne publie qu'une notification, et n'est jamais
+ * observé à moitié appliqué par un lecteur des versions publiées.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class BatchCheck {
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     */
+    private BatchCheck() {
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     * @throws InterruptedException Si l'attente du thread de recalcul est
+     *                              interrompue.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        BatchCheck check = new BatchCheck();
+        check.deferredUntilCommit();
+        check.swappedReferences();
+        check.closedLot();
+        check.concurrentReader();
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Vérifie qu'un lot n'est appliqué qu'à sa validation, en un seul
+     * recalcul notifié une seule fois, et que seule la dernière formule d'une
+     * cellule modifiée plusieurs fois compte, même si une formule
+     * intermédiaire fermait un cycle.
+     */
+    private void deferredUntilCommit() {
+        SheetEngine engine = new SheetEngine(10, 10);
+        engine.setFormula(0, 0, "1");
+        engine.setFormula(1, 0, "+ A1 1");
+        engine.recalculate(0, 0);
+        AtomicInteger notifications = new AtomicInteger();
+        engine.addCellChangeListener(keys -> notifications.incrementAndGet());
+
+        SheetEngine.Batch batch = engine.beginBatch();
+        batch.set(0, 0, "+ A2 1").set(0, 0, "10").set(2, 0, "* A2 2").set(0, 1, "+ A1 A3");
+        expect("A1 avant validation", "1", engine.getFormula(0, 0));
+        expect("A2 avant validation", 2, engine.getValue(1, 0));
+        expect("A3 avant validation", Status.EMPTY, engine.getStatus(2, 0));
+
+        long[] recalculated = batch.commit();
+        Set<Long> distinct = new HashSet<>();
+        for (long key : recalculated) {
+            if (!distinct.add(key)) {
+                failures.add("cellule recalculée deux fois : " + key);
+            }
+        }
+        expect("notifications", 1, notifications.get());
+        expect("A1", 10, engine.getValue(0, 0));
+        expect("A2", 11, engine.getValue(1, 0));
+        expect("A3", 22, engine.getValue(2, 0));
+        expect("B1", 32, engine.getValue(0, 1));
+    }
+
+    /**
+     * Vérifie qu'un lot qui inverse le sens d'une référence est accepté : les
+     * anciennes arêtes de toutes les cellules du lot sont retirées avant
+     * l'insertion des nouvelles, alors que les mêmes modifications appliquées
+     * une à une fermeraient un cycle.
+     */
+    private void swappedReferences() {
+        SheetEngine engine = new SheetEngine(10, 10);
+        engine.setFormula(0, 0, "5");
+        engine.setFormula(1, 0, "+ A1 1");
+        engine.recalculate(0, 0);
+        engine.beginBatch().set(0, 0, "+ A2 1").set(1, 0, "7").commit();
+        expect("A1 après inversion", 8, engine.getValue(0, 0));
+        expect("A2 après inversion", 7, engine.getValue(1, 0));
+    }
+
+    /**
+     * Vérifie qu'un lot validé ne peut plus être modifié ni validé, et qu'une
+     * position hors de la feuille est refusée dès son ajout.
+     */
+    private void closedLot() {
+        SheetEngine engine = new SheetEngine(10, 10);
+        SheetEngine.Batch batch = engine.beginBatch();
+        try {
+            batch.set(10, 0, "1");
+            failures.add("position hors limites acceptée");
+        } catch (IndexOutOfBoundsException e) {
+            expect("lot après refus", 0, batch.size());
+        }
+        batch.set(0, 0, "1").commit();
+        try {
+            batch.commit();
+            failures.add("lot validé deux fois");
+        } catch (IllegalStateException e) {
+            expect("A1 du lot validé", 1, engine.getValue(0, 0));
+        }
+        try {
+            batch.set(0, 0, "2");
+            failures.add("lot modifié après validation");
+        } catch (IllegalStateException e) {
+            expect("A1 inchangée", 1, engine.getValue(0, 0));
+        }
+    }
+
+    /**
+     * Vérifie qu'un lecteur des versions publiées, pendant que le thread de
+     * recalcul applique des lots qui passent toute une colonne de 0 à 1 puis
+     * de 1 à 0, ne voit jamais la colonne à moitié modifiée.
+     *
+     * @throws InterruptedException Si l'attente du thread de recalcul est
+     *                              interrompue.
+     */
+    private void concurrentReader() throws InterruptedException {
+        int rows = 500;
+        SheetEngine engine = new SheetEngine(rows, 2);
+        SheetEngine.Batch fill = engine.beginBatch();
+        for (int row = 0; row < rows; row++) {
+            fill.set(row, 0, "0").set(row, 1, "* A" + (row + 1) + " 3");
+        }
+        fill.commit();
+        engine.enableSnapshots();
+        RecalculationService service = new RecalculationService(engine);
+
+        AtomicBoolean done = new AtomicBoolean();
+        List<String> torn = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                SheetVersion version = engine.snapshot();
+                double sum = 0;
+                for (int row = 0; row < rows; row++) {
+                    sum += version.getValue(row, 0) + version.getValue(row, 1);
+                }
+                if (sum != 0 && sum != 4 * rows && torn.isEmpty()) {
+                    torn.add("version à moitié appliquée : somme " + sum);
+                }
+            }
+        });
+        reader.start();
+        for (int round = 0; round < 20; round++) {
+            SheetEngine.Batch batch = engine.beginBatch();
+            for (int row = 0; row < rows; row++) {
+                batch.set(row, 0, round % 2 == 0 ? "1" : "0");
+            }
+            service.submit(batch);
+            service.awaitIdle();
+        }
+        done.set(true);
+        reader.join();
+        service.shutdown();
+        failures.addAll(torn);
+        expect("A1 après les lots", 0, engine.snapshot().getValue(0, 0));
+    }
+
+    /**
+     * Relève un écart entre le texte attendu et le texte obtenu.
+     *
+     * @param what     La valeur vérifiée.
+     * @param expected Le texte attendu.
+     * @param actual   Le texte obtenu.
+     */
+    private void expect(String what, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + " : attendu « " + expected + " », obtenu « " + actual + " »");
+        }
+    }
+
+    /**
+     * Relève un écart entre le statut attendu et le statut obtenu.
+     *
+     * @param what     La cellule vérifiée.
+     * @param expected Le statut attendu.
+     * @param actual   Le statut obtenu.
+     */
+    private void expect(String what, Status expected, Status actual) {
+        if (expected != actual) {
+            failures.add(what + " : attendu " + expected + ", obtenu " + actual);
+        }
+    }
+
+    /**
+     * Relève un écart entre la valeur attendue et la valeur obtenue.
+     *
+     * @param what     La valeur vérifiée.
+     * @param expected La valeur attendue.
+     * @param actual   La valeur obtenue.
+     */
+    private void expect(String what, double expected, double actual) {
+        if (expected != actual) {
+            failures.add(what + " : attendu " + expected + ", obtenu " + actual);
+        }
+    }
+}
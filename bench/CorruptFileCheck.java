@@ -0,0 +1,217 @@
+package bench;
+
+import src.model.SheetBinaryFormat;
+import src.model.SheetEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Vérification, sans JMH, du refus des fichiers de feuille corrompus par
+ * {@link SheetBinaryFormat#load(Path)} : un fichier intact se relit à
+ * l'identique, un fichier tronqué, un en-tête inconnu ou une plage plus large
+ * que la saisie ne le permet sont refusés par une {@link IOException}, et un
+ * fichier aux octets altérés au hasard est soit refusé de la même façon, soit
+ * chargé en un moteur qui se recalcule sans erreur. Aucune autre exception ne
+ * doit sortir du chargement.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class CorruptFileCheck {
+
+    /** Nombre de lignes de la feuille enregistrée. */
+    private static final int ROWS = 12;
+    /** Nombre de colonnes de la feuille enregistrée. */
+    private static final int COLUMNS = 6;
+    /** Nombre de fichiers aux octets altérés. */
+    private static final int MUTATIONS = 2000;
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+    /** Le fichier temporaire des vérifications. */
+    private final Path file;
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     *
+     * @throws IOException Si le fichier temporaire ne peut pas être créé.
+     */
+    private CorruptFileCheck() throws IOException {
+        file = Files.createTempFile("tableur-check", ".tblr");
+        file.toFile().deleteOnExit();
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     * @throws IOException Si le fichier temporaire ne peut pas être écrit.
+     */
+    public static void main(String[] args) throws IOException {
+        CorruptFileCheck check = new CorruptFileCheck();
+        SheetEngine engine = sheet();
+        SheetBinaryFormat.save(engine, check.file);
+        byte[] saved = Files.readAllBytes(check.file);
+        check.intact(engine);
+        check.truncated(saved);
+        check.header(saved);
+        check.wideRange(saved);
+        check.mutated(saved);
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Construit la feuille enregistrée : constantes, références, sommes de
+     * plages, sous-expressions partagées, formule incorrecte et cycle.
+     *
+     * @return Le moteur recalculé.
+     */
+    private static SheetEngine sheet() {
+        SheetEngine engine = new SheetEngine(ROWS, COLUMNS);
+        SheetEngine.Batch batch = engine.beginBatch();
+        for (int row = 0; row < ROWS; row++) {
+            batch.set(row, 0, Integer.toString(row * 3 + 1));
+            batch.set(row, 1, "* A" + (row + 1) + " 2.5");
+        }
+        batch.set(2, 2, "SUM A1:B2");
+        batch.set(3, 2, "+ * A1 B1 * A1 B1");
+        batch.set(4, 2, "MAX A1:B12");
+        batch.set(5, 2, "+ 1");
+        batch.set(6, 2, "+ C8 1").set(7, 2, "+ C7 1");
+        batch.commit();
+        return engine;
+    }
+
+    /**
+     * Vérifie qu'un fichier intact se relit avec les mêmes formules et les
+     * mêmes textes affichés.
+     *
+     * @param engine Le moteur enregistré.
+     * @throws IOException Si le fichier temporaire ne peut pas être lu.
+     */
+    private void intact(SheetEngine engine) throws IOException {
+        SheetEngine loaded = SheetBinaryFormat.load(file);
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                if (!engine.getFormula(row, column).equals(loaded.getFormula(row, column))
+                        || !engine.getText(row, column).equals(loaded.getText(row, column))) {
+                    failures.add("fichier intact : cellule (" + row + ", " + column + ") différente");
+                }
+            }
+        }
+    }
+
+    /**
+     * Vérifie que chaque troncature du fichier est refusée.
+     *
+     * @param saved Le contenu du fichier intact.
+     * @throws IOException Si le fichier temporaire ne peut pas être écrit.
+     */
+    private void truncated(byte[] saved) throws IOException {
+        for (int length = 0; length < saved.length; length++) {
+            byte[] bytes = new byte[length];
+            System.arraycopy(saved, 0, bytes, 0, length);
+            expectRefused("fichier tronqué à " + length + " octets", bytes);
+        }
+    }
+
+    /**
+     * Vérifie qu'un nombre magique ou une version inconnus sont refusés.
+     *
+     * @param saved Le contenu du fichier intact.
+     * @throws IOException Si le fichier temporaire ne peut pas être écrit.
+     */
+    private void header(byte[] saved) throws IOException {
+        byte[] magic = saved.clone();
+        magic[0] ^= 1;
+        expectRefused("nombre magique inconnu", magic);
+        for (int version : new int[] { 0, -1, SheetBinaryFormat.VERSION + 1 }) {
+            byte[] bytes = saved.clone();
+            ByteBuffer.wrap(bytes).putInt(Integer.BYTES, version);
+            expectRefused("version " + version, bytes);
+        }
+    }
+
+    /**
+     * Vérifie qu'une plage compilée plus large que
+     * {@code FormulaParser.MAX_RANGE_COLUMNS} est refusée. La plage de
+     * {@code SUM A1:B2} en C3 est rangée en coordonnées relatives
+     * (-2, -2, -1, -1) ; sa colonne de droite est repoussée au loin.
+     *
+     * @param saved Le contenu du fichier intact.
+     * @throws IOException Si le fichier temporaire ne peut pas être écrit.
+     */
+    private void wideRange(byte[] saved) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(saved.clone());
+        for (int offset = 0; offset + 4 * Integer.BYTES <= saved.length; offset++) {
+            if (buffer.getInt(offset) == -2 && buffer.getInt(offset + 4) == -2
+                    && buffer.getInt(offset + 8) == -1 && buffer.getInt(offset + 12) == -1) {
+                buffer.putInt(offset + 12, 5000);
+                expectRefused("plage trop large", buffer.array());
+                return;
+            }
+        }
+        failures.add("plage de SUM A1:B2 introuvable dans le fichier enregistré");
+    }
+
+    /**
+     * Vérifie que les fichiers aux octets altérés au hasard sont refusés, ou
+     * chargés en un moteur qui se recalcule entièrement sans erreur.
+     *
+     * @param saved Le contenu du fichier intact.
+     * @throws IOException Si le fichier temporaire ne peut pas être écrit.
+     */
+    private void mutated(byte[] saved) throws IOException {
+        Random random = new Random(15);
+        for (int mutation = 0; mutation < MUTATIONS; mutation++) {
+            byte[] bytes = saved.clone();
+            for (int k = 1 + random.nextInt(3); k > 0; k--) {
+                int position = 2 * Integer.BYTES + random.nextInt(bytes.length - 2 * Integer.BYTES);
+                bytes[position] = (byte) (random.nextInt(3) == 0 ? random.nextInt(256)
+                        : bytes[position] ^ (1 << random.nextInt(8)));
+            }
+            Files.write(file, bytes);
+            try {
+                SheetEngine loaded = SheetBinaryFormat.load(file);
+                List<Long> keys = new ArrayList<>();
+                loaded.forEachNonEmpty((row, column, formula, status, value) -> keys.add(loaded.keyOf(row, column)));
+                loaded.recalculate(keys);
+            } catch (IOException e) {
+                // Refus attendu d'un fichier corrompu.
+            } catch (RuntimeException e) {
+                failures.add("altération " + mutation + " : " + e);
+            }
+        }
+    }
+
+    /**
+     * Vérifie que le chargement d'un contenu est refusé par une
+     * {@link IOException}.
+     *
+     * @param what  Le contenu vérifié.
+     * @param bytes Le contenu du fichier.
+     * @throws IOException Si le fichier temporaire ne peut pas être écrit.
+     */
+    private void expectRefused(String what, byte[] bytes) throws IOException {
+        Files.write(file, bytes);
+        try {
+            SheetBinaryFormat.load(file);
+            failures.add(what + " : fichier accepté");
+        } catch (IOException e) {
+            // Refus attendu.
+        } catch (RuntimeException e) {
+            failures.add(what + " : " + e);
+        }
+    }
+}
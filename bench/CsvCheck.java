@@ -0,0 +1,230 @@
+package bench;
+
+import src.entity.Status;
+import src.model.CellReference;
+import src.model.SheetCsvFormat;
+import src.model.SheetEngine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Vérification, sans JMH, de l'import et de l'export CSV et TSV
+ * ({@link SheetCsvFormat}) : les formules exportées d'une feuille aléatoire,
+ * plus grande que les tampons de lecture et d'écriture et contenant des
+ * séparateurs, des guillemets et des caractères accentués, se relisent à
+ * l'identique ; l'export des valeurs est le même depuis le moteur et depuis
+ * une version publiée ; un fichier écrit à la main est lu champ par champ.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class CsvCheck {
+
+    /** Nombre de lignes de la feuille aléatoire. */
+    private static final int ROWS = 3000;
+    /** Nombre de colonnes de la feuille aléatoire. */
+    private static final int COLUMNS = 6;
+    /** Textes incorrects, exportés tels quels. */
+    private static final String[] TEXTS = { "+ 1, 2", "dit \"oui\"", "été", "a\tb", "x,\"y\",z" };
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     */
+    private CsvCheck() {
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     * @throws IOException Si un fichier temporaire ne peut pas être écrit ou
+     *                     lu.
+     */
+    public static void main(String[] args) throws IOException {
+        CsvCheck check = new CsvCheck();
+        SheetEngine engine = check.randomSheet();
+        check.roundTrip(engine, SheetCsvFormat.COMMA);
+        check.roundTrip(engine, SheetCsvFormat.TAB);
+        check.values(engine);
+        check.handWritten();
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Construit une feuille aléatoire de constantes, de références et de
+     * sommes de plages des lignes précédentes, de formules incorrectes et de
+     * cellules vides.
+     *
+     * @return Le moteur recalculé.
+     */
+    private SheetEngine randomSheet() {
+        Random random = new Random(16);
+        SheetEngine engine = new SheetEngine(ROWS, COLUMNS);
+        SheetEngine.Batch batch = engine.beginBatch();
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int top = Math.max(0, row - 1 - random.nextInt(40));
+                String other = CellReference.format(top, random.nextInt(COLUMNS));
+                String corner = CellReference.format(Math.min(row - 1, top + 20), COLUMNS - 1);
+                switch (row == 0 ? 5 : random.nextInt(6)) {
+                    case 0:
+                        break;
+                    case 1:
+                        batch.set(row, column, TEXTS[random.nextInt(TEXTS.length)]);
+                        break;
+                    case 2:
+                        batch.set(row, column, "+ " + other + " 0.5");
+                        break;
+                    case 3:
+                        batch.set(row, column, "SUM " + other + ":" + corner);
+                        break;
+                    default:
+                        batch.set(row, column, Double.toString(random.nextInt(100000) / 7.0));
+                }
+            }
+        }
+        batch.commit();
+        return engine;
+    }
+
+    /**
+     * Exporte les formules d'une feuille, depuis le moteur et depuis sa
+     * version publiée, puis vérifie que les deux fichiers sont identiques et
+     * qu'ils se relisent avec les mêmes formules, statuts et valeurs.
+     *
+     * @param engine    Le moteur exporté.
+     * @param delimiter Le séparateur des champs.
+     * @throws IOException Si un fichier temporaire ne peut pas être écrit ou
+     *                     lu.
+     */
+    private void roundTrip(SheetEngine engine, char delimiter) throws IOException {
+        String format = delimiter == SheetCsvFormat.TAB ? "TSV" : "CSV";
+        Path file = temporary(format);
+        Path copy = temporary(format);
+        SheetCsvFormat.write(engine, file, delimiter, true);
+        engine.enableSnapshots();
+        SheetCsvFormat.write(engine.snapshot(), copy, delimiter, true);
+        if (!Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(copy))) {
+            failures.add(format + " : l'export de la version diffère de celui du moteur");
+        }
+
+        SheetEngine read = new SheetEngine(ROWS, COLUMNS);
+        SheetCsvFormat.read(file, delimiter, read).commit();
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                String expected = engine.getFormula(row, column);
+                if (delimiter == SheetCsvFormat.TAB) {
+                    expected = expected.replace('\t', ' ');
+                }
+                String where = format + " " + CellReference.format(row, column);
+                expect(where, expected, read.getFormula(row, column));
+                if (expected.equals(engine.getFormula(row, column))) {
+                    expect(where + " (statut)", engine.getStatus(row, column).name(),
+                            read.getStatus(row, column).name());
+                    expect(where + " (valeur)", engine.getText(row, column), read.getText(row, column));
+                }
+            }
+        }
+    }
+
+    /**
+     * Vérifie l'export des valeurs : un champ par cellule calculable, "ERR"
+     * pour une cellule incorrecte, un champ vide sinon, et le même fichier
+     * depuis le moteur et depuis sa version publiée.
+     *
+     * @param engine Le moteur exporté.
+     * @throws IOException Si un fichier temporaire ne peut pas être écrit ou
+     *                     lu.
+     */
+    private void values(SheetEngine engine) throws IOException {
+        Path file = temporary("CSV");
+        Path copy = temporary("CSV");
+        SheetCsvFormat.write(engine, file, SheetCsvFormat.COMMA, false);
+        engine.enableSnapshots();
+        SheetCsvFormat.write(engine.snapshot(), copy, SheetCsvFormat.COMMA, false);
+        if (!Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(copy))) {
+            failures.add("valeurs : l'export de la version diffère de celui du moteur");
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int row = 0; row < lines.size(); row++) {
+            String[] fields = lines.get(row).split(",", -1);
+            for (int column = 0; column < COLUMNS; column++) {
+                Status status = engine.getStatus(row, column);
+                String expected = status == Status.CALCULABLE ? String.valueOf(engine.getValue(row, column))
+                        : status == Status.INCORRECT ? "ERR" : "";
+                String actual = column < fields.length ? fields[column] : "";
+                expect("valeurs " + CellReference.format(row, column), expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Vérifie la lecture d'un fichier CSV écrit à la main : champs entre
+     * guillemets avec guillemet doublé et saut de ligne, fins de ligne CRLF,
+     * ligne vide, blancs autour des champs, et champs hors de la feuille.
+     *
+     * @throws IOException Si un fichier temporaire ne peut pas être écrit ou
+     *                     lu.
+     */
+    private void handWritten() throws IOException {
+        Path file = temporary("CSV");
+        String text = "1,\"+ A1 2\",,\"x\"\"y\"\r\n\r\n , 3 ,\"a\nb\"\n,,,,9\n7";
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        SheetEngine engine = new SheetEngine(4, 4);
+        SheetCsvFormat.read(file, SheetCsvFormat.COMMA, engine).commit();
+        String[][] expected = {
+            { "1", "+ A1 2", "", "x\"y" },
+            { "", "", "", "" },
+            { "", "3", "a\nb", "" },
+            { "", "", "", "" },
+        };
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                expect("fichier écrit à la main " + CellReference.format(row, column), expected[row][column],
+                        engine.getFormula(row, column));
+            }
+        }
+        expect("B1 du fichier écrit à la main", "3.0", engine.getText(0, 1));
+    }
+
+    /**
+     * Crée un fichier temporaire, supprimé à la fin du programme.
+     *
+     * @param format Le format du fichier, pour son extension.
+     * @return Le chemin du fichier.
+     * @throws IOException Si le fichier ne peut pas être créé.
+     */
+    private static Path temporary(String format) throws IOException {
+        Path file = Files.createTempFile("tableur-check", "." + format.toLowerCase());
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Relève un écart entre le texte attendu et le texte obtenu.
+     *
+     * @param what     La cellule vérifiée.
+     * @param expected Le texte attendu.
+     * @param actual   Le texte obtenu.
+     */
+    private void expect(String what, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + " : attendu « " + expected + " », obtenu « " + actual + " »");
+        }
+    }
+}
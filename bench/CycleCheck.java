@@ -0,0 +1,161 @@
+package bench;
+
+import src.entity.Status;
+import src.model.CellReference;
+import src.model.SheetEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vérification, sans JMH, de la détection des références circulaires par le
+ * moteur : les cellules d'un cycle sont incorrectes et celles qui en dépendent
+ * incalculables ; elles redeviennent calculables dès que le cycle est rompu,
+ * qu'il passe par une seule cellule, par une longue chaîne ou par une cellule
+ * partagée avec un autre cycle.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class CycleCheck {
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+    /** Le moteur vérifié. */
+    private final SheetEngine engine = new SheetEngine(200, 20);
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     */
+    private CycleCheck() {
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     */
+    public static void main(String[] args) {
+        CycleCheck check = new CycleCheck();
+        check.selfReference();
+        check.twoCells();
+        check.longChain();
+        check.sharedCell();
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Vérifie qu'une cellule qui se référence elle-même est incorrecte, et
+     * qu'elle redevient vide une fois sa formule effacée.
+     */
+    private void selfReference() {
+        set("A1", "+ A1 1");
+        expect("A1", Status.INCORRECT);
+        set("A1", "");
+        expect("A1", Status.EMPTY);
+    }
+
+    /**
+     * Vérifie qu'un cycle de deux cellules rend incorrectes ses cellules et
+     * incalculables leurs dépendants, puis que la rupture du cycle les
+     * recalcule.
+     */
+    private void twoCells() {
+        set("C1", "+ D1 1");
+        set("E1", "* C1 2");
+        set("D1", "+ C1 1");
+        expect("C1", Status.INCORRECT);
+        expect("D1", Status.INCORRECT);
+        expect("E1", Status.UNCALCULABLE);
+        set("D1", "5");
+        expect("C1", 6);
+        expect("D1", 5);
+        expect("E1", 12);
+    }
+
+    /**
+     * Vérifie qu'une chaîne de cinquante cellules refermée sur elle-même est
+     * entièrement incorrecte, et entièrement recalculée une fois coupée en
+     * son milieu.
+     */
+    private void longChain() {
+        for (int row = 1; row < 50; row++) {
+            set(CellReference.format(row, 5), "+ " + CellReference.format(row - 1, 5) + " 1");
+        }
+        set("F1", "+ F50 1");
+        for (int row = 0; row < 50; row++) {
+            expect(CellReference.format(row, 5), Status.INCORRECT);
+        }
+        set("F25", "0");
+        expect("F1", 26);
+        expect("F24", 49);
+        expect("F25", 0);
+        expect("F50", 25);
+    }
+
+    /**
+     * Vérifie que la rupture d'un cycle laisse incorrectes les cellules
+     * d'un autre cycle qui partage l'une de ses cellules.
+     */
+    private void sharedCell() {
+        set("H1", "+ H2 1");
+        set("H3", "+ H2 1");
+        set("H2", "+ H1 H3");
+        expect("H1", Status.INCORRECT);
+        expect("H3", Status.INCORRECT);
+        set("H1", "1");
+        expect("H2", Status.INCORRECT);
+        expect("H3", Status.INCORRECT);
+        set("H3", "2");
+        expect("H2", 3);
+        set("H2", "");
+        expect("H2", Status.EMPTY);
+    }
+
+    /**
+     * Remplace la formule d'une cellule puis recalcule la feuille.
+     *
+     * @param reference La référence A1 de la cellule.
+     * @param formula   La nouvelle formule.
+     */
+    private void set(String reference, String formula) {
+        long key = CellReference.parse(reference);
+        engine.setFormula(CellReference.row(key), CellReference.column(key), formula);
+        engine.recalculate(CellReference.row(key), CellReference.column(key));
+    }
+
+    /**
+     * Relève un écart entre le statut attendu d'une cellule et son statut.
+     *
+     * @param reference La référence A1 de la cellule.
+     * @param expected  Le statut attendu.
+     */
+    private void expect(String reference, Status expected) {
+        long key = CellReference.parse(reference);
+        Status actual = engine.getStatus(CellReference.row(key), CellReference.column(key));
+        if (actual != expected) {
+            failures.add(reference + " : statut attendu " + expected + ", obtenu " + actual);
+        }
+    }
+
+    /**
+     * Relève un écart entre la valeur attendue d'une cellule calculable et
+     * sa valeur.
+     *
+     * @param reference La référence A1 de la cellule.
+     * @param expected  La valeur attendue.
+     */
+    private void expect(String reference, double expected) {
+        expect(reference, Status.CALCULABLE);
+        long key = CellReference.parse(reference);
+        double actual = engine.getValue(CellReference.row(key), CellReference.column(key));
+        if (actual != expected) {
+            failures.add(reference + " : valeur attendue " + expected + ", obtenue " + actual);
+        }
+    }
+}
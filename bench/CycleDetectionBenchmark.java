@@ -0,0 +1,90 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import src.model.DependencyGraph;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Banc d'essai de la détection des cycles par {@link DependencyGraph}.
+ * {@link #build()} insère toutes les cellules d'une feuille dans un graphe
+ * vide, chaque insertion vérifiant qu'elle ne ferme pas de cycle ;
+ * {@link #rejectCycle()} fait lire à A1 la dernière cellule d'un graphe
+ * complet, ce qui ferme un cycle à travers toute la feuille, puis annule la
+ * modification.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleDetectionBenchmark {
+
+    /** La forme de la feuille. */
+    @Param({ "chain", "fanout", "diamond", "random" })
+    public String shape;
+
+    /** Le nombre de cellules de la feuille. */
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    /** Les clés des cellules. */
+    private List<Long> keys;
+    /** Les antécédents de chaque cellule. */
+    private List<List<Long>> precedents;
+    /** Le graphe complet de la feuille. */
+    private DependencyGraph<Long> graph;
+
+    /**
+     * Génère la feuille et construit son graphe complet.
+     */
+    @Setup
+    public void setUp() {
+        SheetGenerator sheet = new SheetGenerator(shape, size);
+        keys = sheet.keys();
+        precedents = sheet.precedents();
+        graph = build();
+    }
+
+    /**
+     * Construit le graphe de dépendances de la feuille.
+     *
+     * @return Le graphe construit.
+     */
+    @Benchmark
+    public DependencyGraph<Long> build() {
+        DependencyGraph<Long> built = new DependencyGraph<>();
+        for (int k = 0; k < keys.size(); k++) {
+            built.setPrecedents(keys.get(k), precedents.get(k));
+        }
+        return built;
+    }
+
+    /**
+     * Tente de fermer un cycle passant par toute la feuille, puis rétablit
+     * A1.
+     *
+     * @return true si la formule fermant le cycle a été rejetée.
+     */
+    @Benchmark
+    public boolean rejectCycle() {
+        Long first = keys.get(0);
+        boolean accepted = graph.setPrecedents(first, Collections.singletonList(keys.get(keys.size() - 1)));
+        graph.setPrecedents(first, Collections.emptyList());
+        graph.takeCycleChanges();
+        return !accepted;
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import src.entity.CompiledFormula;
+import src.exception.IncorrectFormulaException;
+import src.exception.UncalculableFormulaException;
+import src.model.SheetEngine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Banc d'essai de l'évaluation : les formules sont déjà analysées et placées
+ * dans un moteur. {@link #evaluate()} mesure l'évaluation seule des formules
+ * compilées, sur les valeurs courantes du moteur ; {@link #recalculate()}
+ * mesure un recalcul complet de la feuille (ordre topologique, évaluation et
+ * mise à jour des résultats).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+
+    /** La forme de la feuille. */
+    @Param({ "chain", "fanout", "diamond", "random" })
+    public String shape;
+
+    /** Le nombre de cellules de la feuille. */
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    /** Le moteur contenant la feuille calculée. */
+    private SheetEngine engine;
+    /** Les clés de toutes les cellules de la feuille. */
+    private List<Long> keys;
+    /** Les formules compilées des cellules, aux références relatives. */
+    private CompiledFormula[] compiled;
+    /** Les lignes des cellules, par rang dans compiled. */
+    private int[] rows;
+    /** Les colonnes des cellules, par rang dans compiled. */
+    private int[] columns;
+
+    /**
+     * Construit et calcule la feuille, puis relève les formules compilées.
+     *
+     * @throws IncorrectFormulaException Si une formule générée est incorrecte.
+     */
+    @Setup
+    public void setUp() throws IncorrectFormulaException {
+        engine = new SheetEngine();
+        keys = new SheetGenerator(shape, size).fill(engine);
+        engine.recalculate(keys);
+        int[] formulas = new int[engine.size()];
+        rows = new int[engine.size()];
+        columns = new int[engine.size()];
+        int[] count = new int[1];
+        engine.forEachNonEmpty((row, column, formula, status, value) -> {
+            rows[count[0]] = row;
+            columns[count[0]] = column;
+            formulas[count[0]++] = formula;
+        });
+        compiled = new CompiledFormula[count[0]];
+        for (int k = 0; k < compiled.length; k++) {
+            compiled[k] = engine.getFormulaPool().compiled(formulas[k]);
+        }
+    }
+
+    /**
+     * Évalue toutes les formules compilées de la feuille.
+     *
+     * @return La somme des valeurs obtenues.
+     * @throws UncalculableFormulaException Si une formule n'est pas calculable.
+     */
+    @Benchmark
+    public double evaluate() throws UncalculableFormulaException {
+        double sum = 0;
+        for (int k = 0; k < compiled.length; k++) {
+            sum += compiled[k].evaluate(engine, rows[k], columns[k]);
+        }
+        return sum;
+    }
+
+    /**
+     * Recalcule toute la feuille.
+     *
+     * @return Les clés des cellules recalculées.
+     */
+    @Benchmark
+    public long[] recalculate() {
+        return engine.recalculate(keys);
+    }
+}
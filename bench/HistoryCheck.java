@@ -0,0 +1,212 @@
+package bench;
+
+import src.model.CellReference;
+import src.model.SheetEngine;
+import src.model.SheetHistory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Vérification, sans JMH, de l'historique d'une feuille
+ * ({@link SheetHistory}) : annuler puis rétablir des modifications
+ * aléatoires retrouve exactement les formules, statuts et valeurs de chaque
+ * état intermédiaire, une nouvelle modification efface les modifications à
+ * refaire, la limite d'annulation est respectée, et la restauration d'un
+ * instantané nommé s'annule comme une modification.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class HistoryCheck {
+
+    /** Nombre de lignes et de colonnes de la feuille. */
+    private static final int SIZE = 8;
+    /** Nombre de modifications aléatoires. */
+    private static final int EDITS = 60;
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+    /** Le générateur des modifications, à graine fixe. */
+    private final Random random = new Random(23);
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     */
+    private HistoryCheck() {
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     */
+    public static void main(String[] args) {
+        HistoryCheck check = new HistoryCheck();
+        check.undoRedo();
+        check.limit();
+        check.snapshots();
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Vérifie que chaque annulation retrouve l'état précédent, que chaque
+     * rétablissement retrouve l'état suivant, et qu'une modification après
+     * une annulation efface les modifications à refaire.
+     */
+    private void undoRedo() {
+        SheetEngine engine = new SheetEngine(SIZE, SIZE);
+        SheetHistory history = new SheetHistory(engine, EDITS);
+        List<String> states = new ArrayList<>();
+        states.add(dump(engine));
+        for (int edit = 0; edit < EDITS; edit++) {
+            randomEdit(engine);
+            states.add(dump(engine));
+        }
+        for (int k = EDITS - 1; k >= 0; k--) {
+            expect("annulation vers l'état " + k, true, history.undo());
+            expect("état " + k + " après annulation", states.get(k), dump(engine));
+        }
+        expect("annulation au-delà du premier état", false, history.undo());
+        for (int k = 1; k <= EDITS / 2; k++) {
+            expect("rétablissement vers l'état " + k, true, history.redo());
+            expect("état " + k + " après rétablissement", states.get(k), dump(engine));
+        }
+        randomEdit(engine);
+        expect("rétablissement après une modification", false, history.canRedo());
+        expect("annulation de la modification", true, history.undo());
+        expect("état après annulation de la modification", states.get(EDITS / 2), dump(engine));
+    }
+
+    /**
+     * Vérifie que seules les dernières modifications, dans la limite fixée,
+     * peuvent être annulées.
+     */
+    private void limit() {
+        SheetEngine engine = new SheetEngine(SIZE, SIZE);
+        SheetHistory history = new SheetHistory(engine, 5);
+        List<String> states = new ArrayList<>();
+        states.add(dump(engine));
+        for (int edit = 0; edit < 12; edit++) {
+            randomEdit(engine);
+            states.add(dump(engine));
+        }
+        int undone = 0;
+        while (history.undo()) {
+            undone++;
+        }
+        expect("nombre d'annulations", Integer.toString(5), Integer.toString(undone));
+        expect("état le plus ancien conservé", states.get(12 - 5), dump(engine));
+    }
+
+    /**
+     * Vérifie la restauration des instantanés nommés, son annulation, et
+     * l'ordre de leurs noms.
+     */
+    private void snapshots() {
+        SheetEngine engine = new SheetEngine(SIZE, SIZE);
+        SheetHistory history = new SheetHistory(engine);
+        for (int edit = 0; edit < 10; edit++) {
+            randomEdit(engine);
+        }
+        String base = dump(engine);
+        history.snapshot("base");
+        for (int edit = 0; edit < 10; edit++) {
+            randomEdit(engine);
+        }
+        String modified = dump(engine);
+        history.snapshot("après");
+        expect("noms des instantanés", "[après, base]", history.getSnapshotNames().toString());
+        expect("restauration de base", true, history.restore("base"));
+        expect("état restauré", base, dump(engine));
+        expect("restauration d'un instantané inconnu", false, history.restore("inconnu"));
+        expect("annulation de la restauration", true, history.undo());
+        expect("état avant la restauration", modified, dump(engine));
+        expect("restauration de après", true, history.restore("après"));
+        expect("état restauré sans modification", modified, dump(engine));
+    }
+
+    /**
+     * Remplace la formule d'une cellule aléatoire par une constante, une
+     * référence, une somme de plage ou une formule vide, différente de la
+     * formule actuelle, puis recalcule.
+     *
+     * @param engine Le moteur modifié.
+     */
+    private void randomEdit(SheetEngine engine) {
+        int row;
+        int column;
+        String formula;
+        do {
+            row = random.nextInt(SIZE);
+            column = random.nextInt(SIZE);
+            String other = CellReference.format(random.nextInt(SIZE), random.nextInt(SIZE));
+            switch (random.nextInt(4)) {
+                case 0:
+                    formula = "";
+                    break;
+                case 1:
+                    formula = "+ " + other + " " + random.nextInt(10);
+                    break;
+                case 2:
+                    formula = "SUM A1:" + other;
+                    break;
+                default:
+                    formula = Integer.toString(random.nextInt(100));
+            }
+        } while (formula.equals(engine.getFormula(row, column)));
+        engine.setFormula(row, column, formula);
+        engine.recalculate(row, column);
+    }
+
+    /**
+     * Décrit la formule, le statut et le texte affiché de chaque cellule.
+     *
+     * @param engine Le moteur.
+     * @return La description de la feuille.
+     */
+    private static String dump(SheetEngine engine) {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                text.append(CellReference.format(row, column)).append('=').append(engine.getFormula(row, column))
+                        .append('|').append(engine.getStatus(row, column)).append('|')
+                        .append(engine.getText(row, column)).append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Relève un écart entre le résultat attendu d'une opération et son
+     * résultat.
+     *
+     * @param what     L'opération vérifiée.
+     * @param expected Le résultat attendu.
+     * @param actual   Le résultat obtenu.
+     */
+    private void expect(String what, boolean expected, boolean actual) {
+        if (actual != expected) {
+            failures.add(what + " : attendu " + expected + ", obtenu " + actual);
+        }
+    }
+
+    /**
+     * Relève un écart entre l'état attendu et l'état obtenu.
+     *
+     * @param what     L'état vérifié.
+     * @param expected L'état attendu.
+     * @param actual   L'état obtenu.
+     */
+    private void expect(String what, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + " : attendu « " + expected + " », obtenu « " + actual + " »");
+        }
+    }
+}
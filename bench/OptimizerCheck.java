@@ -0,0 +1,289 @@
+package bench;
+
+import src.entity.CompiledFormula;
+import src.exception.IncorrectFormulaException;
+import src.exception.UncalculableFormulaException;
+import src.model.FormulaOptimizer;
+import src.model.FormulaParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Vérification, sans JMH, de la passe d'optimisation des formules
+ * ({@link FormulaOptimizer}) : pour des formules aléatoires riches en
+ * sous-expressions répétées, en constantes et en identités, la formule
+ * optimisée donne le même résultat au bit près que la formule analysée et que
+ * son arbre syntaxique ({@link FormulaParser#parseTree(String, int, int)}),
+ * ou échoue comme eux. Quelques formules vérifient en outre le pliage des
+ * constantes, le partage des sous-expressions et les simplifications
+ * refusées.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class OptimizerCheck {
+
+    /** Nombre de lignes et de colonnes de la grille de valeurs. */
+    private static final int SIZE = 6;
+    /** Nombre de formules aléatoires. */
+    private static final int FORMULAS = 20000;
+    /** Les constantes tirées, dont les éléments neutres et -0. */
+    private static final String[] CONSTANTS = { "0", "-0", "1", "2", "0.5", "-3", "100000000000000000000" };
+    /** Les valeurs des cellules calculables, dont les infinis et NaN. */
+    private static final double[] VALUES = { 0.0, -0.0, 1, 2.5, -3, 1e308, Double.NaN, Double.NEGATIVE_INFINITY };
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+    /** Le générateur des formules et de la grille, à graine fixe. */
+    private final Random random = new Random(20);
+    /** Les valeurs de la grille ; null pour une cellule non calculable. */
+    private final Double[][] grid = new Double[SIZE][SIZE];
+    /** La source des valeurs et des agrégats de la grille. */
+    private final CompiledFormula.ValueSource source = new CompiledFormula.ValueSource() {
+        @Override
+        public double valueAt(int row, int column) throws UncalculableFormulaException {
+            return OptimizerCheck.this.valueAt(row, column);
+        }
+
+        @Override
+        public double aggregate(int function, int top, int left, int bottom, int right)
+                throws UncalculableFormulaException {
+            return OptimizerCheck.this.aggregate(function, top, left, bottom, right);
+        }
+    };
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     */
+    private OptimizerCheck() {
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                grid[row][column] = random.nextInt(8) == 0 ? null : VALUES[random.nextInt(VALUES.length)];
+            }
+        }
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     * @throws IncorrectFormulaException Si une formule générée est incorrecte.
+     */
+    public static void main(String[] args) throws IncorrectFormulaException {
+        OptimizerCheck check = new OptimizerCheck();
+        check.randomFormulas();
+        check.rewrites();
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Compare, pour des formules aléatoires, la formule optimisée à la
+     * formule analysée et à l'arbre syntaxique.
+     *
+     * @throws IncorrectFormulaException Si une formule générée est incorrecte.
+     */
+    private void randomFormulas() throws IncorrectFormulaException {
+        for (int k = 0; k < FORMULAS && failures.size() < 10; k++) {
+            String formula = expression(4);
+            CompiledFormula parsed = FormulaParser.parse(formula);
+            String expected = result(parsed);
+            expect(formula + " (optimisée)", expected, result(FormulaOptimizer.optimize(parsed)));
+            String tree;
+            try {
+                tree = describe(FormulaParser.parseTree(formula, 0, 0).evaluate(source, 0, 0));
+            } catch (UncalculableFormulaException e) {
+                tree = "incalculable";
+            }
+            expect(formula + " (arbre)", expected, tree);
+        }
+    }
+
+    /**
+     * Vérifie quelques réécritures attendues, et celles qui ne doivent pas
+     * avoir lieu.
+     *
+     * @throws IncorrectFormulaException Si une formule vérifiée est incorrecte.
+     */
+    private void rewrites() throws IncorrectFormulaException {
+        CompiledFormula folded = FormulaOptimizer.optimize(FormulaParser.parse("+ * 2 3 / 8 2"));
+        expect("+ * 2 3 / 8 2 : instructions", "0", opcodes(folded));
+        expect("+ * 2 3 / 8 2 : valeur", describe(10), result(folded));
+
+        CompiledFormula shared = FormulaOptimizer.optimize(FormulaParser.parse("+ * A1 B1 * A1 B1"));
+        expect("+ * A1 B1 * A1 B1 : instructions", "1 1 4 10 10 2", opcodes(shared));
+
+        CompiledFormula identity = FormulaOptimizer.optimize(FormulaParser.parse("- * A1 1 0"));
+        expect("- * A1 1 0 : instructions", "1", opcodes(identity));
+
+        CompiledFormula zero = FormulaOptimizer.optimize(FormulaParser.parse("* A1 0"));
+        expect("* A1 0 : instructions", "0 1 4", opcodes(zero));
+
+        CompiledFormula plusZero = FormulaOptimizer.optimize(FormulaParser.parse("+ A1 0"));
+        expect("+ A1 0 : instructions", "0 1 2", opcodes(plusZero));
+
+        CompiledFormula division = FormulaOptimizer.optimize(FormulaParser.parse("/ 1 0"));
+        expect("/ 1 0 : valeur", "incalculable", result(division));
+    }
+
+    /**
+     * Tire une expression préfixée aléatoire.
+     *
+     * @param depth La profondeur maximale de l'expression.
+     * @return L'expression.
+     */
+    private String expression(int depth) {
+        switch (random.nextInt(depth <= 0 ? 3 : 10)) {
+            case 0:
+                return CONSTANTS[random.nextInt(CONSTANTS.length)];
+            case 1:
+                return reference();
+            case 2:
+                return new String[] { "SUM ", "AVG ", "MIN ", "MAX " }[random.nextInt(4)] + reference() + ":"
+                        + reference();
+            case 3: {
+                String shared = expression(depth - 1);
+                return operator() + " " + shared + " " + shared;
+            }
+            case 4: {
+                String shared = expression(depth - 1);
+                return operator() + " " + operator() + " " + shared + " " + expression(depth - 1) + " " + shared;
+            }
+            case 5:
+                return operator() + " " + expression(depth - 1) + " " + CONSTANTS[random.nextInt(3)];
+            default:
+                return operator() + " " + expression(depth - 1) + " " + expression(depth - 1);
+        }
+    }
+
+    /**
+     * Tire un opérateur.
+     *
+     * @return Le symbole de l'opérateur.
+     */
+    private String operator() {
+        return Character.toString("+-*/".charAt(random.nextInt(4)));
+    }
+
+    /**
+     * Tire une référence de la grille.
+     *
+     * @return La référence A1.
+     */
+    private String reference() {
+        return (char) ('A' + random.nextInt(SIZE)) + Integer.toString(1 + random.nextInt(SIZE));
+    }
+
+    /**
+     * Évalue une formule compilée sur la grille.
+     *
+     * @param formula La formule compilée, aux références absolues.
+     * @return La description de son résultat.
+     */
+    private String result(CompiledFormula formula) {
+        try {
+            return describe(formula.evaluate(source, 0, 0));
+        } catch (UncalculableFormulaException e) {
+            return "incalculable";
+        }
+    }
+
+    /**
+     * Renvoie la valeur d'une cellule de la grille.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La valeur de la cellule.
+     * @throws UncalculableFormulaException Si la cellule n'est pas calculable.
+     */
+    private double valueAt(int row, int column) throws UncalculableFormulaException {
+        Double value = grid[row][column];
+        if (value == null) {
+            throw new UncalculableFormulaException("The referenced cell has no calculable value.");
+        }
+        return value;
+    }
+
+    /**
+     * Calcule l'agrégat d'une plage de la grille.
+     *
+     * @param function La fonction d'agrégation.
+     * @param top      La première ligne.
+     * @param left     La première colonne.
+     * @param bottom   La dernière ligne.
+     * @param right    La dernière colonne.
+     * @return L'agrégat.
+     * @throws UncalculableFormulaException Si une cellule de la plage n'est
+     *                                      pas calculable.
+     */
+    private double aggregate(int function, int top, int left, int bottom, int right)
+            throws UncalculableFormulaException {
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                double value = valueAt(row, column);
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                count++;
+            }
+        }
+        switch (function) {
+            case CompiledFormula.SUM:
+                return sum;
+            case CompiledFormula.AVERAGE:
+                return sum / count;
+            case CompiledFormula.MIN:
+                return min;
+            default:
+                return max;
+        }
+    }
+
+    /**
+     * Décrit une valeur au bit près, pour distinguer 0 de -0.
+     *
+     * @param value La valeur.
+     * @return Sa description.
+     */
+    private static String describe(double value) {
+        return value + " (" + Long.toHexString(Double.doubleToLongBits(value)) + ")";
+    }
+
+    /**
+     * Renvoie les codes d'opération d'une formule compilée, séparés par des
+     * espaces.
+     *
+     * @param formula La formule compilée.
+     * @return Ses codes d'opération.
+     */
+    private static String opcodes(CompiledFormula formula) {
+        StringBuilder text = new StringBuilder();
+        for (int instruction : formula.getCode()) {
+            text.append(text.length() == 0 ? "" : " ").append(CompiledFormula.opcode(instruction));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Relève un écart entre le résultat attendu et le résultat obtenu.
+     *
+     * @param what     La formule vérifiée.
+     * @param expected Le résultat attendu.
+     * @param actual   Le résultat obtenu.
+     */
+    private void expect(String what, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + " : attendu « " + expected + " », obtenu « " + actual + " »");
+        }
+    }
+}
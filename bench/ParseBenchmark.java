@@ -0,0 +1,64 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import src.exception.IncorrectFormulaException;
+import src.model.FormulaParser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Banc d'essai de l'analyse seule : chaque opération compile toutes les
+ * formules d'une feuille avec {@link FormulaParser#parse(String)}, sans moteur
+ * ni graphe de dépendances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    /** La forme de la feuille. */
+    @Param({ "chain", "fanout", "diamond", "random" })
+    public String shape;
+
+    /** Le nombre de cellules de la feuille. */
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    /** Les formules à analyser. */
+    private String[] formulas;
+
+    /**
+     * Génère les formules de la feuille.
+     */
+    @Setup
+    public void setUp() {
+        formulas = new SheetGenerator(shape, size).getFormulas();
+    }
+
+    /**
+     * Analyse toutes les formules de la feuille.
+     *
+     * @param blackhole Le puits qui consomme les formules compilées.
+     * @throws IncorrectFormulaException Si une formule générée est incorrecte.
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IncorrectFormulaException {
+        for (String formula : formulas) {
+            blackhole.consume(FormulaParser.parse(formula));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.model.SheetEngine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Banc d'essai d'une modification suivie de sa propagation : chaque opération
+ * change la constante de A1, dont dépend toute la feuille, avec
+ * {@link SheetEngine#setFormula(int, int, String)}, puis recalcule A1 et
+ * toutes les cellules qui en dépendent. Le recalcul est mesuré en séquentiel
+ * et sur un {@link ForkJoinPool}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropagationBenchmark {
+
+    /** La forme de la feuille. */
+    @Param({ "chain", "fanout", "diamond", "random" })
+    public String shape;
+
+    /** Le nombre de cellules de la feuille. */
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    /** true pour recalculer sur un {@link ForkJoinPool}. */
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    /** Le moteur contenant la feuille calculée. */
+    private SheetEngine engine;
+    /** Le compteur des modifications, pour changer la valeur de A1. */
+    private long edits;
+
+    /**
+     * Construit et calcule la feuille.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SheetEngine();
+        if (parallel) {
+            engine.setPool(new ForkJoinPool());
+        }
+        engine.recalculate(new SheetGenerator(shape, size).fill(engine));
+    }
+
+    /**
+     * Arrête le pool du recalcul parallèle.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (engine.getPool() != null) {
+            engine.getPool().shutdown();
+        }
+    }
+
+    /**
+     * Modifie A1 puis propage la modification.
+     *
+     * @return Les clés des cellules recalculées.
+     */
+    @Benchmark
+    public long[] editThenPropagate() {
+        engine.setFormula(0, 0, Long.toString(++edits % 1000));
+        return engine.recalculate(0, 0);
+    }
+}
@@ -0,0 +1,143 @@
+package bench;
+
+import src.model.CellReference;
+import src.model.FormulaParser;
+import src.model.SheetEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vérification, sans JMH, des conversions de références qui doivent se
+ * restituer à l'identique : une référence écrite par
+ * {@link CellReference#format(int, int)} se relit à la même position, une
+ * référence trop longue pour être suivie est plafonnée à
+ * {@link CellReference#COORDINATE_LIMIT} sans jamais déborder, et le texte
+ * d'une formule, même avec de telles références, est restitué tel quel par sa
+ * forme relative ({@link FormulaParser#toRelative(String, int, int)}) et par
+ * le moteur.
+ * <p>
+ * Usage : {@code make check} ; le programme se termine avec le code 1 et la
+ * liste des écarts si une vérification échoue.
+ * </p>
+ */
+public class RoundTripCheck {
+
+    /** Les écarts relevés. */
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * Constructeur privé : la vérification est lancée par {@link #main(String[])}.
+     */
+    private RoundTripCheck() {
+    }
+
+    /**
+     * Lance toutes les vérifications.
+     *
+     * @param args Ignorés.
+     */
+    public static void main(String[] args) {
+        RoundTripCheck check = new RoundTripCheck();
+        check.references();
+        check.longReferences();
+        check.formulas();
+        if (!check.failures.isEmpty()) {
+            check.failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Vérifications réussies.");
+    }
+
+    /**
+     * Vérifie que les références des positions suivies se relisent à
+     * l'identique, y compris aux bords de la plage des coordonnées.
+     */
+    private void references() {
+        int last = CellReference.COORDINATE_LIMIT - 2;
+        int[] coordinates = { 0, 1, 25, 26, 701, 702, 16383, 1048575, last };
+        for (int row : coordinates) {
+            for (int column : coordinates) {
+                String reference = CellReference.format(row, column);
+                long key = CellReference.parse(reference);
+                expect(reference, CellReference.pack(row, column), key);
+                expect(reference + " (minuscules)", key, CellReference.parse(reference.toLowerCase()));
+            }
+        }
+    }
+
+    /**
+     * Vérifie que les références trop longues sont plafonnées, quel que soit
+     * le nombre de lettres ou de chiffres au-delà du plafond.
+     */
+    private void longReferences() {
+        int saturated = CellReference.COORDINATE_LIMIT - 1;
+        for (int length = 9; length <= 40; length++) {
+            String letters = "Z".repeat(length);
+            String digits = "9".repeat(length);
+            expect(letters + "1", CellReference.pack(0, saturated), CellReference.parse(letters + "1"));
+            expect("A" + digits, CellReference.pack(saturated, 0), CellReference.parse("A" + digits));
+            expect(letters + digits, CellReference.pack(saturated, saturated),
+                    CellReference.parse(letters + digits));
+        }
+    }
+
+    /**
+     * Vérifie que des formules aux références courtes, longues ou hors de la
+     * plage suivie sont restituées telles quelles depuis leur forme relative,
+     * en plusieurs cellules, puis par le moteur.
+     */
+    private void formulas() {
+        String[] formulas = {
+            "+ A1 1", "SUM A1:C10", "* XFD1048576 2", "+ A9999999999 1", "+ ZZZZZZZ1 1",
+            "+ ZZZZZZZZZZZZ1 A1", "+ A" + "9".repeat(30) + " B2", "- A268435456 1", "+ A268435455 1"
+        };
+        int[][] cells = { { 0, 0 }, { 5, 3 }, { 1048575, 16383 } };
+        SheetEngine engine = new SheetEngine();
+        for (String formula : formulas) {
+            for (int[] cell : cells) {
+                String relative = FormulaParser.toRelative(formula, cell[0], cell[1]);
+                expect(formula + " en " + CellReference.format(cell[0], cell[1]), formula,
+                        FormulaParser.toAbsolute(relative, cell[0], cell[1]));
+            }
+            engine.setFormula(0, 0, formula);
+            expect(formula + " (moteur)", formula, engine.getFormula(0, 0));
+        }
+    }
+
+    /**
+     * Relève un écart entre le texte attendu et le texte obtenu.
+     *
+     * @param what     La formule vérifiée.
+     * @param expected Le texte attendu.
+     * @param actual   Le texte obtenu.
+     */
+    private void expect(String what, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + " : attendu « " + expected + " », obtenu « " + actual + " »");
+        }
+    }
+
+    /**
+     * Relève un écart entre la clé attendue et la clé obtenue.
+     *
+     * @param what     La référence vérifiée.
+     * @param expected La clé attendue.
+     * @param actual   La clé obtenue.
+     */
+    private void expect(String what, long expected, long actual) {
+        if (expected != actual) {
+            failures.add(what + " : attendu " + describe(expected) + ", obtenu " + describe(actual));
+        }
+    }
+
+    /**
+     * Décrit une clé de cellule.
+     *
+     * @param key La clé.
+     * @return La ligne et la colonne de la clé.
+     */
+    private static String describe(long key) {
+        return "(" + CellReference.row(key) + ", " + CellReference.column(key) + ")";
+    }
+}
@@ -0,0 +1,234 @@
+package bench;
+
+import src.model.CellReference;
+import src.model.SheetEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Générateur des feuilles utilisées par les bancs d'essai.
+ * Chaque forme de feuille exerce le moteur d'une manière différente :
+ * <ul>
+ * <li>{@code chain} : une longue chaîne, chaque cellule dépendant de la
+ * précédente (profondeur maximale, aucun parallélisme) ;</li>
+ * <li>{@code fanout} : une cellule source lue par toutes les autres (un seul
+ * niveau très large) ;</li>
+ * <li>{@code diamond} : une suite de losanges, chaque sommet alimentant deux
+ * cellules qui se rejoignent dans le sommet suivant ;</li>
+ * <li>{@code random} : un graphe acyclique aléatoire dont chaque cellule lit
+ * une ou deux cellules antérieures, à graine fixe.</li>
+ * </ul>
+ * Dans toutes les formes, la cellule A1 est une constante dont dépendent,
+ * directement ou non, les autres cellules : la modifier propage un recalcul.
+ */
+public class SheetGenerator {
+
+    /** Les formes de feuilles connues, dans l'ordre des paramètres JMH. */
+    public static final String[] SHAPES = { "chain", "fanout", "diamond", "random" };
+
+    /** Graine des feuilles aléatoires, pour des mesures reproductibles. */
+    private static final long SEED = 42L;
+
+    /** Nombre de colonnes d'une feuille en éventail. */
+    private static final int FAN_OUT_COLUMNS = 100;
+
+    /** Les lignes des cellules. */
+    private final int[] rows;
+    /** Les colonnes des cellules. */
+    private final int[] columns;
+    /** Les formules des cellules. */
+    private final String[] formulas;
+
+    /**
+     * Construit une feuille de la forme et de la taille données.
+     *
+     * @param shape La forme de la feuille, parmi {@link #SHAPES}.
+     * @param size  Le nombre approximatif de cellules.
+     * @throws IllegalArgumentException Si la forme est inconnue.
+     */
+    public SheetGenerator(String shape, int size) {
+        this.rows = new int[size];
+        this.columns = new int[size];
+        this.formulas = new String[size];
+        switch (shape) {
+            case "chain":
+                chain();
+                break;
+            case "fanout":
+                fanOut();
+                break;
+            case "diamond":
+                diamond();
+                break;
+            case "random":
+                random();
+                break;
+            default:
+                throw new IllegalArgumentException("Forme de feuille inconnue : " + shape);
+        }
+    }
+
+    /**
+     * Renvoie le nombre de cellules de la feuille.
+     *
+     * @return Le nombre de cellules.
+     */
+    public int size() {
+        return formulas.length;
+    }
+
+    /**
+     * Renvoie les formules de la feuille, dans l'ordre de génération.
+     *
+     * @return Les formules.
+     */
+    public String[] getFormulas() {
+        return formulas;
+    }
+
+    /**
+     * Place les formules de la feuille dans un moteur, sans les recalculer.
+     *
+     * @param engine Le moteur qui reçoit les formules.
+     * @return Les clés des cellules écrites, à recalculer.
+     */
+    public List<Long> fill(SheetEngine engine) {
+        List<Long> keys = new ArrayList<>(formulas.length);
+        for (int k = 0; k < formulas.length; k++) {
+            keys.add(engine.setFormula(rows[k], columns[k], formulas[k]));
+        }
+        return keys;
+    }
+
+    /**
+     * Renvoie les clés des cellules de la feuille.
+     *
+     * @return Les clés, dans l'ordre de génération.
+     */
+    public List<Long> keys() {
+        List<Long> keys = new ArrayList<>(formulas.length);
+        for (int k = 0; k < formulas.length; k++) {
+            keys.add(CellReference.pack(rows[k], columns[k]));
+        }
+        return keys;
+    }
+
+    /**
+     * Renvoie les clés des cellules lues par chaque cellule de la feuille.
+     *
+     * @return Pour chaque cellule, les clés de ses antécédents.
+     */
+    public List<List<Long>> precedents() {
+        List<List<Long>> precedents = new ArrayList<>(formulas.length);
+        for (String formula : formulas) {
+            List<Long> keys = new ArrayList<>(2);
+            for (String token : formula.split(" ")) {
+                if (!token.isEmpty() && Character.isLetter(token.charAt(0))) {
+                    keys.add(CellReference.parse(token));
+                }
+            }
+            precedents.add(keys);
+        }
+        return precedents;
+    }
+
+    /**
+     * Une chaîne dans la colonne A : A1 = 1, puis Ak = + A(k-1) 1.
+     */
+    private void chain() {
+        set(0, 0, 0, "1");
+        for (int k = 1; k < formulas.length; k++) {
+            set(k, k, 0, "+ " + ref(k - 1, 0) + " 1");
+        }
+    }
+
+    /**
+     * Un éventail : A1 = 1, et toutes les autres cellules, rangées sur
+     * {@link #FAN_OUT_COLUMNS} colonnes à partir de B, lisent A1.
+     */
+    private void fanOut() {
+        set(0, 0, 0, "1");
+        for (int k = 1; k < formulas.length; k++) {
+            int row = (k - 1) / FAN_OUT_COLUMNS;
+            int column = 1 + (k - 1) % FAN_OUT_COLUMNS;
+            set(k, row, column, "* A1 " + k);
+        }
+    }
+
+    /**
+     * Une suite de losanges, un par ligne : le sommet en A lit les deux côtés
+     * de la ligne précédente, et les côtés en B et C lisent le sommet.
+     */
+    private void diamond() {
+        set(0, 0, 0, "1");
+        int k = 1;
+        for (int row = 0; k < formulas.length; row++) {
+            if (row > 0) {
+                set(k++, row, 0, "/ + " + ref(row - 1, 1) + " " + ref(row - 1, 2) + " 2");
+            }
+            if (k < formulas.length) {
+                set(k++, row, 1, "+ " + ref(row, 0) + " 1");
+            }
+            if (k < formulas.length) {
+                set(k++, row, 2, "- " + ref(row, 0) + " 1");
+            }
+        }
+    }
+
+    /**
+     * Un graphe acyclique aléatoire dans la colonne A : chaque cellule lit une
+     * ou deux cellules antérieures, tirées de préférence parmi les plus
+     * proches pour obtenir une profondeur réaliste.
+     */
+    private void random() {
+        Random random = new Random(SEED);
+        set(0, 0, 0, "1");
+        for (int k = 1; k < formulas.length; k++) {
+            String first = ref(earlier(random, k), 0);
+            if (k > 1 && random.nextBoolean()) {
+                set(k, k, 0, "+ " + first + " " + ref(earlier(random, k), 0));
+            } else {
+                set(k, k, 0, "* " + first + " 1.5");
+            }
+        }
+    }
+
+    /**
+     * Tire une ligne antérieure à une ligne donnée.
+     *
+     * @param random Le générateur aléatoire.
+     * @param row    La ligne de la cellule en cours.
+     * @return Une ligne entre 0 et {@code row - 1}.
+     */
+    private static int earlier(Random random, int row) {
+        int distance = 1 + (int) Math.abs(random.nextGaussian() * 16);
+        return Math.max(0, row - distance);
+    }
+
+    /**
+     * Enregistre une cellule de la feuille.
+     *
+     * @param index   Le rang de la cellule.
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @param formula La formule de la cellule.
+     */
+    private void set(int index, int row, int column, String formula) {
+        rows[index] = row;
+        columns[index] = column;
+        formulas[index] = formula;
+    }
+
+    /**
+     * Renvoie la référence A1 d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La référence de la cellule.
+     */
+    private static String ref(int row, int column) {
+        return CellReference.format(row, column);
+    }
+}
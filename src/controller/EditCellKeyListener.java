@@ -1,10 +1,8 @@
 package src.controller;
 
-import src.entity.Colors;
 import src.view.EditCellView;
 import src.view.GlobalView;
 
-import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
@@ -21,7 +19,7 @@ public class EditCellKeyListener implements KeyListener {
 
     /**
      * Construit un nouveau EditCellKeyListener.
-     * 
+     *
      * @param editCellView La vue d'édition de cellule associée à l'écouteur.
      */
     public EditCellKeyListener(EditCellView editCellView) {
@@ -44,26 +42,21 @@ public class EditCellKeyListener implements KeyListener {
 
     /**
      * Appelé lorsque la touche est relâchée.
-     * Si la touche relâchée est Entrée, la méthode met à jour la formule de la
-     * cellule en cours d'édition et
-     * actualise la vue globale.
-     * 
+     * Si la touche relâchée est Entrée, la formule a déjà été enregistrée par
+     * {@link EditCellActionListener} : la méthode actualise la vue globale.
+     *
      * @param e L'événement KeyEvent
      */
     @Override
     public void keyReleased(KeyEvent e) {
         if (e.getKeyCode() == KeyEvent.VK_ENTER) {
-            editCellView.updateCellFormula();
-            JTextField field = (JTextField) e.getSource();
-            Container parent = field.getParent();
+            Container parent = editCellView.getParent();
             while (!(parent instanceof GlobalView) && parent != null) {
                 parent = parent.getParent();
             }
-            GlobalView frame = (GlobalView) parent;
-            frame.updateView();
-            JPanel panel = (JPanel) editCellView.getCell().getParent();
-            panel.setBorder(BorderFactory.createLineBorder(Color.white));
-            panel.setBackground(Colors.chooseColor(editCellView.getCell().getStatus()));
+            if (parent != null) {
+                ((GlobalView) parent).updateView();
+            }
         }
     }
 }
@@ -0,0 +1,73 @@
+package src.controller;
+
+import src.model.GridModel;
+import src.view.GlobalView;
+
+import javax.swing.JOptionPane;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Set;
+
+/**
+ * Écouteur d'action du menu Édition.
+ * Cette classe annule et refait les modifications de la feuille, et crée ou
+ * restaure ses instantanés nommés. Ces opérations s'exécutent sur le thread de
+ * recalcul ; la grille est mise à jour par les écouteurs du moteur.
+ */
+public class EditMenuListener implements ActionListener {
+
+    /** Commande d'annulation de la dernière modification. */
+    public static final String UNDO = "undo";
+    /** Commande de rétablissement de la dernière modification annulée. */
+    public static final String REDO = "redo";
+    /** Commande de création d'un instantané. */
+    public static final String SNAPSHOT = "snapshot";
+    /** Commande de restauration d'un instantané. */
+    public static final String RESTORE = "restore";
+
+    private GlobalView frame;
+    private GridModel model;
+
+    /**
+     * Construit un nouveau EditMenuListener.
+     *
+     * @param frame La vue globale dont le menu est écouté.
+     * @param model Le modèle de la feuille affichée.
+     */
+    public EditMenuListener(GlobalView frame, GridModel model) {
+        this.frame = frame;
+        this.model = model;
+    }
+
+    /**
+     * Appelé lorsqu'un élément du menu est choisi.
+     *
+     * @param e L'événement ActionEvent
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if (UNDO.equals(e.getActionCommand())) {
+            model.undo();
+        } else if (REDO.equals(e.getActionCommand())) {
+            model.redo();
+        } else if (SNAPSHOT.equals(e.getActionCommand())) {
+            String name = JOptionPane.showInputDialog(frame, "Nom de l'instantané :", "Créer un instantané",
+                    JOptionPane.PLAIN_MESSAGE);
+            if (name != null && !name.trim().isEmpty()) {
+                model.takeSnapshot(name.trim());
+            }
+        } else if (RESTORE.equals(e.getActionCommand())) {
+            Set<String> names = model.getSnapshotNames();
+            if (names.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, "Aucun instantané.", "Restaurer un instantané",
+                        JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            Object name = JOptionPane.showInputDialog(frame, "Instantané à restaurer :", "Restaurer un instantané",
+                    JOptionPane.PLAIN_MESSAGE, null, names.toArray(), null);
+            if (name != null) {
+                model.restoreSnapshot((String) name);
+            }
+        }
+    }
+}
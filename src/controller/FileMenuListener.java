@@ -0,0 +1,152 @@
+package src.controller;
+
+import src.model.GridModel;
+import src.model.SheetBinaryFormat;
+import src.view.GlobalView;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Écouteur d'action du menu Fichier.
+ * Cette classe est responsable de l'ouverture et de l'enregistrement des
+ * feuilles au format binaire de {@link SheetBinaryFormat}, ainsi que de
+ * l'import et de l'export aux formats CSV et TSV.
+ */
+public class FileMenuListener implements ActionListener {
+
+    /** Commande d'ouverture d'une feuille. */
+    public static final String OPEN = "open";
+    /** Commande d'enregistrement de la feuille. */
+    public static final String SAVE = "save";
+    /** Commande d'import d'un fichier CSV ou TSV. */
+    public static final String IMPORT = "import";
+    /** Commande d'export des valeurs en CSV ou TSV. */
+    public static final String EXPORT_VALUES = "export-values";
+    /** Commande d'export des formules en CSV ou TSV. */
+    public static final String EXPORT_FORMULAS = "export-formulas";
+
+    private GlobalView frame;
+    private GridModel model;
+
+    /**
+     * Construit un nouveau FileMenuListener.
+     *
+     * @param frame La vue globale dont le menu est écouté.
+     * @param model Le modèle de la feuille affichée.
+     */
+    public FileMenuListener(GlobalView frame, GridModel model) {
+        this.frame = frame;
+        this.model = model;
+    }
+
+    /**
+     * Appelé lorsqu'un élément du menu est choisi.
+     *
+     * @param e L'événement ActionEvent
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        JFileChooser chooser = new JFileChooser();
+        if (OPEN.equals(e.getActionCommand())) {
+            if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                open(chooser.getSelectedFile().toPath());
+            }
+        } else if (SAVE.equals(e.getActionCommand())) {
+            if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                save(chooser.getSelectedFile().toPath());
+            }
+        } else if (IMPORT.equals(e.getActionCommand())) {
+            if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                await(model.importDelimited(chooser.getSelectedFile().toPath()), "Import impossible");
+            }
+        } else if (EXPORT_VALUES.equals(e.getActionCommand()) || EXPORT_FORMULAS.equals(e.getActionCommand())) {
+            if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                await(model.exportDelimited(chooser.getSelectedFile().toPath(),
+                        EXPORT_FORMULAS.equals(e.getActionCommand())), "Export impossible");
+            }
+        }
+    }
+
+    /**
+     * Ouvre une feuille dans une nouvelle fenêtre, qui remplace celle-ci. Le
+     * fichier est lu et vérifié par un SwingWorker, hors du thread de
+     * distribution des événements ; la nouvelle fenêtre est construite sur ce
+     * thread une fois la lecture terminée.
+     *
+     * @param file Le fichier à ouvrir.
+     */
+    private void open(Path file) {
+        new SwingWorker<GridModel, Void>() {
+            @Override
+            protected GridModel doInBackground() throws IOException {
+                return new GridModel(SheetBinaryFormat.load(file));
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    new GlobalController(get());
+                    frame.dispose();
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(frame, ex.getCause().getMessage(), "Ouverture impossible",
+                            JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Enregistre la feuille sur le thread de recalcul, une fois les
+     * modifications en cours appliquées.
+     *
+     * @param file Le fichier de destination.
+     */
+    private void save(Path file) {
+        await(model.getRecalculationService().call(() -> {
+            SheetBinaryFormat.save(model.getEngine(), file);
+            return null;
+        }), "Enregistrement impossible");
+    }
+
+    /**
+     * Attend la fin d'une tâche du thread de recalcul dans un SwingWorker,
+     * sans bloquer le thread de distribution des événements, puis affiche son
+     * erreur éventuelle sur ce thread.
+     *
+     * @param task  La tâche à attendre.
+     * @param title Le titre du message d'erreur.
+     */
+    private void await(Future<?> task, String title) {
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                task.get();
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (ExecutionException ex) {
+                    // L'erreur de la tâche arrive enveloppée une seconde fois par le SwingWorker.
+                    Throwable cause = ex.getCause() instanceof ExecutionException ? ex.getCause().getCause()
+                            : ex.getCause();
+                    JOptionPane.showMessageDialog(frame, cause.getMessage(), title, JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+}
@@ -1,29 +1,36 @@
 package src.controller;
 
 import src.view.GlobalView;
-import src.entity.Cell;
 import src.model.GridModel;
+import src.model.TiledGrid;
 
-/**
- * Contrôleur global de l'application.
- */
 /**
  * Contrôleur global de l'application.
  */
 public class GlobalController {
 
-    /** Matrice de cellules représentant la feuille de calcul. */
-    Cell[][] cells;
+    /** Le modèle de la feuille de calcul. */
+    GridModel model;
 
     /**
      * Constructeur de GlobalController.
-     * Initialise la grille de cellules et affiche la vue globale.
+     * Crée une feuille de la taille maximale et affiche la vue globale : seules
+     * les cellules visibles sont dessinées, et seules les cellules utilisées
+     * occupent de la mémoire.
      */
     public GlobalController() {
-        GridModel model = new GridModel(9, 9);
-        cells = model.createSpreadSheet();
-        GlobalView view = new GlobalView(cells, 9);
+        this(new GridModel(TiledGrid.MAX_ROWS, TiledGrid.MAX_COLUMNS));
+    }
 
+    /**
+     * Constructeur de GlobalController pour une feuille existante, par exemple
+     * ouverte depuis un fichier.
+     *
+     * @param model Le modèle de la feuille à afficher.
+     */
+    public GlobalController(GridModel model) {
+        this.model = model;
+        GlobalView view = new GlobalView(model);
     }
 
 }
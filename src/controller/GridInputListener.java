@@ -0,0 +1,112 @@
+package src.controller;
+
+import src.view.EditCellView;
+import src.view.GlobalView;
+import src.view.GridView;
+
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * Écouteur unique de la souris et du clavier sur la grille.
+ * La cellule visée est déduite de la position du clic, ou déplacée avec les
+ * flèches ; l'éditeur et la vue globale sont ensuite mis à jour. Un double
+ * clic ou la touche Entrée donnent la main à l'éditeur.
+ */
+public class GridInputListener extends MouseAdapter implements KeyListener {
+
+    private GridView gridView;
+    private EditCellView editCellView;
+
+    /**
+     * Construit un nouveau GridInputListener.
+     *
+     * @param gridView     La vue de la grille écoutée.
+     * @param editCellView La vue d'édition de cellule associée à l'écouteur.
+     */
+    public GridInputListener(GridView gridView, EditCellView editCellView) {
+        this.gridView = gridView;
+        this.editCellView = editCellView;
+    }
+
+    /**
+     * Appelé lorsque la souris est cliquée (mais pas relâchée) sur la grille.
+     *
+     * @param me L'événement MouseEvent
+     */
+    @Override
+    public void mousePressed(MouseEvent me) {
+        select(gridView.rowAtPoint(me.getPoint()), gridView.columnAtPoint(me.getPoint()));
+        if (me.getClickCount() == 2) {
+            editCellView.requestFocusInWindow();
+        } else {
+            gridView.requestFocusInWindow();
+        }
+    }
+
+    /**
+     * Appelé lorsqu'une touche est enfoncée sur la grille.
+     * Les flèches déplacent la sélection, Entrée donne la main à l'éditeur.
+     *
+     * @param e L'événement KeyEvent
+     */
+    @Override
+    public void keyPressed(KeyEvent e) {
+        int row = gridView.getSelectedRow();
+        int column = gridView.getSelectedColumn();
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_UP:
+                select(row - 1, column);
+                break;
+            case KeyEvent.VK_DOWN:
+                select(row + 1, column);
+                break;
+            case KeyEvent.VK_LEFT:
+                select(row, column - 1);
+                break;
+            case KeyEvent.VK_RIGHT:
+                select(row, column + 1);
+                break;
+            case KeyEvent.VK_ENTER:
+                editCellView.requestFocusInWindow();
+                break;
+            default:
+                return;
+        }
+        e.consume();
+    }
+
+    /**
+     * Les méthodes suivantes ne sont pas utilisées dans cette implémentation de
+     * l'interface KeyListener.
+     */
+    @Override
+    public void keyTyped(KeyEvent e) {
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+    }
+
+    /**
+     * Sélectionne une cellule dans la grille et dans l'éditeur, puis actualise
+     * la vue globale.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     */
+    private void select(int row, int column) {
+        gridView.setSelectedCell(row, column);
+        editCellView.setSelectedCell(gridView.getSelectedRow(), gridView.getSelectedColumn());
+        Container parent = gridView.getParent();
+        while (!(parent instanceof GlobalView) && parent != null) {
+            parent = parent.getParent();
+        }
+        if (parent != null) {
+            ((GlobalView) parent).updateView();
+        }
+    }
+}
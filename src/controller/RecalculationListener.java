@@ -0,0 +1,100 @@
+package src.controller;
+
+import src.model.EngineMetrics;
+import src.model.RecalculationService;
+import src.model.SheetEngine;
+import src.view.GlobalView;
+
+import javax.swing.SwingUtilities;
+import java.util.Arrays;
+
+/**
+ * Écouteur des recalculs effectués hors du thread de Swing.
+ * Les cellules modifiées publiées par le moteur sont accumulées, et un seul
+ * traitement est programmé sur le thread de Swing tant que le précédent n'a
+ * pas eu lieu : plusieurs recalculs rapprochés ne donnent lieu qu'à une mise
+ * à jour de la vue.
+ */
+public class RecalculationListener implements SheetEngine.CellChangeListener, RecalculationService.StateListener {
+
+    private final GlobalView frame;
+    private final RecalculationService service;
+    private final EngineMetrics metrics;
+    private long[] pending;
+    private int pendingCount;
+    private boolean scheduled;
+
+    /**
+     * Construit un nouveau RecalculationListener.
+     *
+     * @param frame   La vue globale à mettre à jour.
+     * @param service Le service de recalcul dont l'état est affiché.
+     * @param metrics Les compteurs du moteur, affichés au repos.
+     */
+    public RecalculationListener(GlobalView frame, RecalculationService service, EngineMetrics metrics) {
+        this.frame = frame;
+        this.service = service;
+        this.metrics = metrics;
+        this.pending = new long[64];
+        this.pendingCount = 0;
+        this.scheduled = false;
+    }
+
+    /**
+     * Appelé sur le thread de recalcul avec les cellules modifiées.
+     *
+     * @param keys Les clés des cellules modifiées.
+     */
+    @Override
+    public void cellsChanged(long[] keys) {
+        synchronized (this) {
+            if (pendingCount + keys.length > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingCount + keys.length));
+            }
+            System.arraycopy(keys, 0, pending, pendingCount, keys.length);
+            pendingCount += keys.length;
+        }
+        schedule();
+    }
+
+    /**
+     * Appelé lorsque le service commence ou finit de recalculer.
+     *
+     * @param calculating true si un recalcul est en attente ou en cours.
+     */
+    @Override
+    public void stateChanged(boolean calculating) {
+        schedule();
+    }
+
+    /**
+     * Programme une mise à jour de la vue, sauf si une mise à jour est déjà
+     * programmée.
+     */
+    private void schedule() {
+        synchronized (this) {
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        SwingUtilities.invokeLater(this::update);
+    }
+
+    /**
+     * Met à jour la vue sur le thread de Swing avec toutes les cellules
+     * accumulées depuis la mise à jour précédente.
+     */
+    private void update() {
+        long[] keys;
+        synchronized (this) {
+            keys = Arrays.copyOf(pending, pendingCount);
+            pendingCount = 0;
+            scheduled = false;
+        }
+        if (keys.length > 0) {
+            frame.getGrid().cellsChanged(keys);
+        }
+        frame.setCalculating(service.isCalculating(), metrics.snapshot());
+    }
+}
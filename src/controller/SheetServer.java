@@ -0,0 +1,715 @@
+package src.controller;
+
+import src.model.CellReference;
+import src.model.GridModel;
+import src.model.SheetEngine;
+import src.model.SheetVersion;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serveur de calcul local : expose une feuille ({@link GridModel}) à d'autres
+ * processus par un protocole texte, une requête par ligne, sur l'adresse de
+ * bouclage uniquement.
+ * <p>
+ * Requêtes (les références sont en notation A1, les plages de la forme
+ * {@code A1:C10}) :
+ * </p>
+ * <ul>
+ * <li>{@code SET A1 formule} : modifie une cellule ; répond {@code OK lot},
+ * le numéro du lot qui contient la modification.</li>
+ * <li>{@code BATCH n} suivie de n lignes {@code A1 formule} : modifie toutes
+ * ces cellules ensemble, ou aucune si une ligne est invalide ; répond
+ * {@code OK lot}.</li>
+ * <li>{@code GET A1} : répond {@code OK statut [valeur]}.</li>
+ * <li>{@code FORMULA A1} : répond {@code OK formule}.</li>
+ * <li>{@code RANGE A1:C10} : répond {@code OK lignes colonnes} puis une ligne
+ * par ligne de la plage, valeurs séparées par des tabulations.</li>
+ * <li>{@code SUBSCRIBE A1:C10} : répond {@code OK}, puis envoie
+ * {@code CHANGED A1 statut [valeur]} pour chaque cellule de la plage qui
+ * change ; {@code UNSUBSCRIBE} arrête l'abonnement.</li>
+ * <li>{@code SYNC} : répond {@code OK} une fois toutes les modifications déjà
+ * soumises recalculées.</li>
+ * <li>{@code QUIT} : ferme la connexion.</li>
+ * </ul>
+ * <p>
+ * Une erreur donne la réponse {@code ERR message}.
+ * </p>
+ * <p>
+ * Chaque connexion est servie par son propre thread : un thread virtuel
+ * lorsque la JVM en fournit, sinon un thread d'un pool extensible. Les
+ * modifications de toutes les connexions sont regroupées : un seul lot
+ * ({@link SheetEngine.Batch}) est validé à la fois sur le thread de recalcul,
+ * et les modifications qui arrivent pendant sa validation rejoignent le lot
+ * suivant. Une rafale d'écritures concurrentes ne donne ainsi qu'une mise à
+ * jour du graphe et un recalcul par lot, et, contrairement aux modifications
+ * coalescées par {@link src.model.RecalculationService#submit(int, int,
+ * String)}, aucun recalcul n'est abandonné : un flot continu d'écritures
+ * publie toujours de nouvelles versions. Les
+ * lectures répondent depuis la dernière version publiée par le moteur
+ * ({@link SheetEngine#snapshot()}), sans attendre un recalcul en cours ni voir
+ * de résultats à moitié propagés. Les abonnés reçoivent les différences
+ * entre versions publiées successives ; les changements qu'un abonné lent n'a
+ * pas encore reçus sont fusionnés. Les attentes d'une connexion passent par
+ * des {@link ReentrantLock}, qui ne bloquent pas le thread porteur d'un thread
+ * virtuel.
+ * </p>
+ */
+public class SheetServer implements SheetEngine.CellChangeListener, Closeable {
+
+    /** Port d'écoute par défaut. */
+    public static final int DEFAULT_PORT = 7070;
+    /** Nombre maximal de cellules d'une plage lue ou d'un lot. */
+    private static final int MAX_CELLS = 1 << 20;
+
+    /** La feuille servie. */
+    private final GridModel model;
+    /** Les threads des connexions. */
+    private final ExecutorService threads;
+    /** Les connexions ouvertes. */
+    private final Set<Connection> connections;
+    /** Verrou des écritures en attente. */
+    private final ReentrantLock writeLock;
+    /** Signalé à chaque lot validé. */
+    private final Condition committed;
+    /** Le lot qui reçoit les écritures en attente, ou null. */
+    private SheetEngine.Batch pending;
+    /** Le numéro du dernier lot créé. */
+    private long created;
+    /** Le numéro du dernier lot validé. */
+    private long validated;
+    /** Indique qu'un lot est en cours de validation. */
+    private boolean committing;
+    /** La dernière version transmise aux abonnés (thread de recalcul). */
+    private SheetVersion notified;
+    /** La socket d'écoute, une fois le serveur démarré. */
+    private ServerSocket socket;
+
+    /**
+     * Construit un serveur pour une feuille. Une fois le serveur créé, la
+     * feuille ne doit plus être modifiée que par son service de recalcul.
+     *
+     * @param model La feuille servie.
+     */
+    public SheetServer(GridModel model) {
+        this.model = model;
+        this.threads = newThreadPerTaskExecutor("connexion");
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.writeLock = new ReentrantLock();
+        this.committed = writeLock.newCondition();
+        this.notified = model.getSnapshot();
+        model.getEngine().addCellChangeListener(this);
+    }
+
+    /**
+     * Crée un exécuteur qui lance chaque tâche dans un nouveau thread
+     * virtuel, si la JVM en fournit, sinon dans un thread d'un pool
+     * extensible de threads démons.
+     *
+     * @param name Le nom des threads du pool de repli.
+     * @return L'exécuteur.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Démarre l'écoute sur l'adresse de bouclage.
+     *
+     * @param port Le port d'écoute, ou 0 pour un port libre quelconque.
+     * @throws IOException Si le port ne peut pas être ouvert.
+     */
+    public void start(int port) throws IOException {
+        socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "serveur");
+        acceptor.start();
+    }
+
+    /**
+     * Renvoie le port d'écoute du serveur démarré.
+     *
+     * @return Le port d'écoute.
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Arrête l'écoute et ferme toutes les connexions.
+     */
+    @Override
+    public void close() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // La socket d'écoute est abandonnée.
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        threads.shutdown();
+        model.getEngine().removeCellChangeListener(this);
+    }
+
+    /**
+     * Transmet aux abonnés, sur le thread de recalcul, les cellules qui
+     * diffèrent entre la dernière version transmise et la version publiée.
+     * Un recalcul interrompu ne publie pas de version et n'est pas transmis.
+     *
+     * @param keys Les clés des cellules modifiées ou recalculées.
+     */
+    @Override
+    public void cellsChanged(long[] keys) {
+        SheetVersion version = model.getSnapshot();
+        if (version == notified) {
+            return;
+        }
+        SheetVersion previous = notified;
+        notified = version;
+        if (connections.isEmpty()) {
+            return;
+        }
+        previous.diff(version, key -> {
+            for (Connection connection : connections) {
+                connection.changed(key);
+            }
+        });
+    }
+
+    /**
+     * Accepte les connexions jusqu'à la fermeture du serveur.
+     */
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                Connection connection = new Connection(socket.accept());
+                connections.add(connection);
+                threads.execute(connection);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    System.err.println("Connexion refusée : " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Ajoute des modifications au lot en attente, et fait valider ce lot par
+     * le thread de recalcul si aucun lot n'y est en cours de validation.
+     *
+     * @param keys     Les clés des cellules, déjà vérifiées.
+     * @param formulas Les nouvelles formules.
+     * @return Le numéro du lot qui contient les modifications.
+     */
+    private long write(long[] keys, String[] formulas) {
+        writeLock.lock();
+        try {
+            if (pending == null) {
+                pending = model.beginBatch();
+                created++;
+            }
+            for (int k = 0; k < keys.length; k++) {
+                pending.set(CellReference.row(keys[k]), CellReference.column(keys[k]), formulas[k]);
+            }
+            if (!committing) {
+                committing = true;
+                model.getRecalculationService().call(this::commitPending);
+            }
+            return created;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Valide, sur le thread de recalcul, le lot en attente, puis fait valider
+     * le suivant s'il a reçu des modifications entre-temps.
+     *
+     * @return null.
+     */
+    private Void commitPending() {
+        SheetEngine.Batch batch;
+        long number;
+        writeLock.lock();
+        try {
+            batch = pending;
+            number = created;
+            pending = null;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            batch.commit();
+        } finally {
+            writeLock.lock();
+            try {
+                validated = number;
+                committed.signalAll();
+                if (pending == null) {
+                    committing = false;
+                } else {
+                    model.getRecalculationService().call(this::commitPending);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Attend que toutes les modifications déjà reçues soient validées.
+     *
+     * @throws InterruptedException Si l'attente est interrompue.
+     */
+    private void sync() throws InterruptedException {
+        writeLock.lock();
+        try {
+            long target = created;
+            while (validated < target) {
+                committed.await();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Analyse une plage de la forme {@code A1:C10}, ou une seule référence.
+     *
+     * @param text Le texte de la plage.
+     * @return La ligne et la colonne du coin supérieur gauche, puis celles du
+     *         coin inférieur droit.
+     * @throws IllegalArgumentException  Si le texte n'est pas une plage.
+     * @throws IndexOutOfBoundsException Si la plage sort de la feuille.
+     */
+    private int[] parseRange(String text) {
+        int colon = text.indexOf(':');
+        long first = parseCell(colon < 0 ? text : text.substring(0, colon));
+        long last = colon < 0 ? first : parseCell(text.substring(colon + 1));
+        return new int[] {
+            Math.min(CellReference.row(first), CellReference.row(last)),
+            Math.min(CellReference.column(first), CellReference.column(last)),
+            Math.max(CellReference.row(first), CellReference.row(last)),
+            Math.max(CellReference.column(first), CellReference.column(last))
+        };
+    }
+
+    /**
+     * Analyse la référence d'une cellule de la feuille.
+     *
+     * @param text La référence, en notation A1.
+     * @return La clé de la cellule.
+     * @throws IllegalArgumentException  Si le texte n'est pas une référence.
+     * @throws IndexOutOfBoundsException Si la cellule sort de la feuille.
+     */
+    private long parseCell(String text) {
+        long key = CellReference.parse(text);
+        return model.getEngine().keyOf(CellReference.row(key), CellReference.column(key));
+    }
+
+    /**
+     * Renvoie le statut et la valeur d'une cellule, tels qu'ils sont envoyés.
+     *
+     * @param version La version lue.
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @return Le statut, suivi de la valeur s'il y en a une.
+     */
+    private static String describe(SheetVersion version, int row, int column) {
+        String text = version.getText(row, column);
+        return text.isEmpty() ? version.getStatus(row, column).toString()
+                : version.getStatus(row, column) + " " + text;
+    }
+
+    /**
+     * Connexion d'un client, servie par son propre thread.
+     */
+    private final class Connection implements Runnable {
+        private final Socket client;
+        private final BufferedReader in;
+        /** La sortie, partagée par les réponses et les notifications. */
+        private final Writer out;
+        /** Verrou de la sortie. */
+        private final ReentrantLock output;
+        /** Verrou de l'abonnement. */
+        private final ReentrantLock state;
+        /** Signalé lorsqu'une cellule suivie change ou que l'abonnement cesse. */
+        private final Condition changed;
+        /** La plage suivie : haut, gauche, bas, droite ; null sans abonnement. */
+        private int[] subscription;
+        /** Les cellules changées pas encore envoyées à l'abonné. */
+        private final Set<Long> changes;
+        /** Indique si le thread de notification de l'abonné tourne. */
+        private boolean notifying;
+
+        /**
+         * Construit une connexion.
+         *
+         * @param client La socket du client.
+         * @throws IOException Si les flux de la socket ne peuvent pas être ouverts.
+         */
+        Connection(Socket client) throws IOException {
+            this.client = client;
+            this.in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+            this.output = new ReentrantLock();
+            this.state = new ReentrantLock();
+            this.changed = state.newCondition();
+            this.changes = new LinkedHashSet<>();
+        }
+
+        @Override
+        public void run() {
+            try {
+                String line;
+                while ((line = in.readLine()) != null && handle(line.trim())) {
+                    if (!in.ready()) {
+                        flush();
+                    }
+                }
+                flush();
+            } catch (IOException e) {
+                // Le client s'est déconnecté.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                unsubscribe();
+                close();
+                connections.remove(this);
+            }
+        }
+
+        /**
+         * Traite une requête.
+         *
+         * @param request La ligne de la requête.
+         * @return false si la connexion doit être fermée.
+         * @throws IOException          Si l'écriture de la réponse échoue.
+         * @throws InterruptedException Si l'attente d'une synchronisation est
+         *                              interrompue.
+         */
+        private boolean handle(String request) throws IOException, InterruptedException {
+            if (request.isEmpty()) {
+                return true;
+            }
+            int space = request.indexOf(' ');
+            String command = (space < 0 ? request : request.substring(0, space)).toUpperCase(Locale.ROOT);
+            String argument = space < 0 ? "" : request.substring(space + 1).trim();
+            try {
+                switch (command) {
+                    case "SET":
+                        set(argument);
+                        break;
+                    case "BATCH":
+                        batch(argument);
+                        break;
+                    case "GET":
+                        get(argument);
+                        break;
+                    case "FORMULA":
+                        formula(argument);
+                        break;
+                    case "RANGE":
+                        range(argument);
+                        break;
+                    case "SUBSCRIBE":
+                        subscribe(parseRange(argument));
+                        reply("OK");
+                        break;
+                    case "UNSUBSCRIBE":
+                        unsubscribe();
+                        reply("OK");
+                        break;
+                    case "SYNC":
+                        sync();
+                        reply("OK");
+                        break;
+                    case "QUIT":
+                        reply("OK");
+                        return false;
+                    default:
+                        reply("ERR Commande inconnue : " + command);
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                reply("ERR " + e.getMessage());
+            }
+            return true;
+        }
+
+        /**
+         * Traite {@code SET A1 formule}.
+         *
+         * @param argument La référence suivie de la formule.
+         * @throws IOException Si l'écriture de la réponse échoue.
+         */
+        private void set(String argument) throws IOException {
+            int space = argument.indexOf(' ');
+            long key = parseCell(space < 0 ? argument : argument.substring(0, space));
+            String formula = space < 0 ? "" : argument.substring(space + 1).trim();
+            reply("OK " + write(new long[] {key}, new String[] {formula}));
+        }
+
+        /**
+         * Traite {@code BATCH n} : lit les n lignes du lot, puis ajoute leurs
+         * modifications au lot en attente si elles sont toutes valides.
+         *
+         * @param argument Le nombre de lignes du lot.
+         * @throws IOException Si la lecture du lot ou l'écriture de la réponse
+         *                     échoue.
+         */
+        private void batch(String argument) throws IOException {
+            int count = Integer.parseInt(argument);
+            if (count < 0 || count > MAX_CELLS) {
+                throw new IllegalArgumentException("Taille de lot invalide : " + count);
+            }
+            long[] keys = new long[count];
+            String[] formulas = new String[count];
+            String error = null;
+            for (int k = 0; k < count; k++) {
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("Lot interrompu.");
+                }
+                line = line.trim();
+                int space = line.indexOf(' ');
+                try {
+                    keys[k] = parseCell(space < 0 ? line : line.substring(0, space));
+                    formulas[k] = space < 0 ? "" : line.substring(space + 1).trim();
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    if (error == null) {
+                        error = "ERR ligne " + (k + 1) + " du lot : " + e.getMessage();
+                    }
+                }
+            }
+            reply(error != null ? error : "OK " + write(keys, formulas));
+        }
+
+        /**
+         * Traite {@code GET A1}.
+         *
+         * @param argument La référence.
+         * @throws IOException Si l'écriture de la réponse échoue.
+         */
+        private void get(String argument) throws IOException {
+            long key = parseCell(argument);
+            reply("OK " + describe(model.getSnapshot(), CellReference.row(key), CellReference.column(key)));
+        }
+
+        /**
+         * Traite {@code FORMULA A1}.
+         *
+         * @param argument La référence.
+         * @throws IOException Si l'écriture de la réponse échoue.
+         */
+        private void formula(String argument) throws IOException {
+            long key = parseCell(argument);
+            reply("OK " + model.getSnapshot().getFormula(CellReference.row(key), CellReference.column(key)));
+        }
+
+        /**
+         * Traite {@code RANGE A1:C10} : toute la plage est lue dans une même
+         * version.
+         *
+         * @param argument La plage.
+         * @throws IOException Si l'écriture de la réponse échoue.
+         */
+        private void range(String argument) throws IOException {
+            int[] range = parseRange(argument);
+            int rows = range[2] - range[0] + 1;
+            int columns = range[3] - range[1] + 1;
+            if ((long) rows * columns > MAX_CELLS) {
+                throw new IllegalArgumentException("Plage trop grande : " + argument);
+            }
+            SheetVersion version = model.getSnapshot();
+            StringBuilder lines = new StringBuilder().append("OK ").append(rows).append(' ').append(columns);
+            for (int row = range[0]; row <= range[2]; row++) {
+                lines.append('\n');
+                for (int column = range[1]; column <= range[3]; column++) {
+                    if (column > range[1]) {
+                        lines.append('\t');
+                    }
+                    lines.append(version.getText(row, column));
+                }
+            }
+            reply(lines.toString());
+        }
+
+        /**
+         * Écrit une réponse, sans la vider : les réponses aux requêtes déjà
+         * reçues sont envoyées ensemble.
+         *
+         * @param response La réponse, éventuellement sur plusieurs lignes.
+         * @throws IOException Si l'écriture échoue.
+         */
+        private void reply(String response) throws IOException {
+            output.lock();
+            try {
+                out.write(response);
+                out.write('\n');
+            } finally {
+                output.unlock();
+            }
+        }
+
+        /**
+         * Envoie les réponses écrites.
+         *
+         * @throws IOException Si l'envoi échoue.
+         */
+        private void flush() throws IOException {
+            output.lock();
+            try {
+                out.flush();
+            } finally {
+                output.unlock();
+            }
+        }
+
+        /**
+         * Abonne la connexion aux changements d'une plage, en remplaçant
+         * l'abonnement précédent.
+         *
+         * @param range La plage suivie.
+         */
+        private void subscribe(int[] range) {
+            state.lock();
+            try {
+                subscription = range;
+                changes.clear();
+                if (!notifying) {
+                    notifying = true;
+                    threads.execute(this::notifyChanges);
+                }
+            } finally {
+                state.unlock();
+            }
+        }
+
+        /**
+         * Arrête l'abonnement de la connexion.
+         */
+        private void unsubscribe() {
+            state.lock();
+            try {
+                subscription = null;
+                changes.clear();
+                changed.signalAll();
+            } finally {
+                state.unlock();
+            }
+        }
+
+        /**
+         * Relève, sur le thread de recalcul, une cellule changée si elle
+         * appartient à la plage suivie.
+         *
+         * @param key La clé de la cellule.
+         */
+        void changed(long key) {
+            int row = CellReference.row(key);
+            int column = CellReference.column(key);
+            state.lock();
+            try {
+                if (subscription != null && row >= subscription[0] && row <= subscription[2]
+                        && column >= subscription[1] && column <= subscription[3]) {
+                    changes.add(key);
+                    changed.signalAll();
+                }
+            } finally {
+                state.unlock();
+            }
+        }
+
+        /**
+         * Envoie les changements relevés à l'abonné, jusqu'à la fin de
+         * l'abonnement. Les valeurs sont lues dans la dernière version
+         * publiée au moment de l'envoi.
+         */
+        private void notifyChanges() {
+            try {
+                while (true) {
+                    Long[] keys;
+                    state.lock();
+                    try {
+                        while (subscription != null && changes.isEmpty()) {
+                            changed.await();
+                        }
+                        if (subscription == null) {
+                            notifying = false;
+                            return;
+                        }
+                        keys = changes.toArray(new Long[0]);
+                        changes.clear();
+                    } finally {
+                        state.unlock();
+                    }
+                    SheetVersion version = model.getSnapshot();
+                    StringBuilder lines = new StringBuilder();
+                    for (long key : keys) {
+                        int row = CellReference.row(key);
+                        int column = CellReference.column(key);
+                        lines.append("CHANGED ").append(CellReference.format(row, column)).append(' ')
+                                .append(describe(version, row, column)).append('\n');
+                    }
+                    output.lock();
+                    try {
+                        out.write(lines.toString());
+                        out.flush();
+                    } finally {
+                        output.unlock();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                state.lock();
+                try {
+                    subscription = null;
+                    notifying = false;
+                } finally {
+                    state.unlock();
+                }
+            }
+        }
+
+        /**
+         * Ferme la socket du client.
+         */
+        void close() {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // La socket est abandonnée.
+            }
+        }
+    }
+}
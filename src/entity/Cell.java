@@ -1,11 +1,16 @@
 package src.entity;
 
+import src.exception.UncalculableFormulaException;
+
 import javax.swing.*;
 import java.awt.*;
 
 /**
  * La classe Cell représente une cellule dans une feuille de calcul.
- * Elle hérite de JLabel pour afficher le contenu de la cellule.
+ * Elle hérite de JLabel pour afficher le contenu de la cellule. Dans une
+ * grille, l'état de référence des cellules est conservé par le
+ * {@link src.model.SheetEngine} : la cellule n'en est que l'adaptateur
+ * d'affichage.
  */
 public class Cell extends JLabel {
     private final int x;
@@ -13,6 +18,11 @@ public class Cell extends JLabel {
     private String formula;
     private Status status;
     private Node formulaAST;
+    private CompiledFormula compiledFormula;
+    private double value;
+    private boolean valueCalculable;
+    private long valueEpoch;
+    private long dirtyEpoch;
 
     /**
      * Constructeur de la classe Cell.
@@ -29,6 +39,10 @@ public class Cell extends JLabel {
         this.status = status;
         // Initialisation de l'AST à null
         this.formulaAST = null;
+        this.compiledFormula = null;
+        // Aucune valeur n'est encore calculée
+        this.valueEpoch = -1;
+        this.dirtyEpoch = 0;
         updateText();
 
         this.setPreferredSize(new Dimension(80, 40));
@@ -86,6 +100,8 @@ public class Cell extends JLabel {
     public String replaceFormula(String newFormula) {
         this.formula = newFormula;
         this.formulaAST = null;
+        this.compiledFormula = null;
+        this.valueEpoch = -1;
         return this.formula;
     }
 
@@ -127,4 +143,78 @@ public class Cell extends JLabel {
     public void setFormulaAST(Node formulaAST) {
         this.formulaAST = formulaAST;
     }
+
+    /**
+     * Renvoie la forme compilée de la formule de la cellule.
+     *
+     * @return La formule compilée, ou null si elle n'a pas encore été compilée.
+     */
+    public CompiledFormula getCompiledFormula() {
+        return compiledFormula;
+    }
+
+    /**
+     * Définit la forme compilée de la formule de la cellule.
+     *
+     * @param compiledFormula La nouvelle formule compilée.
+     */
+    public void setCompiledFormula(CompiledFormula compiledFormula) {
+        this.compiledFormula = compiledFormula;
+    }
+
+    /**
+     * Indique si la valeur en cache de la cellule est à jour, c'est-à-dire si
+     * elle a été calculée depuis la dernière invalidation de la cellule.
+     *
+     * @return true si la valeur en cache peut être lue, sinon false.
+     */
+    public boolean hasCurrentValue() {
+        return this.valueEpoch >= 0 && this.valueEpoch >= this.dirtyEpoch;
+    }
+
+    /**
+     * Renvoie la valeur en cache de la cellule.
+     *
+     * @return La valeur calculée lors du dernier recalcul de la cellule.
+     * @throws UncalculableFormulaException Si le dernier calcul de la cellule a
+     *                                      échoué.
+     */
+    public double getCachedValue() throws UncalculableFormulaException {
+        if (!this.valueCalculable) {
+            throw new UncalculableFormulaException("The referenced cell has no calculable value.");
+        }
+        return this.value;
+    }
+
+    /**
+     * Enregistre la valeur calculée de la cellule pour un recalcul donné.
+     *
+     * @param value La valeur calculée.
+     * @param epoch Le numéro du recalcul.
+     */
+    public void cacheValue(double value, long epoch) {
+        this.value = value;
+        this.valueCalculable = true;
+        this.valueEpoch = epoch;
+    }
+
+    /**
+     * Enregistre l'échec du calcul de la cellule pour un recalcul donné.
+     *
+     * @param epoch Le numéro du recalcul.
+     */
+    public void cacheError(long epoch) {
+        this.valueCalculable = false;
+        this.valueEpoch = epoch;
+    }
+
+    /**
+     * Invalide la valeur en cache de la cellule : elle devra être recalculée
+     * lors du recalcul donné.
+     *
+     * @param epoch Le numéro du recalcul qui invalide la cellule.
+     */
+    public void invalidateValue(long epoch) {
+        this.dirtyEpoch = epoch;
+    }
 }
@@ -3,11 +3,35 @@ package src.entity;
 import java.awt.Color;
 
 /**
- * La classe Colors fournit des méthodes pour choisir la couleur d'arrière-plan
- * en fonction du statut d'une cellule.
+ * La classe Colors fournit les couleurs partagées de l'affichage, et des
+ * méthodes pour choisir la couleur d'arrière-plan en fonction du statut d'une
+ * cellule. Les couleurs sont des constantes : aucune n'est allouée pendant le
+ * dessin.
  */
 public class Colors {
 
+    /** Couleur d'une cellule vide. */
+    public static final Color EMPTY = Color.LIGHT_GRAY;
+    /** Couleur d'une cellule calculable. */
+    public static final Color CALCULABLE = new Color(144, 238, 144);
+    /** Couleur d'une cellule incorrecte. */
+    public static final Color INCORRECT = Color.RED;
+    /** Couleur d'une cellule non calculable. */
+    public static final Color UNCALCULABLE = new Color(235, 160, 20);
+    /** Couleur de la légende des lignes et des colonnes. */
+    public static final Color HEADER = CALCULABLE;
+    /** Couleur des traits de la grille. */
+    public static final Color GRID_LINE = Color.BLACK;
+    /** Couleur du contour de la cellule sélectionnée. */
+    public static final Color SELECTION = Color.WHITE;
+
+    /**
+     * Constructeur privé : la classe ne fournit que des constantes et des
+     * méthodes statiques.
+     */
+    private Colors() {
+    }
+
     /**
      * Choisissez une couleur d'arrière-plan en fonction du statut de la cellule.
      *
@@ -16,13 +40,13 @@ public class Colors {
      */
     public static Color chooseColor(Status status) {
         if (status == Status.EMPTY) {
-            return Color.LIGHT_GRAY;
+            return EMPTY;
         } else if (status == Status.CALCULABLE) {
-            return new Color(144, 238, 144);
+            return CALCULABLE;
         } else if (status == Status.INCORRECT) {
-            return Color.RED;
+            return INCORRECT;
         } else if (status == Status.UNCALCULABLE) {
-            return new Color(235, 160, 20);
+            return UNCALCULABLE;
         } else {
             return Color.BLACK;
         }
@@ -0,0 +1,522 @@
+package src.entity;
+
+import src.exception.UncalculableFormulaException;
+
+/**
+ * Représentation compilée d'une formule.
+ * La formule est stockée sous forme d'un tableau plat d'instructions en
+ * notation polonaise inverse, accompagné d'une table de constantes et d'une
+ * table des coordonnées des cellules référencées. Une fois liée à la grille
+ * par {@link #link(Cell[])}, la formule connaît directement les cellules
+ * qu'elle référence. Son évaluation est une simple boucle sur une
+ * pile de {@code double} : elle n'alloue aucun objet et n'effectue aucun appel
+ * virtuel, contrairement au parcours d'un arbre de {@link Node}. La valeur
+ * d'une cellule référencée est lue dans son cache lorsqu'elle est à jour ;
+ * sinon la formule de la cellule est évaluée sur la même pile.
+ * <p>
+ * Une formule peut aussi contenir des fonctions d'agrégation ({@link #SUM},
+ * {@link #AVERAGE}, {@link #MIN}, {@link #MAX}) portant sur une plage
+ * rectangulaire de cellules, rangée dans une table des plages. Leur valeur
+ * est demandée à la {@link ValueSource} : une telle formule ne peut pas être
+ * évaluée une fois liée à des objets {@link Cell}.
+ * </p>
+ * <p>
+ * Un programme optimisé peut commencer par le calcul de sous-expressions
+ * employées plusieurs fois : leurs valeurs restent au fond de la pile de la
+ * formule, et {@link #LOAD} les recopie à chaque emploi.
+ * </p>
+ */
+public class CompiledFormula {
+
+    /** Empile la constante dont l'indice est donné en argument. */
+    public static final int PUSH_CONSTANT = 0;
+    /** Empile la valeur de la cellule dont l'indice est donné en argument. */
+    public static final int PUSH_REFERENCE = 1;
+    /** Dépile deux valeurs et empile leur somme. */
+    public static final int ADD = 2;
+    /** Dépile deux valeurs et empile leur différence. */
+    public static final int SUBTRACT = 3;
+    /** Dépile deux valeurs et empile leur produit. */
+    public static final int MULTIPLY = 4;
+    /** Dépile deux valeurs et empile leur quotient. */
+    public static final int DIVIDE = 5;
+    /** Empile la somme de la plage dont l'indice est donné en argument. */
+    public static final int SUM = 6;
+    /** Empile la moyenne de la plage dont l'indice est donné en argument. */
+    public static final int AVERAGE = 7;
+    /** Empile le minimum de la plage dont l'indice est donné en argument. */
+    public static final int MIN = 8;
+    /** Empile le maximum de la plage dont l'indice est donné en argument. */
+    public static final int MAX = 9;
+    /**
+     * Empile de nouveau la valeur du sous-calcul partagé dont l'indice est
+     * donné en argument, laissée au fond de la pile de la formule.
+     */
+    public static final int LOAD = 10;
+
+    /** Nombre de bits réservés au code de l'opération dans une instruction. */
+    private static final int OPCODE_BITS = 4;
+    /** Masque du code de l'opération dans une instruction. */
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+    /** Pile d'évaluation propre à chaque thread. */
+    private static final ThreadLocal<EvaluationStack> STACKS = ThreadLocal.withInitial(EvaluationStack::new);
+
+    /**
+     * Source des valeurs des cellules référencées, pour évaluer une formule
+     * sans la lier à des objets {@link Cell}.
+     */
+    public interface ValueSource {
+        /**
+         * Renvoie la valeur d'une cellule.
+         *
+         * @param row    La ligne de la cellule (à partir de 0).
+         * @param column La colonne de la cellule (à partir de 0).
+         * @return La valeur de la cellule.
+         * @throws UncalculableFormulaException Si la cellule est hors limites ou
+         *                                      n'a pas de valeur calculable.
+         */
+        double valueAt(int row, int column) throws UncalculableFormulaException;
+
+        /**
+         * Renvoie l'agrégat d'une plage de cellules. Les cellules vides de la
+         * plage sont ignorées.
+         *
+         * @param function La fonction d'agrégation ({@link #SUM},
+         *                 {@link #AVERAGE}, {@link #MIN} ou {@link #MAX}).
+         * @param top      La première ligne de la plage.
+         * @param left     La première colonne de la plage.
+         * @param bottom   La dernière ligne de la plage (incluse).
+         * @param right    La dernière colonne de la plage (incluse).
+         * @return L'agrégat de la plage.
+         * @throws UncalculableFormulaException Si la plage sort de la feuille,
+         *                                      contient une cellule sans valeur
+         *                                      calculable, ou n'a aucune valeur
+         *                                      pour une moyenne, un minimum ou
+         *                                      un maximum.
+         */
+        double aggregate(int function, int top, int left, int bottom, int right)
+                throws UncalculableFormulaException;
+    }
+
+    /** Les instructions de la formule. */
+    private final int[] code;
+    /** La table des constantes. */
+    private final double[] constants;
+    /** Les lignes des cellules référencées. */
+    private final int[] referenceRows;
+    /** Les colonnes des cellules référencées. */
+    private final int[] referenceColumns;
+    /**
+     * Les plages des fonctions d'agrégation, quatre entiers par plage : ligne
+     * et colonne du coin supérieur gauche, puis du coin inférieur droit.
+     */
+    private final int[] ranges;
+    /** Les cellules référencées, ou null si la formule n'est pas liée. */
+    private final Cell[] references;
+    /** La profondeur maximale de la pile pour cette formule seule. */
+    private final int maxStack;
+
+    /**
+     * Construit une formule compilée non liée à une grille.
+     *
+     * @param code             Les instructions, construites avec
+     *                         {@link #instruction(int, int)}.
+     * @param constants        La table des constantes.
+     * @param referenceRows    Les lignes des cellules référencées.
+     * @param referenceColumns Les colonnes des cellules référencées.
+     * @param maxStack         La profondeur maximale de la pile.
+     */
+    public CompiledFormula(int[] code, double[] constants, int[] referenceRows, int[] referenceColumns,
+            int maxStack) {
+        this(code, constants, referenceRows, referenceColumns, new int[0], null, maxStack);
+    }
+
+    /**
+     * Construit une formule compilée non liée à une grille, dont les
+     * fonctions d'agrégation portent sur des plages.
+     *
+     * @param code             Les instructions.
+     * @param constants        La table des constantes.
+     * @param referenceRows    Les lignes des cellules référencées.
+     * @param referenceColumns Les colonnes des cellules référencées.
+     * @param ranges           Les plages, quatre entiers par plage (haut,
+     *                         gauche, bas, droite).
+     * @param maxStack         La profondeur maximale de la pile.
+     */
+    public CompiledFormula(int[] code, double[] constants, int[] referenceRows, int[] referenceColumns,
+            int[] ranges, int maxStack) {
+        this(code, constants, referenceRows, referenceColumns, ranges, null, maxStack);
+    }
+
+    /**
+     * Construit une formule compilée.
+     *
+     * @param code             Les instructions.
+     * @param constants        La table des constantes.
+     * @param referenceRows    Les lignes des cellules référencées.
+     * @param referenceColumns Les colonnes des cellules référencées.
+     * @param ranges           Les plages des fonctions d'agrégation.
+     * @param references       Les cellules référencées, ou null.
+     * @param maxStack         La profondeur maximale de la pile.
+     */
+    private CompiledFormula(int[] code, double[] constants, int[] referenceRows, int[] referenceColumns,
+            int[] ranges, Cell[] references, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.referenceRows = referenceRows;
+        this.referenceColumns = referenceColumns;
+        this.ranges = ranges;
+        this.references = references;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * Lie la formule aux cellules qu'elle référence.
+     *
+     * @param cells Les cellules référencées, dans l'ordre de la table des
+     *              références.
+     * @return Une formule liée partageant les instructions de celle-ci.
+     */
+    public CompiledFormula link(Cell[] cells) {
+        if (cells.length != referenceRows.length) {
+            throw new IllegalArgumentException("Expected " + referenceRows.length + " referenced cells.");
+        }
+        return new CompiledFormula(code, constants, referenceRows, referenceColumns, ranges, cells, maxStack);
+    }
+
+    /**
+     * Encode une instruction.
+     *
+     * @param opcode   Le code de l'opération.
+     * @param argument L'argument de l'opération (indice de constante ou de
+     *                 cellule), ou 0.
+     * @return L'instruction encodée.
+     */
+    public static int instruction(int opcode, int argument) {
+        return (argument << OPCODE_BITS) | opcode;
+    }
+
+    /**
+     * Renvoie le code de l'opération d'une instruction.
+     *
+     * @param instruction L'instruction encodée.
+     * @return Le code de l'opération.
+     */
+    public static int opcode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    /**
+     * Renvoie l'argument d'une instruction.
+     *
+     * @param instruction L'instruction encodée.
+     * @return L'argument de l'instruction.
+     */
+    public static int argument(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }
+
+    /**
+     * Indique si un code d'opération est une fonction d'agrégation sur une
+     * plage.
+     *
+     * @param opcode Le code de l'opération.
+     * @return true pour {@link #SUM}, {@link #AVERAGE}, {@link #MIN} et
+     *         {@link #MAX}.
+     */
+    public static boolean isAggregate(int opcode) {
+        return opcode >= SUM && opcode <= MAX;
+    }
+
+    /**
+     * Renvoie les instructions de la formule.
+     *
+     * @return Les instructions, dans l'ordre d'exécution.
+     */
+    public int[] getCode() {
+        return code;
+    }
+
+    /**
+     * Renvoie la table des constantes de la formule.
+     *
+     * @return La table des constantes.
+     */
+    public double[] getConstants() {
+        return constants;
+    }
+
+    /**
+     * Renvoie le nombre de références de cellules de la formule.
+     *
+     * @return Le nombre de références.
+     */
+    public int getReferenceCount() {
+        return referenceRows.length;
+    }
+
+    /**
+     * Renvoie la ligne d'une cellule référencée.
+     *
+     * @param index L'indice de la référence.
+     * @return La ligne de la cellule référencée.
+     */
+    public int getReferenceRow(int index) {
+        return referenceRows[index];
+    }
+
+    /**
+     * Renvoie la colonne d'une cellule référencée.
+     *
+     * @param index L'indice de la référence.
+     * @return La colonne de la cellule référencée.
+     */
+    public int getReferenceColumn(int index) {
+        return referenceColumns[index];
+    }
+
+    /**
+     * Renvoie le nombre de plages des fonctions d'agrégation de la formule.
+     *
+     * @return Le nombre de plages.
+     */
+    public int getRangeCount() {
+        return ranges.length / 4;
+    }
+
+    /**
+     * Renvoie la première ligne d'une plage.
+     *
+     * @param index L'indice de la plage.
+     * @return La première ligne de la plage.
+     */
+    public int getRangeTop(int index) {
+        return ranges[4 * index];
+    }
+
+    /**
+     * Renvoie la première colonne d'une plage.
+     *
+     * @param index L'indice de la plage.
+     * @return La première colonne de la plage.
+     */
+    public int getRangeLeft(int index) {
+        return ranges[4 * index + 1];
+    }
+
+    /**
+     * Renvoie la dernière ligne d'une plage.
+     *
+     * @param index L'indice de la plage.
+     * @return La dernière ligne de la plage (incluse).
+     */
+    public int getRangeBottom(int index) {
+        return ranges[4 * index + 2];
+    }
+
+    /**
+     * Renvoie la dernière colonne d'une plage.
+     *
+     * @param index L'indice de la plage.
+     * @return La dernière colonne de la plage (incluse).
+     */
+    public int getRangeRight(int index) {
+        return ranges[4 * index + 3];
+    }
+
+    /**
+     * Renvoie les cellules référencées par la formule.
+     *
+     * @return La table des cellules référencées, ou null si la formule n'est
+     *         pas liée.
+     */
+    public Cell[] getReferences() {
+        return references;
+    }
+
+    /**
+     * Renvoie la profondeur de pile nécessaire à la formule seule.
+     *
+     * @return La profondeur maximale de la pile.
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Évalue la formule.
+     *
+     * @return Le résultat de l'évaluation.
+     * @throws UncalculableFormulaException Si une division par zéro survient ou
+     *                                      si une cellule référencée n'est pas
+     *                                      compilée.
+     */
+    public double evaluate() throws UncalculableFormulaException {
+        if (references == null) {
+            throw new UncalculableFormulaException("The formula is not linked to the spreadsheet.");
+        }
+        return run(STACKS.get(), 0, null, 0, 0);
+    }
+
+    /**
+     * Évalue la formule en lisant les valeurs des cellules référencées dans une
+     * source de valeurs. La formule n'a pas besoin d'être liée.
+     *
+     * @param source La source des valeurs des cellules référencées.
+     * @return Le résultat de l'évaluation.
+     * @throws UncalculableFormulaException Si une division par zéro survient ou
+     *                                      si une cellule référencée n'a pas de
+     *                                      valeur calculable.
+     */
+    public double evaluate(ValueSource source) throws UncalculableFormulaException {
+        return run(STACKS.get(), 0, source, 0, 0);
+    }
+
+    /**
+     * Évalue une formule dont les références et les plages sont relatives à
+     * une cellule d'ancrage, en lisant les valeurs dans une source de valeurs.
+     * La même formule peut ainsi servir de modèle à toutes les cellules qui
+     * portent une copie de la formule.
+     *
+     * @param source La source des valeurs des cellules référencées.
+     * @param row    La ligne de la cellule d'ancrage.
+     * @param column La colonne de la cellule d'ancrage.
+     * @return Le résultat de l'évaluation.
+     * @throws UncalculableFormulaException Si une division par zéro survient ou
+     *                                      si une cellule référencée n'a pas de
+     *                                      valeur calculable.
+     */
+    public double evaluate(ValueSource source, int row, int column) throws UncalculableFormulaException {
+        return run(STACKS.get(), 0, source, row, column);
+    }
+
+    /**
+     * Renvoie la formule obtenue en décalant toutes ses références et plages.
+     *
+     * @param rows    Le décalage des lignes.
+     * @param columns Le décalage des colonnes.
+     * @return Une formule non liée partageant les instructions de celle-ci.
+     */
+    public CompiledFormula translate(int rows, int columns) {
+        int[] translatedRows = new int[referenceRows.length];
+        int[] translatedColumns = new int[referenceColumns.length];
+        for (int k = 0; k < referenceRows.length; k++) {
+            translatedRows[k] = referenceRows[k] + rows;
+            translatedColumns[k] = referenceColumns[k] + columns;
+        }
+        int[] translatedRanges = new int[ranges.length];
+        for (int k = 0; k < ranges.length; k++) {
+            translatedRanges[k] = ranges[k] + (k % 2 == 0 ? rows : columns);
+        }
+        return new CompiledFormula(code, constants, translatedRows, translatedColumns, translatedRanges, null,
+                maxStack);
+    }
+
+    /**
+     * Exécute les instructions de la formule sur la pile donnée, à partir de la
+     * position {@code base}. Les cellules référencées dont la valeur en cache
+     * n'est pas à jour sont évaluées sur la même pile, au-dessus des valeurs de
+     * la formule courante.
+     *
+     * @param stack  La pile d'évaluation du thread courant.
+     * @param base   La position de départ dans la pile.
+     * @param source La source des valeurs des cellules référencées, ou null
+     *               pour utiliser les cellules liées.
+     * @param row    Le décalage des lignes lues dans la source.
+     * @param column Le décalage des colonnes lues dans la source.
+     * @return Le résultat de l'évaluation.
+     * @throws UncalculableFormulaException Si l'évaluation échoue.
+     */
+    private double run(EvaluationStack stack, int base, ValueSource source, int row, int column)
+            throws UncalculableFormulaException {
+        double[] values = stack.ensureCapacity(base + maxStack);
+        int sp = base;
+        for (int instruction : code) {
+            int argument = instruction >>> OPCODE_BITS;
+            switch (instruction & OPCODE_MASK) {
+                case PUSH_CONSTANT:
+                    values[sp++] = constants[argument];
+                    break;
+                case PUSH_REFERENCE:
+                    if (source != null) {
+                        values[sp++] = source.valueAt(row + referenceRows[argument],
+                                column + referenceColumns[argument]);
+                        break;
+                    }
+                    Cell cell = references[argument];
+                    if (cell.hasCurrentValue()) {
+                        values[sp++] = cell.getCachedValue();
+                        break;
+                    }
+                    CompiledFormula referenced = cell.getCompiledFormula();
+                    if (referenced == null || referenced.references == null) {
+                        throw new UncalculableFormulaException("Referenced cell is not compiled.");
+                    }
+                    double value = referenced.run(stack, sp, null, 0, 0);
+                    // La pile a pu être agrandie par l'évaluation imbriquée.
+                    values = stack.values;
+                    values[sp++] = value;
+                    break;
+                case ADD:
+                    sp--;
+                    values[sp - 1] = values[sp] + values[sp - 1];
+                    break;
+                case SUBTRACT:
+                    sp--;
+                    values[sp - 1] = values[sp] - values[sp - 1];
+                    break;
+                case MULTIPLY:
+                    sp--;
+                    values[sp - 1] = values[sp] * values[sp - 1];
+                    break;
+                case DIVIDE:
+                    sp--;
+                    if (values[sp - 1] == 0) {
+                        throw new UncalculableFormulaException("Division by zero.");
+                    }
+                    values[sp - 1] = values[sp] / values[sp - 1];
+                    break;
+                case LOAD:
+                    values[sp++] = values[base + argument];
+                    break;
+                case SUM:
+                case AVERAGE:
+                case MIN:
+                case MAX:
+                    if (source == null) {
+                        throw new UncalculableFormulaException("Range aggregates need a value source.");
+                    }
+                    int range = 4 * argument;
+                    values[sp++] = source.aggregate(instruction & OPCODE_MASK, row + ranges[range],
+                            column + ranges[range + 1], row + ranges[range + 2], column + ranges[range + 3]);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unsupported opcode: " + (instruction & OPCODE_MASK));
+            }
+        }
+        return values[sp - 1];
+    }
+
+    /**
+     * Pile de {@code double} réutilisée d'une évaluation à l'autre.
+     */
+    private static class EvaluationStack {
+        private double[] values = new double[64];
+
+        /**
+         * Garantit que la pile peut contenir au moins {@code size} valeurs.
+         *
+         * @param size La taille requise.
+         * @return Le tableau des valeurs de la pile.
+         */
+        double[] ensureCapacity(int size) {
+            if (size > values.length) {
+                double[] grown = new double[Math.max(size, values.length * 2)];
+                System.arraycopy(values, 0, grown, 0, values.length);
+                values = grown;
+            }
+            return values;
+        }
+    }
+}
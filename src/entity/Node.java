@@ -5,7 +5,11 @@ import src.exception.UncalculableFormulaException;
 /**
  * La classe abstraite Node représente un nœud dans l'arbre syntaxique d'une
  * formule.
- * Elle fournit une méthode abstraite pour évaluer le nœud.
+ * Elle fournit deux méthodes abstraites pour évaluer le nœud : l'une lit les
+ * valeurs des cellules liées à l'arbre ({@link OperandNode#setCellReference(Cell)}),
+ * l'autre les lit dans une {@link CompiledFormula.ValueSource}, les
+ * références étant alors des décalages par rapport à une cellule d'ancrage,
+ * comme dans une {@link CompiledFormula} relative.
  */
 public abstract class Node {
 
@@ -17,4 +21,17 @@ public abstract class Node {
      *                                      l'évaluation.
      */
     public abstract double evaluate() throws UncalculableFormulaException;
+
+    /**
+     * Évalue le nœud pour une cellule d'ancrage et retourne le résultat.
+     *
+     * @param source La source des valeurs des cellules référencées.
+     * @param row    La ligne de la cellule d'ancrage.
+     * @param column La colonne de la cellule d'ancrage.
+     * @return Le résultat de l'évaluation du nœud.
+     * @throws UncalculableFormulaException Si une erreur se produit lors de
+     *                                      l'évaluation.
+     */
+    public abstract double evaluate(CompiledFormula.ValueSource source, int row, int column)
+            throws UncalculableFormulaException;
 }
@@ -6,9 +6,10 @@ import src.exception.UncalculableFormulaException;
  * Représente un nœud opérande dans un arbre syntaxique pour l'évaluation de
  * formules.
  * Cette classe étend {@code Node} pour stocker soit une valeur numérique
- * directe, soit une référence à une cellule
- * dont la valeur est déterminée en évaluant la formule de la cellule
- * référencée.
+ * directe, soit une référence à une cellule. Une référence est donnée par
+ * son décalage par rapport à la cellule d'ancrage, pour une évaluation dans
+ * une source de valeurs ; elle peut aussi être liée à une {@link Cell}, dont
+ * la valeur en cache est alors lue.
  */
 public class OperandNode extends Node {
     /**
@@ -17,11 +18,18 @@ public class OperandNode extends Node {
      */
     private double value;
 
+    /** Indique si le nœud est une référence de cellule. */
+    private boolean reference;
+
+    /** Le décalage de ligne de la cellule référencée. */
+    private final int rowOffset;
+
+    /** Le décalage de colonne de la cellule référencée. */
+    private final int columnOffset;
+
     /**
-     * Référence à une cellule si le nœud représente une référence plutôt qu'une
-     * valeur numérique directe.
-     * Si {@code null}, le nœud est considéré comme contenant une valeur numérique
-     * directe.
+     * Référence à une cellule si le nœud est lié à la grille.
+     * Si {@code null}, une référence est lue dans la source de valeurs.
      */
     private Cell cellReference;
 
@@ -32,20 +40,75 @@ public class OperandNode extends Node {
      */
     public OperandNode(double value) {
         this.value = value;
+        this.reference = false;
+        this.rowOffset = 0;
+        this.columnOffset = 0;
+        this.cellReference = null;
+    }
+
+    /**
+     * Construit un {@code OperandNode} qui référence une cellule.
+     * 
+     * @param rowOffset    Le décalage de ligne de la cellule référencée par
+     *                     rapport à la cellule d'ancrage.
+     * @param columnOffset Le décalage de colonne de la cellule référencée.
+     */
+    public OperandNode(int rowOffset, int columnOffset) {
+        this.value = 0;
+        this.reference = true;
+        this.rowOffset = rowOffset;
+        this.columnOffset = columnOffset;
         this.cellReference = null;
     }
 
     /**
-     * Évalue le nœud en retournant soit la valeur numérique directe, soit en
-     * évaluant la formule de la cellule référencée.
+     * Évalue le nœud en retournant soit la valeur numérique directe, soit la
+     * valeur de la cellule liée. Cette valeur est lue dans le cache de la
+     * cellule lorsqu'elle a déjà été calculée au cours du recalcul courant ;
+     * sinon la formule de la cellule référencée est évaluée.
      * 
      * @return La valeur numérique représentée par cet opérande.
-     * @throws UncalculableFormulaException Si la formule de la cellule référencée
-     *                                      ne peut pas être calculée.
+     * @throws UncalculableFormulaException Si la référence n'est pas liée à
+     *                                      une cellule, ou si la formule de la
+     *                                      cellule référencée ne peut pas être
+     *                                      calculée.
      */
     @Override
     public double evaluate() throws UncalculableFormulaException {
-        return isReference() ? cellReference.getFormulaAST().evaluate() : value;
+        if (!reference) {
+            return value;
+        }
+        if (cellReference == null) {
+            throw new UncalculableFormulaException("The reference is not linked to a cell.");
+        }
+        if (cellReference.hasCurrentValue()) {
+            return cellReference.getCachedValue();
+        }
+        Node formulaAST = cellReference.getFormulaAST();
+        if (formulaAST == null) {
+            throw new UncalculableFormulaException("The referenced cell has no formula.");
+        }
+        return formulaAST.evaluate();
+    }
+
+    /**
+     * Évalue le nœud en retournant soit la valeur numérique directe, soit la
+     * valeur de la cellule référencée, lue dans la source de valeurs.
+     * 
+     * @param source La source des valeurs des cellules référencées.
+     * @param row    La ligne de la cellule d'ancrage.
+     * @param column La colonne de la cellule d'ancrage.
+     * @return La valeur numérique représentée par cet opérande.
+     * @throws UncalculableFormulaException Si la cellule référencée n'a pas de
+     *                                      valeur calculable.
+     */
+    @Override
+    public double evaluate(CompiledFormula.ValueSource source, int row, int column)
+            throws UncalculableFormulaException {
+        if (!reference) {
+            return value;
+        }
+        return source.valueAt(row + rowOffset, column + columnOffset);
     }
 
     /**
@@ -56,15 +119,33 @@ public class OperandNode extends Node {
      *         {@code false}.
      */
     public boolean isReference() {
-        return this.cellReference != null;
+        return reference;
+    }
+
+    /**
+     * Renvoie le décalage de ligne de la cellule référencée.
+     * 
+     * @return Le décalage de ligne, ou 0 pour une valeur numérique.
+     */
+    public int getRowOffset() {
+        return rowOffset;
+    }
+
+    /**
+     * Renvoie le décalage de colonne de la cellule référencée.
+     * 
+     * @return Le décalage de colonne, ou 0 pour une valeur numérique.
+     */
+    public int getColumnOffset() {
+        return columnOffset;
     }
 
     /**
      * Obtient la cellule référencée par ce nœud, s'il s'agit d'une référence de
-     * cellule.
+     * cellule liée à la grille.
      * 
-     * @return La cellule référencée, ou {@code null} si ce nœud contient une valeur
-     *         numérique directe.
+     * @return La cellule référencée, ou {@code null} si ce nœud n'est pas lié à
+     *         une cellule.
      */
     public Cell getCell() {
         return this.cellReference;
@@ -90,5 +171,6 @@ public class OperandNode extends Node {
      */
     public void setCellReference(Cell cellReference) {
         this.cellReference = cellReference;
+        this.reference = true;
     }
 }
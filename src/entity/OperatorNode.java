@@ -7,9 +7,9 @@ import src.exception.UncalculableFormulaException;
  * un opérateur.
  */
 public class OperatorNode extends Node {
-    private Node left;
-    private Node right;
-    private char operator;
+    private final Node left;
+    private final Node right;
+    private final char operator;
 
     /**
      * Constructeur de la classe OperatorNode.
@@ -34,18 +34,50 @@ public class OperatorNode extends Node {
      */
     @Override
     public double evaluate() throws UncalculableFormulaException {
+        // L'opérande droite est empilée la première par la formule compilée.
+        double b = right.evaluate();
+        return apply(left.evaluate(), b);
+    }
+
+    /**
+     * Évalue le nœud et retourne le résultat de l'opération entre les opérandes
+     * gauche et droite.
+     *
+     * @param source La source des valeurs des cellules référencées.
+     * @param row    La ligne de la cellule d'ancrage.
+     * @param column La colonne de la cellule d'ancrage.
+     * @return Le résultat de l'opération.
+     * @throws UncalculableFormulaException Si une erreur se produit lors de
+     *                                      l'évaluation de l'opération.
+     */
+    @Override
+    public double evaluate(CompiledFormula.ValueSource source, int row, int column)
+            throws UncalculableFormulaException {
+        double b = right.evaluate(source, row, column);
+        return apply(left.evaluate(source, row, column), b);
+    }
+
+    /**
+     * Applique l'opérateur du nœud à deux valeurs.
+     *
+     * @param a La valeur de l'opérande gauche.
+     * @param b La valeur de l'opérande droite.
+     * @return Le résultat de l'opération.
+     * @throws UncalculableFormulaException Si une division par zéro survient.
+     */
+    private double apply(double a, double b) throws UncalculableFormulaException {
         switch (operator) {
             case '+':
-                return left.evaluate() + right.evaluate();
+                return a + b;
             case '-':
-                return left.evaluate() - right.evaluate();
+                return a - b;
             case '*':
-                return left.evaluate() * right.evaluate();
+                return a * b;
             case '/':
-                if (right.evaluate() == 0) {
+                if (b == 0) {
                     throw new UncalculableFormulaException("Division by zero.");
                 }
-                return left.evaluate() / right.evaluate();
+                return a / b;
             default:
                 throw new UnsupportedOperationException("Unsupported operator: " + operator);
         }
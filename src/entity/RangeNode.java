@@ -0,0 +1,63 @@
+package src.entity;
+
+import src.exception.UncalculableFormulaException;
+
+/**
+ * Représente une fonction d'agrégation ({@link CompiledFormula#SUM},
+ * {@link CompiledFormula#AVERAGE}, {@link CompiledFormula#MIN} ou
+ * {@link CompiledFormula#MAX}) sur une plage rectangulaire dans un arbre
+ * syntaxique. Les coins de la plage sont des décalages par rapport à la
+ * cellule d'ancrage.
+ */
+public class RangeNode extends Node {
+    private final int function;
+    private final int top;
+    private final int left;
+    private final int bottom;
+    private final int right;
+
+    /**
+     * Constructeur de la classe RangeNode.
+     *
+     * @param function La fonction d'agrégation.
+     * @param top      Le décalage de la première ligne de la plage.
+     * @param left     Le décalage de la première colonne de la plage.
+     * @param bottom   Le décalage de la dernière ligne de la plage.
+     * @param right    Le décalage de la dernière colonne de la plage.
+     */
+    public RangeNode(int function, int top, int left, int bottom, int right) {
+        this.function = function;
+        this.top = top;
+        this.left = left;
+        this.bottom = bottom;
+        this.right = right;
+    }
+
+    /**
+     * Un agrégat ne peut pas être évalué sans source de valeurs.
+     *
+     * @return Jamais.
+     * @throws UncalculableFormulaException Toujours.
+     */
+    @Override
+    public double evaluate() throws UncalculableFormulaException {
+        throw new UncalculableFormulaException("Range aggregates need a value source.");
+    }
+
+    /**
+     * Évalue le nœud en demandant l'agrégat de la plage à la source de
+     * valeurs.
+     *
+     * @param source La source des valeurs des cellules référencées.
+     * @param row    La ligne de la cellule d'ancrage.
+     * @param column La colonne de la cellule d'ancrage.
+     * @return L'agrégat de la plage.
+     * @throws UncalculableFormulaException Si l'agrégat ne peut pas être
+     *                                      calculé.
+     */
+    @Override
+    public double evaluate(CompiledFormula.ValueSource source, int row, int column)
+            throws UncalculableFormulaException {
+        return source.aggregate(function, row + top, column + left, row + bottom, column + right);
+    }
+}
@@ -4,6 +4,9 @@ package src.exception;
  * Une exception levée lorsqu'une formule est incorrecte.
  */
 public class IncorrectFormulaException extends Exception {
+    /** La position de l'erreur dans la formule, ou -1 si elle est inconnue. */
+    private final int position;
+
     /**
      * Constructeur de l'exception IncorrectFormulaException.
      *
@@ -11,5 +14,28 @@ public class IncorrectFormulaException extends Exception {
      */
     public IncorrectFormulaException(String message) {
         super(message);
+        this.position = -1;
+    }
+
+    /**
+     * Constructeur de l'exception IncorrectFormulaException pour une erreur
+     * située à une position précise de la formule.
+     *
+     * @param message  Le message d'erreur associé à l'exception.
+     * @param position La position (indice du caractère) de l'erreur dans la
+     *                 formule.
+     */
+    public IncorrectFormulaException(String message, int position) {
+        super(message + " (position " + position + ")");
+        this.position = position;
+    }
+
+    /**
+     * Renvoie la position de l'erreur dans la formule.
+     *
+     * @return L'indice du caractère fautif, ou -1 si la position est inconnue.
+     */
+    public int getPosition() {
+        return this.position;
     }
 }
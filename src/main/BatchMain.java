@@ -0,0 +1,151 @@
+package src.main;
+
+import src.model.SheetEngine;
+import src.model.SheetTextFormat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Point d'entrée sans interface graphique pour le calcul de feuilles par lot.
+ * Chaque fichier de formules (voir {@link SheetTextFormat}) est chargé dans
+ * son propre {@link SheetEngine}, recalculé en une seule passe, puis ses
+ * valeurs et statuts sont écrits dans un fichier {@code .out}. Les fichiers
+ * sont traités en parallèle, et le débit de chacun (cellules par seconde) est
+ * affiché sur la sortie d'erreur avec le relevé des compteurs de son moteur,
+ * ainsi que le débit total.
+ * <p>
+ * Usage : {@code java src.main.BatchMain [-o dossier] [-j threads] fichier...}
+ * </p>
+ */
+public class BatchMain {
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private BatchMain() {
+    }
+
+    /**
+     * Méthode principale du traitement par lot.
+     *
+     * @param args Les options puis les fichiers à traiter.
+     */
+    public static void main(String[] args) {
+        Path outputDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                outputDirectory = Paths.get(args[++i]);
+            } else if (args[i].equals("-j") && i + 1 < args.length) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage : java src.main.BatchMain [-o dossier] [-j threads] fichier...");
+            System.exit(2);
+        }
+
+        if (outputDirectory != null) {
+            try {
+                Files.createDirectories(outputDirectory);
+            } catch (IOException e) {
+                System.err.println(outputDirectory + " : " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, inputs.size()));
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Path input : inputs) {
+            Path output = outputFor(input, outputDirectory);
+            results.add(executor.submit(() -> process(input, output)));
+        }
+
+        long cells = 0;
+        int failures = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            try {
+                cells += results.get(i).get();
+            } catch (ExecutionException e) {
+                failures++;
+                System.err.println(inputs.get(i) + " : échec (" + e.getCause() + ")");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures++;
+            }
+        }
+        executor.shutdown();
+        report("Total (" + inputs.size() + " fichiers)", cells, System.nanoTime() - start);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Charge, recalcule et écrit une feuille.
+     *
+     * @param input  Le fichier de formules.
+     * @param output Le fichier de résultats.
+     * @return Le nombre de cellules calculées.
+     * @throws IOException Si la lecture ou l'écriture échoue.
+     */
+    private static int process(Path input, Path output) throws IOException {
+        long start = System.nanoTime();
+        SheetEngine engine = new SheetEngine();
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            SheetTextFormat.read(reader, input.toString(), engine).commit();
+        }
+        int cells;
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            cells = SheetTextFormat.write(engine, writer);
+        }
+        report(input.toString(), cells, System.nanoTime() - start);
+        System.err.println(input + " : " + engine.getMetrics().snapshot());
+        return cells;
+    }
+
+    /**
+     * Renvoie le fichier de résultats d'un fichier de formules.
+     *
+     * @param input     Le fichier de formules.
+     * @param directory Le dossier de sortie, ou null pour celui de l'entrée.
+     * @return Le fichier de résultats, suffixé par {@code .out}.
+     */
+    private static Path outputFor(Path input, Path directory) {
+        String name = input.getFileName() + ".out";
+        if (directory != null) {
+            return directory.resolve(name);
+        }
+        Path parent = input.toAbsolutePath().getParent();
+        return parent == null ? Paths.get(name) : parent.resolve(name);
+    }
+
+    /**
+     * Affiche le nombre de cellules traitées et le débit correspondant.
+     *
+     * @param name    Le nom du traitement.
+     * @param cells   Le nombre de cellules traitées.
+     * @param elapsed La durée du traitement, en nanosecondes.
+     */
+    private static void report(String name, long cells, long elapsed) {
+        double seconds = Math.max(elapsed, 1) / 1e9;
+        System.err.printf("%s : %d cellules en %.3f s (%.0f cellules/s)%n",
+                name, cells, seconds, cells / seconds);
+    }
+}
@@ -0,0 +1,280 @@
+package src.main;
+
+import src.controller.SheetServer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Générateur de charge pour le {@link SheetServer} : prépare une feuille de
+ * {@value #ROWS} lignes ({@code A} des nombres, {@code B} leurs doubles et
+ * {@code C1} la somme de {@code B}), puis ouvre des connexions concurrentes
+ * qui mêlent modifications ({@code SET}) et lectures ({@code GET} et
+ * {@code RANGE}) pendant une durée donnée. Une connexion supplémentaire est
+ * abonnée à {@code C1}, que chaque modification fait changer.
+ * <p>
+ * Le débit et les latences (médiane, 99e centile et maximum, mesurés côté
+ * client, requête par requête) sont affichés sur la sortie standard.
+ * </p>
+ */
+public class LoadGenerator {
+
+    /** Nombre de lignes de la feuille de charge. */
+    private static final int ROWS = 1000;
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private LoadGenerator() {
+    }
+
+    /**
+     * Prépare la feuille de charge, puis exécute la charge et affiche son
+     * relevé.
+     *
+     * @param host          L'adresse du serveur.
+     * @param port          Le port du serveur.
+     * @param connections   Le nombre de connexions concurrentes.
+     * @param seconds       La durée de la charge, en secondes.
+     * @param writePercent  La part des requêtes qui modifient une cellule, en
+     *                      pourcentage.
+     * @throws IOException          Si une connexion échoue.
+     * @throws InterruptedException Si l'attente des connexions est interrompue.
+     */
+    public static void run(String host, int port, int connections, int seconds, int writePercent)
+            throws IOException, InterruptedException {
+        try (Client setup = new Client(host, port)) {
+            StringBuilder batch = new StringBuilder("BATCH " + (2 * ROWS + 1) + "\n");
+            for (int i = 1; i <= ROWS; i++) {
+                batch.append('A').append(i).append(' ').append(i).append('\n');
+                batch.append('B').append(i).append(" * A").append(i).append(" 2\n");
+            }
+            batch.append("C1 SUM B1:B").append(ROWS);
+            setup.request(batch.toString());
+            setup.request("SYNC");
+            System.out.println("Feuille prête : C1 = " + setup.request("GET C1"));
+        }
+
+        Subscriber subscriber = new Subscriber(host, port);
+        Thread listener = new Thread(subscriber, "abonné");
+        listener.setDaemon(true);
+        listener.start();
+
+        ExecutorService threads = SheetServer.newThreadPerTaskExecutor("charge");
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<long[]>> workers = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            workers.add(threads.submit(() -> work(host, port, deadline, writePercent)));
+        }
+        long[][] results = new long[connections][];
+        int total = 0;
+        try {
+            for (int i = 0; i < connections; i++) {
+                results[i] = workers.get(i).get();
+                total += results[i].length;
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Connexion de charge interrompue.", e.getCause());
+        } finally {
+            threads.shutdown();
+        }
+        subscriber.close();
+
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (long[] result : results) {
+            System.arraycopy(result, 0, latencies, offset, result.length);
+            offset += result.length;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%d connexions, %d s, %d %% d'écritures%n", connections, seconds, writePercent);
+        System.out.printf("%d requêtes, %.0f requêtes/s%n", total, total / (double) seconds);
+        if (total > 0) {
+            System.out.printf("latence : médiane %.3f ms, 99e centile %.3f ms, max %.3f ms%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[total - 1] / 1e6);
+        }
+        System.out.println(subscriber.count.get() + " notifications reçues par l'abonné de C1");
+    }
+
+    /**
+     * Exécute les requêtes d'une connexion jusqu'à l'échéance.
+     *
+     * @param host         L'adresse du serveur.
+     * @param port         Le port du serveur.
+     * @param deadline     L'échéance, selon {@link System#nanoTime()}.
+     * @param writePercent La part des modifications, en pourcentage.
+     * @return Les latences des requêtes, en nanosecondes.
+     * @throws IOException Si la connexion échoue.
+     */
+    private static long[] work(String host, int port, long deadline, int writePercent) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[1024];
+        int count = 0;
+        try (Client client = new Client(host, port)) {
+            long now = System.nanoTime();
+            while (now < deadline) {
+                int row = 1 + random.nextInt(ROWS);
+                int choice = random.nextInt(100);
+                String request;
+                if (choice < writePercent) {
+                    request = "SET A" + row + " " + random.nextInt(1000);
+                } else if ((choice & 1) == 0) {
+                    request = "GET " + (random.nextBoolean() ? "C1" : "B" + row);
+                } else {
+                    int last = Math.min(ROWS, row + 19);
+                    request = "RANGE A" + row + ":B" + last;
+                }
+                client.request(request);
+                long end = System.nanoTime();
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = end - now;
+                now = end;
+            }
+            client.request("QUIT");
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * Renvoie un centile de latences triées, en millisecondes.
+     *
+     * @param sorted   Les latences triées, en nanosecondes.
+     * @param fraction Le centile, entre 0 et 1.
+     * @return La latence du centile.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Connexion de test au serveur, qui envoie une requête et attend sa
+     * réponse.
+     */
+    private static class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        /**
+         * Ouvre une connexion.
+         *
+         * @param host L'adresse du serveur.
+         * @param port Le port du serveur.
+         * @throws IOException Si la connexion échoue.
+         */
+        Client(String host, int port) throws IOException {
+            this.socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Envoie une requête et lit sa réponse, y compris les lignes d'une
+         * plage.
+         *
+         * @param request La requête.
+         * @return La première ligne de la réponse.
+         * @throws IOException Si la connexion échoue ou si le serveur répond
+         *                     par une erreur.
+         */
+        String request(String request) throws IOException {
+            out.write(request);
+            out.write('\n');
+            out.flush();
+            String response = in.readLine();
+            if (response == null || !response.startsWith("OK")) {
+                throw new IOException("Réponse inattendue à « " + request + " » : " + response);
+            }
+            if (request.startsWith("RANGE ")) {
+                int rows = Integer.parseInt(response.split(" ")[1]);
+                for (int i = 0; i < rows; i++) {
+                    in.readLine();
+                }
+            }
+            return response;
+        }
+
+        /**
+         * Envoie une ligne sans attendre de réponse.
+         *
+         * @param line La ligne.
+         * @throws IOException Si la connexion échoue.
+         */
+        void send(String line) throws IOException {
+            out.write(line);
+            out.write('\n');
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Connexion abonnée à {@code C1}, qui compte les notifications reçues.
+     */
+    private static class Subscriber implements Runnable {
+        private final Client client;
+        /** Le nombre de notifications reçues. */
+        private final AtomicLong count;
+
+        /**
+         * Ouvre la connexion et s'abonne à {@code C1}.
+         *
+         * @param host L'adresse du serveur.
+         * @param port Le port du serveur.
+         * @throws IOException Si la connexion échoue.
+         */
+        Subscriber(String host, int port) throws IOException {
+            this.client = new Client(host, port);
+            this.count = new AtomicLong();
+            client.request("SUBSCRIBE C1");
+        }
+
+        @Override
+        public void run() {
+            try {
+                String line;
+                while ((line = client.in.readLine()) != null) {
+                    if (line.startsWith("CHANGED ")) {
+                        count.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                // La connexion a été fermée.
+            }
+        }
+
+        /**
+         * Se désabonne et ferme la connexion.
+         */
+        void close() {
+            try {
+                client.send("QUIT");
+                client.close();
+            } catch (IOException e) {
+                // La connexion est déjà fermée.
+            }
+        }
+    }
+}
@@ -2,16 +2,30 @@ package src.main;
 
 import src.controller.GlobalController;
 
+import java.util.Arrays;
+
 /**
  * Classe principale contenant la méthode main pour exécuter l'application.
  */
 public class Main {
     /**
-     * Méthode principale pour exécuter l'application.
+     * Méthode principale pour exécuter l'application. Avec l'option
+     * {@code --batch}, les arguments suivants sont transmis au traitement par
+     * lot de {@link BatchMain}, sans interface graphique ; avec l'option
+     * {@code --server}, ils sont transmis au serveur de calcul de
+     * {@link ServerMain}.
      *
-     * @param args Les arguments de la ligne de commande (non utilisés dans cette application)
+     * @param args Les arguments de la ligne de commande.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchMain.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            ServerMain.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         GlobalController controller = new GlobalController();
     }
 }
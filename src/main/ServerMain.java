@@ -0,0 +1,91 @@
+package src.main;
+
+import src.controller.SheetServer;
+import src.model.GridModel;
+import src.model.TiledGrid;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Point d'entrée du serveur de calcul local ({@link SheetServer}), sans
+ * interface graphique. Avec l'option {@code --load}, le
+ * {@link LoadGenerator} est exécuté contre le serveur indiqué par
+ * {@code -p}, ou, sans port, contre un serveur démarré dans le même processus
+ * puis arrêté à la fin de la charge.
+ * <p>
+ * Usage : {@code java src.main.ServerMain [-p port] [--load [-n connexions]
+ * [-d secondes] [-w pourcentage]]}
+ * </p>
+ */
+public class ServerMain {
+
+    /** Message d'usage. */
+    private static final String USAGE = "Usage : java src.main.ServerMain [-p port]"
+            + " [--load [-n connexions] [-d secondes] [-w pourcentage]]";
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private ServerMain() {
+    }
+
+    /**
+     * Méthode principale du serveur.
+     *
+     * @param args Les options.
+     */
+    public static void main(String[] args) {
+        int port = -1;
+        boolean load = false;
+        int connections = 64;
+        int seconds = 10;
+        int writePercent = 10;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--load")) {
+                    load = true;
+                } else if (args[i].equals("-p") && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-n") && i + 1 < args.length) {
+                    connections = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-d") && i + 1 < args.length) {
+                    seconds = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-w") && i + 1 < args.length) {
+                    writePercent = Math.max(0, Math.min(100, Integer.parseInt(args[++i])));
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        try {
+            if (!load) {
+                SheetServer server = new SheetServer(new GridModel(TiledGrid.MAX_ROWS, TiledGrid.MAX_COLUMNS));
+                server.start(port < 0 ? SheetServer.DEFAULT_PORT : port);
+                System.err.println("Serveur à l'écoute sur le port " + server.getPort());
+                return;
+            }
+            String host = InetAddress.getLoopbackAddress().getHostAddress();
+            if (port >= 0) {
+                LoadGenerator.run(host, port, connections, seconds, writePercent);
+                return;
+            }
+            SheetServer server = new SheetServer(new GridModel(TiledGrid.MAX_ROWS, TiledGrid.MAX_COLUMNS));
+            server.start(0);
+            try {
+                LoadGenerator.run(host, server.getPort(), connections, seconds, writePercent);
+            } finally {
+                server.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package src.model;
+
+/**
+ * Codec des références de cellules en notation A1.
+ * Une colonne s'écrit en base 26 bijective ({@code A} à {@code Z}, puis
+ * {@code AA}, {@code AB}...) et une ligne en décimal, sans limite de longueur.
+ * Une référence n'est analysée qu'une fois : elle est ensuite manipulée sous
+ * la forme d'une clé {@code long} qui regroupe sa ligne et sa colonne, et le
+ * calcul n'utilise plus que ces coordonnées numériques.
+ */
+public class CellReference {
+
+    /** Valeur au-delà de laquelle une ligne ou une colonne n'est plus suivie. */
+    public static final int COORDINATE_LIMIT = 1 << 28;
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private CellReference() {
+    }
+
+    /**
+     * Regroupe une ligne et une colonne en une clé de cellule.
+     *
+     * @param row    La ligne de la cellule (à partir de 0).
+     * @param column La colonne de la cellule (à partir de 0).
+     * @return La clé de la cellule.
+     */
+    public static long pack(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Renvoie la ligne d'une clé de cellule.
+     *
+     * @param key La clé de la cellule.
+     * @return La ligne de la cellule (à partir de 0).
+     */
+    public static int row(long key) {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * Renvoie la colonne d'une clé de cellule.
+     *
+     * @param key La clé de la cellule.
+     * @return La colonne de la cellule (à partir de 0).
+     */
+    public static int column(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Analyse une référence en notation A1, quelle que soit sa longueur.
+     * Les lettres de colonne peuvent être en minuscules.
+     *
+     * @param reference La référence (par exemple "A1", "AB12" ou "xfd1048576").
+     * @return La clé de la cellule.
+     * @throws IllegalArgumentException Si la référence n'est pas de la forme
+     *                                  lettres puis chiffres, ou désigne la
+     *                                  ligne 0.
+     */
+    public static long parse(String reference) {
+        int length = reference.length();
+        int i = 0;
+        int column = 0;
+        while (i < length && isLetter(reference.charAt(i))) {
+            column = accumulateColumn(column, reference.charAt(i));
+            i++;
+        }
+        int letters = i;
+        int row = 0;
+        while (i < length && isDigit(reference.charAt(i))) {
+            row = accumulateRow(row, reference.charAt(i));
+            i++;
+        }
+        if (letters == 0 || i == letters || i != length || row == 0) {
+            throw new IllegalArgumentException("Référence de cellule invalide : " + reference);
+        }
+        return pack(row - 1, column - 1);
+    }
+
+    /**
+     * Écrit la référence A1 d'une cellule.
+     *
+     * @param row    La ligne de la cellule (à partir de 0).
+     * @param column La colonne de la cellule (à partir de 0).
+     * @return La référence de la cellule (par exemple "AB12").
+     */
+    public static String format(int row, int column) {
+        return columnName(column) + (row + 1);
+    }
+
+    /**
+     * Écrit le nom d'une colonne.
+     *
+     * @param column La colonne (à partir de 0).
+     * @return Le nom de la colonne (par exemple "A", "Z" ou "AA").
+     */
+    public static String columnName(int column) {
+        char[] letters = new char[8];
+        int start = letters.length;
+        for (int n = column + 1; n > 0; n = (n - 1) / 26) {
+            letters[--start] = (char) ('A' + (n - 1) % 26);
+        }
+        return new String(letters, start, letters.length - start);
+    }
+
+    /**
+     * Ajoute une lettre au numéro de colonne en cours de lecture. Le numéro est
+     * compté à partir de 1 et plafonné à {@link #COORDINATE_LIMIT} ; le calcul
+     * se fait sur un {@code long}, pour que le plafond tienne quel que soit le
+     * nombre de lettres.
+     *
+     * @param column Le numéro de colonne lu jusqu'ici (0 au départ).
+     * @param letter La lettre suivante.
+     * @return Le nouveau numéro de colonne.
+     */
+    public static int accumulateColumn(int column, char letter) {
+        return (int) Math.min(column * 26L + (Character.toUpperCase(letter) - 'A' + 1), COORDINATE_LIMIT);
+    }
+
+    /**
+     * Ajoute un chiffre au numéro de ligne en cours de lecture. Le numéro est
+     * compté à partir de 1 et plafonné à {@link #COORDINATE_LIMIT}, comme le
+     * numéro de colonne de {@link #accumulateColumn(int, char)}.
+     *
+     * @param row   Le numéro de ligne lu jusqu'ici (0 au départ).
+     * @param digit Le chiffre suivant.
+     * @return Le nouveau numéro de ligne.
+     */
+    public static int accumulateRow(int row, char digit) {
+        return (int) Math.min(row * 10L + (digit - '0'), COORDINATE_LIMIT);
+    }
+
+    /**
+     * Vérifie si un caractère est une lettre de colonne.
+     *
+     * @param c Le caractère à vérifier.
+     * @return True si le caractère est une lettre ASCII, sinon False.
+     */
+    public static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    /**
+     * Vérifie si un caractère est un chiffre décimal.
+     *
+     * @param c Le caractère à vérifier.
+     * @return True si le caractère est un chiffre, sinon False.
+     */
+    public static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,730 @@
+package src.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Graphe des dépendances entre les cellules de la feuille de calcul.
+ * Pour chaque cellule, il conserve ses antécédents (les cellules qu'elle
+ * référence) et ses dépendants (les cellules qui la référencent), de sorte que
+ * retrouver les dépendants d'une cellule coûte O(nombre de dépendants) au lieu
+ * d'un parcours de toute la grille.
+ * <p>
+ * Le graphe reste acyclique : il maintient un ordre topologique de ses
+ * cellules, mis à jour à chaque insertion d'arête par l'algorithme de
+ * Pearce et Kelly, qui ne parcourt que la région comprise entre les deux
+ * extrémités de l'arête. Une formule dont les références fermeraient un cycle
+ * est rejetée : ses arêtes ne sont pas insérées et toutes les cellules du
+ * cycle sont signalées.
+ * </p>
+ * <p>
+ * Chaque formule rejetée conserve le chemin du graphe qui a empêché son
+ * insertion, ainsi que les cellules des cycles qui passent par elle. Une
+ * modification ne réessaie que les formules rejetées dont elle coupe le
+ * chemin, et ne recherche à nouveau que les cycles qu'elle touche ou qui sont
+ * en aval des cellules modifiées : son coût reste proportionnel à la région
+ * qu'elle affecte, même lorsque la feuille contient d'autres cycles.
+ * </p>
+ *
+ * @param <T> Le type qui identifie une cellule dans le graphe.
+ */
+public class DependencyGraph<T> {
+
+    /** Cellules référencées par chaque cellule. */
+    private final Map<T, Set<T>> precedents;
+    /** Cellules qui référencent chaque cellule. */
+    private final Map<T, Set<T>> dependents;
+    /** Position dans l'ordre topologique de chaque cellule qui a au moins une arête. */
+    private final Map<T, Integer> order;
+    /** Prochaine position libre dans l'ordre topologique. */
+    private int nextOrder;
+    /** Formules rejetées car elles fermaient un cycle, par cellule. */
+    private final Map<T, Rejection> rejected;
+    /** Numéro du prochain rejet, qui fixe l'ordre dans lequel les formules sont réessayées. */
+    private long nextRejection;
+    /** Cellules dont une formule rejetée référence chaque cellule. */
+    private final Map<T, Set<T>> rejectedDependents;
+    /** Cellules dont la formule rejetée est bloquée par un chemin passant par chaque cellule. */
+    private final Map<T, Set<T>> blockedBy;
+    /** Cellules des formules rejetées dont les cycles contiennent chaque cellule. */
+    private final Map<T, Set<T>> cycleOwners;
+    /** Cellules dont l'appartenance à un cycle a changé depuis la dernière lecture. */
+    private final Set<T> cycleChanges;
+    /** Le chemin qui a fait échouer la dernière insertion d'arête refusée. */
+    private List<T> blockingPath;
+
+    /**
+     * Formule rejetée car elle fermait un cycle.
+     */
+    private final class Rejection {
+        /** La cellule de la formule. */
+        private final T cell;
+        /** Les antécédents voulus par la formule. */
+        private final List<T> wanted;
+        /** Le numéro du rejet. */
+        private final long sequence;
+        /** Un chemin du graphe, de la cellule vers l'un de ses antécédents voulus. */
+        private List<T> path;
+        /** Les cellules des cycles qui passent par la cellule ; vide si aucun. */
+        private Set<T> cycle;
+
+        /**
+         * Construit le rejet d'une formule.
+         *
+         * @param cell   La cellule de la formule.
+         * @param wanted Les antécédents voulus par la formule.
+         */
+        Rejection(T cell, List<T> wanted) {
+            this.cell = cell;
+            this.wanted = wanted;
+            this.sequence = nextRejection++;
+            this.cycle = Collections.emptySet();
+        }
+    }
+
+    /**
+     * Construit un graphe de dépendances vide.
+     */
+    public DependencyGraph() {
+        this.precedents = new HashMap<>();
+        this.dependents = new HashMap<>();
+        this.order = new HashMap<>();
+        this.nextOrder = 0;
+        this.rejected = new HashMap<>();
+        this.rejectedDependents = new HashMap<>();
+        this.blockedBy = new HashMap<>();
+        this.cycleOwners = new HashMap<>();
+        this.cycleChanges = new LinkedHashSet<>();
+    }
+
+    /**
+     * Remplace les antécédents d'une cellule et met à jour les dépendants
+     * correspondants. Si les nouvelles références ferment un cycle, elles sont
+     * rejetées et la cellule reste sans antécédent.
+     *
+     * @param cell          La cellule dont la formule a changé.
+     * @param newPrecedents Les cellules référencées par la nouvelle formule.
+     * @return true si la formule est acceptée, false si elle est rejetée car
+     *         elle ferme un cycle.
+     */
+    public boolean setPrecedents(T cell, Collection<T> newPrecedents) {
+        return setPrecedents(Collections.singletonMap(cell, newPrecedents)).isEmpty();
+    }
+
+    /**
+     * Remplace les antécédents de plusieurs cellules à la fois. Les anciennes
+     * arêtes de toutes ces cellules sont retirées avant l'insertion des
+     * nouvelles ; les formules rejetées ne sont ensuite réessayées, et les
+     * cycles recherchés, qu'une seule fois pour l'ensemble des cellules.
+     *
+     * @param changes Les nouveaux antécédents, par cellule modifiée.
+     * @return Les cellules modifiées dont la formule est rejetée car elle ferme
+     *         un cycle.
+     */
+    public Set<T> setPrecedents(Map<T, ? extends Collection<T>> changes) {
+        Map<T, Boolean> before = new HashMap<>();
+        for (T cell : changes.keySet()) {
+            removePrecedents(cell);
+            forget(cell, before);
+        }
+
+        Set<T> refused = new LinkedHashSet<>();
+        for (Map.Entry<T, ? extends Collection<T>> change : changes.entrySet()) {
+            if (!insertPrecedents(change.getKey(), change.getValue())) {
+                reject(change.getKey(), new ArrayList<>(change.getValue()));
+                refused.add(change.getKey());
+            }
+        }
+        retryRejected(changes.keySet(), before);
+
+        updateCycles(changes.keySet(), before);
+        for (Map.Entry<T, Boolean> cell : before.entrySet()) {
+            if (cell.getValue() != this.cycleOwners.containsKey(cell.getKey())) {
+                this.cycleChanges.add(cell.getKey());
+            }
+        }
+        return refused;
+    }
+
+    /**
+     * Renvoie les cellules qui référencent directement la cellule donnée.
+     *
+     * @param cell La cellule dont on cherche les dépendants.
+     * @return Les dépendants directs de la cellule (vue non modifiable).
+     */
+    public Set<T> dependentsOf(T cell) {
+        Set<T> set = this.dependents.get(cell);
+        return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Renvoie les cellules directement référencées par la cellule donnée.
+     *
+     * @param cell La cellule dont on cherche les antécédents.
+     * @return Les antécédents directs de la cellule (vue non modifiable).
+     */
+    public Set<T> precedentsOf(T cell) {
+        Set<T> set = this.precedents.get(cell);
+        return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Renvoie la position d'une cellule dans l'ordre topologique du graphe :
+     * toute cellule est placée après ses antécédents.
+     *
+     * @param cell La cellule.
+     * @return La position de la cellule, ou -1 si elle n'a aucune arête.
+     */
+    public int orderOf(T cell) {
+        Integer position = this.order.get(cell);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Indique si une cellule appartient à un cycle de références.
+     *
+     * @param cell La cellule.
+     * @return true si la cellule appartient à un cycle, sinon false.
+     */
+    public boolean isInCycle(T cell) {
+        return this.cycleOwners.containsKey(cell);
+    }
+
+    /**
+     * Renvoie puis oublie les cellules dont l'appartenance à un cycle a changé
+     * depuis le dernier appel. Ces cellules doivent être recalculées.
+     *
+     * @return Les cellules entrées dans un cycle ou sorties d'un cycle.
+     */
+    public Set<T> takeCycleChanges() {
+        Set<T> changes = new LinkedHashSet<>(this.cycleChanges);
+        this.cycleChanges.clear();
+        return changes;
+    }
+
+    /**
+     * Retire toutes les arêtes entrantes d'une cellule.
+     *
+     * @param cell La cellule.
+     */
+    private void removePrecedents(T cell) {
+        Set<T> oldPrecedents = this.precedents.remove(cell);
+        if (oldPrecedents == null) {
+            return;
+        }
+        for (T precedent : oldPrecedents) {
+            removeFrom(this.dependents, precedent, cell);
+            releasePosition(precedent);
+        }
+        releasePosition(cell);
+    }
+
+    /**
+     * Libère la position d'une cellule qui n'a plus aucune arête : elle n'est
+     * contrainte par aucune autre, et en recevra une nouvelle avec sa
+     * prochaine arête.
+     *
+     * @param cell La cellule.
+     */
+    private void releasePosition(T cell) {
+        if (!this.precedents.containsKey(cell) && !this.dependents.containsKey(cell)) {
+            this.order.remove(cell);
+        }
+    }
+
+    /**
+     * Insère les arêtes entrantes d'une cellule. Si l'une d'elles ferme un
+     * cycle, celles déjà insérées sont retirées et le chemin qui a bloqué
+     * l'insertion est conservé dans {@link #blockingPath}.
+     *
+     * @param cell          La cellule.
+     * @param newPrecedents Ses antécédents.
+     * @return true si toutes les arêtes ont été insérées, false si l'une d'elles
+     *         ferme un cycle.
+     */
+    private boolean insertPrecedents(T cell, Collection<T> newPrecedents) {
+        for (T precedent : newPrecedents) {
+            if (!addEdge(precedent, cell)) {
+                removePrecedents(cell);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Enregistre le rejet de la formule d'une cellule, bloquée par le chemin
+     * de la dernière insertion refusée.
+     *
+     * @param cell   La cellule.
+     * @param wanted Les antécédents voulus par sa formule.
+     */
+    private void reject(T cell, List<T> wanted) {
+        Rejection rejection = new Rejection(cell, wanted);
+        this.rejected.put(cell, rejection);
+        for (T precedent : wanted) {
+            this.rejectedDependents.computeIfAbsent(precedent, k -> new HashSet<>()).add(cell);
+        }
+        block(rejection);
+    }
+
+    /**
+     * Associe une formule rejetée au chemin de la dernière insertion refusée.
+     *
+     * @param rejection La formule rejetée.
+     */
+    private void block(Rejection rejection) {
+        rejection.path = this.blockingPath;
+        for (T step : rejection.path) {
+            this.blockedBy.computeIfAbsent(step, k -> new HashSet<>()).add(rejection.cell);
+        }
+    }
+
+    /**
+     * Détache une formule rejetée du chemin qui la bloquait.
+     *
+     * @param rejection La formule rejetée.
+     */
+    private void unblock(Rejection rejection) {
+        for (T step : rejection.path) {
+            removeFrom(this.blockedBy, step, rejection.cell);
+        }
+    }
+
+    /**
+     * Oublie la formule rejetée d'une cellule, le cas échéant, ainsi que ses
+     * cycles.
+     *
+     * @param cell   La cellule.
+     * @param before L'appartenance à un cycle, avant la modification en
+     *               cours, des cellules dont elle a pu changer.
+     */
+    private void forget(T cell, Map<T, Boolean> before) {
+        Rejection rejection = this.rejected.remove(cell);
+        if (rejection == null) {
+            return;
+        }
+        for (T precedent : rejection.wanted) {
+            removeFrom(this.rejectedDependents, precedent, cell);
+        }
+        unblock(rejection);
+        setCycle(rejection, Collections.emptySet(), before);
+    }
+
+    /**
+     * Réessaie d'insérer les formules rejetées dont le chemin bloquant passe
+     * par une cellule qui vient d'être modifiée, dans l'ordre de leur rejet.
+     * Les autres restent bloquées, puisque leur chemin est intact. Une formule
+     * dont le chemin a été rompu est acceptée, ou bloquée par un autre chemin.
+     *
+     * @param modified Les cellules qui viennent d'être modifiées.
+     * @param before   L'appartenance à un cycle, avant la modification en
+     *                 cours, des cellules dont elle a pu changer.
+     */
+    private void retryRejected(Set<T> modified, Map<T, Boolean> before) {
+        List<Rejection> candidates = new ArrayList<>();
+        Set<T> seen = new HashSet<>();
+        for (T cell : modified) {
+            for (T blocked : this.blockedBy.getOrDefault(cell, Collections.emptySet())) {
+                if (!modified.contains(blocked) && seen.add(blocked)) {
+                    candidates.add(this.rejected.get(blocked));
+                }
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        for (Rejection rejection : candidates) {
+            if (insertPrecedents(rejection.cell, rejection.wanted)) {
+                forget(rejection.cell, before);
+            } else {
+                unblock(rejection);
+                block(rejection);
+            }
+        }
+    }
+
+    /**
+     * Recherche à nouveau les cycles des formules rejetées qu'une
+     * modification a pu changer : ceux qui contiennent une cellule modifiée,
+     * dont une arête a pu disparaître, et ceux des formules rejetées en aval
+     * des cellules modifiées, que leurs nouvelles arêtes ont pu étendre. Les
+     * autres cycles ne passent par aucune arête ajoutée ou retirée.
+     * Les cycles qui passent par une formule rejetée sont formés des cellules
+     * de sa composante fortement connexe : celles de toutes les formules à
+     * revoir sont calculées en un seul parcours de la région en aval, quel que
+     * soit le nombre de ces formules.
+     *
+     * @param modified Les cellules qui viennent d'être modifiées.
+     * @param before   L'appartenance à un cycle, avant la modification en
+     *                 cours, des cellules dont elle a pu changer.
+     */
+    private void updateCycles(Set<T> modified, Map<T, Boolean> before) {
+        if (this.rejected.isEmpty()) {
+            return;
+        }
+        Set<T> stale = new LinkedHashSet<>();
+        for (T cell : modified) {
+            stale.addAll(this.cycleOwners.getOrDefault(cell, Collections.emptySet()));
+        }
+        for (T cell : reachable(modified, true, null)) {
+            if (this.rejected.containsKey(cell)) {
+                stale.add(cell);
+            }
+        }
+        for (T cell : modified) {
+            if (this.rejected.containsKey(cell)) {
+                stale.add(cell);
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+        Set<T> region = reachable(stale, true, null);
+        region.addAll(stale);
+        Map<T, Set<T>> cycles = findCycles(region);
+        for (T cell : stale) {
+            setCycle(this.rejected.get(cell), cycles.getOrDefault(cell, Collections.emptySet()), before);
+        }
+    }
+
+    /**
+     * Remplace les cellules des cycles d'une formule rejetée.
+     *
+     * @param rejection La formule rejetée.
+     * @param cycle     Les cellules de ses nouveaux cycles.
+     * @param before    L'appartenance à un cycle, avant la modification en
+     *                  cours, des cellules dont elle a pu changer.
+     */
+    private void setCycle(Rejection rejection, Set<T> cycle, Map<T, Boolean> before) {
+        for (T cell : rejection.cycle) {
+            before.putIfAbsent(cell, true);
+            removeFrom(this.cycleOwners, cell, rejection.cell);
+        }
+        for (T cell : cycle) {
+            before.putIfAbsent(cell, this.cycleOwners.containsKey(cell));
+            this.cycleOwners.computeIfAbsent(cell, k -> new HashSet<>()).add(rejection.cell);
+        }
+        rejection.cycle = cycle;
+    }
+
+    /**
+     * Recherche les cycles d'une région du graphe close vers l'aval, en
+     * tenant compte des arêtes rejetées : ce sont ses composantes fortement
+     * connexes de plus d'une cellule, ou d'une cellule qui se référence
+     * elle-même (algorithme de Tarjan, sans récursion). Une région close vers
+     * l'aval contient tous les cycles qui passent par ses cellules.
+     *
+     * @param region Les cellules de la région, avec toutes les cellules en
+     *               aval d'elles.
+     * @return Les cellules de leurs cycles, pour chaque cellule d'un cycle ;
+     *         les cellules d'un même cycle partagent le même ensemble.
+     */
+    private Map<T, Set<T>> findCycles(Set<T> region) {
+        Map<T, Integer> index = new HashMap<>();
+        Map<T, Integer> low = new HashMap<>();
+        ArrayDeque<T> component = new ArrayDeque<>();
+        Set<T> open = new HashSet<>();
+        ArrayDeque<T> path = new ArrayDeque<>();
+        ArrayDeque<Iterator<T>> successors = new ArrayDeque<>();
+        Map<T, Set<T>> cycles = new HashMap<>();
+        for (T root : region) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            index.put(root, index.size());
+            low.put(root, index.get(root));
+            component.push(root);
+            open.add(root);
+            path.push(root);
+            successors.push(successors(root).iterator());
+            while (!path.isEmpty()) {
+                T cell = path.peek();
+                Iterator<T> next = successors.peek();
+                if (next.hasNext()) {
+                    T successor = next.next();
+                    if (!index.containsKey(successor)) {
+                        index.put(successor, index.size());
+                        low.put(successor, index.get(successor));
+                        component.push(successor);
+                        open.add(successor);
+                        path.push(successor);
+                        successors.push(successors(successor).iterator());
+                    } else if (open.contains(successor)) {
+                        low.put(cell, Math.min(low.get(cell), index.get(successor)));
+                    }
+                    continue;
+                }
+                path.pop();
+                successors.pop();
+                if (!path.isEmpty()) {
+                    low.put(path.peek(), Math.min(low.get(path.peek()), low.get(cell)));
+                }
+                if (low.get(cell).equals(index.get(cell))) {
+                    Set<T> members = new HashSet<>();
+                    T member;
+                    do {
+                        member = component.pop();
+                        open.remove(member);
+                        members.add(member);
+                    } while (!member.equals(cell));
+                    if (members.size() > 1 || this.rejectedDependents.getOrDefault(cell,
+                            Collections.emptySet()).contains(cell)) {
+                        Set<T> cycle = Collections.unmodifiableSet(members);
+                        for (T inCycle : members) {
+                            cycles.put(inCycle, cycle);
+                        }
+                    }
+                }
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Renvoie les successeurs d'une cellule, par les arêtes du graphe et par
+     * les arêtes rejetées.
+     *
+     * @param cell La cellule.
+     * @return Ses dépendants, y compris ceux dont la formule est rejetée.
+     */
+    private List<T> successors(T cell) {
+        List<T> next = new ArrayList<>(this.dependents.getOrDefault(cell, Collections.emptySet()));
+        next.addAll(this.rejectedDependents.getOrDefault(cell, Collections.emptySet()));
+        return next;
+    }
+
+    /**
+     * Renvoie les cellules atteignables en au moins un pas depuis des
+     * cellules, en suivant à la fois les arêtes du graphe et les arêtes
+     * rejetées.
+     *
+     * @param starts  Les cellules de départ.
+     * @param forward true pour descendre vers les dépendants, false pour
+     *                remonter vers les antécédents.
+     * @param within  Les seules cellules que le parcours peut atteindre, ou
+     *                null pour toutes.
+     * @return Les cellules atteintes.
+     */
+    private Set<T> reachable(Collection<T> starts, boolean forward, Set<T> within) {
+        Set<T> reached = new HashSet<>();
+        ArrayDeque<T> stack = new ArrayDeque<>(starts);
+        while (!stack.isEmpty()) {
+            T cell = stack.pop();
+            if (forward) {
+                visit(this.dependents.get(cell), within, reached, stack);
+                visit(this.rejectedDependents.get(cell), within, reached, stack);
+            } else {
+                visit(this.precedents.get(cell), within, reached, stack);
+                Rejection rejection = this.rejected.get(cell);
+                visit(rejection == null ? null : rejection.wanted, within, reached, stack);
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Empile les voisins d'une cellule qui n'ont pas encore été atteints.
+     *
+     * @param neighbours Les voisins de la cellule, ou null.
+     * @param within     Les seules cellules atteignables, ou null.
+     * @param reached    Les cellules déjà atteintes.
+     * @param stack      La pile du parcours.
+     */
+    private void visit(Collection<T> neighbours, Set<T> within, Set<T> reached, ArrayDeque<T> stack) {
+        if (neighbours == null) {
+            return;
+        }
+        for (T neighbour : neighbours) {
+            if ((within == null || within.contains(neighbour)) && reached.add(neighbour)) {
+                stack.push(neighbour);
+            }
+        }
+    }
+
+    /**
+     * Retire une valeur de l'ensemble associé à une clé, et la clé avec son
+     * ensemble s'il devient vide.
+     *
+     * @param index L'index.
+     * @param key   La clé.
+     * @param value La valeur retirée.
+     */
+    private void removeFrom(Map<T, Set<T>> index, T key, T value) {
+        Set<T> set = index.get(key);
+        if (set != null) {
+            set.remove(value);
+            if (set.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Insère l'arête {@code precedent -> dependent} en maintenant l'ordre
+     * topologique (algorithme de Pearce et Kelly). Lorsque l'arête contredit
+     * l'ordre courant, seules les cellules dont la position est comprise entre
+     * celles des deux extrémités sont visitées puis réordonnées.
+     *
+     * @param precedent La cellule référencée.
+     * @param dependent La cellule dont la formule la référence.
+     * @return true si l'arête a été insérée, false si elle fermerait un cycle ;
+     *         le chemin du cycle est alors conservé dans {@link #blockingPath}.
+     */
+    private boolean addEdge(T precedent, T dependent) {
+        if (precedent.equals(dependent)) {
+            this.blockingPath = Collections.singletonList(dependent);
+            return false;
+        }
+        if (this.nextOrder > Integer.MAX_VALUE - 2) {
+            compactPositions();
+        }
+        int lower = position(dependent);
+        int upper = position(precedent);
+        if (lower < upper) {
+            List<T> forward = searchForward(dependent, precedent, upper);
+            if (forward == null) {
+                return false;
+            }
+            List<T> backward = searchBackward(precedent, lower);
+            reorder(backward, forward);
+        }
+        this.precedents.computeIfAbsent(dependent, k -> new LinkedHashSet<>()).add(precedent);
+        this.dependents.computeIfAbsent(precedent, k -> new LinkedHashSet<>()).add(dependent);
+        return true;
+    }
+
+    /**
+     * Parcourt les dépendants de {@code start} dont la position est inférieure
+     * à {@code upper}. Si {@code target} est atteinte, le chemin qui y mène
+     * depuis {@code start} est conservé dans {@link #blockingPath}.
+     *
+     * @param start  La cellule de départ.
+     * @param target La cellule dont l'atteinte révèle un cycle.
+     * @param upper  La position au-delà de laquelle le parcours s'arrête.
+     * @return Les cellules visitées, ou null si {@code target} est atteinte.
+     */
+    private List<T> searchForward(T start, T target, int upper) {
+        ArrayDeque<T> stack = new ArrayDeque<>();
+        Map<T, T> parents = new HashMap<>();
+        List<T> visited = new ArrayList<>();
+        stack.push(start);
+        parents.put(start, start);
+        while (!stack.isEmpty()) {
+            T cell = stack.pop();
+            visited.add(cell);
+            for (T next : dependentsOf(cell)) {
+                if (next.equals(target)) {
+                    List<T> path = new ArrayList<>();
+                    path.add(target);
+                    for (T step = cell; !step.equals(start); step = parents.get(step)) {
+                        path.add(step);
+                    }
+                    path.add(start);
+                    Collections.reverse(path);
+                    this.blockingPath = path;
+                    return null;
+                }
+                if (position(next) < upper && !parents.containsKey(next)) {
+                    parents.put(next, cell);
+                    stack.push(next);
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Parcourt les antécédents de {@code start} dont la position est au moins
+     * {@code lower}.
+     *
+     * @param start La cellule de départ.
+     * @param lower La position minimale visitée.
+     * @return Les cellules visitées.
+     */
+    private List<T> searchBackward(T start, int lower) {
+        ArrayDeque<T> stack = new ArrayDeque<>();
+        Set<T> seen = new HashSet<>();
+        List<T> visited = new ArrayList<>();
+        stack.push(start);
+        seen.add(start);
+        while (!stack.isEmpty()) {
+            T cell = stack.pop();
+            visited.add(cell);
+            for (T previous : precedentsOf(cell)) {
+                if (position(previous) > lower && seen.add(previous)) {
+                    stack.push(previous);
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Réattribue les positions des cellules visitées : les antécédents de la
+     * nouvelle arête prennent les plus petites positions disponibles, suivis de
+     * ses dépendants, chaque groupe conservant son ordre relatif.
+     *
+     * @param backward Les cellules visitées en remontant depuis l'antécédent.
+     * @param forward  Les cellules visitées en descendant depuis le dépendant.
+     */
+    private void reorder(List<T> backward, List<T> forward) {
+        backward.sort((a, b) -> Integer.compare(position(a), position(b)));
+        forward.sort((a, b) -> Integer.compare(position(a), position(b)));
+        int[] positions = new int[backward.size() + forward.size()];
+        int k = 0;
+        for (T cell : backward) {
+            positions[k++] = position(cell);
+        }
+        for (T cell : forward) {
+            positions[k++] = position(cell);
+        }
+        Arrays.sort(positions);
+        k = 0;
+        for (T cell : backward) {
+            this.order.put(cell, positions[k++]);
+        }
+        for (T cell : forward) {
+            this.order.put(cell, positions[k++]);
+        }
+    }
+
+    /**
+     * Renvoie la position d'une cellule dans l'ordre topologique, en lui en
+     * attribuant une nouvelle si elle n'en a pas encore.
+     *
+     * @param cell La cellule.
+     * @return La position de la cellule.
+     */
+    private int position(T cell) {
+        Integer position = this.order.get(cell);
+        if (position == null) {
+            position = this.nextOrder++;
+            this.order.put(cell, position);
+        }
+        return position;
+    }
+
+    /**
+     * Renumérote les positions de l'ordre topologique de 0 au nombre de
+     * cellules, dans le même ordre, lorsque les positions libérées ont épuisé
+     * les entiers disponibles. L'insertion d'une arête s'en charge avant de
+     * lire les positions de ses extrémités, qui restent ainsi comparables.
+     */
+    private void compactPositions() {
+        List<Map.Entry<T, Integer>> entries = new ArrayList<>(this.order.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        this.nextOrder = 0;
+        for (Map.Entry<T, Integer> entry : entries) {
+            entry.setValue(this.nextOrder++);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package src.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Événements JDK Flight Recorder émis par le {@link SheetEngine} pour les
+ * trois phases du travail du moteur : l'analyse d'une formule, la
+ * propagation d'une modification aux cellules dépendantes et leur
+ * évaluation. Chaque événement porte la référence de la cellule concernée et
+ * le nombre de cellules non vides de la feuille.
+ * <p>
+ * Les événements ne coûtent presque rien lorsque l'enregistrement est
+ * inactif ; leurs champs textuels ne sont calculés que si l'événement doit
+ * être enregistré. Pour les capturer :
+ * {@code java -XX:StartFlightRecording=filename=tableur.jfr -jar tableur.jar}.
+ * </p>
+ */
+public class EngineEvents {
+
+    /**
+     * Constructeur privé : la classe ne fournit que des types imbriqués.
+     */
+    private EngineEvents() {
+    }
+
+    /**
+     * Analyse et internement de la formule d'une cellule.
+     */
+    @Name("tableur.Parse")
+    @Label("Analyse d'une formule")
+    @Category("Tableur")
+    @Description("Remplacement de la formule d'une cellule, avec son analyse si elle est nouvelle.")
+    static class ParseEvent extends Event {
+        @Label("Cellule")
+        String cell;
+
+        @Label("Taille de la feuille")
+        int sheetSize;
+
+        @Label("Formule")
+        String formula;
+    }
+
+    /**
+     * Propagation d'une modification : marquage des cellules dépendantes et
+     * calcul de leur ordre d'évaluation.
+     */
+    @Name("tableur.Propagate")
+    @Label("Propagation")
+    @Category("Tableur")
+    @Description("Recherche des cellules à recalculer et de leur ordre topologique.")
+    static class PropagateEvent extends Event {
+        @Label("Cellule")
+        String cell;
+
+        @Label("Taille de la feuille")
+        int sheetSize;
+
+        @Label("Cellules à recalculer")
+        int dirtyCells;
+    }
+
+    /**
+     * Évaluation des cellules d'un recalcul.
+     */
+    @Name("tableur.Evaluate")
+    @Label("Évaluation")
+    @Category("Tableur")
+    @Description("Évaluation, dans l'ordre topologique, des cellules d'un recalcul.")
+    static class EvaluateEvent extends Event {
+        @Label("Cellule")
+        String cell;
+
+        @Label("Taille de la feuille")
+        int sheetSize;
+
+        @Label("Cellules évaluées")
+        int evaluatedCells;
+
+        @Label("Parallèle")
+        boolean parallel;
+    }
+}
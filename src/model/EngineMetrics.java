@@ -0,0 +1,279 @@
+package src.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs et histogramme des durées de recalcul d'un {@link SheetEngine}.
+ * Les compteurs sont des {@link LongAdder} : ils sont incrémentés sans
+ * contention par les threads du recalcul parallèle, et peuvent être lus à tout
+ * moment depuis un autre thread, par exemple celui de Swing, au travers d'un
+ * {@link Snapshot}.
+ * <p>
+ * L'histogramme range chaque recalcul dans un intervalle de durée de la forme
+ * [2<sup>k</sup>, 2<sup>k+1</sup>[ microsecondes : les percentiles qu'il
+ * donne sont des bornes supérieures, exactes à un facteur deux près.
+ * </p>
+ */
+public class EngineMetrics {
+
+    /** Nombre d'intervalles de l'histogramme des durées. */
+    public static final int BUCKETS = 40;
+
+    /** Les cellules évaluées. */
+    private final LongAdder cellsEvaluated = new LongAdder();
+    /** Les formules analysées et compilées. */
+    private final LongAdder formulasCompiled = new LongAdder();
+    /** Les formules retrouvées déjà compilées dans la réserve. */
+    private final LongAdder cacheHits = new LongAdder();
+    /** Les vérifications de cycle du graphe des dépendances. */
+    private final LongAdder cycleChecks = new LongAdder();
+    /** Les recalculs. */
+    private final LongAdder recalculations = new LongAdder();
+    /** La durée cumulée des recalculs, en nanosecondes. */
+    private final LongAdder totalNanos = new LongAdder();
+    /** La durée du plus long recalcul, en nanosecondes. */
+    private final AtomicLong maxNanos = new AtomicLong();
+    /** Le nombre de recalculs par intervalle de durée. */
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Compte des cellules évaluées.
+     *
+     * @param count Le nombre de cellules évaluées.
+     */
+    void cellsEvaluated(int count) {
+        cellsEvaluated.add(count);
+    }
+
+    /**
+     * Compte une formule analysée et compilée.
+     */
+    void formulaCompiled() {
+        formulasCompiled.increment();
+    }
+
+    /**
+     * Compte une formule retrouvée déjà compilée.
+     */
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Compte une vérification de cycle.
+     */
+    void cycleCheck() {
+        cycleChecks.increment();
+    }
+
+    /**
+     * Enregistre la durée d'un recalcul.
+     *
+     * @param nanos La durée du recalcul, en nanosecondes.
+     */
+    void recalculated(long nanos) {
+        recalculations.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        histogram.incrementAndGet(bucketOf(nanos));
+    }
+
+    /**
+     * Renvoie l'intervalle de l'histogramme d'une durée.
+     *
+     * @param nanos La durée, en nanosecondes.
+     * @return Le rang de l'intervalle.
+     */
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Remet tous les compteurs à zéro.
+     */
+    public void reset() {
+        cellsEvaluated.reset();
+        formulasCompiled.reset();
+        cacheHits.reset();
+        cycleChecks.reset();
+        recalculations.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        for (int k = 0; k < BUCKETS; k++) {
+            histogram.set(k, 0);
+        }
+    }
+
+    /**
+     * Relève l'état courant des compteurs. Les compteurs étant lus un à un
+     * pendant que le moteur continue de travailler, le relevé peut mêler deux
+     * recalculs successifs.
+     *
+     * @return Le relevé des compteurs.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int k = 0; k < BUCKETS; k++) {
+            counts[k] = histogram.get(k);
+        }
+        return new Snapshot(cellsEvaluated.sum(), formulasCompiled.sum(), cacheHits.sum(), cycleChecks.sum(),
+                recalculations.sum(), totalNanos.sum(), maxNanos.get(), counts);
+    }
+
+    /**
+     * Relevé immuable des compteurs d'un moteur.
+     */
+    public static final class Snapshot {
+        private final long cellsEvaluated;
+        private final long formulasCompiled;
+        private final long cacheHits;
+        private final long cycleChecks;
+        private final long recalculations;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] histogram;
+
+        /**
+         * Construit un relevé.
+         *
+         * @param cellsEvaluated   Le nombre de cellules évaluées.
+         * @param formulasCompiled Le nombre de formules compilées.
+         * @param cacheHits        Le nombre de formules retrouvées compilées.
+         * @param cycleChecks      Le nombre de vérifications de cycle.
+         * @param recalculations   Le nombre de recalculs.
+         * @param totalNanos       La durée cumulée des recalculs.
+         * @param maxNanos         La durée du plus long recalcul.
+         * @param histogram        Le nombre de recalculs par intervalle.
+         */
+        private Snapshot(long cellsEvaluated, long formulasCompiled, long cacheHits, long cycleChecks,
+                long recalculations, long totalNanos, long maxNanos, long[] histogram) {
+            this.cellsEvaluated = cellsEvaluated;
+            this.formulasCompiled = formulasCompiled;
+            this.cacheHits = cacheHits;
+            this.cycleChecks = cycleChecks;
+            this.recalculations = recalculations;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Renvoie le nombre de cellules évaluées.
+         *
+         * @return Le nombre de cellules évaluées.
+         */
+        public long getCellsEvaluated() {
+            return cellsEvaluated;
+        }
+
+        /**
+         * Renvoie le nombre de formules analysées et compilées.
+         *
+         * @return Le nombre de formules compilées.
+         */
+        public long getFormulasCompiled() {
+            return formulasCompiled;
+        }
+
+        /**
+         * Renvoie le nombre de formules retrouvées déjà compilées dans la
+         * réserve, sans nouvelle analyse.
+         *
+         * @return Le nombre de succès du cache des formules.
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        /**
+         * Renvoie le nombre de vérifications de cycle.
+         *
+         * @return Le nombre de vérifications de cycle.
+         */
+        public long getCycleChecks() {
+            return cycleChecks;
+        }
+
+        /**
+         * Renvoie le nombre de recalculs.
+         *
+         * @return Le nombre de recalculs.
+         */
+        public long getRecalculations() {
+            return recalculations;
+        }
+
+        /**
+         * Renvoie la durée moyenne d'un recalcul.
+         *
+         * @return La durée moyenne, en nanosecondes, ou 0 sans recalcul.
+         */
+        public long getMeanNanos() {
+            return recalculations == 0 ? 0 : totalNanos / recalculations;
+        }
+
+        /**
+         * Renvoie la durée du plus long recalcul.
+         *
+         * @return La durée maximale, en nanosecondes.
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Renvoie le nombre de recalculs d'un intervalle de l'histogramme.
+         *
+         * @param bucket Le rang de l'intervalle, de 0 à {@link #BUCKETS} - 1 :
+         *               l'intervalle k &gt; 0 couvre les durées de
+         *               2<sup>k-1</sup> à 2<sup>k</sup> microsecondes.
+         * @return Le nombre de recalculs de l'intervalle.
+         */
+        public long getHistogram(int bucket) {
+            return histogram[bucket];
+        }
+
+        /**
+         * Renvoie une borne supérieure d'un percentile des durées de recalcul.
+         *
+         * @param percentile Le percentile, entre 0 et 100.
+         * @return La borne supérieure de l'intervalle contenant le
+         *         percentile, en nanosecondes, ou 0 sans recalcul.
+         */
+        public long percentileNanos(double percentile) {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int k = 0; k < histogram.length; k++) {
+                seen += histogram[k];
+                if (seen >= rank) {
+                    return Math.min((1L << k) * 1000, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * Renvoie un résumé du relevé, sur une ligne.
+         *
+         * @return Le résumé du relevé.
+         */
+        @Override
+        public String toString() {
+            return String.format("%d recalculs (moyenne %.2f ms, p99 %.2f ms, max %.2f ms), "
+                    + "%d cellules évaluées, %d formules compilées, %d réutilisées, %d vérifications de cycle",
+                    recalculations, getMeanNanos() / 1e6, percentileNanos(99) / 1e6, maxNanos / 1e6,
+                    cellsEvaluated, formulasCompiled, cacheHits, cycleChecks);
+        }
+    }
+}
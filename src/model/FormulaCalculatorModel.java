@@ -1,16 +1,18 @@
 package src.model;
 
 import src.entity.Cell;
+import src.entity.CompiledFormula;
 import src.entity.Node;
 import src.entity.OperandNode;
 import src.entity.OperatorNode;
+import src.entity.RangeNode;
 import src.entity.Status;
 import src.exception.*;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.Set;
 
 /**
  * La classe FormulaCalculatorModel fournit des méthodes pour calculer les
@@ -19,12 +21,47 @@ import java.util.regex.Pattern;
  * vérifier les références circulaires.
  * Elle contient des méthodes statiques qui opèrent sur des objets de cellule et
  * des tableaux de feuilles de calcul.
+ * <p>
+ * Sur la grille d'un {@link GridModel}, les cellules sont des adaptateurs du
+ * {@link SheetEngine} dont la valeur est mise en cache après chaque recalcul :
+ * une cellule référencée à jour est lue dans ce cache, sans être réévaluée.
+ * </p>
  */
 
 public class FormulaCalculatorModel {
 
+    /**
+     * Indique si les formules sont évaluées sous leur forme compilée plutôt que
+     * par le parcours de leur AST. La propriété système
+     * {@code tableur.evaluator=tree} permet de revenir à l'évaluation par AST.
+     */
+    private static volatile boolean compiledEvaluation = !"tree".equals(System.getProperty("tableur.evaluator"));
+
+    /**
+     * Choisit le mode d'évaluation des formules, afin de pouvoir comparer
+     * l'évaluateur compilé à l'évaluateur par AST.
+     *
+     * @param compiled true pour évaluer les formules compilées, false pour
+     *                 évaluer les AST.
+     */
+    public static void setCompiledEvaluation(boolean compiled) {
+        compiledEvaluation = compiled;
+    }
+
+    /**
+     * Indique si les formules sont évaluées sous leur forme compilée.
+     *
+     * @return true si l'évaluateur compilé est utilisé, false pour les AST.
+     */
+    public static boolean isCompiledEvaluation() {
+        return compiledEvaluation;
+    }
+
     /**
      * Calcule la formule contenue dans une cellule de la feuille de calcul.
+     * Cette méthode s'adresse aux cellules qui ne sont pas suivies par un
+     * {@link DependencyGraph} : elle recherche elle-même les références
+     * circulaires avant d'évaluer la formule.
      *
      * @param cell        La cellule contenant la formule à calculer.
      * @param spreadsheet La grille de cellules dans laquelle la cellule est située.
@@ -37,6 +74,31 @@ public class FormulaCalculatorModel {
      */
     public static double calculateCellFormula(Cell cell, Cell[][] spreadsheet)
             throws EmptyFormulaException, UncalculableFormulaException, IncorrectFormulaException {
+        if (cell != null && containsCircularReference(cell, spreadsheet)) {
+            throw new IncorrectFormulaException("Circular reference detected.");
+        }
+        prepareCellFormula(cell, spreadsheet);
+        return evaluateCellFormula(cell);
+    }
+
+    /**
+     * Vérifie la formule d'une cellule et construit sa forme évaluable (formule
+     * compilée ou AST, selon le mode d'évaluation) si elle n'existe pas encore,
+     * sans l'évaluer.
+     * Les références circulaires ne sont pas recherchées ici : elles sont
+     * détectées par le {@link DependencyGraph} à l'insertion des arêtes. Une
+     * cellule référencée marquée incorrecte n'est pas parcourue.
+     *
+     * @param cell        La cellule contenant la formule à préparer.
+     * @param spreadsheet La grille de cellules dans laquelle la cellule est située.
+     * @throws EmptyFormulaException        Si la formule de la cellule est vide.
+     * @throws UncalculableFormulaException Si la formule ne peut pas être
+     *                                      construite.
+     * @throws IncorrectFormulaException    Si la formule de la cellule est
+     *                                      incorrecte.
+     */
+    public static void prepareCellFormula(Cell cell, Cell[][] spreadsheet)
+            throws EmptyFormulaException, UncalculableFormulaException, IncorrectFormulaException {
         if (cell == null) {
             throw new IllegalArgumentException("Cell reference cannot be found");
         }
@@ -45,19 +107,35 @@ public class FormulaCalculatorModel {
             throw new EmptyFormulaException("The cell contains an empty formula.");
         }
 
-        if (!isSyntaxCorrect(formula)) {
-            throw new IncorrectFormulaException("The cell contains an incorrect formula.");
-        }
+        CompiledFormula parsed = FormulaParser.parse(formula);
 
-        if (containsCircularReference(cell, spreadsheet)) {
-            throw new IncorrectFormulaException("Circular reference detected.");
+        try {
+            if (compiledEvaluation) {
+                if (cell.getCompiledFormula() == null) {
+                    cell.setCompiledFormula(linkFormula(parsed, spreadsheet));
+                }
+            } else if (cell.getFormulaAST() == null) {
+                cell.setFormulaAST(buildASTForFormula(formula, spreadsheet));
+            }
+        } catch (Exception e) {
+            throw new UncalculableFormulaException("The cell contains an incalculable formula.");
         }
+    }
 
+    /**
+     * Évalue la formule d'une cellule préparée par
+     * {@link #prepareCellFormula(Cell, Cell[][])}.
+     * L'évaluation ne modifie aucune cellule : plusieurs cellules dont les
+     * antécédents sont à jour peuvent donc être évaluées en parallèle.
+     *
+     * @param cell La cellule à évaluer.
+     * @return La valeur calculée de la formule.
+     * @throws UncalculableFormulaException Si la formule ne peut pas être
+     *                                      calculée.
+     */
+    public static double evaluateCellFormula(Cell cell) throws UncalculableFormulaException {
         try {
-            if (cell.getFormulaAST() == null) {
-                cell.setFormulaAST(buildASTForFormula(cell.getFormula(), spreadsheet));
-            }
-            return cell.getFormulaAST().evaluate();
+            return compiledEvaluation ? cell.getCompiledFormula().evaluate() : cell.getFormulaAST().evaluate();
         } catch (Exception e) {
             throw new UncalculableFormulaException("The cell contains an incalculable formula.");
         }
@@ -73,40 +151,133 @@ public class FormulaCalculatorModel {
      * @throws Exception Si une erreur survient lors de la construction de l'arbre.
      */
     public static Node buildASTForFormula(String formula, Cell[][] spreadsheet) throws Exception {
-        Stack<Node> stack = new Stack<>();
-        String[] tokens = formula.split("\\s+");
-        for (int i = tokens.length - 1; i >= 0; i--) {
-            String token = tokens[i];
-            if (isNumeric(token)) {
-                stack.push(new OperandNode(Double.parseDouble(token)));
-            } else if (isCellReference(token)) {
-                Cell cell = getCellFromReference(token, spreadsheet);
-                if (cell.getFormulaAST() == null) {
-                    cell.setFormulaAST(buildASTForFormula(cell.getFormula(), spreadsheet));
+        Node root = FormulaParser.parseTree(formula, 0, 0);
+        linkAST(root, spreadsheet);
+        return root;
+    }
+
+    /**
+     * Lie les opérandes d'un arbre d'expression aux cellules qu'ils
+     * référencent. L'arbre est analysé avec l'origine de la grille pour
+     * ancrage : les décalages de ses références sont donc les coordonnées des
+     * cellules. Une référence lit la valeur en cache de la cellule : l'arbre de
+     * la cellule référencée n'est construit que si sa valeur n'est pas à jour.
+     *
+     * @param root        La racine de l'arbre d'expression.
+     * @param spreadsheet La grille de cellules dans laquelle la formule est située.
+     * @throws Exception Si une cellule référencée est hors limites, si l'arbre
+     *                   contient un agrégat de plage ou si l'arbre d'une
+     *                   cellule référencée ne peut pas être construit.
+     */
+    private static void linkAST(Node root, Cell[][] spreadsheet) throws Exception {
+        List<Node> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            if (node instanceof OperatorNode) {
+                pending.add(((OperatorNode) node).getLeft());
+                pending.add(((OperatorNode) node).getRight());
+            } else if (node instanceof RangeNode) {
+                throw new UncalculableFormulaException("Range aggregates are only supported by the sheet engine.");
+            } else {
+                OperandNode operand = (OperandNode) node;
+                if (operand.isReference()) {
+                    Cell cell = getReferencedCell(operand.getRowOffset(), operand.getColumnOffset(), spreadsheet);
+                    if (!cell.hasCurrentValue() && cell.getFormulaAST() == null) {
+                        cell.setFormulaAST(buildASTForFormula(cell.getFormula(), spreadsheet));
+                    }
+                    operand.setCellReference(cell);
                 }
-                stack.push(cell.getFormulaAST());
-            } else if (isOperator(token)) {
-                // Pop the stack in the correct order for prefix notation.
-                Node firstOperand = stack.pop();
-                Node secondOperand = stack.pop();
-                stack.push(new OperatorNode(token.charAt(0), firstOperand, secondOperand));
             }
         }
-        return stack.pop();
     }
 
     /**
-     * Vérifie la syntaxe d'une formule.
-     * Valide si elle n'est pas vide et contient uniquement des nombres, des
-     * opérateurs valides (+, -, *, /) et des références de cellules valides (par
-     * ex. A1).
+     * Compile une formule en un tableau plat d'instructions. Les cellules
+     * référencées qui ne sont pas encore compilées le sont au passage.
+     *
+     * @param formula     La formule à compiler.
+     * @param spreadsheet La grille de cellules dans laquelle la formule est située.
+     * @return La formule compilée.
+     * @throws Exception Si une erreur survient lors de la compilation.
+     */
+    public static CompiledFormula compileFormula(String formula, Cell[][] spreadsheet) throws Exception {
+        return linkFormula(FormulaParser.parse(formula), spreadsheet);
+    }
+
+    /**
+     * Lie une formule analysée aux cellules qu'elle référence, en compilant au
+     * passage celles qui ne le sont pas encore et dont la valeur n'est pas à
+     * jour.
+     *
+     * @param parsed      La formule analysée.
+     * @param spreadsheet La grille de cellules dans laquelle la formule est située.
+     * @return La formule compilée et liée.
+     * @throws Exception Si une cellule référencée est hors limites ou ne peut pas
+     *                   être compilée.
+     */
+    private static CompiledFormula linkFormula(CompiledFormula parsed, Cell[][] spreadsheet) throws Exception {
+        Cell[] cells = new Cell[parsed.getReferenceCount()];
+        for (int k = 0; k < cells.length; k++) {
+            Cell cell = getReferencedCell(parsed, k, spreadsheet);
+            if (!cell.hasCurrentValue() && cell.getCompiledFormula() == null) {
+                cell.setCompiledFormula(compileFormula(cell.getFormula(), spreadsheet));
+            }
+            cells[k] = cell;
+        }
+        return parsed.link(cells);
+    }
+
+    /**
+     * Renvoie une cellule référencée par une formule analysée.
+     *
+     * @param parsed      La formule analysée.
+     * @param index       L'indice de la référence dans la formule.
+     * @param spreadsheet La grille de cellules.
+     * @return La cellule référencée.
+     * @throws UncalculableFormulaException Si la référence est hors limites ou
+     *                                      désigne une cellule incorrecte.
+     */
+    private static Cell getReferencedCell(CompiledFormula parsed, int index, Cell[][] spreadsheet)
+            throws UncalculableFormulaException {
+        return getReferencedCell(parsed.getReferenceRow(index), parsed.getReferenceColumn(index), spreadsheet);
+    }
+
+    /**
+     * Renvoie la cellule référencée à une position donnée de la grille.
+     *
+     * @param row         La ligne de la cellule référencée.
+     * @param column      La colonne de la cellule référencée.
+     * @param spreadsheet La grille de cellules.
+     * @return La cellule référencée.
+     * @throws UncalculableFormulaException Si la référence est hors limites ou
+     *                                      désigne une cellule incorrecte.
+     */
+    private static Cell getReferencedCell(int row, int column, Cell[][] spreadsheet)
+            throws UncalculableFormulaException {
+        Cell cell = getCell(row, column, spreadsheet);
+        if (cell == null) {
+            throw new UncalculableFormulaException("Cell reference out of bounds.");
+        }
+        if (cell.getStatus() == Status.INCORRECT) {
+            throw new UncalculableFormulaException("The referenced cell contains an incorrect formula.");
+        }
+        return cell;
+    }
+
+    /**
+     * Renvoie la cellule située à une position donnée de la grille.
      *
-     * @param formula La formule à vérifier.
-     * @return True si la syntaxe de la formule est correcte, sinon False.
+     * @param row         La ligne de la cellule.
+     * @param column      La colonne de la cellule.
+     * @param spreadsheet La grille de cellules.
+     * @return La cellule, ou null si la position est hors limites.
      */
-    private static boolean isSyntaxCorrect(String formula) {
-        return formula
-                .matches("([+-]?\\d*\\.?\\d+|[A-Za-z]+\\d+|[+\\-*/])(\\s+([+-]?\\d*\\.?\\d+|[A-Za-z]+\\d+|[+\\-*/]))*");
+    private static Cell getCell(int row, int column, Cell[][] spreadsheet) {
+        if (row >= 0 && row < spreadsheet.length && column >= 0 && column < spreadsheet[row].length) {
+            return spreadsheet[row][column];
+        }
+        return null;
     }
 
     /**
@@ -117,39 +288,27 @@ public class FormulaCalculatorModel {
      * @return True si une référence circulaire est détectée, sinon False.
      */
     public static boolean containsCircularReference(Cell cell, Cell[][] spreadsheet) {
-        HashSet<String> visitedReferences = new HashSet<>();
-        return checkForCircularReference(cell, spreadsheet, visitedReferences);
+        return checkForCircularReference(cell, spreadsheet, new HashSet<>());
     }
 
     /**
      * Vérifie si une cellule contient une référence circulaire.
      *
-     * @param cell        La cellule à vérifier pour les références circulaires.
-     * @param spreadsheet La feuille de calcul contenant la cellule.
+     * @param cell          La cellule à vérifier pour les références circulaires.
+     * @param spreadsheet   La feuille de calcul contenant la cellule.
+     * @param visitedCells  Les cellules du chemin de références en cours.
      * @return true si la cellule contient une référence circulaire, sinon false.
      */
-
-    private static boolean checkForCircularReference(Cell cell, Cell[][] spreadsheet,
-            HashSet<String> visitedReferences) {
-        if (cell == null) {
-            return false;
-        }
-        String formula = cell.getFormula();
-        Pattern pattern = Pattern.compile("[A-Za-z]+\\d+");
-        Matcher matcher = pattern.matcher(formula);
-        while (matcher.find()) {
-            String reference = matcher.group();
-            if (visitedReferences.contains(reference)) {
+    private static boolean checkForCircularReference(Cell cell, Cell[][] spreadsheet, Set<Cell> visitedCells) {
+        for (Cell referencedCell : extractReferences(cell.getFormula(), spreadsheet)) {
+            if (!visitedCells.add(referencedCell)) {
                 // Référence circulaire détectée
                 return true;
-            } else {
-                visitedReferences.add(reference);
-                Cell referencedCell = getCellFromReference(reference, spreadsheet);
-                if (checkForCircularReference(referencedCell, spreadsheet, visitedReferences)) {
-                    return true;
-                }
-                visitedReferences.remove(reference);
             }
+            if (checkForCircularReference(referencedCell, spreadsheet, visitedCells)) {
+                return true;
+            }
+            visitedCells.remove(referencedCell);
         }
         return false;
     }
@@ -157,17 +316,17 @@ public class FormulaCalculatorModel {
     /**
      * Récupère la cellule correspondant à une référence de cellule donnée.
      *
-     * @param reference   La référence de cellule au format "A1", "B2", etc.
+     * @param reference   La référence de cellule au format "A1", "AB12", etc.
      * @param spreadsheet La grille de cellules dans laquelle la référence est
      *                    située.
      * @return La cellule correspondante ou null si la référence est invalide.
      */
     public static Cell getCellFromReference(String reference, Cell[][] spreadsheet) {
         try {
-            int row = Character.getNumericValue(reference.charAt(1)) - 1;
-            int column = reference.charAt(0) - 'A';
-            if (row >= 0 && row < spreadsheet.length && column >= 0 && column < spreadsheet[row].length) {
-                return spreadsheet[row][column];
+            long key = CellReference.parse(reference);
+            Cell cell = getCell(CellReference.row(key), CellReference.column(key), spreadsheet);
+            if (cell != null) {
+                return cell;
             } else {
                 System.err.println("Référence de cellule hors limites: " + reference);
                 return null;
@@ -192,150 +351,45 @@ public class FormulaCalculatorModel {
      */
     public static double calculatePrefix(String prefix, Cell[][] spreadsheet)
             throws EmptyFormulaException, UncalculableFormulaException, IncorrectFormulaException {
-        Stack<Node> stack = new Stack<>();
-        String[] tokens = prefix.split("\\s+");
-
-        for (int i = tokens.length - 1; i >= 0; i--) {
-            String token = tokens[i];
-            if (token.matches("-?\\d+(\\.\\d+)?")) {
-                stack.push(new OperandNode(Double.parseDouble(token)));
-            } else if (token.matches("[A-Za-z]+\\d+")) {
-                Cell cell = getCellFromReference(token, spreadsheet);
-                double cellValue = FormulaCalculatorModel.calculateCellFormula(cell, spreadsheet);
-                stack.push(new OperandNode(cellValue));
+        CompiledFormula parsed = FormulaParser.parse(prefix);
+        Node[] stack = new Node[parsed.getMaxStack()];
+        int sp = 0;
+        for (int instruction : parsed.getCode()) {
+            int argument = CompiledFormula.argument(instruction);
+            int opcode = CompiledFormula.opcode(instruction);
+            if (opcode == CompiledFormula.PUSH_CONSTANT) {
+                stack[sp++] = new OperandNode(parsed.getConstants()[argument]);
+            } else if (CompiledFormula.isAggregate(opcode)) {
+                throw new UncalculableFormulaException("Range aggregates are only supported by the sheet engine.");
+            } else if (opcode == CompiledFormula.PUSH_REFERENCE) {
+                Cell cell = getReferencedCell(parsed, argument, spreadsheet);
+                stack[sp++] = new OperandNode(calculateCellFormula(cell, spreadsheet));
             } else {
-                Node left = stack.pop();
-                Node right = stack.pop();
-                stack.push(new OperatorNode(token.charAt(0), left, right));
-            }
-        }
-
-        Node root = stack.pop();
-        return root.evaluate();
-    }
-
-    /**
-     * Vérifie si un token est numérique.
-     *
-     * @param token Le token à vérifier.
-     * @return True si le token est numérique, sinon False.
-     */
-    private static boolean isNumeric(String token) {
-        return token.matches("-?\\d+(\\.\\d+)?");
-    }
-
-    /**
-     * Vérifie si un token est une référence de cellule.
-     *
-     * @param token Le token à vérifier.
-     * @return True si le token est une référence de cellule, sinon False.
-     */
-    private static boolean isCellReference(String token) {
-        return token.matches("[A-Za-z]+\\d+");
-    }
-
-    /**
-     * Vérifie si un token est un opérateur.
-     *
-     * @param token Le token à vérifier.
-     * @return True si le token est un opérateur, sinon False.
-     */
-    private static boolean isOperator(String token) {
-        return "+-*/".contains(token);
-    }
-
-    /**
-     * Met à jour la formule d'une cellule spécifiée et récursivement toutes les
-     * cellules qui en dépendent.
-     *
-     * @param cell        La cellule initialement mise à jour.
-     * @param spreadsheet La grille de cellules représentant le tableau.
-     */
-    public static void updateResult(Cell cell, Cell[][] spreadsheet) {
-        HashSet<Cell> visitedCells = new HashSet<>(); // Pour éviter les mises à jour infinies dans les références
-                                                      // circulaires
-        updateResultRecursive(cell, spreadsheet, visitedCells, cell.getStatus());
-    }
-
-    /**
-     * Fonction récursive pour mettre à jour une cellule et toutes ses dépendances.
-     *
-     * @param cell         La cellule à mettre à jour.
-     * @param spreadsheet  La grille de cellules représentant le tableau.
-     * @param visitedCells Ensemble des cellules déjà visitées pour éviter les
-     *                     boucles infinies.
-     */
-    private static void updateResultRecursive(Cell cell, Cell[][] spreadsheet, HashSet<Cell> visitedCells,
-            Status status) {
-        if (visitedCells.contains(cell)) {
-            return; // Évite la mise à jour récursive des cellules déjà visitées.
-        }
-        visitedCells.add(cell);
-
-        if (status == Status.UNCALCULABLE) {
-            cell.setText("ERR");
-            cell.setStatus(Status.UNCALCULABLE);
-        } else {
-            try {
-                double result = calculateCellFormula(cell, spreadsheet);
-                cell.setText(String.valueOf(result));
-                cell.setFormulaAST(buildASTForFormula(cell.getFormula(), spreadsheet));
-                cell.setStatus(Status.CALCULABLE);
-            } catch (EmptyFormulaException e) {
-                cell.setText("");
-                cell.setStatus(Status.EMPTY);
-
-            } catch (IncorrectFormulaException e) {
-                cell.setText("ERR");
-                cell.setStatus(Status.INCORRECT);
-
-            } catch (UncalculableFormulaException e) {
-                cell.setText("ERR");
-                cell.setStatus(Status.UNCALCULABLE);
-
-            } catch (Exception e) {
-                cell.setText("ERR");
-                cell.setStatus(Status.UNCALCULABLE);
-
-                System.err.println("Erreur inattendue lors du recalcul : " + e.getMessage());
-            }
-        }
-
-        // Pour chaque cellule dans le tableau, vérifie si elle référence la cellule
-        // mise à jour et déclenche la mise à jour récursive.
-        for (int i = 0; i < spreadsheet.length; i++) {
-            for (int j = 0; j < spreadsheet[i].length; j++) {
-                Cell currentCell = spreadsheet[i][j];
-                if (currentCell != null && containsReferenceToCell(currentCell, cell, spreadsheet)) {
-                    updateResultRecursive(currentCell, spreadsheet, visitedCells, cell.getStatus());
-                }
+                Node left = stack[--sp];
+                Node right = stack[--sp];
+                stack[sp++] = new OperatorNode(FormulaParser.operatorSymbol(opcode), left, right);
             }
         }
+        return stack[sp - 1].evaluate();
     }
 
     /**
-     * Vérifie si une cellule fait référence à une autre cellule spécifiée.
+     * Extrait les cellules référencées par une formule.
      *
-     * @param sourceCell  La cellule source contenant une formule qui pourrait faire
-     *                    référence à une autre cellule.
-     * @param targetCell  La cellule cible dont on cherche à savoir si elle est
-     *                    référencée.
-     * @param spreadsheet La grille de cellules de la feuille de calcul.
-     * @return true si la cellule source fait référence à la cellule cible, sinon
-     *         false.
+     * @param formula     La formule à analyser.
+     * @param spreadsheet La grille de cellules dans laquelle la formule est située.
+     * @return Les cellules référencées, sans doublon, dans leur ordre
+     *         d'apparition. Les références hors limites sont ignorées.
      */
-    private static boolean containsReferenceToCell(Cell sourceCell, Cell targetCell, Cell[][] spreadsheet) {
-        String formula = sourceCell.getFormula();
-        Pattern pattern = Pattern.compile("[A-Za-z]+\\d+");
-        Matcher matcher = pattern.matcher(formula);
-        while (matcher.find()) {
-            String reference = matcher.group();
-            Cell referencedCell = getCellFromReference(reference, spreadsheet);
-            if (referencedCell == targetCell) {
-                return true;
+    public static List<Cell> extractReferences(String formula, Cell[][] spreadsheet) {
+        List<Cell> references = new ArrayList<>();
+        FormulaParser.forEachReference(formula, (row, column) -> {
+            Cell referencedCell = getCell(row, column, spreadsheet);
+            if (referencedCell != null && !references.contains(referencedCell)) {
+                references.add(referencedCell);
             }
-        }
-        return false;
+        });
+        return references;
     }
 
 }
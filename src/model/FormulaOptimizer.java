@@ -0,0 +1,406 @@
+package src.model;
+
+import src.entity.CompiledFormula;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passe d'optimisation des formules compilées, appliquée entre l'analyse et
+ * l'évaluation.
+ * Les instructions sont d'abord rejouées sur une pile de termes : chaque
+ * terme est interné, si bien que deux sous-expressions identiques d'une même
+ * formule deviennent un seul terme. Au passage :
+ * <ul>
+ * <li>une opération dont les deux opérandes sont constants est calculée une
+ * fois pour toutes, sauf une division par zéro, conservée pour que
+ * l'évaluation lève toujours son erreur ;</li>
+ * <li>les identités exactes en virgule flottante sont simplifiées :
+ * {@code x * 1}, {@code 1 * x}, {@code x / 1}, {@code x - 0} et
+ * {@code x + -0}. {@code x + 0} ne l'est pas, car {@code -0 + 0} vaut
+ * {@code 0} et non {@code -0}.</li>
+ * </ul>
+ * Un terme non élémentaire employé plusieurs fois est ensuite calculé une
+ * seule fois, au début du programme : sa valeur reste au fond de la pile et
+ * l'instruction {@link CompiledFormula#LOAD} la recopie à chaque emploi.
+ * <p>
+ * La formule optimisée donne le même résultat, au bit près, et échoue dans
+ * les mêmes cas que la formule analysée : aucune référence de cellule ni
+ * aucune plage n'est supprimée, même multipliée par zéro, car une cellule non
+ * calculable rend toujours la formule non calculable.
+ * </p>
+ */
+public class FormulaOptimizer {
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private FormulaOptimizer() {
+    }
+
+    /**
+     * Optimise une formule analysée.
+     *
+     * @param parsed La formule produite par {@link FormulaParser#parse(String)},
+     *               non liée.
+     * @return La formule optimisée, non liée.
+     */
+    public static CompiledFormula optimize(CompiledFormula parsed) {
+        Builder builder = new Builder();
+        Term[] stack = new Term[parsed.getMaxStack()];
+        int sp = 0;
+        for (int instruction : parsed.getCode()) {
+            int opcode = CompiledFormula.opcode(instruction);
+            int argument = CompiledFormula.argument(instruction);
+            if (opcode == CompiledFormula.PUSH_CONSTANT) {
+                stack[sp++] = builder.constant(parsed.getConstants()[argument]);
+            } else if (opcode == CompiledFormula.PUSH_REFERENCE) {
+                stack[sp++] = builder.intern(new Term(opcode, 0,
+                        parsed.getReferenceRow(argument), parsed.getReferenceColumn(argument)));
+            } else if (CompiledFormula.isAggregate(opcode)) {
+                stack[sp++] = builder.intern(new Term(opcode, 0, parsed.getRangeTop(argument),
+                        parsed.getRangeLeft(argument), parsed.getRangeBottom(argument),
+                        parsed.getRangeRight(argument)));
+            } else {
+                Term first = stack[--sp];
+                Term second = stack[--sp];
+                stack[sp++] = builder.operation(opcode, first, second);
+            }
+        }
+        return builder.emit(stack[sp - 1]);
+    }
+
+    /**
+     * Terme d'une formule : une constante, une référence de cellule, un
+     * agrégat de plage ou une opération sur deux termes.
+     */
+    private static final class Term {
+        /** Le code de l'opération qui produit le terme. */
+        final int opcode;
+        /** La valeur d'une constante, ou 0. */
+        final double constant;
+        /**
+         * Les opérandes : ligne et colonne d'une référence, coins d'une plage,
+         * ou rangs des deux termes d'une opération.
+         */
+        final int[] operands;
+        /** Le rang du terme dans la formule, attribué à l'internement. */
+        int id;
+        /** Le nombre d'emplois du terme par d'autres termes. */
+        int uses;
+        /** L'indice du sous-calcul partagé du terme, ou -1. */
+        int slot = -1;
+
+        /**
+         * Construit un terme.
+         *
+         * @param opcode   Le code de l'opération.
+         * @param constant La valeur d'une constante, ou 0.
+         * @param operands Les opérandes du terme.
+         */
+        Term(int opcode, double constant, int... operands) {
+            this.opcode = opcode;
+            this.constant = constant;
+            this.operands = operands;
+        }
+
+        /**
+         * Indique si le terme est une opération sur deux termes.
+         *
+         * @return true pour une addition, une soustraction, une multiplication
+         *         ou une division.
+         */
+        boolean isOperation() {
+            return opcode >= CompiledFormula.ADD && opcode <= CompiledFormula.DIVIDE;
+        }
+
+        /**
+         * Indique si le terme est une constante de valeur donnée, au bit près.
+         *
+         * @param value La valeur.
+         * @return true si le terme est cette constante.
+         */
+        boolean is(double value) {
+            return opcode == CompiledFormula.PUSH_CONSTANT
+                    && Double.doubleToRawLongBits(constant) == Double.doubleToRawLongBits(value);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Term)) {
+                return false;
+            }
+            Term term = (Term) other;
+            return opcode == term.opcode
+                    && Double.doubleToRawLongBits(constant) == Double.doubleToRawLongBits(term.constant)
+                    && Arrays.equals(operands, term.operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * opcode + Double.hashCode(constant)) + Arrays.hashCode(operands);
+        }
+    }
+
+    /**
+     * Table des termes internés d'une formule, puis générateur de son
+     * programme optimisé.
+     */
+    private static final class Builder {
+        /** Les termes internés, par rang. */
+        private final List<Term> terms = new ArrayList<>();
+        /** Les termes internés, par valeur. */
+        private final Map<Term, Term> interned = new HashMap<>();
+
+        private int[] code = new int[16];
+        private int pc;
+        private double[] constants = new double[4];
+        private int constantCount;
+        private final Map<Long, Integer> constantIndexes = new HashMap<>();
+        private int[] rows = new int[4];
+        private int[] columns = new int[4];
+        private int referenceCount;
+        private final Map<Long, Integer> referenceIndexes = new HashMap<>();
+        private int[] ranges = new int[4];
+        private int rangeCount;
+
+        /**
+         * Renvoie le terme interné égal à un terme.
+         *
+         * @param term Le terme.
+         * @return Le terme déjà interné, ou {@code term} s'il est nouveau.
+         */
+        Term intern(Term term) {
+            Term existing = interned.putIfAbsent(term, term);
+            if (existing != null) {
+                return existing;
+            }
+            term.id = terms.size();
+            terms.add(term);
+            return term;
+        }
+
+        /**
+         * Renvoie le terme d'une constante.
+         *
+         * @param value La valeur de la constante.
+         * @return Le terme interné.
+         */
+        Term constant(double value) {
+            return intern(new Term(CompiledFormula.PUSH_CONSTANT, value));
+        }
+
+        /**
+         * Renvoie le terme d'une opération, calculée si ses opérandes sont
+         * constants, ou simplifiée si c'est une identité exacte.
+         *
+         * @param opcode Le code de l'opération.
+         * @param first  Le premier opérande.
+         * @param second Le second opérande.
+         * @return Le terme interné du résultat.
+         */
+        Term operation(int opcode, Term first, Term second) {
+            boolean constants = first.opcode == CompiledFormula.PUSH_CONSTANT
+                    && second.opcode == CompiledFormula.PUSH_CONSTANT;
+            switch (opcode) {
+                case CompiledFormula.ADD:
+                    if (constants) {
+                        return constant(first.constant + second.constant);
+                    }
+                    if (second.is(-0.0)) {
+                        return first;
+                    }
+                    if (first.is(-0.0)) {
+                        return second;
+                    }
+                    break;
+                case CompiledFormula.SUBTRACT:
+                    if (constants) {
+                        return constant(first.constant - second.constant);
+                    }
+                    if (second.is(0.0)) {
+                        return first;
+                    }
+                    break;
+                case CompiledFormula.MULTIPLY:
+                    if (constants) {
+                        return constant(first.constant * second.constant);
+                    }
+                    if (second.is(1.0)) {
+                        return first;
+                    }
+                    if (first.is(1.0)) {
+                        return second;
+                    }
+                    break;
+                default:
+                    // La division par zéro doit échouer à l'évaluation.
+                    if (constants && second.constant != 0) {
+                        return constant(first.constant / second.constant);
+                    }
+                    if (second.is(1.0)) {
+                        return first;
+                    }
+                    break;
+            }
+            return intern(new Term(opcode, 0, first.id, second.id));
+        }
+
+        /**
+         * Produit le programme optimisé d'une formule. Les termes étant
+         * internés après leurs opérandes, l'ordre de leurs rangs est un ordre
+         * topologique : les parcours se font sans récursion, quelle que soit
+         * la profondeur de la formule.
+         *
+         * @param root Le terme de la formule entière.
+         * @return La formule optimisée, non liée.
+         */
+        CompiledFormula emit(Term root) {
+            // Compte les emplois des termes accessibles depuis la racine.
+            boolean[] reachable = new boolean[terms.size()];
+            reachable[root.id] = true;
+            for (int id = root.id; id >= 0; id--) {
+                Term term = terms.get(id);
+                if (reachable[id] && term.isOperation()) {
+                    for (int operand : term.operands) {
+                        reachable[operand] = true;
+                        terms.get(operand).uses++;
+                    }
+                }
+            }
+            // Les opérations et agrégats employés plusieurs fois sont
+            // calculés d'abord, chacun après ceux dont il dépend.
+            List<Term> shared = new ArrayList<>();
+            for (int id = 0; id < root.id; id++) {
+                Term term = terms.get(id);
+                if (reachable[id] && term.uses > 1
+                        && (term.isOperation() || CompiledFormula.isAggregate(term.opcode))) {
+                    term.slot = shared.size();
+                    shared.add(term);
+                }
+            }
+            for (Term term : shared) {
+                write(term);
+            }
+            write(root);
+            int[] program = Arrays.copyOf(code, pc);
+            return new CompiledFormula(program, Arrays.copyOf(constants, constantCount),
+                    Arrays.copyOf(rows, referenceCount), Arrays.copyOf(columns, referenceCount),
+                    Arrays.copyOf(ranges, rangeCount * 4), FormulaParser.maxStack(program));
+        }
+
+        /**
+         * Écrit les instructions du calcul d'un terme. Les sous-calculs
+         * partagés qu'il emploie, déjà calculés, sont recopiés.
+         *
+         * @param start Le terme.
+         */
+        private void write(Term start) {
+            // Rang d'un terme à écrire, ou complément du rang d'une opération
+            // dont les opérandes sont écrits.
+            ArrayDeque<Integer> pending = new ArrayDeque<>();
+            pending.push(start.id);
+            while (!pending.isEmpty()) {
+                int entry = pending.pop();
+                Term term = terms.get(entry < 0 ? ~entry : entry);
+                if (entry < 0) {
+                    append(term.opcode, 0);
+                } else if (term.slot >= 0 && term != start) {
+                    append(CompiledFormula.LOAD, term.slot);
+                } else if (term.opcode == CompiledFormula.PUSH_CONSTANT) {
+                    append(term.opcode, constantIndex(term.constant));
+                } else if (term.opcode == CompiledFormula.PUSH_REFERENCE) {
+                    append(term.opcode, referenceIndex(term.operands[0], term.operands[1]));
+                } else if (CompiledFormula.isAggregate(term.opcode)) {
+                    append(term.opcode, rangeIndex(term.operands));
+                } else {
+                    // Le second opérande est empilé en premier, comme à
+                    // l'analyse.
+                    pending.push(~entry);
+                    pending.push(term.operands[0]);
+                    pending.push(term.operands[1]);
+                }
+            }
+        }
+
+        /**
+         * Ajoute une instruction au programme.
+         *
+         * @param opcode   Le code de l'opération.
+         * @param argument L'argument de l'opération.
+         */
+        private void append(int opcode, int argument) {
+            if (pc == code.length) {
+                code = Arrays.copyOf(code, pc * 2);
+            }
+            code[pc++] = CompiledFormula.instruction(opcode, argument);
+        }
+
+        /**
+         * Renvoie l'indice d'une constante dans la table, en l'y ajoutant au
+         * besoin.
+         *
+         * @param value La valeur de la constante.
+         * @return L'indice de la constante.
+         */
+        private int constantIndex(double value) {
+            Integer index = constantIndexes.get(Double.doubleToRawLongBits(value));
+            if (index != null) {
+                return index;
+            }
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            constantIndexes.put(Double.doubleToRawLongBits(value), constantCount);
+            return constantCount++;
+        }
+
+        /**
+         * Renvoie l'indice d'une référence dans la table, en l'y ajoutant au
+         * besoin.
+         *
+         * @param row    La ligne de la cellule.
+         * @param column La colonne de la cellule.
+         * @return L'indice de la référence.
+         */
+        private int referenceIndex(int row, int column) {
+            Integer index = referenceIndexes.get(CellReference.pack(row, column));
+            if (index != null) {
+                return index;
+            }
+            if (referenceCount == rows.length) {
+                rows = Arrays.copyOf(rows, referenceCount * 2);
+                columns = Arrays.copyOf(columns, referenceCount * 2);
+            }
+            rows[referenceCount] = row;
+            columns[referenceCount] = column;
+            referenceIndexes.put(CellReference.pack(row, column), referenceCount);
+            return referenceCount++;
+        }
+
+        /**
+         * Renvoie l'indice d'une plage dans la table, en l'y ajoutant au
+         * besoin.
+         *
+         * @param range Les coins de la plage (haut, gauche, bas, droite).
+         * @return L'indice de la plage.
+         */
+        private int rangeIndex(int[] range) {
+            for (int k = 0; k < rangeCount; k++) {
+                if (Arrays.equals(ranges, 4 * k, 4 * k + 4, range, 0, 4)) {
+                    return k;
+                }
+            }
+            if (rangeCount * 4 == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            System.arraycopy(range, 0, ranges, rangeCount * 4, 4);
+            return rangeCount++;
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package src.model;
+
+import src.entity.CompiledFormula;
+import src.entity.Node;
+import src.entity.OperandNode;
+import src.entity.OperatorNode;
+import src.entity.RangeNode;
+import src.exception.IncorrectFormulaException;
+
+import java.util.Arrays;
+
+/**
+ * Analyseur des formules en notation préfixe.
+ * Il parcourt les caractères de la formule une seule fois, sans expression
+ * régulière ni chaîne intermédiaire : le même parcours valide la syntaxe,
+ * relève les références de cellules et produit la formule compilée.
+ * L'arbre syntaxique de la formule ({@link #parseTree(String, int, int)}) est
+ * produit par un second parcours, indépendant du premier : il sert de
+ * référence pour vérifier l'évaluateur compilé et l'optimiseur.
+ * <p>
+ * Une formule est une suite de jetons séparés par des blancs : des nombres
+ * ({@code 12}, {@code -3.5}, {@code .5}), des références de cellules
+ * ({@code A1}, {@code B12}) et des opérateurs ({@code + - * /}). Un signe
+ * collé à un chiffre fait partie du nombre.
+ * </p>
+ * <p>
+ * Les fonctions d'agrégation {@code SUM}, {@code AVG}, {@code MIN} et
+ * {@code MAX} prennent pour unique opérande une plage ({@code A1:B10}) ou
+ * une référence, et forment une valeur comme un nombre :
+ * {@code + SUM A1:A1000 1}.
+ * </p>
+ */
+public class FormulaParser {
+
+    /** Plus grande mantisse représentable exactement par un double. */
+    private static final long EXACT_MANTISSA = 1L << 53;
+    /** Nombre maximal de colonnes d'une plage. */
+    public static final int MAX_RANGE_COLUMNS = 1 << 10;
+    /** Les noms des fonctions d'agrégation, par code d'opération. */
+    private static final String[] FUNCTIONS = { "SUM", "AVG", "MIN", "MAX" };
+    /** Puissances de dix représentables exactement par un double. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /**
+     * Visiteur des références de cellules relevées dans une formule.
+     */
+    public interface ReferenceVisitor {
+        /**
+         * Appelé pour chaque référence de cellule.
+         *
+         * @param row    La ligne référencée (à partir de 0).
+         * @param column La colonne référencée (à partir de 0).
+         */
+        void visit(int row, int column);
+    }
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private FormulaParser() {
+    }
+
+    /**
+     * Analyse et compile une formule en un seul parcours de ses caractères.
+     * Les jetons sont lus de gauche à droite et les instructions sont écrites
+     * de la fin vers le début du tableau, ce qui produit directement l'ordre
+     * d'exécution de la notation préfixe.
+     *
+     * @param formula La formule à analyser.
+     * @return La formule compilée, non liée à une grille.
+     * @throws IncorrectFormulaException Si la syntaxe de la formule est
+     *                                   incorrecte ; la position du caractère
+     *                                   fautif est indiquée.
+     */
+    public static CompiledFormula parse(String formula) throws IncorrectFormulaException {
+        int length = formula.length();
+        if (length == 0) {
+            throw new IncorrectFormulaException("Empty formula", 0);
+        }
+        int capacity = length / 2 + 1;
+        int[] code = new int[capacity];
+        int pc = capacity;
+        double[] constants = new double[capacity];
+        int constantCount = 0;
+        int[] rows = new int[capacity];
+        int[] columns = new int[capacity];
+        int referenceCount = 0;
+        int[] ranges = new int[0];
+        int rangeCount = 0;
+        // Coordonnées de la dernière référence lue.
+        int[] cell = new int[2];
+        // Nombre d'opérandes encore attendus pour compléter l'expression.
+        int expected = 1;
+
+        int i = 0;
+        while (true) {
+            if (expected == 0) {
+                throw new IncorrectFormulaException("Unexpected token after a complete expression", i);
+            }
+            char c = formula.charAt(i);
+            if (isOperator(c) && (i + 1 == length || isWhitespace(formula.charAt(i + 1)))) {
+                code[--pc] = CompiledFormula.instruction(operatorCode(c), 0);
+                expected++;
+                i++;
+            } else if (CellReference.isLetter(c)) {
+                int start = i;
+                while (i < length && CellReference.isLetter(formula.charAt(i))) {
+                    i++;
+                }
+                if (i < length && CellReference.isDigit(formula.charAt(i))) {
+                    i = scanReference(formula, start, cell);
+                    if (i < length && formula.charAt(i) == ':') {
+                        throw new IncorrectFormulaException("Range outside of an aggregate function", i);
+                    }
+                    rows[referenceCount] = cell[0];
+                    columns[referenceCount] = cell[1];
+                    code[--pc] = CompiledFormula.instruction(CompiledFormula.PUSH_REFERENCE, referenceCount++);
+                } else {
+                    int function = functionCode(formula, start, i);
+                    if (function < 0) {
+                        throw new IncorrectFormulaException("Cell reference without a row number", i);
+                    }
+                    if (i == length || !isWhitespace(formula.charAt(i))) {
+                        throw new IncorrectFormulaException("Missing range after an aggregate function", i);
+                    }
+                    while (i < length && isWhitespace(formula.charAt(i))) {
+                        i++;
+                    }
+                    if (rangeCount * 4 == ranges.length) {
+                        ranges = Arrays.copyOf(ranges, Math.max(4, ranges.length * 2));
+                    }
+                    i = scanRange(formula, i, ranges, rangeCount * 4);
+                    code[--pc] = CompiledFormula.instruction(function, rangeCount++);
+                }
+                expected--;
+            } else if (CellReference.isDigit(c) || c == '.' || c == '+' || c == '-') {
+                int start = i;
+                i = scanNumber(formula, i);
+                constants[constantCount] = parseNumber(formula, start, i);
+                code[--pc] = CompiledFormula.instruction(CompiledFormula.PUSH_CONSTANT, constantCount++);
+                expected--;
+            } else {
+                throw new IncorrectFormulaException("Unexpected character '" + c + "'", i);
+            }
+
+            if (i == length) {
+                break;
+            }
+            if (!isWhitespace(formula.charAt(i))) {
+                throw new IncorrectFormulaException("Missing space between tokens", i);
+            }
+            while (i < length && isWhitespace(formula.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                throw new IncorrectFormulaException("Trailing whitespace", i);
+            }
+        }
+        if (expected > 0) {
+            throw new IncorrectFormulaException("Missing operand", length);
+        }
+
+        int[] program = Arrays.copyOfRange(code, pc, capacity);
+        return new CompiledFormula(program, Arrays.copyOf(constants, constantCount),
+                Arrays.copyOf(rows, referenceCount), Arrays.copyOf(columns, referenceCount),
+                Arrays.copyOf(ranges, rangeCount * 4), maxStack(program));
+    }
+
+    /**
+     * Analyse une formule et construit son arbre syntaxique, sans passer par
+     * la forme compilée ni par l'optimiseur. Les jetons sont lus de gauche à
+     * droite ; chaque opérateur attend ses deux opérandes dans une pile
+     * d'opérateurs en attente, si bien qu'une formule très imbriquée
+     * n'entraîne aucune récursion. Les références et les plages de l'arbre
+     * sont des décalages par rapport à la cellule d'ancrage donnée. Les
+     * erreurs de syntaxe sont celles de {@link #parse(String)}.
+     *
+     * @param formula La formule à analyser.
+     * @param row     La ligne de la cellule d'ancrage (à partir de 0).
+     * @param column  La colonne de la cellule d'ancrage (à partir de 0).
+     * @return La racine de l'arbre syntaxique.
+     * @throws IncorrectFormulaException Si la syntaxe de la formule est
+     *                                   incorrecte ; la position du caractère
+     *                                   fautif est indiquée.
+     */
+    public static Node parseTree(String formula, int row, int column) throws IncorrectFormulaException {
+        int length = formula.length();
+        if (length == 0) {
+            throw new IncorrectFormulaException("Empty formula", 0);
+        }
+        int capacity = length / 2 + 1;
+        // Les opérateurs en attente et, pour chacun, son opérande gauche s'il
+        // est déjà lu.
+        char[] operators = new char[capacity];
+        Node[] lefts = new Node[capacity];
+        int pending = 0;
+        Node root = null;
+        int[] cell = new int[2];
+        int[] range = new int[4];
+
+        int i = 0;
+        while (true) {
+            if (root != null) {
+                throw new IncorrectFormulaException("Unexpected token after a complete expression", i);
+            }
+            char c = formula.charAt(i);
+            Node operand = null;
+            if (isOperator(c) && (i + 1 == length || isWhitespace(formula.charAt(i + 1)))) {
+                operators[pending] = c;
+                lefts[pending++] = null;
+                i++;
+            } else if (CellReference.isLetter(c)) {
+                int start = i;
+                while (i < length && CellReference.isLetter(formula.charAt(i))) {
+                    i++;
+                }
+                if (i < length && CellReference.isDigit(formula.charAt(i))) {
+                    i = scanReference(formula, start, cell);
+                    if (i < length && formula.charAt(i) == ':') {
+                        throw new IncorrectFormulaException("Range outside of an aggregate function", i);
+                    }
+                    operand = new OperandNode(cell[0] - row, cell[1] - column);
+                } else {
+                    int function = functionCode(formula, start, i);
+                    if (function < 0) {
+                        throw new IncorrectFormulaException("Cell reference without a row number", i);
+                    }
+                    if (i == length || !isWhitespace(formula.charAt(i))) {
+                        throw new IncorrectFormulaException("Missing range after an aggregate function", i);
+                    }
+                    while (i < length && isWhitespace(formula.charAt(i))) {
+                        i++;
+                    }
+                    i = scanRange(formula, i, range, 0);
+                    operand = new RangeNode(function, range[0] - row, range[1] - column, range[2] - row,
+                            range[3] - column);
+                }
+            } else if (CellReference.isDigit(c) || c == '.' || c == '+' || c == '-') {
+                int start = i;
+                i = scanNumber(formula, i);
+                operand = new OperandNode(parseNumber(formula, start, i));
+            } else {
+                throw new IncorrectFormulaException("Unexpected character '" + c + "'", i);
+            }
+            // Un opérande complet devient l'opérande gauche de l'opérateur en
+            // attente, ou complète son expression avec l'opérande droite.
+            while (operand != null) {
+                if (pending == 0) {
+                    root = operand;
+                    operand = null;
+                } else if (lefts[pending - 1] == null) {
+                    lefts[pending - 1] = operand;
+                    operand = null;
+                } else {
+                    pending--;
+                    operand = new OperatorNode(operators[pending], lefts[pending], operand);
+                    lefts[pending] = null;
+                }
+            }
+
+            if (i == length) {
+                break;
+            }
+            if (!isWhitespace(formula.charAt(i))) {
+                throw new IncorrectFormulaException("Missing space between tokens", i);
+            }
+            while (i < length && isWhitespace(formula.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                throw new IncorrectFormulaException("Trailing whitespace", i);
+            }
+        }
+        if (root == null) {
+            throw new IncorrectFormulaException("Missing operand", length);
+        }
+        return root;
+    }
+
+    /**
+     * Lit une référence de cellule, lettres de colonne puis numéro de ligne.
+     *
+     * @param formula La formule.
+     * @param i       La position de la première lettre.
+     * @param cell    Reçoit la ligne puis la colonne de la cellule (à partir
+     *                de 0).
+     * @return La position qui suit la référence.
+     * @throws IncorrectFormulaException Si la référence est mal formée.
+     */
+    private static int scanReference(String formula, int i, int[] cell) throws IncorrectFormulaException {
+        int length = formula.length();
+        if (i == length || !CellReference.isLetter(formula.charAt(i))) {
+            throw new IncorrectFormulaException("Cell reference expected", i);
+        }
+        int column = 0;
+        while (i < length && CellReference.isLetter(formula.charAt(i))) {
+            column = CellReference.accumulateColumn(column, formula.charAt(i));
+            i++;
+        }
+        if (i == length || !CellReference.isDigit(formula.charAt(i))) {
+            throw new IncorrectFormulaException("Cell reference without a row number", i);
+        }
+        int row = 0;
+        while (i < length && CellReference.isDigit(formula.charAt(i))) {
+            row = CellReference.accumulateRow(row, formula.charAt(i));
+            i++;
+        }
+        cell[0] = row - 1;
+        cell[1] = column - 1;
+        return i;
+    }
+
+    /**
+     * Lit l'opérande d'une fonction d'agrégation : une plage {@code A1:B10},
+     * dont les coins peuvent être donnés dans n'importe quel ordre, ou une
+     * seule référence.
+     *
+     * @param formula La formule.
+     * @param i       La position du premier caractère de la plage.
+     * @param ranges  Reçoit, à partir de {@code offset}, les lignes et
+     *                colonnes du coin supérieur gauche puis du coin inférieur
+     *                droit.
+     * @param offset  La position d'écriture dans {@code ranges}.
+     * @return La position qui suit la plage.
+     * @throws IncorrectFormulaException Si la plage est mal formée ou trop
+     *                                   large.
+     */
+    private static int scanRange(String formula, int i, int[] ranges, int offset) throws IncorrectFormulaException {
+        int start = i;
+        int[] first = new int[2];
+        i = scanReference(formula, i, first);
+        int[] last = first;
+        if (i < formula.length() && formula.charAt(i) == ':') {
+            last = new int[2];
+            i = scanReference(formula, i + 1, last);
+        }
+        ranges[offset] = Math.min(first[0], last[0]);
+        ranges[offset + 1] = Math.min(first[1], last[1]);
+        ranges[offset + 2] = Math.max(first[0], last[0]);
+        ranges[offset + 3] = Math.max(first[1], last[1]);
+        if (ranges[offset + 3] - ranges[offset + 1] >= MAX_RANGE_COLUMNS) {
+            throw new IncorrectFormulaException("Range wider than " + MAX_RANGE_COLUMNS + " columns", start);
+        }
+        return i;
+    }
+
+    /**
+     * Renvoie le code d'opération d'un nom de fonction d'agrégation, sans
+     * tenir compte de la casse.
+     *
+     * @param formula La formule.
+     * @param start   La position du nom.
+     * @param end     La position qui suit le nom.
+     * @return Le code d'opération, ou -1 si le nom n'est pas une fonction.
+     */
+    private static int functionCode(String formula, int start, int end) {
+        for (int k = 0; k < FUNCTIONS.length; k++) {
+            if (end - start == FUNCTIONS[k].length()
+                    && formula.regionMatches(true, start, FUNCTIONS[k], 0, end - start)) {
+                return CompiledFormula.SUM + k;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Relève les références de cellules d'une formule, même si sa syntaxe est
+     * incorrecte : toute suite de lettres suivie de chiffres est une
+     * référence.
+     *
+     * @param formula La formule à parcourir.
+     * @param visitor Le visiteur appelé pour chaque référence.
+     */
+    public static void forEachReference(String formula, ReferenceVisitor visitor) {
+        int length = formula.length();
+        int i = 0;
+        while (i < length) {
+            if (!CellReference.isLetter(formula.charAt(i))) {
+                i++;
+                continue;
+            }
+            int column = 0;
+            while (i < length && CellReference.isLetter(formula.charAt(i))) {
+                column = CellReference.accumulateColumn(column, formula.charAt(i));
+                i++;
+            }
+            if (i == length || !CellReference.isDigit(formula.charAt(i))) {
+                continue;
+            }
+            int row = 0;
+            while (i < length && CellReference.isDigit(formula.charAt(i))) {
+                row = CellReference.accumulateRow(row, formula.charAt(i));
+                i++;
+            }
+            visitor.visit(row - 1, column - 1);
+        }
+    }
+
+    /**
+     * Renvoie la forme relative d'une formule, partagée par toutes ses copies
+     * : chaque référence de cellule est remplacée par son décalage par rapport
+     * à la cellule qui porte la formule, à la manière de la notation R1C1. La
+     * formule {@code + A1 1} de la cellule A2 devient ainsi
+     * {@code + R[-1]C[0] 1}, comme {@code + A9 1} en A10. Le reste du texte
+     * est conservé tel quel, de sorte que {@link #toAbsolute(String, int, int)}
+     * restitue exactement la formule de chaque cellule.
+     * <p>
+     * Une formule dont une référence n'a pas sa forme canonique (lettres
+     * minuscules, zéro en tête du numéro de ligne, coordonnée hors de la plage
+     * suivie jusqu'à {@link CellReference#COORDINATE_LIMIT}), ou qui
+     * contient un crochet, ne pourrait pas être restituée à l'identique depuis
+     * un décalage : sa forme relative est alors propre à la cellule,
+     * {@code [ligne,colonne]} suivi du texte d'origine.
+     * </p>
+     *
+     * @param formula La formule d'une cellule.
+     * @param row     La ligne de la cellule (à partir de 0).
+     * @param column  La colonne de la cellule (à partir de 0).
+     * @return La forme relative de la formule.
+     */
+    public static String toRelative(String formula, int row, int column) {
+        int length = formula.length();
+        StringBuilder relative = new StringBuilder(length + 16);
+        int copied = 0;
+        int i = 0;
+        while (i < length) {
+            char c = formula.charAt(i);
+            if (c == '[' || c == ']') {
+                return "[" + row + "," + column + "]" + formula;
+            }
+            if (!CellReference.isLetter(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            boolean canonical = true;
+            int referenceColumn = 0;
+            while (i < length && CellReference.isLetter(formula.charAt(i))) {
+                canonical &= formula.charAt(i) <= 'Z';
+                referenceColumn = CellReference.accumulateColumn(referenceColumn, formula.charAt(i));
+                i++;
+            }
+            if (i == length || !CellReference.isDigit(formula.charAt(i))) {
+                continue;
+            }
+            canonical &= formula.charAt(i) != '0';
+            int referenceRow = 0;
+            while (i < length && CellReference.isDigit(formula.charAt(i))) {
+                referenceRow = CellReference.accumulateRow(referenceRow, formula.charAt(i));
+                i++;
+            }
+            if (!canonical || referenceRow < 1 || referenceRow >= CellReference.COORDINATE_LIMIT
+                    || referenceColumn < 1 || referenceColumn >= CellReference.COORDINATE_LIMIT) {
+                return "[" + row + "," + column + "]" + formula;
+            }
+            relative.append(formula, copied, start).append("R[").append(referenceRow - 1 - row)
+                    .append("]C[").append(referenceColumn - 1 - column).append(']');
+            copied = i;
+        }
+        return relative.append(formula, copied, length).toString();
+    }
+
+    /**
+     * Restitue la formule d'une cellule à partir de sa forme relative.
+     *
+     * @param relative La forme relative produite par
+     *                 {@link #toRelative(String, int, int)}.
+     * @param row      La ligne de la cellule (à partir de 0).
+     * @param column   La colonne de la cellule (à partir de 0).
+     * @return La formule de la cellule.
+     */
+    public static String toAbsolute(String relative, int row, int column) {
+        if (relative.startsWith("[")) {
+            return relative.substring(relative.indexOf(']') + 1);
+        }
+        int open = relative.indexOf('[');
+        if (open < 0) {
+            return relative;
+        }
+        StringBuilder formula = new StringBuilder(relative.length());
+        int copied = 0;
+        while (open >= 0) {
+            // Une référence relative : R[décalage de ligne]C[décalage de colonne].
+            int close = relative.indexOf(']', open);
+            int rowOffset = Integer.parseInt(relative, open + 1, close, 10);
+            int columnOpen = close + 2;
+            int columnClose = relative.indexOf(']', columnOpen);
+            int columnOffset = Integer.parseInt(relative, columnOpen + 1, columnClose, 10);
+            formula.append(relative, copied, open - 1)
+                    .append(CellReference.format(row + rowOffset, column + columnOffset));
+            copied = columnClose + 1;
+            open = relative.indexOf('[', copied);
+        }
+        return formula.append(relative, copied, relative.length()).toString();
+    }
+
+    /**
+     * Avance sur un nombre de la forme {@code [+-]?\d*\.?\d+}.
+     *
+     * @param formula La formule.
+     * @param i       La position du premier caractère du nombre.
+     * @return La position qui suit le nombre.
+     * @throws IncorrectFormulaException Si le nombre est mal formé.
+     */
+    private static int scanNumber(String formula, int i) throws IncorrectFormulaException {
+        int length = formula.length();
+        if (formula.charAt(i) == '+' || formula.charAt(i) == '-') {
+            i++;
+        }
+        int integerDigits = 0;
+        while (i < length && CellReference.isDigit(formula.charAt(i))) {
+            i++;
+            integerDigits++;
+        }
+        if (i < length && formula.charAt(i) == '.') {
+            i++;
+            int fractionDigits = 0;
+            while (i < length && CellReference.isDigit(formula.charAt(i))) {
+                i++;
+                fractionDigits++;
+            }
+            if (fractionDigits == 0) {
+                throw new IncorrectFormulaException("Missing digits after the decimal point", i);
+            }
+        } else if (integerDigits == 0) {
+            throw new IncorrectFormulaException("Malformed number", i);
+        }
+        return i;
+    }
+
+    /**
+     * Convertit un nombre déjà validé par {@link #scanNumber(String, int)}.
+     * Lorsque la mantisse et l'exposant décimal sont représentables exactement,
+     * le résultat est obtenu par une seule division, correctement arrondie ;
+     * sinon la conversion est confiée à {@link Double#parseDouble(String)}.
+     *
+     * @param formula La formule.
+     * @param start   La position du premier caractère du nombre.
+     * @param end     La position qui suit le nombre.
+     * @return La valeur du nombre.
+     */
+    private static double parseNumber(String formula, int start, int end) {
+        int i = start;
+        boolean negative = formula.charAt(i) == '-';
+        if (formula.charAt(i) == '+' || negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = formula.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (mantissa >= EXACT_MANTISSA) {
+                return Double.parseDouble(formula.substring(start, end));
+            }
+            if (fraction) {
+                scale++;
+            }
+        }
+        if (scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(formula.substring(start, end));
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Calcule la profondeur maximale de pile d'un programme.
+     *
+     * @param program Les instructions, dans l'ordre d'exécution.
+     * @return La profondeur maximale de la pile.
+     */
+    static int maxStack(int[] program) {
+        int depth = 0;
+        int max = 0;
+        for (int instruction : program) {
+            int opcode = CompiledFormula.opcode(instruction);
+            if (opcode == CompiledFormula.PUSH_CONSTANT || opcode == CompiledFormula.PUSH_REFERENCE
+                    || opcode == CompiledFormula.LOAD || CompiledFormula.isAggregate(opcode)) {
+                max = Math.max(max, ++depth);
+            } else {
+                depth--;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Renvoie le code d'instruction correspondant à un opérateur.
+     *
+     * @param operator L'opérateur (+, -, * ou /).
+     * @return Le code d'instruction de l'opérateur.
+     */
+    private static int operatorCode(char operator) {
+        switch (operator) {
+            case '+':
+                return CompiledFormula.ADD;
+            case '-':
+                return CompiledFormula.SUBTRACT;
+            case '*':
+                return CompiledFormula.MULTIPLY;
+            default:
+                return CompiledFormula.DIVIDE;
+        }
+    }
+
+    /**
+     * Renvoie le symbole d'un code d'instruction d'opérateur.
+     *
+     * @param opcode Le code d'instruction.
+     * @return Le symbole de l'opérateur.
+     */
+    public static char operatorSymbol(int opcode) {
+        switch (opcode) {
+            case CompiledFormula.ADD:
+                return '+';
+            case CompiledFormula.SUBTRACT:
+                return '-';
+            case CompiledFormula.MULTIPLY:
+                return '*';
+            case CompiledFormula.DIVIDE:
+                return '/';
+            default:
+                throw new UnsupportedOperationException("Unsupported opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Vérifie si un caractère est un opérateur.
+     *
+     * @param c Le caractère à vérifier.
+     * @return True si le caractère est +, -, * ou /, sinon False.
+     */
+    private static boolean isOperator(char c) {
+        return c == '+' || c == '-' || c == '*' || c == '/';
+    }
+
+    /**
+     * Vérifie si un caractère est un blanc séparant deux jetons.
+     *
+     * @param c Le caractère à vérifier.
+     * @return True si le caractère est un blanc, sinon False.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+}
@@ -0,0 +1,311 @@
+package src.model;
+
+import src.entity.CompiledFormula;
+import src.entity.Node;
+import src.exception.IncorrectFormulaException;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Réserve de formules internées sous forme de modèles relatifs.
+ * Une formule est rangée sous sa forme relative
+ * ({@link FormulaParser#toRelative(String, int, int)}), où chaque référence
+ * est un décalage par rapport à la cellule qui la porte : une formule recopiée
+ * sur des milliers de lignes n'occupe qu'une entrée. Chaque modèle distinct
+ * reçoit un identifiant entier et n'est analysé et optimisé
+ * ({@link FormulaOptimizer}) qu'une seule fois ; sa forme compilée, aux
+ * références relatives, est évaluée avec la position de chaque cellule pour
+ * ancrage. Le texte d'une cellule n'est pas conservé : il est restitué à la
+ * demande à partir du modèle et de la position de la cellule. Un compteur de
+ * références permet de réutiliser l'identifiant d'un modèle qui n'est plus
+ * employé par aucune cellule.
+ * <p>
+ * Pour l'évaluation par parcours d'arbre
+ * ({@link SheetEngine#setCompiledEvaluation(boolean)}), l'arbre syntaxique
+ * d'un modèle est construit à la première demande par
+ * {@link FormulaParser#parseTree(String, int, int)}, à partir du texte de la
+ * formule et non de sa forme compilée et optimisée, puis conservé avec elle.
+ * </p>
+ * <p>
+ * L'erreur d'analyse d'un modèle incorrect est celle de la première cellule
+ * qui l'a employé : sa position dans le texte peut différer de quelques
+ * caractères pour les autres cellules.
+ * </p>
+ */
+public class FormulaPool {
+
+    /** Identifiant de la formule vide, toujours présente dans la réserve. */
+    public static final int EMPTY = 0;
+
+    /** La forme relative de chaque formule, par identifiant. */
+    private String[] formulas;
+    /**
+     * La forme compilée, aux références relatives, de chaque formule, ou null
+     * si elle est incorrecte.
+     */
+    private CompiledFormula[] compiled;
+    /** L'arbre syntaxique de chaque formule, ou null s'il n'est pas construit. */
+    private Node[] trees;
+    /** L'erreur d'analyse de chaque formule incorrecte. */
+    private IncorrectFormulaException[] errors;
+    /** Le nombre de cellules qui emploient chaque formule. */
+    private int[] counts;
+    /** L'identifiant de chaque formule, par forme relative. */
+    private final Map<String, Integer> ids;
+    /** Les identifiants libérés, réutilisables. */
+    private final ArrayDeque<Integer> freeIds;
+    /** Le prochain identifiant jamais attribué. */
+    private int nextId;
+    /** Les compteurs où sont comptées les compilations et réutilisations. */
+    private final EngineMetrics metrics;
+
+    /**
+     * Construit une réserve ne contenant que la formule vide.
+     */
+    public FormulaPool() {
+        this(new EngineMetrics());
+    }
+
+    /**
+     * Construit une réserve ne contenant que la formule vide, qui compte ses
+     * compilations et réutilisations de formules dans les compteurs donnés.
+     *
+     * @param metrics Les compteurs du moteur.
+     */
+    public FormulaPool(EngineMetrics metrics) {
+        this.metrics = metrics;
+        this.formulas = new String[16];
+        this.compiled = new CompiledFormula[16];
+        this.trees = new Node[16];
+        this.errors = new IncorrectFormulaException[16];
+        this.counts = new int[16];
+        this.ids = new HashMap<>();
+        this.freeIds = new ArrayDeque<>();
+        this.formulas[EMPTY] = "";
+        this.ids.put("", EMPTY);
+        this.nextId = EMPTY + 1;
+    }
+
+    /**
+     * Interne la formule d'une cellule. Un modèle nouveau est analysé, compilé
+     * et optimisé à cette occasion.
+     *
+     * @param formula Le texte de la formule.
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @return L'identifiant du modèle de la formule.
+     */
+    public int intern(String formula, int row, int column) {
+        return intern(formula, row, column, null);
+    }
+
+    /**
+     * Interne la formule d'une cellule en fournissant sa forme compilée : un
+     * modèle nouveau n'est alors pas analysé.
+     *
+     * @param formula Le texte de la formule.
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @param form    La forme compilée de la formule, aux références absolues
+     *                comme celle de {@link FormulaParser#parse(String)}, ou
+     *                null pour l'analyser.
+     * @return L'identifiant du modèle de la formule.
+     */
+    public int intern(String formula, int row, int column, CompiledFormula form) {
+        String template = formula.isEmpty() ? "" : FormulaParser.toRelative(formula, row, column);
+        Integer id = ids.get(template);
+        if (id == null) {
+            id = add(template);
+            if (form != null) {
+                compiled[id] = form.translate(-row, -column);
+            } else {
+                compile(id, formula, row, column);
+            }
+        }
+        return use(id);
+    }
+
+    /**
+     * Interne un modèle déjà sous forme relative, par exemple lu dans un
+     * fichier, pour une cellule supplémentaire.
+     *
+     * @param template La forme relative de la formule.
+     * @param row      La ligne de la cellule.
+     * @param column   La colonne de la cellule.
+     * @param form     La forme compilée du modèle, aux références relatives,
+     *                 ou null pour analyser la formule de la cellule.
+     * @return L'identifiant du modèle.
+     */
+    public int internTemplate(String template, int row, int column, CompiledFormula form) {
+        Integer id = ids.get(template);
+        if (id == null) {
+            id = add(template);
+            if (form != null) {
+                compiled[id] = form;
+            } else {
+                compile(id, FormulaParser.toAbsolute(template, row, column), row, column);
+            }
+        }
+        return use(id);
+    }
+
+    /**
+     * Réserve un identifiant pour un modèle nouveau.
+     *
+     * @param template La forme relative du modèle.
+     * @return L'identifiant attribué.
+     */
+    private int add(String template) {
+        int id = freeIds.isEmpty() ? nextId++ : freeIds.pop();
+        if (id == formulas.length) {
+            int capacity = formulas.length * 2;
+            formulas = Arrays.copyOf(formulas, capacity);
+            compiled = Arrays.copyOf(compiled, capacity);
+            trees = Arrays.copyOf(trees, capacity);
+            errors = Arrays.copyOf(errors, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        formulas[id] = template;
+        ids.put(template, id);
+        return id;
+    }
+
+    /**
+     * Analyse, compile et optimise la formule d'une cellule, puis range sa
+     * forme relative à la cellule, ou son erreur, sous l'identifiant de son
+     * modèle.
+     *
+     * @param id      L'identifiant du modèle.
+     * @param formula Le texte de la formule.
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     */
+    private void compile(int id, String formula, int row, int column) {
+        metrics.formulaCompiled();
+        try {
+            compiled[id] = FormulaOptimizer.optimize(FormulaParser.parse(formula)).translate(-row, -column);
+        } catch (IncorrectFormulaException e) {
+            errors[id] = e;
+        }
+    }
+
+    /**
+     * Compte une cellule de plus employant un modèle.
+     *
+     * @param id L'identifiant du modèle.
+     * @return L'identifiant du modèle.
+     */
+    private int use(int id) {
+        if (id != EMPTY) {
+            if (counts[id] > 0) {
+                metrics.cacheHit();
+            }
+            counts[id]++;
+        }
+        return id;
+    }
+
+    /**
+     * Libère une formule employée par une cellule de moins. Une formule qui
+     * n'est plus employée est retirée de la réserve.
+     *
+     * @param id L'identifiant de la formule.
+     */
+    public void release(int id) {
+        if (id == EMPTY || --counts[id] > 0) {
+            return;
+        }
+        ids.remove(formulas[id]);
+        formulas[id] = null;
+        compiled[id] = null;
+        trees[id] = null;
+        errors[id] = null;
+        freeIds.push(id);
+    }
+
+    /**
+     * Renvoie le texte de la formule d'une cellule.
+     *
+     * @param id     L'identifiant du modèle de la formule.
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return Le texte de la formule.
+     */
+    public String formula(int id, int row, int column) {
+        return id == EMPTY ? "" : FormulaParser.toAbsolute(formulas[id], row, column);
+    }
+
+    /**
+     * Renvoie la forme relative d'une formule.
+     *
+     * @param id L'identifiant du modèle de la formule.
+     * @return La forme relative de la formule.
+     */
+    public String template(int id) {
+        return formulas[id];
+    }
+
+    /**
+     * Renvoie la forme compilée d'une formule, dont les références sont
+     * relatives à la cellule qui la porte.
+     *
+     * @param id L'identifiant du modèle de la formule.
+     * @return La formule compilée, à évaluer avec
+     *         {@link CompiledFormula#evaluate(CompiledFormula.ValueSource, int, int)}.
+     * @throws IncorrectFormulaException Si la syntaxe de la formule est
+     *                                   incorrecte.
+     */
+    public CompiledFormula compiled(int id) throws IncorrectFormulaException {
+        if (compiled[id] == null) {
+            throw errors[id] != null ? errors[id] : new IncorrectFormulaException("Empty formula", 0);
+        }
+        return compiled[id];
+    }
+
+    /**
+     * Renvoie l'arbre syntaxique d'une formule, dont les références sont
+     * relatives à la cellule qui la porte. L'arbre est analysé à la première
+     * demande, à partir du texte de la formule dans la cellule donnée ; un
+     * modèle incorrect est réanalysé à chaque demande. La méthode est
+     * synchronisée, car elle peut être appelée pendant une évaluation
+     * parallèle.
+     *
+     * @param id     L'identifiant du modèle de la formule.
+     * @param row    La ligne d'une cellule qui porte la formule.
+     * @param column La colonne de cette cellule.
+     * @return L'arbre de la formule, à évaluer avec
+     *         {@link Node#evaluate(CompiledFormula.ValueSource, int, int)}.
+     * @throws IncorrectFormulaException Si la syntaxe de la formule est
+     *                                   incorrecte.
+     */
+    public synchronized Node tree(int id, int row, int column) throws IncorrectFormulaException {
+        Node tree = trees[id];
+        if (tree == null) {
+            tree = FormulaParser.parseTree(formula(id, row, column), row, column);
+            trees[id] = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Renvoie la borne supérieure (exclue) des identifiants attribués.
+     *
+     * @return Un identifiant supérieur à tous ceux de la réserve.
+     */
+    public int idLimit() {
+        return nextId;
+    }
+
+    /**
+     * Renvoie le nombre de formules distinctes de la réserve, formule vide
+     * comprise.
+     *
+     * @return Le nombre de formules internées.
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -3,17 +3,55 @@ package src.model;
 import src.entity.Cell;
 import src.entity.Status;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 /**
  * Modèle de la grille.
- * Stocke les données de la grille de cellules.
+ * Stocke les données de la grille de cellules. Les formules, les valeurs et
+ * les statuts sont conservés par un {@link SheetEngine}, que les vues lisent
+ * dans sa dernière version publiée. Une grille très grande n'occupe donc de
+ * mémoire que pour ses cellules utilisées. Les modifications passent par le
+ * {@link RecalculationService}, qui les applique et les recalcule hors du
+ * thread appelant.
+ * <p>
+ * Les cellules d'affichage ({@link Cell}) ne sont que des adaptateurs de ce
+ * moteur, créés à la demande, qui ne doivent être utilisés que depuis un seul
+ * thread : leurs modifications passent par le service de recalcul, et leur
+ * état est relu dans la dernière version publiée. Chaque mise à jour des
+ * cellules après un recalcul ouvre une nouvelle époque : les cellules
+ * recalculées y sont invalidées, puis leur valeur est mise en cache, de sorte
+ * que {@link FormulaCalculatorModel} lit sans la recalculer la valeur d'une
+ * cellule référencée.
+ * </p>
  */
 public class GridModel {
-    /** La grille de cellules. */
+    /** La grille de cellules, lorsqu'elle a été créée en entier. */
     private Cell[][] spreadsheet;
     /** Le nombre de lignes de la grille. */
     private int i;
     /** Le nombre de colonnes de la grille. */
     private int j;
+    /** Le moteur de calcul de la grille. */
+    private SheetEngine engine;
+    /** Les cellules d'affichage déjà créées, par clé de cellule. */
+    private Map<Long, Cell> cells;
+    /** L'époque de la dernière mise à jour des cellules d'affichage. */
+    private long epoch;
+    /** Le service de recalcul asynchrone, créé à la première utilisation. */
+    private RecalculationService recalculationService;
+    /** L'historique des versions de la grille. */
+    private SheetHistory history;
 
     /**
      * Constructeur de la classe GridModel.
@@ -24,58 +62,437 @@ public class GridModel {
     public GridModel(int i, int j) {
         this.i = i;
         this.j = j;
-        this.spreadsheet = new Cell[i][j];
+        this.spreadsheet = null;
+        this.engine = new SheetEngine(i, j);
+        this.cells = new HashMap<>();
+        this.history = new SheetHistory(engine);
+    }
+
+    /**
+     * Constructeur de la classe GridModel pour un moteur existant, par exemple
+     * chargé depuis un fichier.
+     * 
+     * @param engine Le moteur de calcul de la grille.
+     */
+    public GridModel(SheetEngine engine) {
+        this.i = engine.getRows();
+        this.j = engine.getColumns();
+        this.spreadsheet = null;
+        this.engine = engine;
+        this.cells = new HashMap<>();
+        this.history = new SheetHistory(engine);
     }
 
     /**
-     * Crée une nouvelle feuille de calcul avec des cellules vides.
+     * Crée une nouvelle feuille de calcul avec des cellules vides. Toutes les
+     * cellules d'affichage sont créées : cette méthode est réservée aux petites
+     * grilles affichées en entier.
      * 
      * @return La grille de cellules initialisée.
      */
     public Cell[][] createSpreadSheet() {
         System.out.println("Start");
+        this.spreadsheet = new Cell[i][j];
         for (int k = 0; k < i; k++) {
             for (int l = 0; l < j; l++) {
-                this.spreadsheet[k][l] = new Cell(k, l, "", Status.EMPTY);
+                this.spreadsheet[k][l] = getCell(k, l);
             }
         }
         return spreadsheet;
     }
 
     /**
-     * Obtient la grille de cellules.
+     * Obtient la grille de cellules créée par {@link #createSpreadSheet()}.
      * 
-     * @return La grille de cellules.
+     * @return La grille de cellules, ou null si elle n'a pas été créée.
      */
     public Cell[][] getSpreadSheet() {
         return spreadsheet;
     }
 
     /**
-     * Définit la formule d'une cellule à une position donnée.
+     * Obtient le moteur de calcul de la grille.
+     * 
+     * @return Le moteur de calcul.
+     */
+    public SheetEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Obtient la dernière version publiée par le moteur, cohérente et
+     * immuable. Cette méthode peut être appelée depuis n'importe quel thread,
+     * même pendant un recalcul.
+     * 
+     * @return La dernière version de la grille.
+     */
+    public SheetVersion getSnapshot() {
+        return engine.snapshot();
+    }
+
+    /**
+     * Obtient la cellule d'affichage d'une position, en la créant à partir de
+     * la dernière version publiée si elle n'existe pas encore.
+     * 
+     * @param row L'indice de ligne de la cellule.
+     * @param col L'indice de colonne de la cellule.
+     * @return La cellule d'affichage.
+     */
+    public Cell getCell(int row, int col) {
+        long key = engine.keyOf(row, col);
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            SheetVersion version = engine.snapshot();
+            cell = new Cell(row, col, version.getFormula(row, col), Status.EMPTY);
+            refresh(cell, version);
+            cells.put(key, cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Définit la formule d'une cellule à une position donnée. La formule est
+     * soumise au service de recalcul, qui l'applique et met à jour le graphe
+     * des dépendances ; la cellule d'affichage reçoit la formule sans
+     * attendre, et sa valeur après {@link #recalculate(Cell)}.
      * 
      * @param row     L'indice de ligne de la cellule.
      * @param col     L'indice de colonne de la cellule.
      * @param formula La nouvelle formule de la cellule.
+     * @return La cellule modifiée.
      */
-    public void setCellFormula(int row, int col, String formula) {
-        if (row < 0 || row >= spreadsheet.length || col < 0 || col >= spreadsheet[0].length) {
-            throw new IndexOutOfBoundsException("Position de cellule hors limites.");
-        }
-        Cell cell = spreadsheet[row][col];
+    public Cell setCellFormula(int row, int col, String formula) {
+        submitFormula(row, col, formula);
+        Cell cell = getCell(row, col);
         cell.replaceFormula(formula);
-        cell.setText(formula);
+        return cell;
+    }
+
+    /**
+     * Recalcule une cellule modifiée puis toutes les cellules qui en dépendent,
+     * chacune une seule fois et dans l'ordre topologique, sur le thread de
+     * recalcul une fois les modifications en cours appliquées. Attend la fin du
+     * recalcul, puis met à jour l'affichage des cellules qui ont une cellule
+     * d'affichage.
+     * 
+     * @param cell La cellule modifiée.
+     * @return Les cellules d'affichage recalculées, dans l'ordre d'évaluation.
+     * @throws IllegalStateException Si l'attente est interrompue ou si le
+     *                               recalcul échoue.
+     */
+    public List<Cell> recalculate(Cell cell) {
+        int row = cell.getX();
+        int col = cell.getY();
+        return refresh(await(getRecalculationService().call(() -> engine.recalculate(row, col))));
+    }
+
+    /**
+     * Définit la formule d'une cellule puis recalcule la cellule et toutes
+     * celles qui en dépendent, sur le thread de recalcul une fois les
+     * modifications en cours appliquées, et attend la fin du recalcul. Aucune
+     * cellule d'affichage n'est créée : seules celles qui existent déjà sont
+     * mises à jour.
+     * 
+     * @param row     L'indice de ligne de la cellule.
+     * @param col     L'indice de colonne de la cellule.
+     * @param formula La nouvelle formule de la cellule.
+     * @return Les clés des cellules recalculées, dans l'ordre d'évaluation.
+     * @throws IllegalStateException Si l'attente est interrompue ou si le
+     *                               recalcul échoue.
+     */
+    public long[] setFormula(int row, int col, String formula) {
+        long[] order = await(getRecalculationService().call(() -> {
+            engine.setFormula(row, col, formula);
+            return engine.recalculate(row, col);
+        }));
+        refresh(order);
+        return order;
+    }
+
+    /**
+     * Obtient le service de recalcul asynchrone de la grille. Une fois le
+     * service utilisé, les formules ne doivent plus être modifiées que par son
+     * intermédiaire.
+     * 
+     * @return Le service de recalcul.
+     */
+    public synchronized RecalculationService getRecalculationService() {
+        if (recalculationService == null) {
+            recalculationService = new RecalculationService(engine);
+        }
+        return recalculationService;
+    }
+
+    /**
+     * Soumet la formule d'une cellule au service de recalcul asynchrone : la
+     * formule est appliquée et recalculée hors du thread appelant, et le
+     * résultat est publié aux écouteurs du moteur.
+     * 
+     * @param row     L'indice de ligne de la cellule.
+     * @param col     L'indice de colonne de la cellule.
+     * @param formula La nouvelle formule de la cellule.
+     * @return La génération de la modification.
+     */
+    public long submitFormula(int row, int col, String formula) {
+        return getRecalculationService().submit(row, col, formula);
+    }
+
+    /**
+     * Ouvre un lot de modifications de la grille, par exemple pour un collage
+     * ou une mise à jour scriptée : les formules du lot sont appliquées
+     * ensemble, avec un seul recalcul, lorsqu'il est soumis par
+     * {@link #submitBatch(SheetEngine.Batch)}.
+     * 
+     * @return Un nouveau lot vide.
+     */
+    public SheetEngine.Batch beginBatch() {
+        return engine.beginBatch();
+    }
+
+    /**
+     * Soumet un lot de modifications au service de recalcul asynchrone : ses
+     * formules sont appliquées et recalculées en une seule passe hors du
+     * thread appelant, et le résultat est publié aux écouteurs du moteur.
+     * 
+     * @param batch Le lot de modifications, ouvert par {@link #beginBatch()}.
+     * @return La génération de la modification.
+     */
+    public long submitBatch(SheetEngine.Batch batch) {
+        return getRecalculationService().submit(batch);
+    }
+
+    /**
+     * Obtient l'historique des versions de la grille. Il ne doit être utilisé
+     * que sur le thread de recalcul ; les noms des instantanés peuvent être
+     * lus depuis n'importe quel thread par {@link #getSnapshotNames()}.
+     * 
+     * @return L'historique de la grille.
+     */
+    public SheetHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Annule la dernière modification, sur le thread de recalcul une fois les
+     * modifications en cours appliquées.
+     * 
+     * @return Vrai à venir si une modification a été annulée.
+     */
+    public Future<Boolean> undo() {
+        return getRecalculationService().call(history::undo);
+    }
+
+    /**
+     * Refait la dernière modification annulée, sur le thread de recalcul une
+     * fois les modifications en cours appliquées.
+     * 
+     * @return Vrai à venir si une modification a été refaite.
+     */
+    public Future<Boolean> redo() {
+        return getRecalculationService().call(history::redo);
+    }
+
+    /**
+     * Conserve l'état de la grille sous un nom, une fois les modifications en
+     * cours appliquées.
+     * 
+     * @param name Le nom de l'instantané.
+     * @return L'achèvement à venir de l'instantané.
+     */
+    public Future<Void> takeSnapshot(String name) {
+        return getRecalculationService().call(() -> {
+            history.snapshot(name);
+            return null;
+        });
+    }
+
+    /**
+     * Obtient les noms des instantanés, dans l'ordre alphabétique. Cette
+     * méthode peut être appelée depuis n'importe quel thread, sans attendre
+     * les modifications en cours.
+     * 
+     * @return Les noms des instantanés (copie).
+     */
+    public NavigableSet<String> getSnapshotNames() {
+        return history.getSnapshotNames();
+    }
+
+    /**
+     * Restaure un instantané de la grille, sur le thread de recalcul une fois
+     * les modifications en cours appliquées.
+     * 
+     * @param name Le nom de l'instantané.
+     * @return Vrai à venir si l'instantané existe et a été restauré.
+     */
+    public Future<Boolean> restoreSnapshot(String name) {
+        return getRecalculationService().call(() -> history.restore(name));
+    }
+
+    /**
+     * Importe un fichier CSV ou TSV (d'après son extension) à partir de la
+     * cellule A1, sur le thread de recalcul. Toutes les formules du fichier
+     * sont placées dans le moteur, puis recalculées en une seule passe.
+     * 
+     * @param file Le fichier à importer.
+     * @return Les clés des cellules recalculées, à venir.
+     */
+    public Future<long[]> importDelimited(Path file) {
+        return getRecalculationService().call(
+                () -> SheetCsvFormat.read(file, SheetCsvFormat.delimiterOf(file), engine).commit());
+    }
+
+    /**
+     * Exporte les valeurs ou les formules de la grille dans un fichier CSV ou
+     * TSV (d'après son extension). L'export lit la dernière version publiée,
+     * sur un thread à part : il ne retarde pas les recalculs, et n'est pas
+     * retardé par eux.
+     * 
+     * @param file     Le fichier de destination.
+     * @param formulas true pour exporter les formules, false pour les valeurs.
+     * @return L'achèvement à venir de l'export.
+     */
+    public Future<Void> exportDelimited(Path file, boolean formulas) {
+        SheetVersion version = engine.snapshot();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            SheetCsvFormat.write(version, file, SheetCsvFormat.delimiterOf(file), formulas);
+            return null;
+        });
+        Thread thread = new Thread(task, "export");
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Met à jour, dans une nouvelle époque, les cellules d'affichage existantes
+     * parmi des cellules recalculées.
+     * 
+     * @param order Les clés des cellules recalculées, dans l'ordre d'évaluation.
+     * @return Les cellules d'affichage mises à jour.
+     */
+    private List<Cell> refresh(long[] order) {
+        SheetVersion version = engine.snapshot();
+        epoch++;
+        List<Cell> recalculated = new ArrayList<>();
+        for (long key : order) {
+            Cell view = cells.get(key);
+            if (view != null) {
+                view.invalidateValue(epoch);
+                recalculated.add(view);
+            }
+        }
+        for (Cell view : recalculated) {
+            refresh(view, version);
+        }
+        return recalculated;
+    }
+
+    /**
+     * Met à jour la formule, le texte, le statut et la valeur en cache d'une
+     * cellule à partir d'une version de la grille.
+     * 
+     * @param cell    La cellule à mettre à jour.
+     * @param version La version de la grille.
+     */
+    private void refresh(Cell cell, SheetVersion version) {
+        int row = cell.getX();
+        int col = cell.getY();
+        String formula = version.getFormula(row, col);
+        if (!formula.equals(cell.getFormula())) {
+            cell.replaceFormula(formula);
+        }
+        cell.setText(version.getText(row, col));
+        cell.setStatus(version.getStatus(row, col));
+        if (cell.getStatus() == Status.CALCULABLE) {
+            cell.cacheValue(version.getValue(row, col), epoch);
+        } else {
+            cell.cacheError(epoch);
+        }
+    }
+
+    /**
+     * Attend le résultat d'une tâche du thread de recalcul.
+     * 
+     * @param task La tâche.
+     * @param <T>  Le type du résultat.
+     * @return Le résultat de la tâche.
+     * @throws IllegalStateException Si l'attente est interrompue ou si la
+     *                               tâche échoue.
+     */
+    private static <T> T await(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Attente du recalcul interrompue.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Active le recalcul parallèle des cellules indépendantes sur le pool donné.
+     * 
+     * @param pool Le pool d'évaluation, ou null pour un recalcul séquentiel.
+     */
+    public void setRecalculationPool(ForkJoinPool pool) {
+        engine.setPool(pool);
+    }
+
+    /**
+     * Renvoie les cellules qui référencent directement la cellule donnée, lues
+     * sur le thread de recalcul.
+     * 
+     * @param cell La cellule dont on cherche les dépendants.
+     * @return Les dépendants directs de la cellule.
+     */
+    public Set<Cell> dependentsOf(Cell cell) {
+        long key = engine.keyOf(cell.getX(), cell.getY());
+        return toCells(await(getRecalculationService().call(
+                () -> new LinkedHashSet<>(engine.getDependencyGraph().dependentsOf(key)))));
+    }
+
+    /**
+     * Renvoie les cellules directement référencées par la cellule donnée, lues
+     * sur le thread de recalcul.
+     * 
+     * @param cell La cellule dont on cherche les antécédents.
+     * @return Les antécédents directs de la cellule.
+     */
+    public Set<Cell> precedentsOf(Cell cell) {
+        long key = engine.keyOf(cell.getX(), cell.getY());
+        return toCells(await(getRecalculationService().call(
+                () -> new LinkedHashSet<>(engine.getDependencyGraph().precedentsOf(key)))));
+    }
+
+    /**
+     * Convertit des clés de cellules du moteur en cellules d'affichage. Les
+     * sommets du graphe qui ne sont pas des cellules (agrégats partiels des
+     * plages) sont ignorés.
+     * 
+     * @param keys Les clés des sommets.
+     * @return Les cellules correspondantes.
+     */
+    private Set<Cell> toCells(Set<Long> keys) {
+        Set<Cell> result = new LinkedHashSet<>();
+        for (long key : keys) {
+            if (!RangeIndex.isNode(key)) {
+                result.add(getCell(CellReference.row(key), CellReference.column(key)));
+            }
+        }
+        return result;
     }
 
     /**
      * Obtient la cellule à partir d'une référence donnée.
      * 
-     * @param reference La référence de la cellule (par exemple, "A1").
+     * @param reference La référence de la cellule (par exemple, "A1" ou "AB12").
      * @return La cellule correspondante.
+     * @throws IllegalArgumentException  Si la référence est mal formée.
+     * @throws IndexOutOfBoundsException Si la référence est hors de la grille.
      */
     public Cell getCellFromReference(String reference) {
-        int row = Character.getNumericValue(reference.charAt(1)) - 1;
-        int column = reference.charAt(0) - 'A';
-        return spreadsheet[row][column];
+        long key = CellReference.parse(reference);
+        return getCell(CellReference.row(key), CellReference.column(key));
     }
 }
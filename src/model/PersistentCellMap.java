@@ -0,0 +1,420 @@
+package src.model;
+
+/**
+ * Table associative persistante des cellules : une table immuable dont chaque
+ * modification renvoie une nouvelle table, qui partage avec l'ancienne tout ce
+ * que la modification ne touche pas.
+ * <p>
+ * La table est un arbre de préfixes à tables de bits (HAMT) sur un mélange
+ * bijectif de la clé de cellule : chaque nœud consomme cinq bits du mélange et
+ * ne range que ses cases occupées. Deux clés distinctes ayant des mélanges
+ * distincts, il n'y a jamais de collision ; la profondeur moyenne est
+ * log<sub>32</sub>(n) et ne dépasse pas treize. Une insertion ou une
+ * suppression ne recopie que le chemin de la racine à la clé, soit O(log n)
+ * en temps et en mémoire.
+ * </p>
+ * <p>
+ * La forme de l'arbre ne dépend que de ses clés : un nœud n'a jamais une
+ * feuille pour seul enfant. Deux versions issues l'une de l'autre partagent
+ * les sous-arbres qu'aucune modification n'a touchés, et leur comparaison
+ * ({@link #diff(PersistentCellMap, KeyVisitor)}) saute ces sous-arbres.
+ * </p>
+ *
+ * @param <V> Le type des valeurs, comparées par {@link Object#equals(Object)}.
+ */
+public final class PersistentCellMap<V> {
+
+    /** Nombre de bits du mélange consommés par chaque niveau. */
+    private static final int BITS = 5;
+    /** Masque d'un indice de case dans un nœud. */
+    private static final int MASK = (1 << BITS) - 1;
+    /** La table vide. */
+    private static final PersistentCellMap<?> EMPTY = new PersistentCellMap<>(null, 0);
+
+    /** La racine : null, une {@link Leaf} ou un {@link Node}. */
+    private final Object root;
+    /** Le nombre de clés de la table. */
+    private final int size;
+
+    /**
+     * Visiteur des entrées d'une table.
+     *
+     * @param <V> Le type des valeurs.
+     */
+    public interface EntryVisitor<V> {
+        /**
+         * Appelé pour chaque entrée.
+         *
+         * @param key   La clé de la cellule.
+         * @param value La valeur associée.
+         */
+        void visit(long key, V value);
+    }
+
+    /**
+     * Visiteur des clés de cellules.
+     */
+    public interface KeyVisitor {
+        /**
+         * Appelé pour chaque clé.
+         *
+         * @param key La clé de la cellule.
+         */
+        void visit(long key);
+    }
+
+    /**
+     * Feuille de l'arbre : une entrée de la table.
+     */
+    private static final class Leaf {
+        private final long key;
+        private final long hash;
+        private final Object value;
+
+        /**
+         * Construit une feuille.
+         *
+         * @param key   La clé.
+         * @param hash  Le mélange de la clé.
+         * @param value La valeur.
+         */
+        Leaf(long key, long hash, Object value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Nœud interne : ses cases occupées, dans l'ordre de leurs indices.
+     */
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        /**
+         * Construit un nœud.
+         *
+         * @param bitmap Les indices des cases occupées.
+         * @param slots  Le contenu des cases occupées, feuilles ou nœuds.
+         */
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Construit une table.
+     *
+     * @param root La racine.
+     * @param size Le nombre de clés.
+     */
+    private PersistentCellMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Renvoie la table vide.
+     *
+     * @param <V> Le type des valeurs.
+     * @return La table vide.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentCellMap<V> empty() {
+        return (PersistentCellMap<V>) EMPTY;
+    }
+
+    /**
+     * Renvoie le nombre de clés de la table.
+     *
+     * @return Le nombre de clés.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Renvoie la valeur associée à une clé.
+     *
+     * @param key La clé de la cellule.
+     * @return La valeur, ou null si la clé est absente.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Leaf leaf = find(root, 0, key, mix(key));
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    /**
+     * Renvoie une table où une clé est associée à une valeur.
+     *
+     * @param key   La clé de la cellule.
+     * @param value La valeur, non nulle.
+     * @return La nouvelle table, ou celle-ci si la clé y est déjà associée à
+     *         une valeur égale.
+     */
+    public PersistentCellMap<V> with(long key, V value) {
+        long hash = mix(key);
+        Leaf previous = find(root, 0, key, hash);
+        if (previous != null && previous.value.equals(value)) {
+            return this;
+        }
+        return new PersistentCellMap<>(put(root, 0, new Leaf(key, hash, value)),
+                previous == null ? size + 1 : size);
+    }
+
+    /**
+     * Renvoie une table sans une clé.
+     *
+     * @param key La clé de la cellule.
+     * @return La nouvelle table, ou celle-ci si la clé est absente.
+     */
+    public PersistentCellMap<V> without(long key) {
+        long hash = mix(key);
+        if (find(root, 0, key, hash) == null) {
+            return this;
+        }
+        return new PersistentCellMap<>(remove(root, 0, key, hash), size - 1);
+    }
+
+    /**
+     * Parcourt les entrées de la table, dans l'ordre de l'arbre.
+     *
+     * @param visitor Le visiteur des entrées.
+     */
+    public void forEach(EntryVisitor<? super V> visitor) {
+        forEach(root, visitor);
+    }
+
+    /**
+     * Parcourt les clés dont la valeur diffère entre cette table et une autre,
+     * y compris les clés présentes dans une seule des deux. Les sous-arbres
+     * partagés par les deux tables ne sont pas parcourus : le coût est
+     * proportionnel aux modifications qui séparent deux versions d'une même
+     * table.
+     *
+     * @param other   L'autre table.
+     * @param visitor Le visiteur des clés différentes.
+     */
+    public void diff(PersistentCellMap<V> other, KeyVisitor visitor) {
+        diff(root, other.root, 0, visitor);
+    }
+
+    /**
+     * Mélange une clé de cellule par une bijection de 64 bits (finaliseur de
+     * SplitMix64), pour répartir les clés voisines dans l'arbre.
+     *
+     * @param key La clé.
+     * @return Le mélange de la clé.
+     */
+    private static long mix(long key) {
+        long h = key;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Renvoie l'indice de case d'un mélange à un niveau.
+     *
+     * @param hash  Le mélange.
+     * @param shift Le décalage du niveau.
+     * @return L'indice de case, entre 0 et 31.
+     */
+    private static int index(long hash, int shift) {
+        return (int) (hash >>> shift) & MASK;
+    }
+
+    /**
+     * Cherche la feuille d'une clé.
+     *
+     * @param slot  Le sous-arbre.
+     * @param shift Le décalage du niveau du sous-arbre.
+     * @param key   La clé.
+     * @param hash  Le mélange de la clé.
+     * @return La feuille, ou null si la clé est absente.
+     */
+    private static Leaf find(Object slot, int shift, long key, long hash) {
+        while (slot instanceof Node) {
+            Node node = (Node) slot;
+            int bit = 1 << index(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            shift += BITS;
+        }
+        return slot != null && ((Leaf) slot).key == key ? (Leaf) slot : null;
+    }
+
+    /**
+     * Insère ou remplace une feuille dans un sous-arbre, en recopiant le
+     * chemin.
+     *
+     * @param slot  Le sous-arbre.
+     * @param shift Le décalage du niveau du sous-arbre.
+     * @param leaf  La feuille.
+     * @return Le nouveau sous-arbre.
+     */
+    private static Object put(Object slot, int shift, Leaf leaf) {
+        if (slot == null) {
+            return leaf;
+        }
+        if (slot instanceof Leaf) {
+            Leaf existing = (Leaf) slot;
+            return existing.key == leaf.key ? leaf : pair(existing, leaf, shift);
+        }
+        Node node = (Node) slot;
+        int bit = 1 << index(leaf.hash, shift);
+        int position = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, position);
+            slots[position] = leaf;
+            System.arraycopy(node.slots, position, slots, position + 1, node.slots.length - position);
+            return new Node(node.bitmap | bit, slots);
+        }
+        return replace(node, position, put(node.slots[position], shift + BITS, leaf));
+    }
+
+    /**
+     * Construit le plus petit sous-arbre contenant deux feuilles de clés
+     * distinctes.
+     *
+     * @param first  La première feuille.
+     * @param second La seconde feuille.
+     * @param shift  Le décalage du niveau du sous-arbre.
+     * @return Le sous-arbre.
+     */
+    private static Node pair(Leaf first, Leaf second, int shift) {
+        int a = index(first.hash, shift);
+        int b = index(second.hash, shift);
+        if (a == b) {
+            return new Node(1 << a, new Object[] {pair(first, second, shift + BITS)});
+        }
+        Object[] slots = a < b ? new Object[] {first, second} : new Object[] {second, first};
+        return new Node((1 << a) | (1 << b), slots);
+    }
+
+    /**
+     * Retire une clé présente d'un sous-arbre, en recopiant le chemin. Un
+     * nœud réduit à une feuille est remplacé par cette feuille.
+     *
+     * @param slot  Le sous-arbre.
+     * @param shift Le décalage du niveau du sous-arbre.
+     * @param key   La clé.
+     * @param hash  Le mélange de la clé.
+     * @return Le nouveau sous-arbre, ou null s'il est vide.
+     */
+    private static Object remove(Object slot, int shift, long key, long hash) {
+        if (slot instanceof Leaf) {
+            return null;
+        }
+        Node node = (Node) slot;
+        int bit = 1 << index(hash, shift);
+        int position = Integer.bitCount(node.bitmap & (bit - 1));
+        Object child = remove(node.slots[position], shift + BITS, key, hash);
+        if (child != null) {
+            return node.slots.length == 1 && child instanceof Leaf ? child : replace(node, position, child);
+        }
+        if (node.slots.length == 1) {
+            return null;
+        }
+        if (node.slots.length == 2 && node.slots[1 - position] instanceof Leaf) {
+            return node.slots[1 - position];
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, position);
+        System.arraycopy(node.slots, position + 1, slots, position, slots.length - position);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    /**
+     * Recopie un nœud en remplaçant une de ses cases.
+     *
+     * @param node     Le nœud.
+     * @param position Le rang de la case.
+     * @param child    Le nouveau contenu de la case.
+     * @return Le nouveau nœud.
+     */
+    private static Node replace(Node node, int position, Object child) {
+        Object[] slots = node.slots.clone();
+        slots[position] = child;
+        return new Node(node.bitmap, slots);
+    }
+
+    /**
+     * Parcourt les entrées d'un sous-arbre.
+     *
+     * @param slot    Le sous-arbre.
+     * @param visitor Le visiteur des entrées.
+     * @param <V>     Le type des valeurs.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Object slot, EntryVisitor<? super V> visitor) {
+        if (slot instanceof Leaf) {
+            Leaf leaf = (Leaf) slot;
+            visitor.visit(leaf.key, (V) leaf.value);
+        } else if (slot != null) {
+            for (Object child : ((Node) slot).slots) {
+                forEach(child, visitor);
+            }
+        }
+    }
+
+    /**
+     * Parcourt les clés dont la valeur diffère entre deux sous-arbres de même
+     * niveau.
+     *
+     * @param left    Le premier sous-arbre.
+     * @param right   Le second sous-arbre.
+     * @param shift   Le décalage du niveau des sous-arbres.
+     * @param visitor Le visiteur des clés différentes.
+     */
+    private static void diff(Object left, Object right, int shift, KeyVisitor visitor) {
+        if (left == right) {
+            return;
+        }
+        if (left instanceof Node && right instanceof Node) {
+            Node a = (Node) left;
+            Node b = (Node) right;
+            int bits = a.bitmap | b.bitmap;
+            while (bits != 0) {
+                int bit = bits & -bits;
+                bits &= ~bit;
+                Object x = (a.bitmap & bit) == 0 ? null : a.slots[Integer.bitCount(a.bitmap & (bit - 1))];
+                Object y = (b.bitmap & bit) == 0 ? null : b.slots[Integer.bitCount(b.bitmap & (bit - 1))];
+                diff(x, y, shift + BITS, visitor);
+            }
+        } else if (left instanceof Leaf) {
+            diffLeaf((Leaf) left, right, shift, visitor);
+        } else if (right instanceof Leaf) {
+            diffLeaf((Leaf) right, left, shift, visitor);
+        } else {
+            forEach(left != null ? left : right, (key, value) -> visitor.visit(key));
+        }
+    }
+
+    /**
+     * Parcourt les clés dont la valeur diffère entre une feuille et un
+     * sous-arbre de même niveau.
+     *
+     * @param leaf    La feuille.
+     * @param other   Le sous-arbre.
+     * @param shift   Le décalage du niveau.
+     * @param visitor Le visiteur des clés différentes.
+     */
+    private static void diffLeaf(Leaf leaf, Object other, int shift, KeyVisitor visitor) {
+        Leaf match = find(other, shift, leaf.key, leaf.hash);
+        if (match == null || !match.value.equals(leaf.value)) {
+            visitor.visit(leaf.key);
+        }
+        forEach(other, (key, value) -> {
+            if (key != leaf.key) {
+                visitor.visit(key);
+            }
+        });
+    }
+}
@@ -0,0 +1,482 @@
+package src.model;
+
+import src.entity.Status;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index des plages référencées par les fonctions d'agrégation.
+ * Chaque colonne référencée par une plage reçoit un arbre de segments dont
+ * les feuilles sont des blocs de {@link #BLOCK_SIZE} lignes. Chaque nœud de
+ * l'arbre est un sommet du {@link DependencyGraph} du moteur, désigné par une
+ * clé négative pour ne pas se confondre avec une cellule : une feuille dépend
+ * des cellules non vides de son bloc, un nœud interne de ses deux enfants.
+ * Chaque nœud conserve l'agrégat (somme, nombre de valeurs, minimum,
+ * maximum, nombre d'erreurs) des cellules qu'il couvre, recalculé comme une
+ * cellule lorsqu'il est sale.
+ * <p>
+ * Une plage se décompose, dans chaque colonne, en O(log n) nœuds complets
+ * et en au plus deux blocs partiels, dont les cellules sont référencées
+ * directement. La formule qui l'agrège dépend de ces seuls sommets : modifier
+ * une cellule de la plage ne salit que les O(log n) nœuds qui la couvrent,
+ * puis la formule, qui combine O(log n) agrégats au lieu de relire toute la
+ * plage. Les cycles passant par une plage sont détectés par le graphe comme
+ * les autres.
+ * </p>
+ * <p>
+ * Un nœud existant a toujours tous ses ancêtres. Les nœuds ne sont créés
+ * que dans les colonnes référencées par une plage et ne sont jamais retirés :
+ * leur nombre est borné par deux fois le nombre de blocs non vides de ces
+ * colonnes, plus O(log n) par plage.
+ * </p>
+ */
+class RangeIndex {
+
+    /** Logarithme en base 2 du nombre de lignes d'un bloc. */
+    private static final int BLOCK_BITS = 5;
+    /** Nombre de lignes d'un bloc, feuille de l'arbre. */
+    static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    /** Position du niveau dans la clé d'un nœud. */
+    private static final int LEVEL_SHIFT = 16;
+    /** Position de la colonne dans la clé d'un nœud. */
+    private static final int COLUMN_SHIFT = 21;
+    /** Code du statut des cellules vides. */
+    private static final byte EMPTY = (byte) Status.EMPTY.ordinal();
+    /** Code du statut des cellules calculables. */
+    private static final byte CALCULABLE = (byte) Status.CALCULABLE.ordinal();
+
+    /** L'état des cellules. */
+    private final TiledGrid grid;
+    /** Le graphe des dépendances du moteur. */
+    private final DependencyGraph<Long> graph;
+    /** Le nombre de blocs d'une colonne. */
+    private final int blocks;
+    /** Le niveau de la racine des arbres. */
+    private final int rootLevel;
+    /** L'agrégat de chaque nœud, par clé. */
+    private final Map<Long, Aggregate> nodes;
+    /**
+     * Les nœuds dont tous les blocs non vides ont une feuille, et qui peuvent
+     * donc être référencés par une plage.
+     */
+    private final Set<Long> complete;
+    /** Les colonnes qui ont un arbre. */
+    private final Set<Integer> columns;
+    /** Les nœuds créés ou complétés depuis le dernier recalcul. */
+    private final Set<Long> created;
+
+    /**
+     * Agrégat des cellules couvertes par un nœud ou par une plage.
+     */
+    static final class Aggregate {
+        /** La somme des valeurs calculables. */
+        double sum;
+        /** Le nombre de valeurs calculables. */
+        int count;
+        /** La plus petite valeur calculable. */
+        double min = Double.POSITIVE_INFINITY;
+        /** La plus grande valeur calculable. */
+        double max = Double.NEGATIVE_INFINITY;
+        /** Le nombre de cellules non vides sans valeur calculable. */
+        int errors;
+
+        /**
+         * Remet l'agrégat à vide.
+         */
+        void clear() {
+            sum = 0;
+            count = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            errors = 0;
+        }
+
+        /**
+         * Ajoute une cellule à l'agrégat. Une cellule vide est ignorée.
+         *
+         * @param status Le code du statut de la cellule.
+         * @param value  La valeur de la cellule.
+         */
+        void add(byte status, double value) {
+            if (status == CALCULABLE) {
+                sum += value;
+                count++;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            } else if (status != EMPTY) {
+                errors++;
+            }
+        }
+
+        /**
+         * Ajoute un autre agrégat à celui-ci.
+         *
+         * @param other L'agrégat à ajouter.
+         */
+        void add(Aggregate other) {
+            sum += other.sum;
+            count += other.count;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            errors += other.errors;
+        }
+    }
+
+    /**
+     * Partie d'une plage décomposée dans une colonne.
+     */
+    private interface Part {
+        /**
+         * Appelé pour des cellules référencées directement.
+         *
+         * @param column La colonne.
+         * @param from   La première ligne.
+         * @param to     La dernière ligne (incluse).
+         */
+        void cells(int column, int from, int to);
+
+        /**
+         * Appelé pour un nœud complet.
+         *
+         * @param column La colonne.
+         * @param level  Le niveau du nœud (0 pour une feuille).
+         * @param index  Le rang du nœud dans son niveau.
+         */
+        void node(int column, int level, int index);
+    }
+
+    /**
+     * Construit un index vide.
+     *
+     * @param grid  L'état des cellules du moteur.
+     * @param graph Le graphe des dépendances du moteur.
+     */
+    RangeIndex(TiledGrid grid, DependencyGraph<Long> graph) {
+        this.grid = grid;
+        this.graph = graph;
+        this.blocks = Math.max(1, (grid.getRows() + BLOCK_SIZE - 1) >>> BLOCK_BITS);
+        this.rootLevel = 32 - Integer.numberOfLeadingZeros(blocks - 1);
+        this.nodes = new HashMap<>();
+        this.complete = new HashSet<>();
+        this.columns = new HashSet<>();
+        this.created = new LinkedHashSet<>();
+    }
+
+    /**
+     * Indique si une clé désigne un nœud de l'index plutôt qu'une cellule.
+     *
+     * @param key La clé.
+     * @return true pour un nœud de l'index.
+     */
+    static boolean isNode(long key) {
+        return key < 0;
+    }
+
+    /**
+     * Indique si l'index n'a encore aucun nœud.
+     *
+     * @return true si aucune plage n'a été référencée.
+     */
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * Ajoute aux antécédents d'une formule les sommets dont dépend une plage :
+     * les nœuds complets qui la couvrent et les cellules de ses blocs
+     * partiels. Les nœuds manquants sont créés. La partie de la plage hors de
+     * la feuille est ignorée.
+     *
+     * @param top        La première ligne de la plage.
+     * @param left       La première colonne de la plage.
+     * @param bottom     La dernière ligne de la plage (incluse).
+     * @param right      La dernière colonne de la plage (incluse).
+     * @param precedents Reçoit les clés des sommets.
+     */
+    void addPrecedents(int top, int left, int bottom, int right, Collection<Long> precedents) {
+        decompose(Math.max(top, 0), Math.max(left, 0), Math.min(bottom, grid.getRows() - 1),
+                Math.min(right, grid.getColumns() - 1),
+                new Part() {
+                    @Override
+                    public void cells(int column, int from, int to) {
+                        for (int row = from; row <= to; row++) {
+                            precedents.add(CellReference.pack(row, column));
+                        }
+                    }
+
+                    @Override
+                    public void node(int column, int level, int index) {
+                        precedents.add(require(column, level, index));
+                    }
+                });
+    }
+
+    /**
+     * Calcule l'agrégat d'une plage entièrement comprise dans la feuille, à
+     * partir des agrégats de ses nœuds et des cellules de ses blocs partiels.
+     *
+     * @param top    La première ligne de la plage.
+     * @param left   La première colonne de la plage.
+     * @param bottom La dernière ligne de la plage (incluse).
+     * @param right  La dernière colonne de la plage (incluse).
+     * @return L'agrégat de la plage.
+     */
+    Aggregate aggregate(int top, int left, int bottom, int right) {
+        Aggregate result = new Aggregate();
+        decompose(top, left, bottom, right, new Part() {
+            @Override
+            public void cells(int column, int from, int to) {
+                for (int row = from; row <= to; row++) {
+                    result.add(grid.status(row, column), grid.value(row, column));
+                }
+            }
+
+            @Override
+            public void node(int column, int level, int index) {
+                Aggregate node = nodes.get(key(column, level, index));
+                if (node != null) {
+                    result.add(node);
+                } else {
+                    cells(column, firstRow(level, index), lastRow(level, index));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Signale qu'une cellule a reçu une formule non vide : si sa colonne a un
+     * arbre, la cellule est ajoutée aux antécédents de la feuille de son bloc,
+     * créée au besoin.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     */
+    void cellSet(int row, int column) {
+        if (!columns.contains(column)) {
+            return;
+        }
+        int block = row >>> BLOCK_BITS;
+        long leaf = key(column, 0, block);
+        if (!nodes.containsKey(leaf)) {
+            create(column, 0, block);
+        } else if (!graph.precedentsOf(leaf).contains(CellReference.pack(row, column))) {
+            graph.setPrecedents(leaf, members(column, block));
+        }
+    }
+
+    /**
+     * Recalcule l'agrégat d'un nœud à partir de ses cellules ou de ses
+     * enfants, qui sont à jour.
+     *
+     * @param key    La clé du nœud.
+     * @param cyclic true si le nœud appartient à un cycle : l'agrégat est
+     *               alors une erreur.
+     */
+    void evaluate(long key, boolean cyclic) {
+        Aggregate aggregate = nodes.get(key);
+        aggregate.clear();
+        if (cyclic) {
+            aggregate.errors = 1;
+            return;
+        }
+        long node = -1 - key;
+        int column = (int) (node >>> COLUMN_SHIFT);
+        int level = (int) (node >>> LEVEL_SHIFT) & ((1 << (COLUMN_SHIFT - LEVEL_SHIFT)) - 1);
+        int index = (int) node & ((1 << LEVEL_SHIFT) - 1);
+        if (level == 0) {
+            int last = lastRow(0, index);
+            for (int row = firstRow(0, index); row <= last; row++) {
+                aggregate.add(grid.status(row, column), grid.value(row, column));
+            }
+        } else {
+            for (int child = 2 * index; child <= 2 * index + 1; child++) {
+                Aggregate part = nodes.get(key(column, level - 1, child));
+                if (part != null) {
+                    aggregate.add(part);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renvoie puis oublie les nœuds créés ou complétés depuis le dernier
+     * appel, dont l'agrégat doit être calculé.
+     *
+     * @return Les clés des nouveaux nœuds.
+     */
+    Set<Long> takeCreated() {
+        Set<Long> keys = new LinkedHashSet<>(created);
+        created.clear();
+        return keys;
+    }
+
+    /**
+     * Décompose une plage, colonne par colonne, en cellules de blocs
+     * partiels et en nœuds complets (décomposition canonique d'un arbre de
+     * segments).
+     *
+     * @param top    La première ligne de la plage.
+     * @param left   La première colonne de la plage.
+     * @param bottom La dernière ligne de la plage (incluse).
+     * @param right  La dernière colonne de la plage (incluse).
+     * @param part   Le visiteur des parties.
+     */
+    private void decompose(int top, int left, int bottom, int right, Part part) {
+        if (top > bottom) {
+            return;
+        }
+        // Les blocs entièrement compris dans la plage.
+        int first = (top + BLOCK_SIZE - 1) >>> BLOCK_BITS;
+        int last = ((bottom + 1) >>> BLOCK_BITS) - 1;
+        for (int column = left; column <= right; column++) {
+            if (first > last) {
+                part.cells(column, top, bottom);
+                continue;
+            }
+            part.cells(column, top, (first << BLOCK_BITS) - 1);
+            int low = first;
+            int high = last;
+            for (int level = 0; low <= high; level++) {
+                if ((low & 1) == 1) {
+                    part.node(column, level, low++);
+                }
+                if ((high & 1) == 0) {
+                    part.node(column, level, high--);
+                }
+                low >>= 1;
+                high >>= 1;
+            }
+            part.cells(column, (last + 1) << BLOCK_BITS, bottom);
+        }
+    }
+
+    /**
+     * Renvoie la clé d'un nœud, créé et complété au besoin.
+     *
+     * @param column La colonne du nœud.
+     * @param level  Le niveau du nœud.
+     * @param index  Le rang du nœud dans son niveau.
+     * @return La clé du nœud.
+     */
+    private long require(int column, int level, int index) {
+        long key = key(column, level, index);
+        if (!nodes.containsKey(key)) {
+            create(column, level, index);
+        }
+        if (complete.add(key)) {
+            // Toute feuille est complète ; un nœud interne créé comme ancêtre
+            // ne l'est pas forcément : chaque bloc non vide reçoit sa feuille.
+            int from = index << level;
+            int to = Math.min(((index + 1) << level) - 1, blocks - 1);
+            for (int block = from; block <= to; block++) {
+                if (!nodes.containsKey(key(column, 0, block)) && !members(column, block).isEmpty()) {
+                    create(column, 0, block);
+                }
+            }
+            created.add(key);
+        }
+        return key;
+    }
+
+    /**
+     * Crée un nœud et ceux de ses ancêtres qui manquent, puis le rattache à
+     * son parent. Une feuille dépend des cellules non vides de son bloc.
+     *
+     * @param column La colonne du nœud.
+     * @param level  Le niveau du nœud.
+     * @param index  Le rang du nœud dans son niveau.
+     */
+    private void create(int column, int level, int index) {
+        long key = key(column, level, index);
+        nodes.put(key, new Aggregate());
+        columns.add(column);
+        created.add(key);
+        if (level == 0) {
+            complete.add(key);
+            List<Long> members = members(column, index);
+            if (!members.isEmpty()) {
+                graph.setPrecedents(key, members);
+            }
+        }
+        if (level < rootLevel) {
+            int parent = index >>> 1;
+            long parentKey = key(column, level + 1, parent);
+            if (!nodes.containsKey(parentKey)) {
+                create(column, level + 1, parent);
+            }
+            List<Long> children = new ArrayList<>(2);
+            for (int child = 2 * parent; child <= 2 * parent + 1; child++) {
+                long childKey = key(column, level, child);
+                if (nodes.containsKey(childKey)) {
+                    children.add(childKey);
+                }
+            }
+            graph.setPrecedents(parentKey, children);
+        }
+    }
+
+    /**
+     * Renvoie les clés des cellules non vides d'un bloc d'une colonne.
+     *
+     * @param column La colonne.
+     * @param block  Le rang du bloc.
+     * @return Les clés des cellules non vides du bloc.
+     */
+    private List<Long> members(int column, int block) {
+        List<Long> members = new ArrayList<>();
+        int row = block << BLOCK_BITS;
+        if (!grid.hasTile(row, column)) {
+            return members;
+        }
+        int last = lastRow(0, block);
+        for (; row <= last; row++) {
+            if (grid.formula(row, column) != FormulaPool.EMPTY) {
+                members.add(CellReference.pack(row, column));
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Renvoie la première ligne couverte par un nœud.
+     *
+     * @param level Le niveau du nœud.
+     * @param index Le rang du nœud dans son niveau.
+     * @return La première ligne du nœud.
+     */
+    private static int firstRow(int level, int index) {
+        return index << (level + BLOCK_BITS);
+    }
+
+    /**
+     * Renvoie la dernière ligne de la feuille couverte par un nœud.
+     *
+     * @param level Le niveau du nœud.
+     * @param index Le rang du nœud dans son niveau.
+     * @return La dernière ligne du nœud (incluse).
+     */
+    private int lastRow(int level, int index) {
+        return Math.min(((index + 1) << (level + BLOCK_BITS)) - 1, grid.getRows() - 1);
+    }
+
+    /**
+     * Renvoie la clé d'un nœud, négative pour ne pas se confondre avec celle
+     * d'une cellule.
+     *
+     * @param column La colonne du nœud.
+     * @param level  Le niveau du nœud.
+     * @param index  Le rang du nœud dans son niveau.
+     * @return La clé du nœud.
+     */
+    private static long key(int column, int level, int index) {
+        return -1 - (((long) column << COLUMN_SHIFT) | ((long) level << LEVEL_SHIFT) | index);
+    }
+}
@@ -0,0 +1,216 @@
+package src.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service de recalcul asynchrone d'un {@link SheetEngine}.
+ * Les modifications de formules sont appliquées et recalculées sur un thread
+ * dédié, hors du thread de Swing : l'appelant n'attend jamais la fin d'un
+ * recalcul. Chaque modification reçoit un numéro de génération croissant ;
+ * le recalcul d'une génération est abandonné dès qu'une modification plus
+ * récente est soumise, et les cellules qu'il n'a pas recalculées sont reprises
+ * par le recalcul de cette modification. Une rafale de saisies ne déclenche
+ * donc qu'un recalcul complet, celui de la dernière. Un lot de modifications
+ * ({@link SheetEngine.Batch}) compte pour une seule modification.
+ * <p>
+ * Une fois le service créé, le moteur ne doit plus être modifié que par son
+ * intermédiaire. Les lectures directes du moteur depuis un autre thread
+ * peuvent observer un état intermédiaire pendant un recalcul : l'affichage et
+ * les exports lisent donc la dernière version publiée, immuable et cohérente,
+ * par {@link GridModel#getSnapshot()} ou {@link SheetEngine#snapshot()}. Une
+ * nouvelle version est publiée aux écouteurs du moteur à la fin de chaque
+ * recalcul.
+ * </p>
+ */
+public class RecalculationService {
+
+    /** Le moteur recalculé. */
+    private final SheetEngine engine;
+    /** Le thread de recalcul. */
+    private final ExecutorService executor;
+    /** La génération de la dernière modification soumise. */
+    private final AtomicLong submitted;
+    /** La génération de la dernière modification entièrement recalculée. */
+    private final AtomicLong completed;
+    /** Les cellules modifiées depuis le dernier recalcul (thread de recalcul). */
+    private final List<Long> modified;
+    /** Les écouteurs de l'état du service. */
+    private final List<StateListener> listeners;
+
+    /**
+     * Écouteur de l'état du service.
+     */
+    public interface StateListener {
+        /**
+         * Appelé lorsque le service commence ou finit de recalculer, sur le
+         * thread qui a provoqué le changement d'état. Deux notifications
+         * émises par des threads différents pouvant se croiser, un écouteur
+         * qui diffère leur traitement doit relire {@link RecalculationService#isCalculating()}.
+         *
+         * @param calculating true si un recalcul est en attente ou en cours.
+         */
+        void stateChanged(boolean calculating);
+    }
+
+    /**
+     * Construit un service de recalcul pour un moteur.
+     *
+     * @param engine Le moteur à recalculer.
+     */
+    public RecalculationService(SheetEngine engine) {
+        this.engine = engine;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "recalcul");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.submitted = new AtomicLong();
+        this.completed = new AtomicLong();
+        this.modified = new ArrayList<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Enregistre un écouteur de l'état du service.
+     *
+     * @param listener L'écouteur à prévenir.
+     */
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Indique si un recalcul est en attente ou en cours.
+     *
+     * @return true si une modification soumise n'est pas encore recalculée.
+     */
+    public boolean isCalculating() {
+        return completed.get() != submitted.get();
+    }
+
+    /**
+     * Soumet une nouvelle formule pour une cellule. La formule est appliquée
+     * puis recalculée sur le thread de recalcul ; tout recalcul plus ancien
+     * encore en cours est abandonné.
+     *
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @param formula La nouvelle formule.
+     * @return La génération de la modification.
+     * @throws IndexOutOfBoundsException Si la position est hors limites.
+     */
+    public long submit(int row, int column, String formula) {
+        long key = engine.keyOf(row, column);
+        long generation = submitted.incrementAndGet();
+        if (generation == completed.get() + 1) {
+            fireStateChanged(true);
+        }
+        executor.execute(() -> {
+            engine.setFormula(CellReference.row(key), CellReference.column(key), formula);
+            modified.add(key);
+            recalculate(generation);
+        });
+        return generation;
+    }
+
+    /**
+     * Soumet un lot de modifications. Le lot est appliqué puis recalculé en
+     * une seule passe sur le thread de recalcul ; tout recalcul plus ancien
+     * encore en cours est abandonné. Le lot ne doit plus être modifié.
+     *
+     * @param batch Le lot de modifications, ouvert sur le moteur du service.
+     * @return La génération de la modification.
+     */
+    public long submit(SheetEngine.Batch batch) {
+        long generation = submitted.incrementAndGet();
+        if (generation == completed.get() + 1) {
+            fireStateChanged(true);
+        }
+        executor.execute(() -> {
+            modified.addAll(batch.apply());
+            recalculate(generation);
+        });
+        return generation;
+    }
+
+    /**
+     * Exécute une tâche sur le thread de recalcul, après les modifications déjà
+     * soumises : la tâche peut lire le moteur sans qu'il soit modifié pendant
+     * son exécution, par exemple pour l'enregistrer.
+     *
+     * @param task La tâche à exécuter.
+     * @param <T>  Le type du résultat de la tâche.
+     * @return Le résultat à venir de la tâche.
+     */
+    public <T> Future<T> call(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Attend que toutes les modifications soumises soient recalculées.
+     *
+     * @throws InterruptedException Si l'attente est interrompue.
+     */
+    public void awaitIdle() throws InterruptedException {
+        try {
+            // Le thread de recalcul traite les tâches dans l'ordre : une tâche
+            // vide se termine après toutes les modifications déjà soumises.
+            executor.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Arrête le thread de recalcul après les modifications déjà soumises.
+     *
+     * @throws InterruptedException Si l'attente de l'arrêt est interrompue.
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Recalcule, sur le thread de recalcul, les cellules modifiées depuis le
+     * dernier recalcul, si aucune modification plus récente n'a été soumise
+     * entre-temps.
+     *
+     * @param generation La génération de la modification qui vient d'être
+     *                   appliquée.
+     */
+    private void recalculate(long generation) {
+        if (submitted.get() != generation) {
+            return;
+        }
+        List<Long> roots = new ArrayList<>(modified);
+        modified.clear();
+        engine.recalculate(roots, () -> submitted.get() != generation);
+        if (submitted.get() == generation) {
+            completed.set(generation);
+            if (submitted.get() == generation) {
+                fireStateChanged(false);
+            }
+        }
+    }
+
+    /**
+     * Prévient les écouteurs d'un changement d'état.
+     *
+     * @param calculating true si un recalcul est en attente ou en cours.
+     */
+    private void fireStateChanged(boolean calculating) {
+        for (StateListener listener : listeners) {
+            listener.stateChanged(calculating);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package src.model;
+
+import src.entity.CompiledFormula;
+import src.entity.Status;
+import src.exception.IncorrectFormulaException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Format binaire versionné des feuilles de calcul.
+ * Un fichier contient, dans cet ordre et en gros-boutiste :
+ * <ul>
+ * <li>un en-tête : le nombre magique {@link #MAGIC}, la version
+ * {@link #VERSION}, puis le nombre de lignes et de colonnes de la feuille ;</li>
+ * <li>la table des modèles de formules : leur nombre, puis pour chacun sa
+ * forme relative ({@link FormulaParser#toRelative(String, int, int)}) en
+ * UTF-8 et, s'il est correct, sa forme compilée (instructions, constantes,
+ * références et plages relatives, profondeur de pile) ;</li>
+ * <li>les cellules non vides : leur nombre, puis pour chacune sa clé
+ * ({@link CellReference#pack(int, int)}), le rang de son modèle dans la table,
+ * le code de son statut et sa dernière valeur.</li>
+ * </ul>
+ * Le chargement lit le fichier au travers d'une projection en mémoire
+ * ({@link FileChannel#map}) : les formules ne sont pas réanalysées, leur forme
+ * compilée est reprise telle quelle, et les cellules retrouvent leur dernière
+ * valeur sans être réévaluées. Seules les modifications ultérieures
+ * déclenchent un recalcul. Une forme compilée n'est reprise qu'après
+ * vérification : codes d'opération connus, indices de constante, de
+ * référence, de plage et de sous-calcul dans leur table, et pile simulée qui
+ * ne se vide jamais, ne dépasse pas la profondeur déclarée et se termine sur
+ * une seule valeur. La forme relative de chaque modèle est elle aussi
+ * vérifiée. Sinon le fichier est refusé comme corrompu.
+ * <p>
+ * La version 1, antérieure aux plages, est encore lue : ses instructions,
+ * dont le code d'opération tenait sur {@value #VERSION_1_OPCODE_BITS} bits,
+ * sont réencodées. La version 2 ne diffère de la version 3 que par
+ * l'absence de sous-calculs partagés ({@link CompiledFormula#LOAD}). Les
+ * versions 1 à 3 rangent le texte de chaque formule et sa forme compilée aux
+ * références absolues : leurs formules sont converties en modèles au
+ * chargement.
+ * </p>
+ */
+public class SheetBinaryFormat {
+
+    /** Nombre magique d'un fichier de feuille ("TBLR"). */
+    public static final int MAGIC = 0x54424C52;
+    /** Version du format écrit par cette classe. */
+    public static final int VERSION = 4;
+    /** Nombre de bits du code d'opération des instructions de la version 1. */
+    private static final int VERSION_1_OPCODE_BITS = 3;
+
+    /** Les statuts, par code. */
+    private static final Status[] STATUSES = Status.values();
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private SheetBinaryFormat() {
+    }
+
+    /**
+     * Enregistre une feuille. Le moteur ne doit pas être modifié pendant
+     * l'enregistrement.
+     *
+     * @param engine Le moteur à enregistrer.
+     * @param file   Le fichier de destination, remplacé s'il existe.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public static void save(SheetEngine engine, Path file) throws IOException {
+        FormulaPool pool = engine.getFormulaPool();
+        // Rang dans la table de chaque formule employée, plus un (0 : absente).
+        int[] indexes = new int[pool.idLimit()];
+        int[] ids = new int[pool.idLimit()];
+        int[] count = new int[1];
+        engine.forEachNonEmpty((row, column, formula, status, value) -> {
+            if (indexes[formula] == 0) {
+                ids[count[0]] = formula;
+                indexes[formula] = ++count[0];
+            }
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(engine.getRows());
+            out.writeInt(engine.getColumns());
+
+            out.writeInt(count[0]);
+            for (int k = 0; k < count[0]; k++) {
+                writeFormula(out, pool, ids[k]);
+            }
+
+            out.writeInt(engine.size());
+            engine.forEachNonEmpty((row, column, formula, status, value) -> {
+                try {
+                    out.writeLong(CellReference.pack(row, column));
+                    out.writeInt(indexes[formula] - 1);
+                    out.writeByte(status);
+                    out.writeDouble(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Charge une feuille enregistrée par {@link #save(SheetEngine, Path)}.
+     *
+     * @param file Le fichier à charger.
+     * @return Un nouveau moteur contenant les formules et les dernières valeurs
+     *         de la feuille.
+     * @throws IOException Si la lecture échoue, ou si le fichier n'est pas une
+     *                     feuille dans une version connue.
+     */
+    public static SheetEngine load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return read(buffer);
+            } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+                    | NegativeArraySizeException e) {
+                throw new IOException("Fichier de feuille corrompu : " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Lit une feuille dans un tampon.
+     *
+     * @param buffer Le tampon positionné au début du fichier.
+     * @return Le moteur chargé.
+     * @throws IOException Si le tampon ne contient pas une feuille connue.
+     */
+    private static SheetEngine read(MappedByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IOException("Ce fichier n'est pas une feuille de calcul.");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Version de feuille non prise en charge : " + version);
+        }
+        SheetEngine engine = new SheetEngine(buffer.getInt(), buffer.getInt());
+
+        int formulaCount = readLength(buffer, Integer.BYTES + 1);
+        String[] texts = new String[formulaCount];
+        CompiledFormula[] forms = new CompiledFormula[formulaCount];
+        for (int k = 0; k < formulaCount; k++) {
+            byte[] bytes = new byte[readLength(buffer, 1)];
+            buffer.get(bytes);
+            texts[k] = new String(bytes, StandardCharsets.UTF_8);
+            if (version >= 4) {
+                // Un modèle mal formé échoue ici plutôt qu'à la première
+                // restitution du texte d'une de ses cellules.
+                FormulaParser.toAbsolute(texts[k], 0, 0);
+            }
+            forms[k] = buffer.get() != 0 ? readCompiled(buffer, version) : null;
+        }
+
+        int cellCount = buffer.getInt();
+        for (int k = 0; k < cellCount; k++) {
+            long key = buffer.getLong();
+            int formula = buffer.getInt();
+            Status status = STATUSES[buffer.get()];
+            double value = buffer.getDouble();
+            int row = CellReference.row(key);
+            int column = CellReference.column(key);
+            if (version < 4) {
+                engine.setFormula(row, column, texts[formula], forms[formula]);
+            } else {
+                engine.setTemplate(row, column, texts[formula], forms[formula]);
+            }
+            engine.restoreResult(row, column, status, value);
+        }
+        // Les statuts enregistrés tiennent déjà compte des cycles.
+        engine.getDependencyGraph().takeCycleChanges();
+        return engine;
+    }
+
+    /**
+     * Écrit un modèle de la table : sa forme relative, puis sa forme compilée
+     * s'il est correct.
+     *
+     * @param out  Le flux de sortie.
+     * @param pool La réserve des formules.
+     * @param id   L'identifiant de la formule.
+     * @throws IOException Si l'écriture échoue.
+     */
+    private static void writeFormula(DataOutputStream out, FormulaPool pool, int id) throws IOException {
+        byte[] bytes = pool.template(id).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        CompiledFormula compiled;
+        try {
+            compiled = pool.compiled(id);
+        } catch (IncorrectFormulaException e) {
+            // Un modèle incorrect sera réanalysé au chargement, ce qui
+            // reproduit son erreur.
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        int[] code = compiled.getCode();
+        out.writeInt(code.length);
+        for (int instruction : code) {
+            out.writeInt(instruction);
+        }
+        double[] constants = compiled.getConstants();
+        out.writeInt(constants.length);
+        for (double constant : constants) {
+            out.writeDouble(constant);
+        }
+        out.writeInt(compiled.getReferenceCount());
+        for (int k = 0; k < compiled.getReferenceCount(); k++) {
+            out.writeInt(compiled.getReferenceRow(k));
+            out.writeInt(compiled.getReferenceColumn(k));
+        }
+        out.writeInt(compiled.getRangeCount());
+        for (int k = 0; k < compiled.getRangeCount(); k++) {
+            out.writeInt(compiled.getRangeTop(k));
+            out.writeInt(compiled.getRangeLeft(k));
+            out.writeInt(compiled.getRangeBottom(k));
+            out.writeInt(compiled.getRangeRight(k));
+        }
+        out.writeInt(compiled.getMaxStack());
+    }
+
+    /**
+     * Lit la forme compilée d'une formule et la vérifie.
+     *
+     * @param buffer  Le tampon positionné sur la forme compilée.
+     * @param version La version du fichier.
+     * @return La formule compilée.
+     * @throws IllegalArgumentException Si la forme compilée est invalide.
+     */
+    private static CompiledFormula readCompiled(MappedByteBuffer buffer, int version) {
+        int[] code = new int[readLength(buffer, Integer.BYTES)];
+        for (int k = 0; k < code.length; k++) {
+            code[k] = buffer.getInt();
+            if (version == 1) {
+                code[k] = CompiledFormula.instruction(code[k] & ((1 << VERSION_1_OPCODE_BITS) - 1),
+                        code[k] >>> VERSION_1_OPCODE_BITS);
+            }
+        }
+        double[] constants = new double[readLength(buffer, Double.BYTES)];
+        for (int k = 0; k < constants.length; k++) {
+            constants[k] = buffer.getDouble();
+        }
+        int references = readLength(buffer, 2 * Integer.BYTES);
+        int[] rows = new int[references];
+        int[] columns = new int[references];
+        for (int k = 0; k < references; k++) {
+            rows[k] = buffer.getInt();
+            columns[k] = buffer.getInt();
+        }
+        int[] ranges = new int[version == 1 ? 0 : 4 * readLength(buffer, 4 * Integer.BYTES)];
+        for (int k = 0; k < ranges.length; k++) {
+            ranges[k] = buffer.getInt();
+        }
+        CompiledFormula formula = new CompiledFormula(code, constants, rows, columns, ranges, buffer.getInt());
+        verify(formula);
+        return formula;
+    }
+
+    /**
+     * Lit la longueur d'une table et vérifie que le tampon peut la contenir,
+     * pour qu'une longueur corrompue ne provoque pas une allocation démesurée.
+     *
+     * @param buffer Le tampon positionné sur la longueur.
+     * @param size   La taille en octets d'un élément de la table.
+     * @return La longueur de la table.
+     * @throws BufferUnderflowException Si la longueur est négative ou si le
+     *                                  reste du tampon est trop court.
+     */
+    private static int readLength(MappedByteBuffer buffer, int size) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / size) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    /**
+     * Vérifie qu'une forme compilée lue dans un fichier peut être exécutée
+     * sans sortir de ses tables ni de sa pile, en simulant la profondeur de
+     * la pile instruction par instruction. Une plage doit en outre respecter
+     * la largeur maximale {@link FormulaParser#MAX_RANGE_COLUMNS} imposée à
+     * la saisie, dont dépend la taille de l'index des plages.
+     *
+     * @param formula La formule compilée.
+     * @throws IllegalArgumentException Si la forme compilée est invalide.
+     */
+    private static void verify(CompiledFormula formula) {
+        int[] code = formula.getCode();
+        int maxStack = formula.getMaxStack();
+        if (maxStack < 1 || maxStack > code.length) {
+            throw new IllegalArgumentException("Profondeur de pile invalide : " + maxStack);
+        }
+        int depth = 0;
+        for (int instruction : code) {
+            int opcode = CompiledFormula.opcode(instruction);
+            int argument = CompiledFormula.argument(instruction);
+            int limit;
+            if (opcode == CompiledFormula.PUSH_CONSTANT) {
+                limit = formula.getConstants().length;
+            } else if (opcode == CompiledFormula.PUSH_REFERENCE) {
+                limit = formula.getReferenceCount();
+            } else if (CompiledFormula.isAggregate(opcode)) {
+                limit = formula.getRangeCount();
+                if (argument < limit && (formula.getRangeTop(argument) > formula.getRangeBottom(argument)
+                        || formula.getRangeLeft(argument) > formula.getRangeRight(argument)
+                        || (long) formula.getRangeRight(argument) - formula.getRangeLeft(argument)
+                                >= FormulaParser.MAX_RANGE_COLUMNS)) {
+                    throw new IllegalArgumentException("Plage invalide : " + argument);
+                }
+            } else if (opcode == CompiledFormula.LOAD) {
+                limit = depth;
+            } else if (opcode >= CompiledFormula.ADD && opcode <= CompiledFormula.DIVIDE) {
+                if (depth < 2) {
+                    throw new IllegalArgumentException("Pile vide pour l'opération " + opcode);
+                }
+                depth--;
+                continue;
+            } else {
+                throw new IllegalArgumentException("Code d'opération inconnu : " + opcode);
+            }
+            if (argument >= limit) {
+                throw new IllegalArgumentException("Argument hors de sa table : " + argument);
+            }
+            if (++depth > maxStack) {
+                throw new IllegalArgumentException("Pile plus profonde que déclaré : " + maxStack);
+            }
+        }
+        if (depth < 1) {
+            throw new IllegalArgumentException("Formule sans résultat.");
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package src.model;
+
+import src.entity.Status;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Import et export des feuilles au format CSV ou TSV.
+ * Le champ de la ligne {@code i} et de la colonne {@code j} du fichier est la
+ * formule de la cellule correspondante (un nombre est une formule) ; un champ
+ * vide laisse la cellule vide. En CSV, un champ peut être entouré de
+ * guillemets, un guillemet y étant doublé ; le TSV n'a pas de guillemets.
+ * <p>
+ * Les deux sens travaillent au fil de l'eau sur un {@link FileChannel} avec un
+ * tampon de taille fixe : le fichier n'est jamais chargé en entier, et seul le
+ * champ en cours est conservé sous forme de texte. Les nombres sont convertis
+ * par l'analyseur de formules, sans {@link Double#parseDouble(String)} tant
+ * que leur mantisse est exacte. L'export d'un moteur parcourt la feuille ligne
+ * par ligne dans les tuiles, et sa mémoire ne dépend pas de la taille de la
+ * feuille ; l'export d'une {@link SheetVersion} trie d'abord ses clés.
+ * </p>
+ */
+public class SheetCsvFormat {
+
+    /** Séparateur des fichiers CSV. */
+    public static final char COMMA = ',';
+    /** Séparateur des fichiers TSV. */
+    public static final char TAB = '\t';
+
+    /** Taille des tampons de lecture et d'écriture, en octets. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private SheetCsvFormat() {
+    }
+
+    /**
+     * Renvoie le séparateur d'un fichier d'après son extension : tabulation
+     * pour {@code .tsv} et {@code .tab}, virgule sinon.
+     *
+     * @param file Le fichier.
+     * @return Le séparateur du fichier.
+     */
+    public static char delimiterOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".tsv") || name.endsWith(".tab") ? TAB : COMMA;
+    }
+
+    /**
+     * Lit un fichier CSV ou TSV et rassemble ses formules dans un lot de
+     * modifications du moteur, sans l'appliquer : sa validation place toutes
+     * les formules puis les recalcule en une seule fois. Les champs au-delà
+     * des limites de la feuille sont ignorés.
+     *
+     * @param file      Le fichier à lire.
+     * @param delimiter Le séparateur des champs.
+     * @param engine    Le moteur qui reçoit les formules.
+     * @return Le lot des formules lues, à valider.
+     * @throws IOException Si la lecture échoue.
+     */
+    public static SheetEngine.Batch read(Path file, char delimiter, SheetEngine engine) throws IOException {
+        FieldReader reader = new FieldReader(engine, delimiter);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean end = false;
+            boolean pending = true;
+            while (pending) {
+                end = end || channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, end);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                bytes.compact();
+                pending = !end || result.isOverflow() || bytes.position() > 0;
+                chars.flip();
+                while (chars.hasRemaining()) {
+                    reader.accept(chars.get());
+                }
+                chars.clear();
+            }
+        }
+        reader.finish();
+        return reader.batch;
+    }
+
+    /**
+     * Écrit les valeurs ou les formules d'une feuille au format CSV ou TSV.
+     * Chaque ligne s'arrête à sa dernière cellule non vide. En mode valeurs,
+     * une cellule calculable donne sa valeur, une cellule incorrecte donne
+     * "ERR" et une cellule non calculable un champ vide.
+     *
+     * @param engine    Le moteur à exporter.
+     * @param file      Le fichier de destination, remplacé s'il existe.
+     * @param delimiter Le séparateur des champs.
+     * @param formulas  true pour écrire les formules, false pour les valeurs.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public static void write(SheetEngine engine, Path file, char delimiter, boolean formulas) throws IOException {
+        int[] lastRow = { -1 };
+        engine.forEachNonEmpty((row, column, formula, status, value) -> lastRow[0] = Math.max(lastRow[0], row));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            for (int row = 0; row <= lastRow[0]; row++) {
+                // Le nombre de champs déjà écrits sur la ligne.
+                int[] written = { 0 };
+                engine.forEachNonEmptyInRow(row, (r, column, formula, status, value) -> {
+                    for (int k = Math.max(written[0], 1); k <= column; k++) {
+                        out.append(delimiter);
+                    }
+                    written[0] = column + 1;
+                    out.appendField(formulas ? engine.getFormulaPool().formula(formula, r, column)
+                            : valueText(status, value), delimiter);
+                });
+                out.append('\n');
+            }
+            out.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Écrit les valeurs ou les formules d'une version de feuille au format
+     * CSV ou TSV, comme {@link #write(SheetEngine, Path, char, boolean)}. La
+     * version étant immuable, l'écriture peut se faire sur n'importe quel
+     * thread pendant que le moteur recalcule.
+     *
+     * @param version   La version à exporter.
+     * @param file      Le fichier de destination, remplacé s'il existe.
+     * @param delimiter Le séparateur des champs.
+     * @param formulas  true pour écrire les formules, false pour les valeurs.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public static void write(SheetVersion version, Path file, char delimiter, boolean formulas) throws IOException {
+        // Les clés rangent les cellules ligne par ligne, puis colonne par colonne.
+        long[] keys = new long[version.size()];
+        int[] count = { 0 };
+        version.forEachNonEmpty(key -> keys[count[0]++] = key);
+        Arrays.sort(keys);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            int row = 0;
+            // Le nombre de champs déjà écrits sur la ligne.
+            int written = 0;
+            for (long key : keys) {
+                int cellRow = CellReference.row(key);
+                int column = CellReference.column(key);
+                for (; row < cellRow; row++) {
+                    out.append('\n');
+                    written = 0;
+                }
+                for (int k = Math.max(written, 1); k <= column; k++) {
+                    out.append(delimiter);
+                }
+                written = column + 1;
+                out.appendField(formulas ? version.getFormula(cellRow, column)
+                        : valueText((byte) version.getStatus(cellRow, column).ordinal(),
+                                version.getValue(cellRow, column)), delimiter);
+            }
+            if (keys.length > 0) {
+                out.append('\n');
+            }
+            out.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Renvoie le texte exporté pour la valeur d'une cellule.
+     *
+     * @param status Le code du statut de la cellule.
+     * @param value  La valeur de la cellule.
+     * @return Le texte du champ.
+     */
+    private static String valueText(byte status, double value) {
+        if (status == Status.CALCULABLE.ordinal()) {
+            return String.valueOf(value);
+        }
+        return status == Status.INCORRECT.ordinal() ? "ERR" : "";
+    }
+
+    /**
+     * Lecteur des champs d'un fichier CSV ou TSV, caractère par caractère.
+     */
+    private static class FieldReader {
+        private final SheetEngine engine;
+        private final char delimiter;
+        private final boolean quoting;
+        private final StringBuilder field = new StringBuilder();
+        private final SheetEngine.Batch batch;
+        private int row;
+        private int column;
+        private boolean quoted;
+        /**
+         * Vrai après un guillemet lu dans un champ entre guillemets : il
+         * ferme le champ, sauf s'il est suivi d'un second guillemet.
+         */
+        private boolean quotePending;
+
+        /**
+         * Construit un lecteur.
+         *
+         * @param engine    Le moteur qui reçoit les formules.
+         * @param delimiter Le séparateur des champs.
+         */
+        FieldReader(SheetEngine engine, char delimiter) {
+            this.engine = engine;
+            this.batch = engine.beginBatch();
+            this.delimiter = delimiter;
+            this.quoting = delimiter != TAB;
+        }
+
+        /**
+         * Traite le caractère suivant du fichier.
+         *
+         * @param c Le caractère.
+         */
+        void accept(char c) {
+            if (quoted) {
+                if (quotePending) {
+                    quotePending = false;
+                    if (c == '"') {
+                        field.append('"');
+                        return;
+                    }
+                    quoted = false;
+                } else {
+                    if (c == '"') {
+                        quotePending = true;
+                    } else {
+                        field.append(c);
+                    }
+                    return;
+                }
+            }
+            if (c == delimiter) {
+                store();
+                column++;
+            } else if (c == '\n') {
+                store();
+                row++;
+                column = 0;
+            } else if (c == '"' && quoting && field.length() == 0) {
+                quoted = true;
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+
+        /**
+         * Termine la lecture : le dernier champ est placé même si le fichier ne
+         * finit pas par un saut de ligne.
+         */
+        void finish() {
+            store();
+        }
+
+        /**
+         * Ajoute le champ en cours au lot, puis le vide. Un champ vide
+         * ou hors des limites de la feuille est ignoré.
+         */
+        private void store() {
+            int start = 0;
+            int end = field.length();
+            while (start < end && Character.isWhitespace(field.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(field.charAt(end - 1))) {
+                end--;
+            }
+            if (start < end && row < engine.getRows() && column < engine.getColumns()) {
+                batch.set(row, column, field.substring(start, end));
+            }
+            field.setLength(0);
+        }
+    }
+
+    /**
+     * Rédacteur UTF-8 tamponné sur un canal de fichier.
+     */
+    private static class ChannelWriter {
+        private final FileChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE / 4);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /**
+         * Construit un rédacteur.
+         *
+         * @param channel Le canal de destination.
+         */
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Ajoute un caractère.
+         *
+         * @param c Le caractère à ajouter.
+         */
+        void append(char c) {
+            if (!chars.hasRemaining()) {
+                drain(false);
+            }
+            chars.put(c);
+        }
+
+        /**
+         * Ajoute du texte.
+         *
+         * @param text Le texte à ajouter.
+         */
+        void append(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                append(text.charAt(i));
+            }
+        }
+
+        /**
+         * Ajoute un champ, entouré de guillemets en CSV s'il contient le
+         * séparateur, un guillemet ou un saut de ligne. En TSV, les
+         * tabulations et sauts de ligne du champ sont remplacés par des
+         * espaces.
+         *
+         * @param text      Le texte du champ.
+         * @param delimiter Le séparateur des champs.
+         */
+        void appendField(String text, char delimiter) {
+            if (delimiter == TAB) {
+                append(text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+            } else if (text.indexOf(delimiter) >= 0 || text.indexOf('"') >= 0
+                    || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                append('"');
+                append(text.replace("\"", "\"\""));
+                append('"');
+            } else {
+                append(text);
+            }
+        }
+
+        /**
+         * Écrit tout le texte en attente dans le canal.
+         */
+        void flush() {
+            drain(true);
+        }
+
+        /**
+         * Encode le texte en attente et écrit les octets obtenus.
+         *
+         * @param end true si aucun texte ne suivra.
+         */
+        private void drain(boolean end) {
+            try {
+                chars.flip();
+                CoderResult result;
+                do {
+                    result = encoder.encode(chars, bytes, end);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    if (end && result.isUnderflow()) {
+                        result = encoder.flush(bytes);
+                    }
+                    bytes.flip();
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    bytes.clear();
+                } while (result.isOverflow());
+                chars.compact();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,1099 @@
+package src.model;
+
+import src.entity.CompiledFormula;
+import src.entity.Status;
+import src.exception.IncorrectFormulaException;
+import src.exception.UncalculableFormulaException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Moteur de calcul de la feuille de calcul, indépendant de toute interface
+ * graphique.
+ * L'état des cellules est rangé dans un {@link TiledGrid} : des tuiles de
+ * tableaux allouées à la demande, qui contiennent les valeurs
+ * ({@code double}), les statuts ({@code byte}) et les formules sous forme
+ * d'identifiants d'une {@link FormulaPool}, qui conserve leur forme compilée :
+ * les copies d'une même formule relative partagent un seul modèle, évalué
+ * avec la position de chaque cellule pour ancrage.
+ * La première cellule écrite dans une région de 32 × 32 cellules alloue la
+ * tuile entière (valeurs, statuts et identifiants de formules, soit environ
+ * 13 Ko), que ses voisines remplissent ensuite sans allocation ; une région
+ * vide n'occupe rien, et la feuille peut atteindre
+ * {@link TiledGrid#MAX_ROWS} lignes sur {@link TiledGrid#MAX_COLUMNS} colonnes.
+ * Une cellule est désignée par la clé {@code long} de
+ * {@link CellReference#pack(int, int)}. Le moteur peut être utilisé hors du
+ * thread de Swing ou sans affichage ; les vues s'y lient par de simples
+ * adaptateurs.
+ * <p>
+ * Lorsqu'une cellule est modifiée, toutes les cellules qui en dépendent
+ * (directement ou non) sont marquées comme sales, puis chaque cellule sale est
+ * évaluée exactement une fois, dans l'ordre topologique du graphe des
+ * dépendances. Les formules lisent directement dans les tuiles les valeurs
+ * des cellules qu'elles référencent. Lorsqu'un pool est configuré, les
+ * cellules sales d'un même niveau de dépendance sont évaluées en parallèle.
+ * </p>
+ * <p>
+ * Après chaque recalcul, le moteur publie aux {@link CellChangeListener}
+ * enregistrés les cellules dont la valeur ou le statut a réellement changé,
+ * de sorte qu'une vue ne redessine que ces cellules.
+ * </p>
+ * <p>
+ * Les fonctions d'agrégation sur une plage ({@code SUM A1:A1000}) lisent un
+ * {@link RangeIndex} : un arbre de segments par colonne, dont les nœuds sont
+ * des sommets du graphe des dépendances. Modifier une cellule de la plage ne
+ * recalcule que O(log n) agrégats partiels avant la formule.
+ * </p>
+ * <p>
+ * Le moteur tient des compteurs de son activité ({@link EngineMetrics}) et
+ * émet des événements JDK Flight Recorder ({@link EngineEvents}) pour
+ * l'analyse, la propagation et l'évaluation.
+ * </p>
+ * <p>
+ * Le moteur n'est pas synchronisé : il ne doit être modifié que par un seul
+ * thread à la fois. Les autres threads lisent l'état des cellules dans la
+ * dernière {@link SheetVersion} publiée ({@link #snapshot()}) : le moteur
+ * calcule la version suivante pendant le recalcul, puis la publie
+ * atomiquement une fois la propagation achevée.
+ * </p>
+ */
+public class SheetEngine implements CompiledFormula.ValueSource {
+
+    /** Nombre minimal de cellules sales pour recourir au mode parallèle. */
+    private static final int PARALLEL_THRESHOLD = 256;
+    /** Nombre de cellules évaluées par tâche avant de découper le travail. */
+    private static final int PARALLEL_GRAIN = 64;
+    /** Nombre d'évaluations entre deux consultations de la condition d'annulation. */
+    private static final int CANCELLATION_INTERVAL = 256;
+    /** Les statuts, par code. */
+    private static final Status[] STATUSES = Status.values();
+
+    /** L'état des cellules. */
+    private final TiledGrid grid;
+    /** La réserve des formules internées. */
+    private final FormulaPool formulaPool;
+    /** Le graphe des dépendances, par clé de cellule. */
+    private final DependencyGraph<Long> graph;
+    /** L'index des plages des fonctions d'agrégation. */
+    private final RangeIndex ranges;
+    /** Le pool utilisé pour le recalcul parallèle, ou null en mode séquentiel. */
+    private ForkJoinPool pool;
+    /**
+     * Vrai pour évaluer la forme compilée des formules, faux pour parcourir
+     * leur arbre syntaxique.
+     */
+    private boolean compiledEvaluation;
+    /** Les cellules modifiées d'un recalcul abandonné, à reprendre. */
+    private final Set<Long> interrupted;
+    /** Les écouteurs des changements de cellules. */
+    private final List<CellChangeListener> listeners;
+    /** Les compteurs de l'activité du moteur. */
+    private final EngineMetrics metrics;
+    /** La version de l'état des cellules, tenue à jour par le moteur, ou null. */
+    private SheetVersion version;
+    /** La version du dernier recalcul achevé, lue par les autres threads. */
+    private final AtomicReference<SheetVersion> published;
+
+    /**
+     * Écouteur des cellules modifiées par un recalcul.
+     */
+    public interface CellChangeListener {
+        /**
+         * Appelé après un recalcul, sur le thread qui l'a effectué, avec les
+         * cellules modifiées et celles dont la valeur ou le statut a changé.
+         *
+         * @param keys Les clés des cellules modifiées, dans l'ordre
+         *             d'évaluation.
+         */
+        void cellsChanged(long[] keys);
+    }
+
+    /**
+     * Construit un moteur de la taille maximale, dont toutes les cellules sont
+     * vides.
+     */
+    public SheetEngine() {
+        this(TiledGrid.MAX_ROWS, TiledGrid.MAX_COLUMNS);
+    }
+
+    /**
+     * Construit un moteur dont toutes les cellules sont vides.
+     *
+     * @param rows    Le nombre de lignes de la feuille.
+     * @param columns Le nombre de colonnes de la feuille.
+     * @throws IllegalArgumentException Si les dimensions dépassent la taille
+     *                                  maximale d'une feuille.
+     */
+    public SheetEngine(int rows, int columns) {
+        this.grid = new TiledGrid(rows, columns);
+        this.metrics = new EngineMetrics();
+        this.formulaPool = new FormulaPool(metrics);
+        this.graph = new DependencyGraph<>();
+        this.ranges = new RangeIndex(grid, graph);
+        this.pool = null;
+        this.compiledEvaluation = FormulaCalculatorModel.isCompiledEvaluation();
+        this.interrupted = new LinkedHashSet<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.published = new AtomicReference<>();
+    }
+
+    /**
+     * Renvoie le nombre de lignes de la feuille.
+     *
+     * @return Le nombre de lignes.
+     */
+    public int getRows() {
+        return grid.getRows();
+    }
+
+    /**
+     * Renvoie le nombre de colonnes de la feuille.
+     *
+     * @return Le nombre de colonnes.
+     */
+    public int getColumns() {
+        return grid.getColumns();
+    }
+
+    /**
+     * Renvoie la clé d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La clé de la cellule.
+     * @throws IndexOutOfBoundsException Si la position est hors limites.
+     */
+    public long keyOf(int row, int column) {
+        checkBounds(row, column);
+        return CellReference.pack(row, column);
+    }
+
+    /**
+     * Renvoie le nombre de cellules non vides de la feuille.
+     *
+     * @return Le nombre de cellules dont la formule n'est pas vide.
+     */
+    public int size() {
+        return grid.size();
+    }
+
+    /**
+     * Parcourt les cellules non vides de la feuille. Seules les tuiles allouées
+     * sont visitées.
+     *
+     * @param visitor Le visiteur appelé pour chaque cellule non vide ; le
+     *                statut qui lui est transmis est le rang d'un
+     *                {@link Status}.
+     */
+    public void forEachNonEmpty(TiledGrid.CellVisitor visitor) {
+        grid.forEachNonEmpty(visitor);
+    }
+
+    /**
+     * Parcourt les cellules non vides d'une ligne, par colonne croissante.
+     *
+     * @param row     La ligne à parcourir.
+     * @param visitor Le visiteur appelé pour chaque cellule non vide.
+     * @throws IndexOutOfBoundsException Si la ligne est hors limites.
+     */
+    public void forEachNonEmptyInRow(int row, TiledGrid.CellVisitor visitor) {
+        checkBounds(row, 0);
+        grid.forEachNonEmptyInRow(row, visitor);
+    }
+
+    /**
+     * Renvoie la formule d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La formule de la cellule.
+     */
+    public String getFormula(int row, int column) {
+        checkBounds(row, column);
+        return formulaPool.formula(grid.formula(row, column), row, column);
+    }
+
+    /**
+     * Renvoie la formule d'une cellule, relative à la cellule
+     * ({@link FormulaPool}), telle qu'elle est rangée dans la réserve.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La formule relative, ou null si la cellule est vide.
+     */
+    String getTemplate(int row, int column) {
+        int id = grid.formula(row, column);
+        return id == FormulaPool.EMPTY ? null : formulaPool.template(id);
+    }
+
+    /**
+     * Renvoie le statut d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return Le statut de la cellule.
+     */
+    public Status getStatus(int row, int column) {
+        checkBounds(row, column);
+        return STATUSES[grid.status(row, column)];
+    }
+
+    /**
+     * Renvoie la valeur d'une cellule, significative seulement si son statut
+     * est {@link Status#CALCULABLE}.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La valeur de la cellule.
+     */
+    public double getValue(int row, int column) {
+        checkBounds(row, column);
+        return grid.value(row, column);
+    }
+
+    /**
+     * Renvoie le texte à afficher pour une cellule : sa valeur si elle est
+     * calculable, "ERR" si sa formule est incorrecte, sinon une chaîne vide.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return Le texte de la cellule.
+     */
+    public String getText(int row, int column) {
+        switch (getStatus(row, column)) {
+            case CALCULABLE:
+                return String.valueOf(grid.value(row, column));
+            case INCORRECT:
+                return "ERR";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Renvoie la réserve des formules du moteur.
+     *
+     * @return La réserve des formules.
+     */
+    public FormulaPool getFormulaPool() {
+        return formulaPool;
+    }
+
+    /**
+     * Renvoie le graphe des dépendances, dont les sommets sont les clés des
+     * cellules.
+     *
+     * @return Le graphe des dépendances.
+     */
+    public DependencyGraph<Long> getDependencyGraph() {
+        return graph;
+    }
+
+    /**
+     * Renvoie les compteurs de l'activité du moteur, qui peuvent être relevés
+     * depuis n'importe quel thread.
+     *
+     * @return Les compteurs du moteur.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Définit le pool utilisé pour le recalcul parallèle.
+     *
+     * @param pool Le pool d'évaluation, ou null pour un recalcul séquentiel.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Renvoie le pool utilisé pour le recalcul parallèle.
+     *
+     * @return Le pool d'évaluation, ou null en mode séquentiel.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Choisit l'évaluateur des formules : leur forme compilée, une boucle sur
+     * une pile de {@code double}, ou le parcours de leur arbre syntaxique,
+     * conservé pour comparer les deux évaluateurs. Les deux donnent les mêmes
+     * résultats ; le choix s'applique à partir du prochain recalcul. Par
+     * défaut, un moteur suit le mode de
+     * {@link FormulaCalculatorModel#isCompiledEvaluation()} à sa création :
+     * la forme compilée, sauf si la propriété système
+     * {@code tableur.evaluator} vaut {@code tree}.
+     *
+     * @param compiled true pour évaluer la forme compilée, false pour
+     *                 parcourir l'arbre syntaxique.
+     */
+    public void setCompiledEvaluation(boolean compiled) {
+        this.compiledEvaluation = compiled;
+    }
+
+    /**
+     * Indique si les formules sont évaluées sous leur forme compilée.
+     *
+     * @return true pour la forme compilée, false pour l'arbre syntaxique.
+     */
+    public boolean isCompiledEvaluation() {
+        return compiledEvaluation;
+    }
+
+    /**
+     * Enregistre un écouteur des changements de cellules.
+     *
+     * @param listener L'écouteur à prévenir après chaque recalcul.
+     */
+    public void addCellChangeListener(CellChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Retire un écouteur des changements de cellules.
+     *
+     * @param listener L'écouteur à retirer.
+     */
+    public void removeCellChangeListener(CellChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Remplace la formule d'une cellule et met à jour le graphe des
+     * dépendances, sans recalculer la cellule.
+     *
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @param formula La nouvelle formule.
+     * @return La clé de la cellule modifiée.
+     */
+    public long setFormula(int row, int column, String formula) {
+        return setFormula(row, column, formula, null);
+    }
+
+    /**
+     * Remplace la formule d'une cellule par une formule dont la forme compilée
+     * est déjà connue, par exemple lue dans un fichier : la formule n'est pas
+     * analysée, et ses références sont lues dans sa forme compilée.
+     *
+     * @param row      La ligne de la cellule.
+     * @param column   La colonne de la cellule.
+     * @param formula  La nouvelle formule.
+     * @param compiled La forme compilée de la formule, aux références
+     *                 absolues, ou null pour l'analyser.
+     * @return La clé de la cellule modifiée.
+     */
+    public long setFormula(int row, int column, String formula, CompiledFormula compiled) {
+        long key = keyOf(row, column);
+        EngineEvents.ParseEvent event = new EngineEvents.ParseEvent();
+        event.begin();
+        assign(row, column, formulaPool.intern(formula, row, column, compiled));
+        event.end();
+        if (event.shouldCommit()) {
+            event.cell = CellReference.format(row, column);
+            event.sheetSize = size();
+            event.formula = formula;
+            event.commit();
+        }
+        return key;
+    }
+
+    /**
+     * Remplace la formule d'une cellule par un modèle relatif
+     * ({@link FormulaPool}), par exemple lu dans un fichier.
+     *
+     * @param row      La ligne de la cellule.
+     * @param column   La colonne de la cellule.
+     * @param template La forme relative de la formule.
+     * @param compiled La forme compilée du modèle, aux références relatives,
+     *                 ou null pour analyser la formule.
+     * @return La clé de la cellule modifiée.
+     */
+    long setTemplate(int row, int column, String template, CompiledFormula compiled) {
+        long key = keyOf(row, column);
+        assign(row, column, formulaPool.internTemplate(template, row, column, compiled));
+        return key;
+    }
+
+    /**
+     * Active la publication des versions de l'état des cellules
+     * ({@link #snapshot()}). À partir de cet appel, chaque recalcul calcule la
+     * version suivante, en O(log n) par cellule modifiée, et la publie
+     * atomiquement lorsqu'il s'achève. Sans effet si la publication est déjà
+     * active.
+     */
+    public void enableSnapshots() {
+        if (version == null) {
+            version = SheetVersion.of(this);
+            published.set(version);
+        }
+    }
+
+    /**
+     * Renvoie la version publiée par le dernier recalcul achevé. Cette
+     * méthode peut être appelée depuis n'importe quel thread, sans verrou, y
+     * compris pendant un recalcul : la version renvoyée est immuable et
+     * cohérente, et ne contient jamais de résultats à moitié propagés.
+     *
+     * @return La dernière version publiée.
+     * @throws IllegalStateException Si la publication des versions n'est pas
+     *                               active.
+     */
+    public SheetVersion snapshot() {
+        SheetVersion snapshot = published.get();
+        if (snapshot == null) {
+            throw new IllegalStateException("La publication des versions n'est pas active.");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Remplace la version courante par une version de même contenu, par
+     * exemple conservée par un historique, pour partager sa structure.
+     *
+     * @param same Une version égale à la version courante.
+     */
+    void adoptVersion(SheetVersion same) {
+        version = same;
+        published.set(same);
+    }
+
+    /**
+     * Ouvre un lot de modifications : les formules du lot ne sont appliquées
+     * qu'à sa validation, avec une seule mise à jour du graphe des
+     * dépendances et un seul recalcul.
+     *
+     * @return Un nouveau lot vide.
+     */
+    public Batch beginBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Range le modèle de la formule d'une cellule et met à jour le graphe des
+     * dépendances. Les références d'un modèle correct sont lues dans sa forme
+     * compilée, ancrée sur la cellule ; celles d'une formule incorrecte sont
+     * relevées dans son texte.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @param id     L'identifiant du modèle, déjà interné pour la cellule.
+     */
+    private void assign(int row, int column, int id) {
+        Set<Long> references = store(row, column, id);
+        metrics.cycleCheck();
+        graph.setPrecedents(CellReference.pack(row, column), references);
+    }
+
+    /**
+     * Range le modèle de la formule d'une cellule et relève ses références,
+     * sans mettre à jour le graphe des dépendances.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @param id     L'identifiant du modèle, déjà interné pour la cellule.
+     * @return Les clés des cellules et des agrégats partiels référencés.
+     */
+    private Set<Long> store(int row, int column, int id) {
+        int previous = grid.formula(row, column);
+        grid.setFormula(row, column, id);
+        formulaPool.release(previous);
+        if (id != FormulaPool.EMPTY) {
+            ranges.cellSet(row, column);
+        }
+        CompiledFormula form = compiledOrNull(id);
+        Set<Long> references = new LinkedHashSet<>();
+        if (form != null) {
+            for (int k = 0; k < form.getReferenceCount(); k++) {
+                int referenceRow = row + form.getReferenceRow(k);
+                int referenceColumn = column + form.getReferenceColumn(k);
+                if (grid.contains(referenceRow, referenceColumn)) {
+                    references.add(CellReference.pack(referenceRow, referenceColumn));
+                }
+            }
+            for (int k = 0; k < form.getRangeCount(); k++) {
+                ranges.addPrecedents(row + form.getRangeTop(k), column + form.getRangeLeft(k),
+                        row + form.getRangeBottom(k), column + form.getRangeRight(k), references);
+            }
+        } else if (id != FormulaPool.EMPTY) {
+            FormulaParser.forEachReference(formulaPool.formula(id, row, column), (r, c) -> {
+                if (grid.contains(r, c)) {
+                    references.add(CellReference.pack(r, c));
+                }
+            });
+        }
+        return references;
+    }
+
+    /**
+     * Renvoie la forme compilée d'une formule de la réserve.
+     *
+     * @param id L'identifiant de la formule.
+     * @return La formule compilée, ou null si elle est vide ou incorrecte.
+     */
+    private CompiledFormula compiledOrNull(int id) {
+        if (id == FormulaPool.EMPTY) {
+            return null;
+        }
+        try {
+            return formulaPool.compiled(id);
+        } catch (IncorrectFormulaException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Rétablit le résultat d'une cellule sans l'évaluer, par exemple à partir
+     * de la dernière valeur enregistrée dans un fichier.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @param status Le statut de la cellule.
+     * @param value  La valeur de la cellule.
+     */
+    void restoreResult(int row, int column, Status status, double value) {
+        checkBounds(row, column);
+        grid.setResult(row, column, code(status), value);
+    }
+
+    /**
+     * Recalcule une cellule modifiée et toutes les cellules qui en dépendent.
+     *
+     * @param row    La ligne de la cellule modifiée.
+     * @param column La colonne de la cellule modifiée.
+     * @return Les clés des cellules recalculées, dans l'ordre d'évaluation.
+     */
+    public long[] recalculate(int row, int column) {
+        List<Long> roots = new ArrayList<>(1);
+        roots.add(keyOf(row, column));
+        return recalculate(roots);
+    }
+
+    /**
+     * Recalcule des cellules modifiées et toutes les cellules qui en dépendent,
+     * chacune une seule fois, puis publie les cellules dont la valeur ou le
+     * statut a changé.
+     *
+     * @param modified Les clés des cellules modifiées.
+     * @return Les clés des cellules recalculées, dans l'ordre d'évaluation.
+     */
+    public long[] recalculate(Collection<Long> modified) {
+        return recalculate(modified, () -> false);
+    }
+
+    /**
+     * Recalcule des cellules modifiées et toutes les cellules qui en dépendent,
+     * en abandonnant le recalcul dès que la condition d'annulation est vraie.
+     * La condition est consultée régulièrement entre deux évaluations. Les
+     * cellules déjà recalculées sont publiées ; les cellules modifiées d'un
+     * recalcul abandonné sont reprises par le recalcul suivant, qui recalcule
+     * donc toutes les cellules laissées périmées.
+     *
+     * @param modified  Les clés des cellules modifiées.
+     * @param cancelled La condition d'annulation.
+     * @return Les clés des cellules recalculées, dans l'ordre d'évaluation ;
+     *         en cas d'abandon, seules celles qui ont été évaluées.
+     */
+    public long[] recalculate(Collection<Long> modified, BooleanSupplier cancelled) {
+        // Les cellules entrées dans un cycle ou sorties d'un cycle depuis le
+        // dernier recalcul sont recalculées avec les cellules modifiées. Les
+        // cellules modifiées sont toujours publiées : leur tuile a pu être
+        // libérée avant le recalcul, effaçant leur ancien état.
+        long start = System.nanoTime();
+        Set<Long> roots = new LinkedHashSet<>(modified);
+        roots.addAll(graph.takeCycleChanges());
+        roots.addAll(ranges.takeCreated());
+        roots.addAll(interrupted);
+        interrupted.clear();
+        EngineEvents.PropagateEvent propagation = new EngineEvents.PropagateEvent();
+        propagation.begin();
+        long[] order = topologicalOrder(markDirty(roots));
+        propagation.end();
+        if (propagation.shouldCommit()) {
+            propagation.cell = describe(roots);
+            propagation.sheetSize = size();
+            propagation.dirtyCells = order.length;
+            propagation.commit();
+        }
+
+        EngineEvents.EvaluateEvent evaluation = new EngineEvents.EvaluateEvent();
+        evaluation.begin();
+        boolean[] changed = new boolean[order.length];
+        boolean parallel = pool != null && order.length >= PARALLEL_THRESHOLD;
+        int evaluated;
+        if (!parallel) {
+            evaluated = 0;
+            while (evaluated < order.length
+                    && (evaluated % CANCELLATION_INTERVAL != 0 || !cancelled.getAsBoolean())) {
+                changed[evaluated] = evaluate(order[evaluated]);
+                evaluated++;
+            }
+        } else {
+            evaluated = evaluateInParallel(order, changed, cancelled);
+        }
+        evaluation.end();
+        if (evaluation.shouldCommit()) {
+            evaluation.cell = describe(roots);
+            evaluation.sheetSize = size();
+            evaluation.evaluatedCells = evaluated;
+            evaluation.parallel = parallel;
+            evaluation.commit();
+        }
+        metrics.cellsEvaluated(evaluated);
+        if (evaluated < order.length) {
+            interrupted.addAll(roots);
+            order = Arrays.copyOf(order, evaluated);
+        }
+
+        long[] keys = new long[evaluated];
+        int count = 0;
+        for (int k = 0; k < evaluated; k++) {
+            if (!RangeIndex.isNode(order[k]) && (changed[k] || roots.contains(order[k]))) {
+                keys[count++] = order[k];
+            }
+        }
+        keys = count == keys.length ? keys : Arrays.copyOf(keys, count);
+        if (version != null) {
+            // Une version n'est publiée qu'une fois la propagation achevée :
+            // les lecteurs ne voient jamais de résultats à moitié propagés.
+            version = version.update(this, keys);
+            if (interrupted.isEmpty()) {
+                published.set(version);
+            }
+        }
+        if (count > 0) {
+            for (CellChangeListener listener : listeners) {
+                listener.cellsChanged(keys);
+            }
+        }
+        metrics.recalculated(System.nanoTime() - start);
+        if (!ranges.isEmpty()) {
+            order = Arrays.stream(order).filter(key -> !RangeIndex.isNode(key)).toArray();
+        }
+        return order;
+    }
+
+    /**
+     * Renvoie la référence de la première cellule modifiée d'un recalcul,
+     * pour les événements enregistrés.
+     *
+     * @param roots Les cellules modifiées.
+     * @return La référence de la première cellule, suivie du nombre des
+     *         autres s'il y en a.
+     */
+    private static String describe(Set<Long> roots) {
+        for (long first : roots) {
+            if (!RangeIndex.isNode(first)) {
+                String reference = CellReference.format(CellReference.row(first), CellReference.column(first));
+                return roots.size() == 1 ? reference : reference + " (+" + (roots.size() - 1) + ")";
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Renvoie la valeur d'une cellule référencée par une formule en cours
+     * d'évaluation.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La valeur de la cellule.
+     * @throws UncalculableFormulaException Si la cellule est hors limites ou si
+     *                                      sa valeur n'est pas calculable.
+     */
+    @Override
+    public double valueAt(int row, int column) throws UncalculableFormulaException {
+        if (!grid.contains(row, column)) {
+            throw new UncalculableFormulaException("Cell reference out of bounds.");
+        }
+        if (grid.status(row, column) != code(Status.CALCULABLE)) {
+            throw new UncalculableFormulaException("The referenced cell has no calculable value.");
+        }
+        return grid.value(row, column);
+    }
+
+    /**
+     * Renvoie l'agrégat d'une plage lue par une formule en cours d'évaluation,
+     * calculé à partir de l'index des plages en O(log n) par colonne.
+     *
+     * @param function La fonction d'agrégation.
+     * @param top      La première ligne de la plage.
+     * @param left     La première colonne de la plage.
+     * @param bottom   La dernière ligne de la plage (incluse).
+     * @param right    La dernière colonne de la plage (incluse).
+     * @return L'agrégat de la plage.
+     * @throws UncalculableFormulaException Si la plage sort de la feuille,
+     *                                      contient une cellule sans valeur
+     *                                      calculable, ou est vide pour une
+     *                                      moyenne, un minimum ou un maximum.
+     */
+    @Override
+    public double aggregate(int function, int top, int left, int bottom, int right)
+            throws UncalculableFormulaException {
+        if (!grid.contains(top, left) || !grid.contains(bottom, right)) {
+            throw new UncalculableFormulaException("Range out of bounds.");
+        }
+        RangeIndex.Aggregate aggregate = ranges.aggregate(top, left, bottom, right);
+        if (aggregate.errors > 0) {
+            throw new UncalculableFormulaException("The range contains a cell with no calculable value.");
+        }
+        if (function == CompiledFormula.SUM) {
+            return aggregate.sum;
+        }
+        if (aggregate.count == 0) {
+            throw new UncalculableFormulaException("The range has no value.");
+        }
+        switch (function) {
+            case CompiledFormula.AVERAGE:
+                return aggregate.sum / aggregate.count;
+            case CompiledFormula.MIN:
+                return aggregate.min;
+            default:
+                return aggregate.max;
+        }
+    }
+
+    /**
+     * Indique si le dernier recalcul a été abandonné avant d'avoir évalué
+     * toutes les cellules sales : elles seront reprises par le prochain.
+     *
+     * @return true si des cellules restent à recalculer.
+     */
+    boolean hasInterruptedCells() {
+        return !interrupted.isEmpty();
+    }
+
+    /**
+     * Vérifie qu'une position appartient à la feuille.
+     *
+     * @param row    La ligne.
+     * @param column La colonne.
+     * @throws IndexOutOfBoundsException Si la position est hors limites.
+     */
+    private void checkBounds(int row, int column) {
+        if (!grid.contains(row, column)) {
+            throw new IndexOutOfBoundsException("Position de cellule hors limites.");
+        }
+    }
+
+    /**
+     * Marque comme sales les cellules modifiées et tous leurs dépendants
+     * transitifs.
+     *
+     * @param roots Les cellules modifiées.
+     * @return L'ensemble des cellules sales.
+     */
+    private Set<Long> markDirty(Set<Long> roots) {
+        Set<Long> dirty = new LinkedHashSet<>(roots);
+        ArrayDeque<Long> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            for (Long dependent : graph.dependentsOf(queue.poll())) {
+                if (dirty.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Trie les cellules sales dans l'ordre topologique (algorithme de Kahn
+     * restreint au sous-graphe sale).
+     *
+     * @param dirty Les cellules sales.
+     * @return Les clés des cellules sales dans l'ordre d'évaluation.
+     */
+    private long[] topologicalOrder(Set<Long> dirty) {
+        Map<Long, Integer> pending = new HashMap<>();
+        ArrayDeque<Long> ready = new ArrayDeque<>();
+        for (Long key : dirty) {
+            int count = 0;
+            for (Long precedent : graph.precedentsOf(key)) {
+                if (dirty.contains(precedent)) {
+                    count++;
+                }
+            }
+            pending.put(key, count);
+            if (count == 0) {
+                ready.add(key);
+            }
+        }
+        long[] order = new long[dirty.size()];
+        int size = 0;
+        while (!ready.isEmpty()) {
+            Long key = ready.poll();
+            order[size++] = key;
+            for (Long dependent : graph.dependentsOf(key)) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Évalue une cellule et enregistre sa valeur et son statut.
+     * Seules les cases de la cellule évaluée sont écrites, sans allocation de
+     * tuile : plusieurs cellules dont les antécédents sont à jour peuvent donc
+     * être évaluées en parallèle.
+     *
+     * @param key La clé de la cellule.
+     * @return true si la valeur ou le statut de la cellule a changé.
+     */
+    private boolean evaluate(long key) {
+        if (RangeIndex.isNode(key)) {
+            ranges.evaluate(key, graph.isInCycle(key));
+            return false;
+        }
+        int row = CellReference.row(key);
+        int column = CellReference.column(key);
+        Status status;
+        double value = 0;
+        int formula = grid.formula(row, column);
+        if (formula == FormulaPool.EMPTY) {
+            status = Status.EMPTY;
+        } else if (graph.isInCycle(key)) {
+            status = Status.INCORRECT;
+        } else {
+            try {
+                value = compiledEvaluation ? formulaPool.compiled(formula).evaluate(this, row, column)
+                        : formulaPool.tree(formula, row, column).evaluate(this, row, column);
+                status = Status.CALCULABLE;
+            } catch (IncorrectFormulaException e) {
+                status = Status.INCORRECT;
+            } catch (UncalculableFormulaException e) {
+                status = Status.UNCALCULABLE;
+            }
+        }
+        byte code = code(status);
+        boolean changed = grid.status(row, column) != code
+                || Double.doubleToLongBits(grid.value(row, column)) != Double.doubleToLongBits(value);
+        grid.setResult(row, column, code, value);
+        return changed;
+    }
+
+    /**
+     * Évalue les cellules sales niveau par niveau sur le pool configuré : les
+     * cellules d'un même niveau ne dépendent pas les unes des autres.
+     *
+     * Les cellules sont réordonnées sur place par niveau, ce qui reste un ordre
+     * topologique. La condition d'annulation est consultée avant chaque niveau.
+     *
+     * @param order     Les clés des cellules sales dans l'ordre topologique,
+     *                  réordonnées par niveau au retour.
+     * @param changed   Reçoit, par rang dans order, l'indicateur de changement
+     *                  de chaque cellule évaluée.
+     * @param cancelled La condition d'annulation.
+     * @return Le nombre de cellules évaluées, au début de order.
+     */
+    private int evaluateInParallel(long[] order, boolean[] changed, BooleanSupplier cancelled) {
+        int size = order.length;
+        Map<Long, Integer> positions = new HashMap<>();
+        for (int k = 0; k < size; k++) {
+            positions.put(order[k], k);
+        }
+
+        int[] levels = new int[size];
+        int levelCount = 0;
+        for (int k = 0; k < size; k++) {
+            for (Long precedent : graph.precedentsOf(order[k])) {
+                Integer position = positions.get(precedent);
+                if (position != null && position < k) {
+                    levels[k] = Math.max(levels[k], levels[position] + 1);
+                }
+            }
+            levelCount = Math.max(levelCount, levels[k] + 1);
+        }
+
+        // Regroupement des cellules par niveau (tri par comptage).
+        int[] starts = new int[levelCount + 1];
+        for (int k = 0; k < size; k++) {
+            starts[levels[k] + 1]++;
+        }
+        for (int level = 0; level < levelCount; level++) {
+            starts[level + 1] += starts[level];
+        }
+        long[] grouped = new long[size];
+        int[] next = starts.clone();
+        for (int k = 0; k < size; k++) {
+            grouped[next[levels[k]]++] = order[k];
+        }
+        System.arraycopy(grouped, 0, order, 0, size);
+
+        for (int level = 0; level < levelCount; level++) {
+            if (cancelled.getAsBoolean()) {
+                return starts[level];
+            }
+            pool.invoke(new LevelTask(order, changed, starts[level], starts[level + 1]));
+        }
+        return size;
+    }
+
+    /**
+     * Lot de modifications de formules, appliquées ensemble à la validation.
+     * Le lot peut être rempli sur un autre thread que celui qui modifie le
+     * moteur, puisque seules les positions sont vérifiées à l'ajout. Lorsqu'une
+     * cellule est modifiée plusieurs fois, sa dernière formule l'emporte.
+     * <p>
+     * À la validation, toutes les formules sont rangées, puis le graphe des
+     * dépendances est mis à jour en une fois : les cycles ne sont recherchés
+     * qu'une seule fois, et une formule du lot peut référencer une cellule
+     * modifiée plus loin dans le lot. Les cellules touchées et leurs
+     * dépendants sont enfin recalculés en une seule passe, chacun une fois.
+     * </p>
+     */
+    public class Batch {
+        /** Les clés des cellules modifiées, dans l'ordre des modifications. */
+        private final List<Long> keys;
+        /** Les nouvelles formules, par rang dans keys. */
+        private final List<String> formulas;
+        /** Indique si le lot a déjà été appliqué. */
+        private boolean applied;
+
+        /**
+         * Construit un lot vide.
+         */
+        private Batch() {
+            this.keys = new ArrayList<>();
+            this.formulas = new ArrayList<>();
+        }
+
+        /**
+         * Ajoute au lot la nouvelle formule d'une cellule.
+         *
+         * @param row     La ligne de la cellule.
+         * @param column  La colonne de la cellule.
+         * @param formula La nouvelle formule.
+         * @return Ce lot, pour enchaîner les modifications.
+         * @throws IndexOutOfBoundsException Si la position est hors limites.
+         * @throws IllegalStateException     Si le lot a déjà été appliqué.
+         */
+        public Batch set(int row, int column, String formula) {
+            checkOpen();
+            keys.add(keyOf(row, column));
+            formulas.add(formula);
+            return this;
+        }
+
+        /**
+         * Renvoie le nombre de modifications du lot.
+         *
+         * @return Le nombre de modifications ajoutées.
+         */
+        public int size() {
+            return keys.size();
+        }
+
+        /**
+         * Applique le lot puis recalcule les cellules modifiées et toutes les
+         * cellules qui en dépendent.
+         *
+         * @return Les clés des cellules recalculées, dans l'ordre d'évaluation.
+         * @throws IllegalStateException Si le lot a déjà été appliqué.
+         */
+        public long[] commit() {
+            return recalculate(apply());
+        }
+
+        /**
+         * Range les formules du lot et met à jour le graphe des dépendances,
+         * sans recalculer.
+         *
+         * @return Les clés des cellules modifiées, sans doublon.
+         * @throws IllegalStateException Si le lot a déjà été appliqué.
+         */
+        Collection<Long> apply() {
+            checkOpen();
+            applied = true;
+            Map<Long, Set<Long>> changes = new LinkedHashMap<>();
+            for (int k = 0; k < keys.size(); k++) {
+                long key = keys.get(k);
+                int row = CellReference.row(key);
+                int column = CellReference.column(key);
+                changes.put(key, store(row, column, formulaPool.intern(formulas.get(k), row, column)));
+            }
+            if (!changes.isEmpty()) {
+                metrics.cycleCheck();
+                graph.setPrecedents(changes);
+            }
+            return changes.keySet();
+        }
+
+        /**
+         * Vérifie que le lot peut encore être modifié.
+         *
+         * @throws IllegalStateException Si le lot a déjà été appliqué.
+         */
+        private void checkOpen() {
+            if (applied) {
+                throw new IllegalStateException("Ce lot de modifications a déjà été appliqué.");
+            }
+        }
+    }
+
+    /**
+     * Tâche évaluant une tranche des cellules d'un même niveau.
+     */
+    private class LevelTask extends RecursiveAction {
+        private final long[] keys;
+        private final boolean[] changed;
+        private final int from;
+        private final int to;
+
+        /**
+         * Construit une tâche d'évaluation.
+         *
+         * @param keys    Les clés des cellules regroupées par niveau.
+         * @param changed Les indicateurs de changement, par rang dans keys.
+         * @param from    Le premier rang (inclus) de la tranche.
+         * @param to      Le dernier rang (exclu) de la tranche.
+         */
+        LevelTask(long[] keys, boolean[] changed, int from, int to) {
+            this.keys = keys;
+            this.changed = changed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                for (int k = from; k < to; k++) {
+                    changed[k] = evaluate(keys[k]);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LevelTask(keys, changed, from, middle), new LevelTask(keys, changed, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Renvoie le code d'un statut, tel qu'il est rangé dans le tableau des
+     * statuts.
+     *
+     * @param status Le statut.
+     * @return Le code du statut.
+     */
+    private static byte code(Status status) {
+        return (byte) status.ordinal();
+    }
+}
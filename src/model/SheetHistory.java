@@ -0,0 +1,266 @@
+package src.model;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Historique des versions d'une feuille, pour annuler et rétablir les
+ * modifications et pour conserver des instantanés nommés.
+ * L'historique écoute les recalculs d'un {@link SheetEngine} et conserve les
+ * {@link SheetVersion} qu'il publie, qui ne coûtent que O(log n) par cellule
+ * modifiée ou recalculée. Chaque recalcul achevé (non abandonné au profit
+ * d'une modification plus récente) devient un point d'annulation ; une
+ * rafale de saisies coalescées par le {@link RecalculationService} ne
+ * compte donc que pour un seul.
+ * <p>
+ * Annuler, rétablir ou restaurer un instantané remplace la version courante
+ * par une version conservée, puis ne replace dans le moteur que les formules
+ * qui diffèrent entre les deux versions, en un seul lot
+ * ({@link SheetEngine.Batch}).
+ * </p>
+ * <p>
+ * Comme le moteur, l'historique n'est pas synchronisé : il ne doit être
+ * utilisé que par le thread qui modifie le moteur, par exemple par
+ * l'intermédiaire de {@link RecalculationService#call(java.util.concurrent.Callable)}.
+ * Seuls les noms des instantanés peuvent être lus depuis un autre thread.
+ * </p>
+ */
+public class SheetHistory implements SheetEngine.CellChangeListener {
+
+    /** Nombre de modifications annulables par défaut. */
+    public static final int DEFAULT_LIMIT = 100;
+
+    /** Le moteur dont l'historique est tenu. */
+    private final SheetEngine engine;
+    /** Le nombre maximal de modifications annulables. */
+    private final int limit;
+    /** La version du dernier recalcul achevé, point d'annulation courant. */
+    private SheetVersion committed;
+    /** Les versions à rétablir en annulant, la plus récente en tête. */
+    private final Deque<SheetVersion> undo;
+    /** Les versions à rétablir en refaisant, la plus récente en tête. */
+    private final Deque<SheetVersion> redo;
+    /** Les instantanés nommés. */
+    private final Map<String, SheetVersion> snapshots;
+    /** Indique qu'une version est en cours de restauration. */
+    private boolean restoring;
+
+    /**
+     * Construit l'historique d'un moteur, à partir de son état actuel, avec
+     * la limite d'annulation par défaut.
+     *
+     * @param engine Le moteur.
+     */
+    public SheetHistory(SheetEngine engine) {
+        this(engine, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Construit l'historique d'un moteur, à partir de son état actuel.
+     *
+     * @param engine Le moteur.
+     * @param limit  Le nombre maximal de modifications annulables.
+     * @throws IllegalArgumentException Si la limite est négative.
+     */
+    public SheetHistory(SheetEngine engine, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limite d'annulation négative.");
+        }
+        this.engine = engine;
+        this.limit = limit;
+        engine.enableSnapshots();
+        this.committed = engine.snapshot();
+        this.undo = new ArrayDeque<>();
+        this.redo = new ArrayDeque<>();
+        this.snapshots = new ConcurrentSkipListMap<>();
+        engine.addCellChangeListener(this);
+    }
+
+    /**
+     * Fait de la version publiée par un recalcul achevé un point
+     * d'annulation, et vide les modifications à refaire.
+     *
+     * @param keys Les clés des cellules modifiées ou recalculées.
+     */
+    @Override
+    public void cellsChanged(long[] keys) {
+        SheetVersion published = engine.snapshot();
+        if (restoring || engine.hasInterruptedCells() || published == committed) {
+            return;
+        }
+        push(undo, committed);
+        committed = published;
+        redo.clear();
+    }
+
+    /**
+     * Renvoie la version du dernier recalcul achevé.
+     *
+     * @return La version courante.
+     */
+    public SheetVersion getVersion() {
+        return committed;
+    }
+
+    /**
+     * Indique si une modification peut être annulée.
+     *
+     * @return true si une version précédente est conservée.
+     */
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    /**
+     * Indique si une modification annulée peut être refaite.
+     *
+     * @return true si une version annulée est conservée.
+     */
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * Annule la dernière modification.
+     *
+     * @return true si une modification a été annulée.
+     */
+    public boolean undo() {
+        settle();
+        if (undo.isEmpty()) {
+            return false;
+        }
+        SheetVersion target = undo.pop();
+        push(redo, committed);
+        restore(target);
+        return true;
+    }
+
+    /**
+     * Refait la dernière modification annulée.
+     *
+     * @return true si une modification a été refaite.
+     */
+    public boolean redo() {
+        settle();
+        if (redo.isEmpty()) {
+            return false;
+        }
+        SheetVersion target = redo.pop();
+        push(undo, committed);
+        restore(target);
+        return true;
+    }
+
+    /**
+     * Conserve la version courante sous un nom, en remplaçant l'instantané
+     * de même nom.
+     *
+     * @param name Le nom de l'instantané.
+     */
+    public void snapshot(String name) {
+        settle();
+        snapshots.put(name, committed);
+    }
+
+    /**
+     * Restaure un instantané. La restauration peut être annulée comme une
+     * modification.
+     *
+     * @param name Le nom de l'instantané.
+     * @return true si l'instantané existe et a été restauré.
+     */
+    public boolean restore(String name) {
+        SheetVersion target = snapshots.get(name);
+        if (target == null) {
+            return false;
+        }
+        settle();
+        if (target != committed) {
+            push(undo, committed);
+            redo.clear();
+            restore(target);
+        }
+        return true;
+    }
+
+    /**
+     * Renvoie un instantané.
+     *
+     * @param name Le nom de l'instantané.
+     * @return La version conservée sous ce nom, ou null.
+     */
+    public SheetVersion getSnapshot(String name) {
+        return snapshots.get(name);
+    }
+
+    /**
+     * Renvoie les noms des instantanés, dans l'ordre alphabétique. Cette
+     * méthode peut être appelée depuis n'importe quel thread.
+     *
+     * @return Les noms des instantanés (copie).
+     */
+    public NavigableSet<String> getSnapshotNames() {
+        return new TreeSet<>(snapshots.keySet());
+    }
+
+    /**
+     * Achève le recalcul abandonné du moteur, le cas échéant, pour que la
+     * version courante soit un point d'annulation.
+     */
+    private void settle() {
+        if (engine.hasInterruptedCells()) {
+            engine.recalculate(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Replace dans le moteur les formules d'une version, en un seul lot, puis
+     * en fait la version courante. Le recalcul reproduit les statuts et les
+     * valeurs de la version : la version conservée est alors reprise telle
+     * quelle, avec tout ce qu'elle partage avec les autres.
+     *
+     * @param target La version à restaurer.
+     */
+    private void restore(SheetVersion target) {
+        SheetEngine.Batch batch = engine.beginBatch();
+        SheetVersion from = committed;
+        from.diff(target, key -> {
+            if (!from.sameFormula(target, key)) {
+                int row = CellReference.row(key);
+                int column = CellReference.column(key);
+                batch.set(row, column, target.getFormula(row, column));
+            }
+        });
+        restoring = true;
+        try {
+            batch.commit();
+        } finally {
+            restoring = false;
+        }
+        int[] differences = {0};
+        engine.snapshot().diff(target, key -> differences[0]++);
+        if (differences[0] == 0) {
+            engine.adoptVersion(target);
+        }
+        committed = engine.snapshot();
+    }
+
+    /**
+     * Empile une version en respectant la limite d'annulation.
+     *
+     * @param stack   La pile.
+     * @param version La version à empiler.
+     */
+    private void push(Deque<SheetVersion> stack, SheetVersion version) {
+        stack.push(version);
+        if (stack.size() > limit) {
+            stack.removeLast();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package src.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Format texte des feuilles de calcul traitées par lot.
+ * En entrée, chaque ligne non vide associe une référence A1 à une formule,
+ * séparées par des blancs (par exemple {@code B2 + A1 3}) ; les lignes qui
+ * commencent par {@code #} sont des commentaires. En sortie, chaque cellule
+ * non vide donne une ligne {@code référence<TAB>statut<TAB>valeur}, où la
+ * valeur est le texte affiché dans la grille.
+ * <p>
+ * La lecture et l'écriture se font au fil de l'eau : seule la feuille
+ * elle-même est conservée en mémoire.
+ * </p>
+ */
+public class SheetTextFormat {
+
+    /**
+     * Constructeur privé : la classe ne fournit que des méthodes statiques.
+     */
+    private SheetTextFormat() {
+    }
+
+    /**
+     * Lit les formules d'une feuille et les rassemble dans un lot de
+     * modifications du moteur, sans l'appliquer. Une ligne mal formée ou
+     * hors de la feuille est signalée sur la sortie d'erreur puis ignorée.
+     *
+     * @param reader Le lecteur du fichier.
+     * @param name   Le nom du fichier, pour les messages d'erreur.
+     * @param engine Le moteur qui reçoit les formules.
+     * @return Le lot des formules lues, à valider.
+     * @throws IOException Si la lecture échoue.
+     */
+    public static SheetEngine.Batch read(BufferedReader reader, String name, SheetEngine engine) throws IOException {
+        SheetEngine.Batch batch = engine.beginBatch();
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+                continue;
+            }
+            int end = 0;
+            while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end))) {
+                end++;
+            }
+            try {
+                long key = CellReference.parse(trimmed.substring(0, end));
+                int row = CellReference.row(key);
+                int column = CellReference.column(key);
+                batch.set(row, column, trimmed.substring(end).trim());
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                System.err.println(name + ":" + number + " : ligne ignorée (" + e.getMessage() + ")");
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Écrit la référence, le statut et la valeur de chaque cellule non vide
+     * d'un moteur, tuile par tuile.
+     *
+     * @param engine Le moteur recalculé.
+     * @param writer Le rédacteur du fichier de sortie.
+     * @return Le nombre de cellules écrites.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public static int write(SheetEngine engine, Writer writer) throws IOException {
+        int[] count = new int[1];
+        try {
+            engine.forEachNonEmpty((row, column, formula, status, value) -> {
+                try {
+                    writer.write(CellReference.format(row, column));
+                    writer.write('\t');
+                    writer.write(engine.getStatus(row, column).name());
+                    writer.write('\t');
+                    writer.write(engine.getText(row, column));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+}
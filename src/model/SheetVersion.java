@@ -0,0 +1,216 @@
+package src.model;
+
+import src.entity.Status;
+
+import java.util.Objects;
+
+/**
+ * Version immuable de l'état d'une feuille : la formule, le statut et la
+ * valeur de chacune de ses cellules non vides, rangés dans une
+ * {@link PersistentCellMap}. Une version se lit depuis n'importe quel thread.
+ * <p>
+ * La version qui suit une modification partage avec la précédente tout ce
+ * que la modification ne touche pas : elle ne coûte que O(log n) par cellule
+ * modifiée ou recalculée, et comparer deux versions proches ne parcourt que
+ * leurs différences.
+ * </p>
+ */
+public final class SheetVersion {
+
+    /** La version d'une feuille vide. */
+    public static final SheetVersion EMPTY = new SheetVersion(PersistentCellMap.empty());
+
+    /** L'état des cellules non vides, par clé de cellule. */
+    private final PersistentCellMap<CellState> cells;
+
+    /**
+     * État d'une cellule non vide dans une version.
+     */
+    private static final class CellState {
+        /** La formule, relative à la cellule ({@link FormulaPool}). */
+        private final String template;
+        private final Status status;
+        private final double value;
+
+        /**
+         * Construit l'état d'une cellule.
+         *
+         * @param template La formule, relative à la cellule.
+         * @param status   Le statut de la cellule.
+         * @param value    La valeur de la cellule.
+         */
+        CellState(String template, Status status, double value) {
+            this.template = template;
+            this.status = status;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CellState)) {
+                return false;
+            }
+            CellState state = (CellState) other;
+            return template.equals(state.template) && status == state.status
+                    && Double.doubleToLongBits(value) == Double.doubleToLongBits(state.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(template, status, value);
+        }
+    }
+
+    /**
+     * Construit une version.
+     *
+     * @param cells L'état des cellules non vides.
+     */
+    private SheetVersion(PersistentCellMap<CellState> cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * Construit la version de l'état actuel d'un moteur, en parcourant toutes
+     * ses cellules non vides.
+     *
+     * @param engine Le moteur.
+     * @return La version de l'état du moteur.
+     */
+    static SheetVersion of(SheetEngine engine) {
+        long[] keys = new long[engine.size()];
+        int[] count = {0};
+        engine.forEachNonEmpty((row, column, formula, status, value) ->
+                keys[count[0]++] = CellReference.pack(row, column));
+        return EMPTY.update(engine, keys);
+    }
+
+    /**
+     * Renvoie la version qui suit celle-ci après la modification ou le
+     * recalcul de cellules d'un moteur.
+     *
+     * @param engine Le moteur, dont les autres cellules sont celles de cette
+     *               version.
+     * @param keys   Les clés des cellules modifiées ou recalculées.
+     * @return La nouvelle version, ou celle-ci si aucune cellule n'a changé.
+     */
+    SheetVersion update(SheetEngine engine, long[] keys) {
+        PersistentCellMap<CellState> next = cells;
+        for (long key : keys) {
+            int row = CellReference.row(key);
+            int column = CellReference.column(key);
+            String template = engine.getTemplate(row, column);
+            if (template == null) {
+                next = next.without(key);
+            } else {
+                next = next.with(key,
+                        new CellState(template, engine.getStatus(row, column), engine.getValue(row, column)));
+            }
+        }
+        return next == cells ? this : new SheetVersion(next);
+    }
+
+    /**
+     * Renvoie le nombre de cellules non vides de la version.
+     *
+     * @return Le nombre de cellules non vides.
+     */
+    public int size() {
+        return cells.size();
+    }
+
+    /**
+     * Renvoie la formule d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La formule, vide si la cellule est vide.
+     */
+    public String getFormula(int row, int column) {
+        CellState state = cells.get(CellReference.pack(row, column));
+        return state == null ? "" : FormulaParser.toAbsolute(state.template, row, column);
+    }
+
+    /**
+     * Renvoie le statut d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return Le statut de la cellule.
+     */
+    public Status getStatus(int row, int column) {
+        CellState state = cells.get(CellReference.pack(row, column));
+        return state == null ? Status.EMPTY : state.status;
+    }
+
+    /**
+     * Renvoie la valeur d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La valeur, significative si la cellule est calculable.
+     */
+    public double getValue(int row, int column) {
+        CellState state = cells.get(CellReference.pack(row, column));
+        return state == null ? 0 : state.value;
+    }
+
+    /**
+     * Renvoie le texte affiché pour une cellule, comme
+     * {@link SheetEngine#getText(int, int)}.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La valeur si la cellule est calculable, "ERR" si sa formule est
+     *         incorrecte, sinon une chaîne vide.
+     */
+    public String getText(int row, int column) {
+        CellState state = cells.get(CellReference.pack(row, column));
+        if (state == null) {
+            return "";
+        }
+        switch (state.status) {
+            case CALCULABLE:
+                return String.valueOf(state.value);
+            case INCORRECT:
+                return "ERR";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Parcourt les clés des cellules non vides de la version.
+     *
+     * @param visitor Le visiteur des clés.
+     */
+    public void forEachNonEmpty(PersistentCellMap.KeyVisitor visitor) {
+        cells.forEach((key, state) -> visitor.visit(key));
+    }
+
+    /**
+     * Parcourt les cellules dont la formule, le statut ou la valeur diffère
+     * entre cette version et une autre. Le coût est proportionnel aux
+     * modifications qui séparent les deux versions.
+     *
+     * @param other   L'autre version.
+     * @param visitor Le visiteur des clés des cellules différentes.
+     */
+    public void diff(SheetVersion other, PersistentCellMap.KeyVisitor visitor) {
+        cells.diff(other.cells, visitor);
+    }
+
+    /**
+     * Indique si une cellule a la même formule dans cette version et dans une
+     * autre.
+     *
+     * @param other L'autre version.
+     * @param key   La clé de la cellule.
+     * @return true si les deux formules sont égales.
+     */
+    boolean sameFormula(SheetVersion other, long key) {
+        CellState mine = cells.get(key);
+        CellState theirs = other.cells.get(key);
+        return mine == null ? theirs == null : theirs != null && mine.template.equals(theirs.template);
+    }
+}
@@ -0,0 +1,335 @@
+package src.model;
+
+import src.entity.Status;
+
+/**
+ * Stockage creux de l'état des cellules d'une feuille de calcul.
+ * La feuille est découpée en tuiles carrées de taille fixe, allouées à la
+ * première écriture d'une de leurs cellules et libérées lorsque toutes leurs
+ * cellules redeviennent vides : la mémoire occupée dépend du nombre de cellules
+ * utilisées et non de la surface de la feuille. Dans une tuile, l'état des
+ * cellules est rangé en tableaux (valeurs, codes de statut, identifiants de
+ * formule) ; le code d'un statut est son rang dans {@link Status}, de sorte
+ * qu'une cellule jamais écrite est vide.
+ * <p>
+ * Les tuiles sont retrouvées par un répertoire à deux niveaux, sans table de
+ * hachage ni objet intermédiaire.
+ * </p>
+ */
+public class TiledGrid {
+
+    /** Nombre maximal de lignes d'une feuille. */
+    public static final int MAX_ROWS = 1 << 20;
+    /** Nombre maximal de colonnes d'une feuille. */
+    public static final int MAX_COLUMNS = 1 << 14;
+
+    /** Logarithme en base 2 du côté d'une tuile. */
+    private static final int TILE_BITS = 5;
+    /** Côté d'une tuile, en cellules. */
+    private static final int TILE_SIZE = 1 << TILE_BITS;
+    /** Masque de la position d'une cellule dans sa tuile. */
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    /** Le nombre de lignes de la feuille. */
+    private final int rows;
+    /** Le nombre de colonnes de la feuille. */
+    private final int columns;
+    /** Les tuiles, par ligne puis par colonne de tuile. */
+    private final Tile[][] directory;
+    /** Le nombre de tuiles allouées. */
+    private int tileCount;
+    /** Le nombre de cellules non vides. */
+    private int size;
+
+    /**
+     * Visiteur des cellules non vides de la feuille.
+     */
+    public interface CellVisitor {
+        /**
+         * Appelé pour chaque cellule non vide.
+         *
+         * @param row     La ligne de la cellule.
+         * @param column  La colonne de la cellule.
+         * @param formula L'identifiant de la formule de la cellule.
+         * @param status  Le code du statut de la cellule.
+         * @param value   La valeur de la cellule.
+         */
+        void visit(int row, int column, int formula, byte status, double value);
+    }
+
+    /**
+     * Tuile de cellules, allouée à la première écriture.
+     */
+    private static class Tile {
+        private final double[] values = new double[TILE_SIZE * TILE_SIZE];
+        private final byte[] statuses = new byte[TILE_SIZE * TILE_SIZE];
+        private final int[] formulas = new int[TILE_SIZE * TILE_SIZE];
+        /** Le nombre de cellules de la tuile dont la formule n'est pas vide. */
+        private int used;
+    }
+
+    /**
+     * Construit un stockage vide.
+     *
+     * @param rows    Le nombre de lignes de la feuille.
+     * @param columns Le nombre de colonnes de la feuille.
+     * @throws IllegalArgumentException Si les dimensions sont négatives ou
+     *                                  dépassent {@link #MAX_ROWS} ×
+     *                                  {@link #MAX_COLUMNS}.
+     */
+    public TiledGrid(int rows, int columns) {
+        if (rows < 0 || rows > MAX_ROWS || columns < 0 || columns > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Dimensions de feuille invalides : " + rows + " x " + columns);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.directory = new Tile[(rows + TILE_MASK) >>> TILE_BITS][];
+        this.tileCount = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Renvoie le nombre de lignes de la feuille.
+     *
+     * @return Le nombre de lignes.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Renvoie le nombre de colonnes de la feuille.
+     *
+     * @return Le nombre de colonnes.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Indique si une position appartient à la feuille.
+     *
+     * @param row    La ligne.
+     * @param column La colonne.
+     * @return true si la position est dans les limites de la feuille.
+     */
+    public boolean contains(int row, int column) {
+        return row >= 0 && row < rows && column >= 0 && column < columns;
+    }
+
+    /**
+     * Renvoie l'identifiant de la formule d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return L'identifiant de la formule, {@link FormulaPool#EMPTY} pour une
+     *         cellule vide.
+     */
+    public int formula(int row, int column) {
+        Tile tile = tile(row, column);
+        return tile == null ? FormulaPool.EMPTY : tile.formulas[offset(row, column)];
+    }
+
+    /**
+     * Renvoie le code du statut d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return Le code du statut de la cellule, 0 ({@link Status#EMPTY}) pour
+     *         une cellule jamais écrite.
+     */
+    public byte status(int row, int column) {
+        Tile tile = tile(row, column);
+        return tile == null ? 0 : tile.statuses[offset(row, column)];
+    }
+
+    /**
+     * Renvoie la valeur d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La valeur de la cellule, 0 pour une cellule jamais écrite.
+     */
+    public double value(int row, int column) {
+        Tile tile = tile(row, column);
+        return tile == null ? 0 : tile.values[offset(row, column)];
+    }
+
+    /**
+     * Définit l'identifiant de la formule d'une cellule. La tuile de la
+     * cellule est allouée si nécessaire, et libérée si toutes ses cellules
+     * deviennent vides.
+     *
+     * @param row     La ligne de la cellule.
+     * @param column  La colonne de la cellule.
+     * @param formula L'identifiant de la formule.
+     */
+    public void setFormula(int row, int column, int formula) {
+        Tile tile = tile(row, column);
+        if (tile == null) {
+            if (formula == FormulaPool.EMPTY) {
+                return;
+            }
+            tile = allocate(row, column);
+        }
+        int offset = offset(row, column);
+        int previous = tile.formulas[offset];
+        tile.formulas[offset] = formula;
+        if (previous == FormulaPool.EMPTY && formula != FormulaPool.EMPTY) {
+            tile.used++;
+            size++;
+        } else if (previous != FormulaPool.EMPTY && formula == FormulaPool.EMPTY) {
+            size--;
+            if (--tile.used == 0) {
+                directory[row >>> TILE_BITS][column >>> TILE_BITS] = null;
+                tileCount--;
+            }
+        }
+    }
+
+    /**
+     * Enregistre le résultat du calcul d'une cellule. Cette méthode n'alloue
+     * jamais de tuile : une cellule sans tuile est vide et garde l'état par
+     * défaut. Des cellules distinctes peuvent donc être écrites en parallèle.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @param status Le code du statut de la cellule.
+     * @param value  La valeur de la cellule.
+     */
+    public void setResult(int row, int column, byte status, double value) {
+        Tile tile = tile(row, column);
+        if (tile != null) {
+            int offset = offset(row, column);
+            tile.statuses[offset] = status;
+            tile.values[offset] = value;
+        }
+    }
+
+    /**
+     * Parcourt les cellules non vides, tuile par tuile. Seules les tuiles
+     * allouées sont visitées.
+     *
+     * @param visitor Le visiteur appelé pour chaque cellule non vide.
+     */
+    public void forEachNonEmpty(CellVisitor visitor) {
+        for (int tileRow = 0; tileRow < directory.length; tileRow++) {
+            Tile[] line = directory[tileRow];
+            if (line == null) {
+                continue;
+            }
+            for (int tileColumn = 0; tileColumn < line.length; tileColumn++) {
+                Tile tile = line[tileColumn];
+                if (tile == null) {
+                    continue;
+                }
+                for (int offset = 0; offset < tile.formulas.length; offset++) {
+                    if (tile.formulas[offset] != FormulaPool.EMPTY) {
+                        visitor.visit((tileRow << TILE_BITS) | (offset >>> TILE_BITS),
+                                (tileColumn << TILE_BITS) | (offset & TILE_MASK),
+                                tile.formulas[offset], tile.statuses[offset], tile.values[offset]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parcourt les cellules non vides d'une ligne, par colonne croissante.
+     * Seules les tuiles allouées de la ligne sont visitées.
+     *
+     * @param row     La ligne à parcourir.
+     * @param visitor Le visiteur appelé pour chaque cellule non vide.
+     */
+    public void forEachNonEmptyInRow(int row, CellVisitor visitor) {
+        Tile[] line = directory[row >>> TILE_BITS];
+        if (line == null) {
+            return;
+        }
+        int base = (row & TILE_MASK) << TILE_BITS;
+        for (int tileColumn = 0; tileColumn < line.length; tileColumn++) {
+            Tile tile = line[tileColumn];
+            if (tile == null) {
+                continue;
+            }
+            for (int offset = base; offset < base + TILE_SIZE; offset++) {
+                if (tile.formulas[offset] != FormulaPool.EMPTY) {
+                    visitor.visit(row, (tileColumn << TILE_BITS) | (offset & TILE_MASK),
+                            tile.formulas[offset], tile.statuses[offset], tile.values[offset]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indique si la tuile d'une cellule est allouée. Une tuile non allouée ne
+     * contient que des cellules vides.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return true si la tuile de la cellule est allouée.
+     */
+    public boolean hasTile(int row, int column) {
+        return tile(row, column) != null;
+    }
+
+    /**
+     * Renvoie le nombre de cellules non vides.
+     *
+     * @return Le nombre de cellules dont la formule n'est pas vide.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Renvoie le nombre de tuiles allouées.
+     *
+     * @return Le nombre de tuiles.
+     */
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Renvoie la tuile d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La tuile, ou null si elle n'est pas allouée.
+     */
+    private Tile tile(int row, int column) {
+        Tile[] line = directory[row >>> TILE_BITS];
+        return line == null ? null : line[column >>> TILE_BITS];
+    }
+
+    /**
+     * Alloue la tuile d'une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La nouvelle tuile.
+     */
+    private Tile allocate(int row, int column) {
+        Tile[] line = directory[row >>> TILE_BITS];
+        if (line == null) {
+            line = new Tile[(columns + TILE_MASK) >>> TILE_BITS];
+            directory[row >>> TILE_BITS] = line;
+        }
+        Tile tile = new Tile();
+        line[column >>> TILE_BITS] = tile;
+        tileCount++;
+        return tile;
+    }
+
+    /**
+     * Renvoie la position d'une cellule dans sa tuile.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return La position de la cellule dans les tableaux de sa tuile.
+     */
+    private static int offset(int row, int column) {
+        return ((row & TILE_MASK) << TILE_BITS) | (column & TILE_MASK);
+    }
+}
@@ -2,12 +2,7 @@ package src.view;
 
 import src.controller.EditCellKeyListener;
 import src.controller.EditCellActionListener;
-import src.entity.Cell;
-import src.entity.Status;
-import src.exception.EmptyFormulaException;
-import src.exception.IncorrectFormulaException;
-import src.exception.UncalculableFormulaException;
-import src.model.FormulaCalculatorModel;
+import src.model.GridModel;
 
 import javax.swing.*;
 
@@ -16,76 +11,60 @@ import javax.swing.*;
  */
 public class EditCellView extends JTextField {
 
-    private Cell[][] cells;
-    private Cell selectedCell;
+    private GridModel model;
+    private int selectedRow;
+    private int selectedColumn;
 
     /**
      * Construit une nouvelle instance de l'éditeur de cellule.
-     * 
-     * @param cells La grille de cellules à éditer.
+     *
+     * @param model Le modèle de la grille à éditer.
      */
-    public EditCellView(Cell[][] cells) {
-        this.cells = cells;
-        setSelectedCell(cells[0][0]);
+    public EditCellView(GridModel model) {
+        this.model = model;
+        setSelectedCell(0, 0);
         addActionListener(new EditCellActionListener(this));
         addKeyListener(new EditCellKeyListener(EditCellView.this));
     }
 
     /**
-     * Récupère la cellule actuellement sélectionnée.
-     * 
-     * @return La cellule sélectionnée.
+     * Récupère la ligne de la cellule actuellement sélectionnée.
+     *
+     * @return La ligne sélectionnée.
      */
-    public Cell getCell() {
-        return selectedCell;
+    public int getSelectedRow() {
+        return selectedRow;
     }
 
     /**
-     * Définit la cellule sélectionnée pour l'édition.
-     * 
-     * @param selectedCell La cellule à éditer.
+     * Récupère la colonne de la cellule actuellement sélectionnée.
+     *
+     * @return La colonne sélectionnée.
      */
-    public void setSelectedCell(Cell selectedCell) {
-        this.selectedCell = selectedCell;
-        setText(selectedCell.getFormula());
+    public int getSelectedColumn() {
+        return selectedColumn;
     }
 
-    public Cell[][] getCells() {
-        return cells;
+    /**
+     * Définit la cellule sélectionnée pour l'édition.
+     *
+     * @param row    La ligne de la cellule à éditer.
+     * @param column La colonne de la cellule à éditer.
+     */
+    public void setSelectedCell(int row, int column) {
+        this.selectedRow = row;
+        this.selectedColumn = column;
+        setText(model.getSnapshot().getFormula(row, column));
     }
 
     /**
      * Met à jour la formule de la cellule en fonction de l'entrée de l'utilisateur.
      * Cette méthode est appelée lorsque l'utilisateur appuie sur la touche Entrée
-     * après avoir édité la formule.
+     * après avoir édité la formule. La cellule et toutes celles qui en dépendent
+     * sont recalculées hors du thread de Swing ; la grille est mise à jour à la
+     * fin du recalcul.
      */
     public void updateCellFormula() {
-        String newFormula = getText();
-        if (selectedCell == null) {
-            System.err.println("Aucune cellule sélectionnée.");
-            return;
-        }
-        try {
-            selectedCell.replaceFormula(newFormula);
-            double res = FormulaCalculatorModel.calculateCellFormula(selectedCell, cells);
-
-            // FormulaCalculatorModel.recalculateDependents(selectedCell,this.cells); //
-            // recalcul les descendants de l'AST
-            System.out.println("Cellule mise à jour : " + res);
-            selectedCell.setStatus(Status.CALCULABLE);
-            selectedCell.setText(String.valueOf(res));
-        } catch (EmptyFormulaException e) {
-            System.err.println("Erreur: " + e.getMessage());
-            selectedCell.setStatus(Status.EMPTY);
-        } catch (UncalculableFormulaException e) {
-            System.err.println("Erreur: " + e.getMessage());
-            selectedCell.setStatus(Status.UNCALCULABLE);
-        } catch (IncorrectFormulaException e) {
-            System.err.println("Erreur: " + e.getMessage());
-            selectedCell.setStatus(Status.INCORRECT);
-        } catch (Exception e) {
-            System.err.println("Une erreur inattendue est survenue: " + e.getMessage());
-        }
-        FormulaCalculatorModel.updateResult(selectedCell, cells);
+        model.submitFormula(selectedRow, selectedColumn, getText());
     }
 }
@@ -1,178 +1,166 @@
 package src.view;
 
-import src.entity.Cell;
+import src.controller.EditMenuListener;
+import src.controller.FileMenuListener;
+import src.controller.GridInputListener;
+import src.controller.RecalculationListener;
 import src.entity.Colors;
+import src.model.CellReference;
+import src.model.EngineMetrics;
+import src.model.GridModel;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
 
-/**
- * Vue globale de l'application.
- */
 /**
  * Vue globale de l'application.
  */
 public class GlobalView extends JFrame {
 
     private GridView grid;
-    private int size;
     private JLabel label;
-    private Cell currentCell;
+    private JLabel status;
 
     /**
      * Constructeur de la vue globale.
-     * 
-     * @param cells Tableau de cellules représentant la grille.
-     * @param size  Taille de la grille.
+     * La grille est affichée dans un panneau défilant dont les légendes de
+     * lignes et de colonnes restent figées.
+     *
+     * @param model Le modèle de la grille.
      */
-    public GlobalView(Cell[][] cells, int size) {
+    public GlobalView(GridModel model) {
         super("Tableur");
-        this.size = size;
         this.setSize(new Dimension(700, 600));
-        GridBagLayout layout = new GridBagLayout();
         this.setDefaultCloseOperation(EXIT_ON_CLOSE);
-        this.setLayout(layout);
-        currentCell = cells[0][0];
-        EditCellView editor = new EditCellView(cells);
-        this.grid = new GridView(cells, editor);
-        JPanel labelPanel = new JPanel(new GridBagLayout());
+        this.setLayout(new BorderLayout());
+        this.setJMenuBar(createMenuBar(model));
+
+        EditCellView editor = new EditCellView(model);
+        this.grid = new GridView(model.getEngine());
+        GridInputListener input = new GridInputListener(this.grid, editor);
+        this.grid.addMouseListener(input);
+        this.grid.addKeyListener(input);
+        RecalculationListener updates = new RecalculationListener(this, model.getRecalculationService(),
+                model.getEngine().getMetrics());
+        model.getEngine().addCellChangeListener(updates);
+        model.getRecalculationService().addStateListener(updates);
+
+        JPanel editorPanel = new JPanel(new BorderLayout());
         this.label = new JLabel();
-        labelPanel.add(this.label, labelConstraint());
-        JPanel parent = (JPanel) currentCell.getParent();
-        this.label.setText(parent.getName() + " = ");
-        this.add(labelPanel, labelConstraint());
-        this.add(editor, editorConstraint());
-
-        String[] letters = new String[] { "A", "B", "C", "D", "E", "F", "G", "H", "I" };
-        JPanel[] panels = new JPanel[19];
-        Color green = new Color(144, 238, 144);
-
-        panels[0] = new JPanel();
-        panels[0].add(new JLabel(" "));
-        panels[0].setBackground(green);
-        panels[0].setBorder(BorderFactory.createLineBorder(Color.black));
-        this.add(panels[0], legendConstraint(0, 0));
-
-        for (int i = 0; i < 9; i++) {
-            panels[i + 1] = new JPanel();
-            panels[i + 1].add(new JLabel(letters[i]));
-            panels[i + 1].setBackground(green);
-            panels[i + 1].setBorder(BorderFactory.createLineBorder(Color.black));
-            this.add(panels[i + 1], legendConstraint(i + 1, 0));
-        }
-
-        for (int j = 0; j < 9; j++) {
-            panels[j + 10] = new JPanel();
-            panels[j + 10].add(new JLabel(Integer.toString(j + 1)));
-            panels[j + 10].setBackground(green);
-            panels[j + 10].setBorder(BorderFactory.createLineBorder(Color.black));
-            this.add(panels[j + 10], legendConstraint(0, j + 1));
-        }
+        editorPanel.add(this.label, BorderLayout.WEST);
+        editorPanel.add(editor, BorderLayout.CENTER);
+        this.add(editorPanel, BorderLayout.NORTH);
+
+        JScrollPane scrollPane = new JScrollPane(this.grid);
+        scrollPane.setColumnHeaderView(new GridHeaderView(true, model.getEngine().getColumns()));
+        scrollPane.setRowHeaderView(new GridHeaderView(false, model.getEngine().getRows()));
+        JPanel corner = new JPanel();
+        corner.setBackground(Colors.HEADER);
+        corner.setBorder(GridHeaderView.BORDER);
+        scrollPane.setCorner(ScrollPaneConstants.UPPER_LEFT_CORNER, corner);
+        this.add(scrollPane, BorderLayout.CENTER);
+
+        this.status = new JLabel(" ");
+        this.add(this.status, BorderLayout.SOUTH);
 
-        this.add(this.grid, cellsConstraint());
         this.setVisible(true);
         this.updateView();
     }
 
     /**
-     * Définit les contraintes pour l'affichage de la grille de cellules.
-     * 
-     * @return Les contraintes.
+     * Construit la barre de menus de l'application.
+     *
+     * @param model Le modèle de la grille.
+     * @return La barre de menus.
      */
-    public GridBagConstraints cellsConstraint() {
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.gridx = 1;
-        gbc.gridy = 3;
-        gbc.gridwidth = 9;
-        gbc.gridheight = 9;
-        gbc.fill = GridBagConstraints.BOTH;
-        gbc.anchor = GridBagConstraints.SOUTHWEST;
-        gbc.weightx = 100.0;
-        gbc.weighty = 9.0;
-        gbc.insets = new Insets(1, 1, 1, 1);
-        return gbc;
+    private JMenuBar createMenuBar(GridModel model) {
+        FileMenuListener listener = new FileMenuListener(this, model);
+        JMenu file = new JMenu("Fichier");
+        file.add(menuItem("Ouvrir...", FileMenuListener.OPEN, listener));
+        file.add(menuItem("Enregistrer sous...", FileMenuListener.SAVE, listener));
+        file.addSeparator();
+        file.add(menuItem("Importer CSV/TSV...", FileMenuListener.IMPORT, listener));
+        file.add(menuItem("Exporter les valeurs...", FileMenuListener.EXPORT_VALUES, listener));
+        file.add(menuItem("Exporter les formules...", FileMenuListener.EXPORT_FORMULAS, listener));
+        EditMenuListener editListener = new EditMenuListener(this, model);
+        JMenu edit = new JMenu("Édition");
+        JMenuItem undo = menuItem("Annuler", EditMenuListener.UNDO, editListener);
+        undo.setAccelerator(shortcut(KeyEvent.VK_Z));
+        edit.add(undo);
+        JMenuItem redo = menuItem("Rétablir", EditMenuListener.REDO, editListener);
+        redo.setAccelerator(shortcut(KeyEvent.VK_Y));
+        edit.add(redo);
+        edit.addSeparator();
+        edit.add(menuItem("Créer un instantané...", EditMenuListener.SNAPSHOT, editListener));
+        edit.add(menuItem("Restaurer un instantané...", EditMenuListener.RESTORE, editListener));
+        JMenuBar bar = new JMenuBar();
+        bar.add(file);
+        bar.add(edit);
+        return bar;
     }
 
     /**
-     * Définit les contraintes pour l'affichage de l'éditeur de cellule.
-     * 
-     * @return Les contraintes.
+     * Construit un élément de menu.
+     *
+     * @param text     Le libellé de l'élément.
+     * @param command  La commande transmise à l'écouteur.
+     * @param listener L'écouteur de l'élément.
+     * @return L'élément de menu.
      */
-    public GridBagConstraints editorConstraint() {
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.gridx = 1;
-        gbc.gridy = 0;
-        gbc.gridwidth = 9;
-        gbc.gridheight = 1;
-        gbc.fill = GridBagConstraints.BOTH;
-        gbc.anchor = GridBagConstraints.NORTH;
-        gbc.weightx = 10.0;
-        gbc.weighty = 1.0;
-        gbc.insets = new Insets(1, 1, 1, 1);
-        return gbc;
+    private static JMenuItem menuItem(String text, String command, ActionListener listener) {
+        JMenuItem item = new JMenuItem(text);
+        item.setActionCommand(command);
+        item.addActionListener(listener);
+        return item;
     }
 
     /**
-     * Définit les contraintes pour l'affichage de la légende.
-     * 
-     * @param x La coordonnée x de la légende.
-     * @param y La coordonnée y de la légende.
-     * @return Les contraintes.
+     * Construit le raccourci clavier d'un élément de menu, avec la touche de
+     * raccourci de la plateforme.
+     *
+     * @param key Le code de la touche.
+     * @return Le raccourci clavier.
      */
-    public GridBagConstraints legendConstraint(int x, int y) {
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.gridx = x;
-        gbc.gridy = y + 2;
-        gbc.gridwidth = 1;
-        gbc.gridheight = 1;
-        gbc.fill = GridBagConstraints.BOTH;
-        gbc.weightx = 1.0;
-        gbc.weighty = 1.0;
-        gbc.insets = new Insets(1, 1, 1, 1);
-        return gbc;
+    private static KeyStroke shortcut(int key) {
+        return KeyStroke.getKeyStroke(key, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx());
     }
 
     /**
-     * Définit les contraintes pour l'affichage de l'étiquette.
-     * 
-     * @return Les contraintes.
+     * Renvoie la vue de la grille.
+     *
+     * @return La vue de la grille.
      */
-    public GridBagConstraints labelConstraint() {
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.gridx = 0;
-        gbc.gridy = 0;
-        gbc.gridwidth = 1;
-        gbc.gridheight = 1;
-        gbc.fill = GridBagConstraints.BOTH;
-        gbc.weightx = 1.0;
-        gbc.weighty = 1.0;
-        gbc.insets = new Insets(1, 1, 1, 1);
-        return gbc;
+    public GridView getGrid() {
+        return grid;
     }
 
     /**
-     * Définit la cellule actuellement sélectionnée.
-     * 
-     * @param cell La cellule sélectionnée.
+     * Affiche l'indication de calcul en cours ou, lorsque le moteur est au
+     * repos, le relevé de ses compteurs.
+     *
+     * @param calculating true si un recalcul est en attente ou en cours.
+     * @param metrics     Le relevé des compteurs du moteur.
      */
-    public void setCurrentCell(Cell cell) {
-        currentCell = cell;
+    public void setCalculating(boolean calculating, EngineMetrics.Snapshot metrics) {
+        if (calculating) {
+            status.setText("Calcul en cours...");
+        } else if (metrics.getRecalculations() == 0) {
+            status.setText(" ");
+        } else {
+            status.setText(String.format("%d recalculs, moyenne %.2f ms, p99 %.2f ms, "
+                    + "%d cellules évaluées, %d formules compilées (%d réutilisées)",
+                    metrics.getRecalculations(), metrics.getMeanNanos() / 1e6, metrics.percentileNanos(99) / 1e6,
+                    metrics.getCellsEvaluated(), metrics.getFormulasCompiled(), metrics.getCacheHits()));
+        }
     }
 
     /**
-     * Met à jour la vue de l'application.
+     * Met à jour la vue de l'application. La grille n'est pas redessinée ici :
+     * elle redessine elle-même la sélection et les cellules modifiées.
      */
-
     public void updateView() {
-        for (int i = 0; i < this.size * this.size; i++) {
-            JPanel panel = (JPanel) this.grid.getComponent(i);
-            panel.setBorder(BorderFactory.createLineBorder(Color.black));
-            Cell cell = (Cell) panel.getComponent(0);
-            panel.setBackground(Colors.chooseColor(cell.getStatus()));
-        }
-        JPanel parent = (JPanel) currentCell.getParent();
-        parent.setBorder(BorderFactory.createLineBorder(Color.white));
-        label.setText(parent.getName() + " = ");
-
+        label.setText(CellReference.format(grid.getSelectedRow(), grid.getSelectedColumn()) + " = ");
     }
 }
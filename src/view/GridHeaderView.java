@@ -0,0 +1,78 @@
+package src.view;
+
+import src.entity.Colors;
+import src.model.CellReference;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+import java.awt.*;
+
+/**
+ * Légende de la grille : noms des colonnes ou numéros des lignes.
+ * Placée comme en-tête de colonne ou de ligne du {@link JScrollPane} de la
+ * grille, elle reste visible pendant le défilement et, comme la grille, ne
+ * dessine que les libellés visibles.
+ */
+public class GridHeaderView extends JComponent {
+
+    /** Bordure des éléments de la légende qui ne sont pas dessinés. */
+    public static final Border BORDER = BorderFactory.createLineBorder(Colors.GRID_LINE);
+    /** Largeur de la légende des lignes, en pixels. */
+    public static final int ROW_HEADER_WIDTH = 64;
+
+    private final boolean columns;
+    private final int count;
+
+    /**
+     * Construit une légende.
+     *
+     * @param columns true pour la légende des colonnes, false pour celle des
+     *                lignes.
+     * @param count   Le nombre de colonnes ou de lignes de la feuille.
+     */
+    public GridHeaderView(boolean columns, int count) {
+        this.columns = columns;
+        this.count = count;
+        this.setOpaque(true);
+        this.setFont(UIManager.getFont("Label.font"));
+        if (columns) {
+            this.setPreferredSize(new Dimension(count * GridView.CELL_WIDTH, GridView.CELL_HEIGHT));
+        } else {
+            this.setPreferredSize(new Dimension(ROW_HEADER_WIDTH, count * GridView.CELL_HEIGHT));
+        }
+    }
+
+    /**
+     * Dessine les libellés qui coupent la zone à redessiner.
+     *
+     * @param g Le contexte graphique.
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int step = columns ? GridView.CELL_WIDTH : GridView.CELL_HEIGHT;
+        int start = columns ? clip.x : clip.y;
+        int end = columns ? clip.x + clip.width : clip.y + clip.height;
+        int first = Math.max(0, start / step);
+        int last = Math.min(count - 1, (end - 1) / step);
+        FontMetrics metrics = g.getFontMetrics(getFont());
+        g.setFont(getFont());
+        int baseline = (GridView.CELL_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent();
+
+        int width = columns ? GridView.CELL_WIDTH : ROW_HEADER_WIDTH;
+        int height = GridView.CELL_HEIGHT;
+        for (int index = first; index <= last; index++) {
+            int x = columns ? index * step : 0;
+            int y = columns ? 0 : index * step;
+            g.setColor(Colors.HEADER);
+            g.fillRect(x, y, width, height);
+            g.setColor(Colors.GRID_LINE);
+            g.drawRect(x, y, width - 1, height - 1);
+            String label = columns ? CellReference.columnName(index) : Integer.toString(index + 1);
+            g.drawString(label, x + (width - metrics.stringWidth(label)) / 2, y + baseline);
+        }
+    }
+}
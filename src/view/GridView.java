@@ -1,63 +1,228 @@
 package src.view;
 
-import src.entity.Cell;
 import src.entity.Colors;
-import src.controller.CellMouseListener;
+import src.model.CellReference;
+import src.model.SheetEngine;
+import src.model.SheetVersion;
 
 import javax.swing.*;
 import java.awt.*;
 
 /**
  * Vue de la grille contenant les cellules.
+ * La grille est un composant unique, placé dans un {@link JScrollPane}, qui ne
+ * dessine que les cellules visibles en lisant la dernière version publiée par
+ * le moteur de calcul ({@link SheetEngine#snapshot()}) : aucun composant n'est
+ * créé par cellule, et une feuille d'un million de lignes s'affiche aussi vite
+ * qu'une feuille de neuf cellules. Un dessin ne voit jamais un recalcul en
+ * cours. Après un recalcul, seules les cellules modifiées qui sont visibles
+ * sont redessinées.
  */
-public class GridView extends JPanel {
+public class GridView extends JComponent implements Scrollable, SheetEngine.CellChangeListener {
 
-    private final int size = 9;
-    private JPanel[][] panels;
+    /** Largeur d'une cellule, en pixels. */
+    public static final int CELL_WIDTH = 80;
+    /** Hauteur d'une cellule, en pixels. */
+    public static final int CELL_HEIGHT = 24;
+
+    private final SheetEngine engine;
+    private int selectedRow;
+    private int selectedColumn;
 
     /**
      * Construit une nouvelle instance de la vue de la grille.
-     * 
-     * @param cells        La grille de cellules à afficher.
-     * @param editCellView La vue de l'éditeur de cellule.
-     */
-    public GridView(Cell[][] cells, EditCellView editCellView) {
-        String[] letters = new String[] { "A", "B", "C", "D", "E", "F", "G", "H", "I" };
-        panels = new JPanel[size][size];
-        this.setLayout(new GridLayout(size, size));
-
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                panels[i][j] = new JPanel();
-                GridBagLayout layout = new GridBagLayout();
-                panels[i][j].setLayout(layout);
-                panels[i][j].add(cells[i][j], cellConstraint());
-                panels[i][j].setBackground(Colors.chooseColor(cells[i][j].getStatus()));
-                panels[i][j].setBorder(BorderFactory.createLineBorder(Color.black));
-                panels[i][j].setName(letters[j] + (i + 1));
-                panels[i][j].addMouseListener(new CellMouseListener(editCellView)); // Passage de la référence à
-                                                                                    // EditCellView
-                this.add(panels[i][j]);
+     *
+     * @param engine Le moteur de calcul dont les cellules sont affichées, dont
+     *               la publication des versions est active.
+     */
+    public GridView(SheetEngine engine) {
+        this.engine = engine;
+        this.selectedRow = 0;
+        this.selectedColumn = 0;
+        this.setOpaque(true);
+        this.setFont(UIManager.getFont("Label.font"));
+        this.setFocusable(true);
+        this.setPreferredSize(new Dimension(engine.getColumns() * CELL_WIDTH, engine.getRows() * CELL_HEIGHT));
+    }
+
+    /**
+     * Renvoie le moteur de calcul affiché.
+     *
+     * @return Le moteur de calcul.
+     */
+    public SheetEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Renvoie la ligne de la cellule sélectionnée.
+     *
+     * @return La ligne sélectionnée.
+     */
+    public int getSelectedRow() {
+        return selectedRow;
+    }
+
+    /**
+     * Renvoie la colonne de la cellule sélectionnée.
+     *
+     * @return La colonne sélectionnée.
+     */
+    public int getSelectedColumn() {
+        return selectedColumn;
+    }
+
+    /**
+     * Sélectionne une cellule, la fait défiler dans la zone visible et
+     * redessine l'ancienne et la nouvelle sélection.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     */
+    public void setSelectedCell(int row, int column) {
+        repaint(cellBounds(selectedRow, selectedColumn));
+        selectedRow = Math.max(0, Math.min(row, engine.getRows() - 1));
+        selectedColumn = Math.max(0, Math.min(column, engine.getColumns() - 1));
+        Rectangle bounds = cellBounds(selectedRow, selectedColumn);
+        scrollRectToVisible(bounds);
+        repaint(bounds);
+    }
+
+    /**
+     * Renvoie la ligne située sous un point de la grille.
+     *
+     * @param point Le point, dans le repère de la grille.
+     * @return La ligne, bornée aux limites de la feuille.
+     */
+    public int rowAtPoint(Point point) {
+        return Math.max(0, Math.min(point.y / CELL_HEIGHT, engine.getRows() - 1));
+    }
+
+    /**
+     * Renvoie la colonne située sous un point de la grille.
+     *
+     * @param point Le point, dans le repère de la grille.
+     * @return La colonne, bornée aux limites de la feuille.
+     */
+    public int columnAtPoint(Point point) {
+        return Math.max(0, Math.min(point.x / CELL_WIDTH, engine.getColumns() - 1));
+    }
+
+    /**
+     * Renvoie le rectangle occupé par une cellule.
+     *
+     * @param row    La ligne de la cellule.
+     * @param column La colonne de la cellule.
+     * @return Le rectangle de la cellule, dans le repère de la grille.
+     */
+    public Rectangle cellBounds(int row, int column) {
+        return new Rectangle(column * CELL_WIDTH, row * CELL_HEIGHT, CELL_WIDTH, CELL_HEIGHT);
+    }
+
+    /**
+     * Redessine les cellules modifiées qui sont visibles. La zone redessinée
+     * est le plus petit rectangle qui les contient, et les cellules hors de la
+     * zone visible sont ignorées.
+     *
+     * @param keys Les clés des cellules modifiées.
+     */
+    @Override
+    public void cellsChanged(long[] keys) {
+        Rectangle visible = getVisibleRect();
+        int firstRow = visible.y / CELL_HEIGHT;
+        int lastRow = (visible.y + visible.height - 1) / CELL_HEIGHT;
+        int firstColumn = visible.x / CELL_WIDTH;
+        int lastColumn = (visible.x + visible.width - 1) / CELL_WIDTH;
+        int top = Integer.MAX_VALUE;
+        int bottom = -1;
+        int left = Integer.MAX_VALUE;
+        int right = -1;
+        for (long key : keys) {
+            int row = CellReference.row(key);
+            int column = CellReference.column(key);
+            if (row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn) {
+                top = Math.min(top, row);
+                bottom = Math.max(bottom, row);
+                left = Math.min(left, column);
+                right = Math.max(right, column);
             }
         }
+        if (bottom >= 0) {
+            repaint(left * CELL_WIDTH, top * CELL_HEIGHT,
+                    (right - left + 1) * CELL_WIDTH, (bottom - top + 1) * CELL_HEIGHT);
+        }
     }
 
     /**
-     * Définit les contraintes pour l'affichage des cellules dans la grille.
-     * 
-     * @return Les contraintes.
+     * Dessine les cellules qui coupent la zone à redessiner, et elles seules.
+     *
+     * @param g Le contexte graphique.
      */
-    public GridBagConstraints cellConstraint() {
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.gridx = 0;
-        gbc.gridy = 0;
-        gbc.gridwidth = 1;
-        gbc.gridheight = 1;
-        gbc.fill = GridBagConstraints.BOTH;
-        gbc.anchor = GridBagConstraints.CENTER;
-        gbc.weightx = 1.0;
-        gbc.weighty = 1.0;
-        gbc.insets = new Insets(1, 1, 1, 1);
-        return gbc;
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstRow = Math.max(0, clip.y / CELL_HEIGHT);
+        int lastRow = Math.min(engine.getRows() - 1, (clip.y + clip.height - 1) / CELL_HEIGHT);
+        int firstColumn = Math.max(0, clip.x / CELL_WIDTH);
+        int lastColumn = Math.min(engine.getColumns() - 1, (clip.x + clip.width - 1) / CELL_WIDTH);
+        SheetVersion version = engine.snapshot();
+        FontMetrics metrics = g.getFontMetrics(getFont());
+        g.setFont(getFont());
+        int baseline = (CELL_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent();
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            int y = row * CELL_HEIGHT;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int x = column * CELL_WIDTH;
+                g.setColor(Colors.chooseColor(version.getStatus(row, column)));
+                g.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+                g.setColor(Colors.GRID_LINE);
+                g.drawRect(x, y, CELL_WIDTH - 1, CELL_HEIGHT - 1);
+                String text = version.getText(row, column);
+                if (!text.isEmpty()) {
+                    Shape previous = g.getClip();
+                    g.clipRect(x + 2, y, CELL_WIDTH - 4, CELL_HEIGHT);
+                    int width = metrics.stringWidth(text);
+                    g.drawString(text, x + Math.max(2, (CELL_WIDTH - width) / 2), y + baseline);
+                    g.setClip(previous);
+                }
+            }
+        }
+
+        if (selectedRow >= firstRow && selectedRow <= lastRow
+                && selectedColumn >= firstColumn && selectedColumn <= lastColumn) {
+            g.setColor(Colors.SELECTION);
+            g.drawRect(selectedColumn * CELL_WIDTH, selectedRow * CELL_HEIGHT, CELL_WIDTH - 1, CELL_HEIGHT - 1);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(9 * CELL_WIDTH, 20 * CELL_HEIGHT);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? CELL_HEIGHT : CELL_WIDTH;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL
+                ? Math.max(CELL_HEIGHT, visibleRect.height - CELL_HEIGHT)
+                : Math.max(CELL_WIDTH, visibleRect.width - CELL_WIDTH);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
     }
 }